@@ -0,0 +1,56 @@
+package com.javierdelgado.similarproducts.benchmarks;
+
+import com.javierdelgado.similarproducts.SimilarProductsApplication;
+import com.javierdelgado.similarproducts.services.proxies.ProductsServiceProxy;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Starts the application without web server, with the Feign ProductsServiceProxy replaced by the given one, so the
+ * benchmarks go through the same beans (cache, validation, single-flight ...) as the service.
+ */
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(ProductsServiceProxy productsServiceProxy, String... properties) {
+        List<String> allProperties = new ArrayList<>(List.of(
+                "spring.devtools.restart.enabled=false",
+                "logging.level.root=WARN",
+                "spring.main.banner-mode=off"));
+        allProperties.addAll(Arrays.asList(properties));
+        return new SpringApplicationBuilder(SimilarProductsApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(allProperties.toArray(String[]::new))
+                .initializers(context -> context.addBeanFactoryPostProcessor(beanFactory -> {
+                    BeanDefinitionRegistry registry = (BeanDefinitionRegistry) beanFactory;
+                    for (String name : beanFactory.getBeanDefinitionNames()) {
+                        // Feign client definitions declare their type as a String attribute of a FactoryBean
+                        Object type = beanFactory.getBeanDefinition(name).getAttribute(
+                                FactoryBean.OBJECT_TYPE_ATTRIBUTE);
+                        if (ProductsServiceProxy.class.getName().equals(String.valueOf(type))) {
+                            registry.removeBeanDefinition(name);
+                            registry.registerBeanDefinition(name, new RootBeanDefinition(ProductsServiceProxy.class,
+                                    () -> productsServiceProxy));
+                        }
+                    }
+                }))
+                .run();
+    }
+
+    static void clearCaches(ConfigurableApplicationContext context) {
+        CacheManager cacheManager = context.getBean(CacheManager.class);
+        cacheManager.getCacheNames().stream().map(cacheManager::getCache).forEach(Cache::clear);
+    }
+}
@@ -0,0 +1,51 @@
+package com.javierdelgado.similarproducts.benchmarks;
+
+import com.javierdelgado.similarproducts.cache.CompactProductDetail;
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+import java.util.function.BiFunction;
+
+/**
+ * Reports the heap taken by the key and the value of every entry of the productDetail cache, storing ProductDetail
+ * (as before) and CompactProductDetail. Product details are created as decoded from products service responses: the
+ * id is a different String instance than the key (which comes from the request path). Every entry is measured after
+ * it has been served once (CompactProductDetail converted to ProductDetail, as a cache hit does), so anything kept by
+ * serving it is included. Sizes are measured with JOL.
+ * The Caffeine node of every entry (the same for both) is not included: walking the cache itself reaches class
+ * loaders and threads, which can not be measured reliably.
+ */
+public class CacheFootprint {
+
+    private static final int ENTRIES = 100_000;
+
+    public static void main(String[] args) {
+        long productDetails = bytesPerEntry((key, productDetail) -> productDetail);
+        long compactProductDetails = bytesPerEntry(CompactProductDetail::of);
+        System.out.printf("Entries: %d%n", ENTRIES);
+        System.out.printf("ProductDetail:        %d bytes/entry%n", productDetails);
+        System.out.printf("CompactProductDetail: %d bytes/entry (%.1f%% less)%n", compactProductDetails,
+                100.0 * (productDetails - compactProductDetails) / productDetails);
+    }
+
+    private static long bytesPerEntry(BiFunction<String, ProductDetail, Object> toCached) {
+        Object[] keys = new Object[ENTRIES];
+        Object[] values = new Object[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++) {
+            String key = Integer.toString(i);
+            ProductDetail productDetail = new ProductDetail(new String(key), "Product " + i,
+                    BigDecimal.valueOf(1000 + i % 9000, 2), i % 2 == 0);
+            keys[i] = key;
+            values[i] = toCached.apply(key, productDetail);
+        }
+        for (int i = 0; i < ENTRIES; i++) {
+            ProductDetail served = values[i] instanceof CompactProductDetail compact ? compact.toProductDetail()
+                    : (ProductDetail) values[i];
+            Objects.requireNonNull(served.getId());
+        }
+        long arrays = GraphLayout.parseInstance((Object) new Object[ENTRIES]).totalSize() * 2;
+        return (GraphLayout.parseInstance(keys, values).totalSize() - arrays) / ENTRIES;
+    }
+}
@@ -0,0 +1,105 @@
+package com.javierdelgado.similarproducts.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import com.javierdelgado.similarproducts.services.proxies.ProductsServiceDecoder;
+import feign.Request;
+import feign.Response;
+import feign.codec.Decoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.cloud.openfeign.support.HttpMessageConverterCustomizer;
+import org.springframework.cloud.openfeign.support.SpringDecoder;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Cost of decoding the responses of product-service (similar ids and a product detail) with the default decoder of
+ * Spring Cloud OpenFeign (SpringDecoder, data binding through the message converters) and with ProductsServiceDecoder
+ * (streaming parser). Run it with -prof gc to compare the allocations per call (gc.alloc.rate.norm).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DecoderBenchmark {
+
+    @Param({"5", "50"})
+    public int size;
+
+    private static final Type SIMILAR_IDS = new ParameterizedTypeReference<List<String>>() {
+    }.getType();
+    private static final Request REQUEST = Request.create(Request.HttpMethod.GET, "http://localhost/product/1",
+            Collections.emptyMap(), null, StandardCharsets.UTF_8, null);
+    private static final Map<String, Collection<String>> HEADERS = Map.of("Content-Type",
+            List.of("application/json"));
+
+    private Decoder springDecoder;
+    private Decoder streamingDecoder;
+    private byte[] similarIds;
+    private byte[] productDetail;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().modules(new ParameterNamesModule()).build();
+        HttpMessageConverters messageConverters = new HttpMessageConverters(false,
+                List.of(new MappingJackson2HttpMessageConverter(objectMapper)));
+        springDecoder = new SpringDecoder(() -> messageConverters,
+                new StaticListableBeanFactory().getBeanProvider(HttpMessageConverterCustomizer.class));
+        streamingDecoder = new ProductsServiceDecoder(objectMapper.getFactory(), 1000, springDecoder);
+        similarIds = objectMapper.writeValueAsBytes(IntStream.range(0, size)
+                .mapToObj(Integer::toString)
+                .collect(Collectors.toList()));
+        productDetail = objectMapper.writeValueAsBytes(StubProductsServiceProxy.productDetail("1"));
+    }
+
+    @Benchmark
+    public Object decodeSimilarIdsWithSpringDecoder() throws IOException {
+        return springDecoder.decode(response(similarIds), SIMILAR_IDS);
+    }
+
+    @Benchmark
+    public Object decodeSimilarIdsWithProductsServiceDecoder() throws IOException {
+        return streamingDecoder.decode(response(similarIds), SIMILAR_IDS);
+    }
+
+    @Benchmark
+    public Object decodeProductDetailWithSpringDecoder() throws IOException {
+        return springDecoder.decode(response(productDetail), ProductDetail.class);
+    }
+
+    @Benchmark
+    public Object decodeProductDetailWithProductsServiceDecoder() throws IOException {
+        return streamingDecoder.decode(response(productDetail), ProductDetail.class);
+    }
+
+    private static Response response(byte[] body) {
+        return Response.builder().status(200).request(REQUEST).headers(HEADERS).body(body).build();
+    }
+}
@@ -0,0 +1,73 @@
+package com.javierdelgado.similarproducts.benchmarks;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Latency added by StubProductsServiceProxy to every request. It is parsed from a benchmark parameter with the format
+ * "none", "fixed:&lt;duration&gt;", "exponential:&lt;mean&gt;" or "lognormal:&lt;median&gt;" (sigma 1, so there
+ * is a long tail), where durations have the format of Spring properties (for example 1ms).
+ */
+final class LatencyDistribution {
+
+    private final Kind kind;
+    private final long nanos;
+
+    private LatencyDistribution(Kind kind, long nanos) {
+        this.kind = kind;
+        this.nanos = nanos;
+    }
+
+    static LatencyDistribution parse(String value) {
+        if ("none".equals(value)) {
+            return new LatencyDistribution(Kind.NONE, 0);
+        }
+        String[] parts = value.split(":", 2);
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid latency distribution: " + value);
+        }
+        Kind kind = Kind.valueOf(parts[0].toUpperCase());
+        return new LatencyDistribution(kind, parseDuration(parts[1]).toNanos());
+    }
+
+    /**
+     * Parks the current thread for a latency sampled from the distribution
+     */
+    void pause() {
+        long latency = sampleNanos();
+        if (latency > 0) {
+            LockSupport.parkNanos(latency);
+        }
+    }
+
+    long sampleNanos() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return switch (kind) {
+            case NONE -> 0;
+            case FIXED -> nanos;
+            case EXPONENTIAL -> (long) (-nanos * Math.log(1 - random.nextDouble()));
+            case LOGNORMAL -> (long) (nanos * Math.exp(random.nextGaussian()));
+        };
+    }
+
+    /**
+     * Parses a duration with the format of Spring properties (for example 500us, 5ms or 30s)
+     */
+    static Duration parseDuration(String value) {
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        if (value.endsWith("us")) {
+            return Duration.ofNanos(Long.parseLong(value.substring(0, value.length() - 2)) * 1000);
+        }
+        if (value.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        throw new IllegalArgumentException("Invalid duration: " + value);
+    }
+
+    private enum Kind {
+        NONE, FIXED, EXPONENTIAL, LOGNORMAL
+    }
+}
@@ -0,0 +1,154 @@
+package com.javierdelgado.similarproducts.benchmarks;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop load generator of GET /product/{productId}/similar: every worker sends a request, waits for the answer
+ * and sends the next one, so throughput is bounded by the concurrency. Product ids are sampled from a Zipf
+ * distribution over the catalog (rank k is product k). Latencies are recorded in an HdrHistogram (microseconds, 3
+ * significant digits), only during the measurement, after a warm-up with the same load.
+ * <p>
+ * As in any closed-loop generator, a stall delays the requests that would have been sent meanwhile instead of
+ * recording them as slow (coordinated omission), so high percentiles are lower bounds under saturation.
+ */
+final class LoadGenerator {
+
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(2);
+
+    private final URI baseUri;
+    private final int concurrency;
+    private final ZipfDistribution keys;
+    private final Duration timeout;
+    private final HttpClient client;
+
+    /**
+     * @param baseUrl     url of the service
+     * @param concurrency number of workers
+     * @param keys        distribution of the ranks of the requested products
+     * @param timeout     timeout of every request (timed out requests are errors)
+     */
+    LoadGenerator(String baseUrl, int concurrency, ZipfDistribution keys, Duration timeout) {
+        this.baseUri = URI.create(baseUrl);
+        this.concurrency = concurrency;
+        this.keys = keys;
+        this.timeout = timeout;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+    }
+
+    /**
+     * Runs the warm-up and then the measurement
+     *
+     * @param warmUp   duration of the warm-up
+     * @param duration duration of the measurement
+     * @return the results of the measurement
+     */
+    Report run(Duration warmUp, Duration duration) throws InterruptedException {
+        Recorder recorder = new Recorder(MAX_LATENCY_MICROS, 3);
+        Counts counts = new Counts();
+        // Only the requests sent after the warm-up are recorded
+        long measurementStart = System.nanoTime() + warmUp.toNanos();
+        long end = measurementStart + duration.toNanos();
+        List<Thread> workers = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            Thread worker = new Thread(() -> work(recorder, counts, measurementStart, end), "load-generator-" + i);
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        Histogram histogram = recorder.getIntervalHistogram();
+        return new Report(concurrency, duration, histogram, counts.ok.sum(), counts.notFound.sum(),
+                counts.serverErrors.sum(), counts.failures.sum());
+    }
+
+    private void work(Recorder recorder, Counts counts, long measurementStart, long end) {
+        long now = System.nanoTime();
+        while (now < end) {
+            HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/product/" + keys.sample() + "/similar"))
+                    .timeout(timeout)
+                    .GET()
+                    .build();
+            int status;
+            try {
+                status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            } catch (IOException e) {
+                status = -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long finished = System.nanoTime();
+            if (now >= measurementStart) {
+                recorder.recordValue(Math.min(MAX_LATENCY_MICROS, TimeUnit.NANOSECONDS.toMicros(finished - now)));
+                counts.count(status);
+            }
+            now = finished;
+        }
+    }
+
+    private static final class Counts {
+
+        private final LongAdder ok = new LongAdder();
+        private final LongAdder notFound = new LongAdder();
+        private final LongAdder serverErrors = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+
+        void count(int status) {
+            if (status >= 200 && status < 300) {
+                ok.increment();
+            } else if (status == 404) {
+                notFound.increment();
+            } else if (status >= 500) {
+                serverErrors.increment();
+            } else {
+                failures.increment();
+            }
+        }
+    }
+
+    /**
+     * Results of a measurement
+     *
+     * @param concurrency  number of workers
+     * @param duration     duration of the measurement
+     * @param histogram    latencies in microseconds
+     * @param ok           requests answered with 2xx
+     * @param notFound     requests answered with 404
+     * @param serverErrors requests answered with 5xx
+     * @param failures     requests that failed (timeouts, connection errors...) or got any other status
+     */
+    record Report(int concurrency, Duration duration, Histogram histogram, long ok, long notFound,
+                  long serverErrors, long failures) {
+
+        long requests() {
+            return histogram.getTotalCount();
+        }
+
+        double throughput() {
+            return requests() / (duration.toNanos() / 1e9);
+        }
+
+        /**
+         * Returns a percentile of the latency in milliseconds
+         */
+        double percentileMillis(double percentile) {
+            return histogram.getValueAtPercentile(percentile) / 1000.0;
+        }
+    }
+}
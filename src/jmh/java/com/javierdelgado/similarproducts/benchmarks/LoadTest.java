@@ -0,0 +1,124 @@
+package com.javierdelgado.similarproducts.benchmarks;
+
+import com.javierdelgado.similarproducts.SimilarProductsApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Offline load test of the service: it starts a ProductsServiceSimulator, the application (with its web server and
+ * Feign ProductsServiceProxy pointing to the simulator) and a LoadGenerator, and reports the throughput and the
+ * latency percentiles of GET /product/{productId}/similar. It is run with
+ * <pre>
+ * mvn -P benchmarks -DskipTests verify -Dbenchmarks.main=com.javierdelgado.similarproducts.benchmarks.LoadTest -Djmh.args="--concurrency=64"
+ * </pre>
+ * Options (--name=value): concurrency (32), warm-up (10s), duration (30s), timeout (5s), catalog-size (10000),
+ * zipf-exponent (1.0), similar-products (5), latency (lognormal:5ms, see LatencyDistribution), error-rate (0.01) and
+ * output (target/load-test). Options of the application (starting with --spring., --product-service.,
+ * --similar-products., --management. or --logging.) are passed to it, so configurations can be compared. The report
+ * is printed and written to &lt;output&gt;.txt, and the full latency distribution (HdrHistogram percentiles, in
+ * milliseconds) to &lt;output&gt;.hgrm.
+ */
+public class LoadTest {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final List<String> APPLICATION_PREFIXES = List.of("spring.", "product-service.",
+            "similar-products.", "management.", "logging.");
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = parseOptions(args);
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+        Duration warmUp = LatencyDistribution.parseDuration(options.getOrDefault("warm-up", "10s"));
+        Duration duration = LatencyDistribution.parseDuration(options.getOrDefault("duration", "30s"));
+        Duration timeout = LatencyDistribution.parseDuration(options.getOrDefault("timeout", "5s"));
+        int catalogSize = Integer.parseInt(options.getOrDefault("catalog-size", "10000"));
+        double zipfExponent = Double.parseDouble(options.getOrDefault("zipf-exponent", "1.0"));
+        int similarProducts = Integer.parseInt(options.getOrDefault("similar-products", "5"));
+        String latency = options.getOrDefault("latency", "lognormal:5ms");
+        double errorRate = Double.parseDouble(options.getOrDefault("error-rate", "0.01"));
+        Path output = Path.of(options.getOrDefault("output", "target/load-test"));
+
+        try (ProductsServiceSimulator simulator = new ProductsServiceSimulator(0, catalogSize, similarProducts,
+                LatencyDistribution.parse(latency), errorRate);
+             ConfigurableApplicationContext context = startApplication(simulator.url(), options)) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            LoadGenerator loadGenerator = new LoadGenerator("http://localhost:" + port, concurrency,
+                    new ZipfDistribution(catalogSize, zipfExponent), timeout);
+            LoadGenerator.Report report = loadGenerator.run(warmUp, duration);
+
+            String summary = String.format(Locale.ROOT, "Upstream: catalog-size=%d, similar-products=%d, latency=%s, "
+                            + "error-rate=%s%nLoad: concurrency=%d, zipf-exponent=%s, warm-up=%s, duration=%s%n%s",
+                    catalogSize, similarProducts, latency, errorRate, concurrency, zipfExponent, warmUp, duration,
+                    format(report));
+            System.out.print(summary);
+            Files.createDirectories(output.toAbsolutePath().getParent());
+            Files.writeString(Path.of(output + ".txt"), summary);
+            try (PrintStream hgrm = new PrintStream(Files.newOutputStream(Path.of(output + ".hgrm")))) {
+                report.histogram().outputPercentileDistribution(hgrm, 1000.0);
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext startApplication(String productServiceUrl,
+                                                                   Map<String, String> options) {
+        // Devtools only reads it as a system property: otherwise, it would run main again in a new class loader
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        // Given as arguments, so they take precedence over application.properties
+        List<String> arguments = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--product-service.url=" + productServiceUrl,
+                "--logging.level.root=WARN",
+                "--spring.main.banner-mode=off"));
+        options.forEach((name, value) -> {
+            if (APPLICATION_PREFIXES.stream().anyMatch(name::startsWith)) {
+                arguments.add("--" + name + "=" + value);
+            }
+        });
+        return new SpringApplicationBuilder(SimilarProductsApplication.class).run(arguments.toArray(String[]::new));
+    }
+
+    private static String format(LoadGenerator.Report report) {
+        StringBuilder text = new StringBuilder(String.format(Locale.ROOT,
+                "Requests: %d (%d ok, %d not found, %d server errors, %d failures)%nThroughput: %.1f requests/s%n",
+                report.requests(), report.ok(), report.notFound(), report.serverErrors(), report.failures(),
+                report.throughput()));
+        text.append("Latency (ms):");
+        for (double percentile : PERCENTILES) {
+            text.append(String.format(Locale.ROOT, " p%s=%.3f", percentile == (long) percentile
+                    ? Long.toString((long) percentile) : Double.toString(percentile),
+                    report.percentileMillis(percentile)));
+        }
+        return text.append(String.format(Locale.ROOT, " max=%.3f%n", report.histogram().getMaxValue() / 1000.0))
+                .toString();
+    }
+
+    /**
+     * Parses options with the format --name=value (--name alone is "true")
+     */
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Invalid option: " + arg);
+            }
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                options.put(arg.substring(2), "true");
+            } else {
+                options.put(arg.substring(2, separator), arg.substring(separator + 1));
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,82 @@
+package com.javierdelgado.similarproducts.benchmarks;
+
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import com.javierdelgado.similarproducts.models.ProductDetailValidator;
+import com.javierdelgado.similarproducts.services.ProductsService;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cost of ProductsService.getProductDetail on a cache hit and on a cache miss (single-flight, negative cache,
+ * limiter, hedger and validation of the response) against a stub products service without latency, and the cost
+ * of the validation alone: with Bean Validation and with ProductDetailValidator (the one used by ProductsService).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductsServiceBenchmark {
+
+    private static final String CACHED_PRODUCT_ID = "0";
+
+    private ConfigurableApplicationContext context;
+    private ProductsService productsService;
+    private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+    private final ProductDetail productDetail = StubProductsServiceProxy.productDetail("1");
+    private final AtomicLong nextProductId = new AtomicLong(1);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start(
+                new StubProductsServiceProxy(LatencyDistribution.parse("none"), 5),
+                "spring.cache.caffeine.spec=maximumSize=100000,expireAfterWrite=60s",
+                "similar-products.limiter.enabled=false");
+        productsService = context.getBean(ProductsService.class);
+        productsService.getProductDetail(CACHED_PRODUCT_ID);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ProductDetail getProductDetailHit() {
+        return productsService.getProductDetail(CACHED_PRODUCT_ID);
+    }
+
+    @Benchmark
+    public ProductDetail getProductDetailMiss() {
+        return productsService.getProductDetail(Long.toString(nextProductId.getAndIncrement()));
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<ProductDetail>> validate() {
+        return validator.validate(productDetail);
+    }
+
+    @Benchmark
+    public boolean validateWithProductDetailValidator() {
+        return ProductDetailValidator.isValid(productDetail);
+    }
+}
@@ -0,0 +1,143 @@
+package com.javierdelgado.similarproducts.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Embeddable HTTP simulator of the API of products service (GET /product/{productId}/similarids and
+ * GET /product/{productId}), so ProductsServiceProxy can target it without the docker stack of backendDevTest.
+ * <p>
+ * The catalog has the products 1 ... catalogSize: the similar products of product n are the next similarProducts ones
+ * (wrapping around the catalog), and any other id is answered with 404. Every request waits for a latency sampled
+ * from a LatencyDistribution and fails with 500 with probability errorRate. It can be run on its own (for example,
+ * to point a running service to it) with
+ * <pre>
+ * mvn -P benchmarks -DskipTests verify -Dbenchmarks.main=com.javierdelgado.similarproducts.benchmarks.ProductsServiceSimulator -Djmh.args="--port=3001"
+ * </pre>
+ * and the options --catalog-size, --similar-products, --latency and --error-rate.
+ */
+public class ProductsServiceSimulator implements AutoCloseable {
+
+    private static final String PRODUCT_PATH = "/product/";
+    private static final String SIMILAR_IDS_SUFFIX = "/similarids";
+
+    static {
+        // Headers and body are written separately: without TCP_NODELAY, the delayed ACKs of keep-alive connections
+        // add about 40ms to every response. It is read when the first HttpServer is created.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final int catalogSize;
+    private final int similarProducts;
+    private final LatencyDistribution latency;
+    private final double errorRate;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Starts the simulator
+     *
+     * @param port            port to listen on (0 for any free port)
+     * @param catalogSize     number of products that exist
+     * @param similarProducts number of similar products of every product
+     * @param latency         latency of every request
+     * @param errorRate       ratio of requests answered with 500 (between 0 and 1)
+     * @throws IOException if the server can not be started
+     */
+    ProductsServiceSimulator(int port, int catalogSize, int similarProducts, LatencyDistribution latency,
+                             double errorRate) throws IOException {
+        this.catalogSize = catalogSize;
+        this.similarProducts = Math.min(similarProducts, catalogSize - 1);
+        this.latency = latency;
+        this.errorRate = errorRate;
+        this.executor = Executors.newCachedThreadPool();
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 1000);
+        server.createContext(PRODUCT_PATH, this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = LoadTest.parseOptions(args);
+        ProductsServiceSimulator simulator = new ProductsServiceSimulator(
+                Integer.parseInt(options.getOrDefault("port", "3001")),
+                Integer.parseInt(options.getOrDefault("catalog-size", "10000")),
+                Integer.parseInt(options.getOrDefault("similar-products", "5")),
+                LatencyDistribution.parse(options.getOrDefault("latency", "none")),
+                Double.parseDouble(options.getOrDefault("error-rate", "0")));
+        System.out.printf("Products service simulator listening on %s%n", simulator.url());
+    }
+
+    /**
+     * Returns the url of the simulator, to be used as product-service.url
+     *
+     * @return the url
+     */
+    public String url() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            latency.pause();
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                respond(exchange, 500, "{\"message\":\"Simulated error\"}");
+                return;
+            }
+            String path = exchange.getRequestURI().getPath().substring(PRODUCT_PATH.length());
+            boolean similarIds = path.endsWith(SIMILAR_IDS_SUFFIX);
+            long id = productId(similarIds ? path.substring(0, path.length() - SIMILAR_IDS_SUFFIX.length()) : path);
+            if (id < 1 || id > catalogSize) {
+                respond(exchange, 404, "{\"message\":\"Product not found\"}");
+            } else if (similarIds) {
+                respond(exchange, 200, similarIds(id));
+            } else {
+                respond(exchange, 200, "{\"id\":\"" + id + "\",\"name\":\"Product " + id
+                        + "\",\"price\":19.99,\"availability\":" + (id % 10 != 0) + "}");
+            }
+        }
+    }
+
+    private String similarIds(long id) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 1; i <= similarProducts; i++) {
+            if (i > 1) {
+                json.append(',');
+            }
+            json.append('"').append((id + i - 1) % catalogSize + 1).append('"');
+        }
+        return json.append(']').toString();
+    }
+
+    private static long productId(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+}
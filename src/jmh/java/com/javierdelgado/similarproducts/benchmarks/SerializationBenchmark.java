@@ -0,0 +1,76 @@
+package com.javierdelgado.similarproducts.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.javierdelgado.similarproducts.controllers.serialization.ProductDetailsHttpMessageConverter;
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Cost of serializing the response of the service (List&lt;ProductDetail&gt;) with an ObjectMapper configured as the
+ * one used by Spring MVC, and of writing it from the serialized product details cached by
+ * ProductDetailsHttpMessageConverter (all of them cached, as when the product details are cache hits).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+
+    @Param({"5", "50"})
+    public int size;
+
+    private static final Type PRODUCT_DETAILS = new ParameterizedTypeReference<List<ProductDetail>>() {
+    }.getType();
+
+    private ObjectWriter writer;
+    private ProductDetailsHttpMessageConverter converter;
+    private List<ProductDetail> productDetails;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        writer = objectMapper.writerFor(objectMapper.getTypeFactory()
+                .constructCollectionType(List.class, ProductDetail.class));
+        productDetails = IntStream.range(0, size)
+                .mapToObj(i -> StubProductsServiceProxy.productDetail(Integer.toString(i)))
+                .toList();
+        converter = new ProductDetailsHttpMessageConverter(objectMapper, 10_000, new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public byte[] writeProductDetails() throws JsonProcessingException {
+        return writer.writeValueAsBytes(productDetails);
+    }
+
+    @Benchmark
+    public byte[] writeCachedProductDetails() throws IOException {
+        MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+        converter.write(productDetails, PRODUCT_DETAILS, MediaType.APPLICATION_JSON, outputMessage);
+        return outputMessage.getBodyAsBytes();
+    }
+}
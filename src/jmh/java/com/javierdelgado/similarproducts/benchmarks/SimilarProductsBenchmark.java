@@ -0,0 +1,81 @@
+package com.javierdelgado.similarproducts.benchmarks;
+
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import com.javierdelgado.similarproducts.services.SimilarProductsService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of SimilarProductsService.getSimilarProducts (the whole hot path of the service except the web layer)
+ * against a stub products service with the given latency. With cache=hit the response is always cached; with
+ * cache=miss every call asks for a product (and similar products) that has never been requested.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class SimilarProductsBenchmark {
+
+    private static final String CACHED_PRODUCT_ID = "0";
+
+    @Param({"none", "fixed:1ms", "exponential:1ms", "lognormal:1ms"})
+    public String latency;
+
+    @Param({"hit", "miss"})
+    public String cache;
+
+    @Param({"5"})
+    public int similarProducts;
+
+    private ConfigurableApplicationContext context;
+    private SimilarProductsService similarProductsService;
+    private final AtomicLong nextProductId = new AtomicLong(1);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start(
+                new StubProductsServiceProxy(LatencyDistribution.parse(latency), similarProducts),
+                "spring.cache.caffeine.spec=maximumSize=100000,expireAfterWrite=60s",
+                "similar-products.limiter.enabled=false");
+        similarProductsService = context.getBean(SimilarProductsService.class);
+        similarProductsService.getSimilarProducts(CACHED_PRODUCT_ID);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<ProductDetail> getSimilarProducts() {
+        return similarProductsService.getSimilarProducts(productId());
+    }
+
+    private String productId() {
+        if ("hit".equals(cache)) {
+            return CACHED_PRODUCT_ID;
+        }
+        // Ids are spaced so that the similar products of different calls do not overlap
+        return Long.toString(nextProductId.getAndAdd(similarProducts + 1L) * 1000);
+    }
+}
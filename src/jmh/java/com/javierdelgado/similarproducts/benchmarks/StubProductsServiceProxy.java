@@ -0,0 +1,55 @@
+package com.javierdelgado.similarproducts.benchmarks;
+
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import com.javierdelgado.similarproducts.services.proxies.ProductsServiceProxy;
+import feign.Request;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-process ProductsServiceProxy that answers after a latency sampled from a LatencyDistribution. Product ids are
+ * numbers: the similar products of product n are n+1 ... n+similarProducts, and every product exists.
+ */
+class StubProductsServiceProxy implements ProductsServiceProxy {
+
+    private final LatencyDistribution latency;
+    private final int similarProducts;
+
+    StubProductsServiceProxy(LatencyDistribution latency, int similarProducts) {
+        this.latency = latency;
+        this.similarProducts = similarProducts;
+    }
+
+    @Override
+    public List<String> getSimilarIds(String productId) {
+        latency.pause();
+        long id = Long.parseLong(productId);
+        List<String> similarIds = new ArrayList<>(similarProducts);
+        for (int i = 1; i <= similarProducts; i++) {
+            similarIds.add(Long.toString(id + i));
+        }
+        return similarIds;
+    }
+
+    @Override
+    public List<String> getSimilarIds(String productId, Request.Options options) {
+        return getSimilarIds(productId);
+    }
+
+    @Override
+    public ProductDetail getProductDetail(String productId) {
+        latency.pause();
+        return productDetail(productId);
+    }
+
+    @Override
+    public ProductDetail getProductDetail(String productId, Request.Options options) {
+        return getProductDetail(productId);
+    }
+
+    static ProductDetail productDetail(String productId) {
+        return new ProductDetail(productId, "Product " + productId, BigDecimal.valueOf(1999, 2), Boolean.TRUE);
+    }
+}
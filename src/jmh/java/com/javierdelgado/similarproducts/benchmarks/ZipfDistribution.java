@@ -0,0 +1,36 @@
+package com.javierdelgado.similarproducts.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Zipf distribution of the ranks 1 ... n: the probability of rank k is proportional to 1 / k^exponent, so a few
+ * products get most of the requests (exponent 0 is uniform, around 1 is usual for product catalogs). Samples are
+ * taken by binary search of the precomputed cumulative distribution.
+ */
+final class ZipfDistribution {
+
+    private final double[] cumulative;
+
+    ZipfDistribution(int n, double exponent) {
+        cumulative = new double[n];
+        double sum = 0;
+        for (int k = 1; k <= n; k++) {
+            sum += 1 / Math.pow(k, exponent);
+            cumulative[k - 1] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cumulative[i] /= sum;
+        }
+    }
+
+    /**
+     * Returns a rank sampled from the distribution
+     *
+     * @return a rank between 1 and n
+     */
+    int sample() {
+        int index = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextDouble());
+        return Math.min(index < 0 ? -index - 1 : index, cumulative.length - 1) + 1;
+    }
+}
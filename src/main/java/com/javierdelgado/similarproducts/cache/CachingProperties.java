@@ -0,0 +1,62 @@
+package com.javierdelgado.similarproducts.cache;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Configuration of the caches of the application.
+ *
+ * @param mode              how entries are expired
+ * @param refreshPoolSize   number of threads used to refresh entries in background (refresh-ahead mode only)
+ * @param refreshQueueSize  number of refreshes that can be waiting for a thread. If the queue is full, the refresh is
+ *                          skipped and the stale entry keeps being served (refresh-ahead mode only)
+ * @param caches            configuration of every cache by name (refresh-ahead mode only)
+ */
+@ConfigurationProperties(prefix = "similar-products.cache")
+public record CachingProperties(
+        @DefaultValue("expire") Mode mode,
+        @DefaultValue("4") int refreshPoolSize,
+        @DefaultValue("1000") int refreshQueueSize,
+        Map<String, CacheTtl> caches) {
+
+    public CachingProperties {
+        caches = caches == null ? Map.of() : caches;
+    }
+
+    /**
+     * Returns the configuration of a cache, or the default one if it is not configured
+     *
+     * @param name name of the cache
+     * @return the configuration of the cache
+     */
+    public CacheTtl cache(String name) {
+        return caches.getOrDefault(name, CacheTtl.DEFAULT);
+    }
+
+    public enum Mode {
+        /**
+         * Entries are expired as configured by spring.cache.caffeine.spec
+         */
+        EXPIRE,
+        /**
+         * Entries older than softTtl are still served while they are refreshed in background, until hardTtl
+         */
+        REFRESH_AHEAD
+    }
+
+    /**
+     * @param softTtl     age after which an entry is refreshed in background when it is read
+     * @param hardTtl     age after which an entry is no longer served
+     * @param maximumSize maximum number of entries
+     */
+    public record CacheTtl(
+            @DefaultValue("5s") Duration softTtl,
+            @DefaultValue("60s") Duration hardTtl,
+            @DefaultValue("100000") long maximumSize) {
+
+        static final CacheTtl DEFAULT = new CacheTtl(Duration.ofSeconds(5), Duration.ofSeconds(60), 100_000);
+    }
+}
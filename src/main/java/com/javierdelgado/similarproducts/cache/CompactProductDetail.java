@@ -0,0 +1,142 @@
+package com.javierdelgado.similarproducts.cache;
+
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import jakarta.validation.constraints.NotNull;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Immutable representation of a (validated) ProductDetail stored in the productDetail cache. It takes less heap than
+ * ProductDetail: the price is stored as its unscaled value and scale instead of a BigDecimal (unless the unscaled
+ * value does not fit in a long), the availability as a primitive and the id is the cache key itself when they are
+ * equal. toProductDetail returns an equal ProductDetail (same price scale included). It can be serialized to bytes
+ * (toBytes and fromBytes) to be stored off-heap.
+ */
+public final class CompactProductDetail {
+
+    private static final byte AVAILABLE = 1;
+    private static final byte ID_IS_KEY = 2;
+    private static final byte LARGE_PRICE = 4;
+
+    private final String id;
+    private final String name;
+    private final long unscaledPrice;
+    private final int priceScale;
+    private final BigDecimal largePrice;
+    private final boolean availability;
+
+    private CompactProductDetail(String id, String name, long unscaledPrice, int priceScale, BigDecimal largePrice,
+                                 boolean availability) {
+        this.id = id;
+        this.name = name;
+        this.unscaledPrice = unscaledPrice;
+        this.priceScale = priceScale;
+        this.largePrice = largePrice;
+        this.availability = availability;
+    }
+
+    /**
+     * Returns the compact representation of a product detail (or null if it is null). The price and the availability
+     * can not be null (they are not for validated product details).
+     *
+     * @param key           key of the product detail in the cache. It is used as id if the id is equal to it
+     * @param productDetail product detail or null
+     * @return the compact representation or null
+     */
+    public static CompactProductDetail of(@NotNull String key, ProductDetail productDetail) {
+        if (productDetail == null) {
+            return null;
+        }
+        String id = key.equals(productDetail.getId()) ? key : productDetail.getId();
+        BigDecimal price = Objects.requireNonNull(productDetail.getPrice(), "price");
+        boolean availability = Objects.requireNonNull(productDetail.getAvailability(), "availability");
+        if (price.unscaledValue().bitLength() < Long.SIZE) {
+            return new CompactProductDetail(id, productDetail.getName(), price.unscaledValue().longValue(),
+                    price.scale(), null, availability);
+        }
+        return new CompactProductDetail(id, productDetail.getName(), 0, 0, price, availability);
+    }
+
+    /**
+     * Returns a new ProductDetail equal to the one this was created from
+     */
+    public ProductDetail toProductDetail() {
+        BigDecimal price = largePrice != null ? largePrice : BigDecimal.valueOf(unscaledPrice, priceScale);
+        return new ProductDetail(id, name, price, availability);
+    }
+
+    /**
+     * Serializes this product detail. The id is not written if it is equal to the key.
+     *
+     * @param key key of the product detail in the cache
+     * @return the bytes that fromBytes reads
+     */
+    public byte[] toBytes(@NotNull String key) {
+        boolean idIsKey = key.equals(id);
+        byte[] idBytes = idIsKey ? new byte[0] : id.getBytes(StandardCharsets.UTF_8);
+        byte[] nameBytes = name == null ? null : name.getBytes(StandardCharsets.UTF_8);
+        byte[] largePriceBytes = largePrice == null ? null : largePrice.unscaledValue().toByteArray();
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + idBytes.length + 4 + (nameBytes == null ? 0 : nameBytes.length)
+                + 4 + (largePriceBytes == null ? 8 : 4 + largePriceBytes.length));
+        buffer.put((byte) ((availability ? AVAILABLE : 0) | (idIsKey ? ID_IS_KEY : 0)
+                | (largePrice != null ? LARGE_PRICE : 0)));
+        putBytes(buffer, idBytes);
+        putBytes(buffer, nameBytes);
+        if (largePriceBytes == null) {
+            buffer.putInt(priceScale).putLong(unscaledPrice);
+        } else {
+            buffer.putInt(largePrice.scale());
+            putBytes(buffer, largePriceBytes);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Reads a product detail serialized by toBytes
+     *
+     * @param key   key of the product detail in the cache
+     * @param bytes bytes written by toBytes with the same key
+     * @return the product detail
+     */
+    public static CompactProductDetail fromBytes(@NotNull String key, @NotNull byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        byte flags = buffer.get();
+        byte[] idBytes = getBytes(buffer);
+        String id = (flags & ID_IS_KEY) != 0 ? key : new String(idBytes, StandardCharsets.UTF_8);
+        byte[] nameBytes = getBytes(buffer);
+        String name = nameBytes == null ? null : new String(nameBytes, StandardCharsets.UTF_8);
+        int scale = buffer.getInt();
+        boolean availability = (flags & AVAILABLE) != 0;
+        if ((flags & LARGE_PRICE) != 0) {
+            BigDecimal largePrice = new BigDecimal(new BigInteger(getBytes(buffer)), scale);
+            return new CompactProductDetail(id, name, 0, 0, largePrice, availability);
+        }
+        return new CompactProductDetail(id, name, buffer.getLong(), scale, null, availability);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes == null ? -1 : bytes.length);
+        if (bytes != null) {
+            buffer.put(bytes);
+        }
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "CompactProductDetail{" + toProductDetail() + '}';
+    }
+}
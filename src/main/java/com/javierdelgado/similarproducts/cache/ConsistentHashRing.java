@@ -0,0 +1,58 @@
+package com.javierdelgado.similarproducts.cache;
+
+import jakarta.validation.constraints.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Consistent hashing of keys to nodes. Every node is placed at several points (virtual nodes) of a ring of 64-bit
+ * hashes, and a key is owned by the first node found clockwise from the hash of the key. Keys are spread evenly
+ * across the nodes, and adding or removing a node only moves the keys of that node. Hashes are the first 8 bytes of
+ * the MD5 of the key, so every instance with the same nodes maps a key to the same node.
+ */
+public final class ConsistentHashRing {
+
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+
+    /**
+     * @param nodes        nodes of the ring. There must be at least one
+     * @param virtualNodes number of points of the ring of every node
+     */
+    public ConsistentHashRing(@NotNull Collection<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty() || virtualNodes < 1) {
+            throw new IllegalArgumentException("A ring needs at least one node and one virtual node per node");
+        }
+        for (String node : nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.putIfAbsent(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    /**
+     * Returns the node that owns a key
+     *
+     * @param key key
+     * @return the owner of the key
+     */
+    public String owner(@NotNull String key) {
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+        return entry == null ? ring.firstEntry().getValue() : entry.getValue();
+    }
+
+    private static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+}
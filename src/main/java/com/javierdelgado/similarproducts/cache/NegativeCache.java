@@ -0,0 +1,84 @@
+package com.javierdelgado.similarproducts.cache;
+
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.javierdelgado.similarproducts.services.FailureReason;
+import jakarta.validation.constraints.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cache of failed requests to product-service (not found, timeout, invalid data...), so products that fail are not
+ * requested again on every call. Every entry records the reason of the failure and expires after the TTL configured
+ * for that reason, so for example timeouts can be retried sooner than products that do not exist.
+ * <p>
+ * It is stored in the negativeResults cache of the CacheManager (see NegativeCacheConfiguration).
+ */
+@Component
+public class NegativeCache {
+
+    public static final String NEGATIVE_RESULTS_CACHE = "negativeResults";
+
+    private final Logger logger = LoggerFactory.getLogger(NegativeCache.class);
+    private final NegativeCacheProperties properties;
+    private final Cache cache;
+
+    public NegativeCache(@NotNull NegativeCacheProperties properties, @NotNull CacheManager cacheManager) {
+        this.properties = properties;
+        this.cache = cacheManager.getCache(NEGATIVE_RESULTS_CACHE);
+        logger.info("NegativeCache initialized successfully");
+    }
+
+    /**
+     * Returns the reason why the last request to an endpoint failed, if it is still cached
+     *
+     * @param endpoint  name of the endpoint
+     * @param productId id of the product
+     * @return the reason of the failure or null if there is no failure cached
+     */
+    public FailureReason get(String endpoint, String productId) {
+        if (!properties.enabled()) {
+            return null;
+        }
+        return cache.get(new Key(endpoint, productId), FailureReason.class);
+    }
+
+    /**
+     * Caches a failed request, unless no TTL is configured for its reason
+     *
+     * @param endpoint  name of the endpoint
+     * @param productId id of the product
+     * @param reason    reason of the failure
+     */
+    public void put(String endpoint, String productId, FailureReason reason) {
+        if (properties.enabled() && !properties.ttl(reason).isZero()) {
+            cache.put(new Key(endpoint, productId), reason);
+        }
+    }
+
+    record Key(String endpoint, String productId) {
+    }
+
+    /**
+     * Expires every entry after the TTL configured for its reason
+     */
+    record ReasonExpiry(NegativeCacheProperties properties) implements Expiry<Object, Object> {
+
+        @Override
+        public long expireAfterCreate(Object key, Object value, long currentTime) {
+            return value instanceof FailureReason reason ? properties.ttl(reason).toNanos() : 0;
+        }
+
+        @Override
+        public long expireAfterUpdate(Object key, Object value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Object key, Object value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.javierdelgado.similarproducts.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.boot.autoconfigure.cache.CacheManagerCustomizer;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers the negativeResults cache used by NegativeCache, with its own size and per-reason TTL instead of
+ * spring.cache.caffeine.spec.
+ */
+@Configuration
+public class NegativeCacheConfiguration {
+
+    @Bean
+    public CacheManagerCustomizer<CaffeineCacheManager> negativeCacheManagerCustomizer(
+            NegativeCacheProperties properties) {
+        return cacheManager -> cacheManager.registerCustomCache(NegativeCache.NEGATIVE_RESULTS_CACHE,
+                Caffeine.newBuilder()
+                        .maximumSize(properties.maximumSize())
+                        .expireAfter(new NegativeCache.ReasonExpiry(properties))
+                        .recordStats()
+                        .build());
+    }
+}
@@ -0,0 +1,38 @@
+package com.javierdelgado.similarproducts.cache;
+
+import com.javierdelgado.similarproducts.services.FailureReason;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Configuration of the cache of failed requests to product-service.
+ *
+ * @param enabled     if false, failed requests are not cached
+ * @param maximumSize maximum number of entries
+ * @param ttl         time that a failed request is cached, by reason of the failure. Reasons that are not configured
+ *                    are not cached
+ */
+@ConfigurationProperties(prefix = "similar-products.negative-cache")
+public record NegativeCacheProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("10000") long maximumSize,
+        Map<FailureReason, Duration> ttl) {
+
+    public NegativeCacheProperties {
+        ttl = ttl == null || ttl.isEmpty() ? Map.of() : new EnumMap<>(ttl);
+    }
+
+    /**
+     * Returns the time that a failed request is cached
+     *
+     * @param reason reason of the failure
+     * @return the time that the failed request is cached (zero if it is not cached)
+     */
+    public Duration ttl(FailureReason reason) {
+        return ttl.getOrDefault(reason, Duration.ZERO);
+    }
+}
@@ -0,0 +1,81 @@
+package com.javierdelgado.similarproducts.cache;
+
+import com.javierdelgado.similarproducts.services.ProductsService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.actuate.metrics.cache.CacheMeterBinderProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.Set;
+
+/**
+ * Configuration of the off-heap second tier of the productDetail cache. It is only loaded when
+ * similar-products.off-heap-cache.enabled=true. The CacheManager is decorated by a TieredCacheManager, so
+ * productDetail is a TieredCache for every user of the CacheManager (@Cacheable included). The values of the cache
+ * (CompactProductDetail) are serialized with CompactProductDetail.toBytes.
+ * <p>
+ * Metrics of the off-heap store are registered as similar.products.off.heap.cache.* (tagged with cache). The
+ * first tier keeps its cache metrics.
+ */
+@Configuration
+@ConditionalOnProperty(name = "similar-products.off-heap-cache.enabled", havingValue = "true")
+public class OffHeapCacheConfiguration {
+
+    @Bean(destroyMethod = "close")
+    OffHeapStore productDetailOffHeapStore(OffHeapCacheProperties properties, MeterRegistry meterRegistry)
+            throws IOException {
+        int capacity = Math.toIntExact(properties.capacity().toBytes());
+        long timeToLive = properties.timeToLive().toMillis();
+        OffHeapStore store = properties.file() == null ? new OffHeapStore(capacity, timeToLive)
+                : OffHeapStore.open(properties.file(), capacity, timeToLive);
+        String cache = ProductsService.PRODUCT_DETAIL_CACHE;
+        Gauge.builder("similar.products.off.heap.cache.size", store, OffHeapStore::size)
+                .tag("cache", cache)
+                .description("Number of entries in the off-heap store")
+                .register(meterRegistry);
+        Gauge.builder("similar.products.off.heap.cache.used", store, OffHeapStore::usedBytes)
+                .tag("cache", cache)
+                .baseUnit("bytes")
+                .description("Bytes used by the entries of the off-heap store")
+                .register(meterRegistry);
+        FunctionCounter.builder("similar.products.off.heap.cache.gets", store, OffHeapStore::hits)
+                .tags("cache", cache, "result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("similar.products.off.heap.cache.gets", store, OffHeapStore::misses)
+                .tags("cache", cache, "result", "miss")
+                .register(meterRegistry);
+        FunctionCounter.builder("similar.products.off.heap.cache.evictions", store, OffHeapStore::evictions)
+                .tag("cache", cache)
+                .description("Entries evicted from the off-heap store to make room for new ones")
+                .register(meterRegistry);
+        return store;
+    }
+
+    @Bean
+    static BeanPostProcessor tieredCacheManagerPostProcessor(ObjectProvider<OffHeapStore> offHeapStore) {
+        return new TieredCacheManagerPostProcessor(TieredCacheManagerPostProcessor.OFF_HEAP_ORDER,
+                cacheManager -> new TieredCacheManager(cacheManager, Set.of(ProductsService.PRODUCT_DETAIL_CACHE),
+                        cache -> new TieredCache(cache, offHeapStore.getObject(),
+                                (key, value) -> value instanceof CompactProductDetail productDetail
+                                        ? productDetail.toBytes(key) : null,
+                                CompactProductDetail::fromBytes, Clock.systemUTC())));
+    }
+
+    /**
+     * Binds the cache metrics of the first tier of a TieredCache (the ones that it would have without second tier)
+     */
+    @Bean
+    public CacheMeterBinderProvider<TieredCache> tieredCacheMeterBinderProvider() {
+        return (cache, tags) -> cache.getFirstTier() instanceof CaffeineCache caffeineCache
+                ? new CaffeineCacheMetrics<>(caffeineCache.getNativeCache(), cache.getName(), tags) : null;
+    }
+}
@@ -0,0 +1,25 @@
+package com.javierdelgado.similarproducts.cache;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Configuration of the off-heap second tier of the productDetail cache.
+ *
+ * @param enabled    if false, the productDetail cache has a single tier (in the heap)
+ * @param capacity   size of the off-heap store (at most 2GB). When it is full, the oldest entries are evicted
+ * @param timeToLive time after which entries of the off-heap store are not used
+ * @param file       file where the off-heap store is memory-mapped, so it is kept between restarts. If it is not set,
+ *                   the store is kept in a direct buffer and it is lost on restart
+ */
+@ConfigurationProperties(prefix = "similar-products.off-heap-cache")
+public record OffHeapCacheProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("256MB") DataSize capacity,
+        @DefaultValue("10m") Duration timeToLive,
+        Path file) {
+}
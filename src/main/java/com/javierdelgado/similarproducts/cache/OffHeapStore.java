@@ -0,0 +1,403 @@
+package com.javierdelgado.similarproducts.cache;
+
+import jakarta.validation.constraints.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Byte store kept out of the heap, in a direct buffer or in a memory-mapped file. Entries are appended to the buffer
+ * as a ring: when it is full, the oldest entries are overwritten (size-based FIFO eviction). Only the index (key to
+ * offset) is kept in the heap. Entries older than the time to live are not returned.
+ * <p>
+ * If it is backed by a file, the position of the ring is kept in the header of the file, so a store opened again on
+ * the same file (for example, after a restart) has the entries that were there. Records are checksummed, and the
+ * ones that are not valid (for example, half-written when the process was killed) are dropped when the file is
+ * opened. Removed records stay in the ring until they are evicted, with their checksum complemented, so they are not
+ * indexed again when the file is opened.
+ * <p>
+ * Writes are serialized. Reads do not block: they are optimistic and are retried with a read lock only if an entry
+ * was written at the same time.
+ */
+class OffHeapStore implements Closeable {
+
+    private static final int MAGIC = 0x50445343;
+    private static final int VERSION = 1;
+    private static final int HEAD_POSITION = 16;
+    private static final int TAIL_POSITION = 24;
+    private static final int RECORDS_POSITION = 32;
+    static final int DATA_START = 64;
+    /**
+     * length (int), crc (int), written at (long), key length (short)
+     */
+    private static final int RECORD_HEADER = 18;
+    private static final int WRAP = -1;
+
+    private final Logger logger = LoggerFactory.getLogger(OffHeapStore.class);
+    private final ByteBuffer buffer;
+    private final FileChannel channel;
+    private final int capacity;
+    private final long timeToLiveMillis;
+    private final Map<String, Integer> index = new ConcurrentHashMap<>();
+    private final StampedLock lock = new StampedLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private int head;
+    private int tail;
+    private int records;
+
+    /**
+     * Creates a store in a direct buffer
+     *
+     * @param capacity         size of the buffer in bytes
+     * @param timeToLiveMillis time after which entries are not returned
+     */
+    OffHeapStore(int capacity, long timeToLiveMillis) {
+        this(ByteBuffer.allocateDirect(checkCapacity(capacity)), null, timeToLiveMillis);
+        reset();
+    }
+
+    private OffHeapStore(ByteBuffer buffer, FileChannel channel, long timeToLiveMillis) {
+        this.buffer = buffer;
+        this.channel = channel;
+        this.capacity = buffer.capacity();
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+    /**
+     * Opens a store in a memory-mapped file. If the file has a store of the same capacity, its entries are kept.
+     * Otherwise, the file is (re)created empty.
+     *
+     * @param file             file of the store
+     * @param capacity         size of the file in bytes
+     * @param timeToLiveMillis time after which entries are not returned
+     * @return the store
+     * @throws IOException if the file can not be mapped
+     */
+    static OffHeapStore open(@NotNull Path file, int capacity, long timeToLiveMillis) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            boolean existing = channel.size() == checkCapacity(capacity);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            OffHeapStore store = new OffHeapStore(buffer, channel, timeToLiveMillis);
+            if (existing && store.recover()) {
+                store.logger.info("Off-heap store {} opened with {} entries", file, store.size());
+            } else {
+                store.reset();
+                store.logger.info("Off-heap store {} created with {} bytes", file, capacity);
+            }
+            return store;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static int checkCapacity(int capacity) {
+        if (capacity < DATA_START * 2) {
+            throw new IllegalArgumentException("Capacity of the off-heap store is too small: " + capacity);
+        }
+        return capacity;
+    }
+
+    /**
+     * Returns the value of a key, or null if it is not stored or it is older than the time to live
+     */
+    byte[] get(@NotNull String key, long nowMillis) {
+        byte[] value = null;
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            value = read(key, nowMillis);
+        }
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                value = read(key, nowMillis);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        (value == null ? misses : hits).increment();
+        return value;
+    }
+
+    /**
+     * Reads the value of a key. It may be called while the buffer is written (optimistic read), so nothing that is
+     * read is trusted: offsets and lengths are checked and the key must match.
+     */
+    private byte[] read(String key, long nowMillis) {
+        Integer offset = index.get(key);
+        if (offset == null || offset < DATA_START || offset > capacity - RECORD_HEADER) {
+            return null;
+        }
+        int length = buffer.getInt(offset);
+        int keyLength = buffer.getShort(offset + 16);
+        if (length < RECORD_HEADER || length > capacity - offset || keyLength < 0
+                || keyLength > length - RECORD_HEADER) {
+            return null;
+        }
+        if (buffer.getLong(offset + 8) + timeToLiveMillis < nowMillis) {
+            return null;
+        }
+        byte[] keyBytes = new byte[keyLength];
+        buffer.get(offset + RECORD_HEADER, keyBytes);
+        if (!Arrays.equals(keyBytes, key.getBytes(StandardCharsets.UTF_8))) {
+            return null;
+        }
+        byte[] value = new byte[length - RECORD_HEADER - keyLength];
+        buffer.get(offset + RECORD_HEADER + keyLength, value);
+        return value;
+    }
+
+    /**
+     * Stores the value of a key, evicting the oldest entries if there is no room for it. Values that do not fit in
+     * half of the store are not stored.
+     */
+    void put(@NotNull String key, @NotNull byte[] value, long nowMillis) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long size = (long) RECORD_HEADER + keyBytes.length + value.length;
+        if (keyBytes.length > Short.MAX_VALUE || size > (capacity - DATA_START) / 2) {
+            return;
+        }
+        long stamp = lock.writeLock();
+        try {
+            int offset = reserve((int) size);
+            // If the process dies while the record is written, the file is opened without it
+            writeHeader(offset, records - 1);
+            buffer.putInt(offset, (int) size);
+            buffer.putLong(offset + 8, nowMillis);
+            buffer.putShort(offset + 16, (short) keyBytes.length);
+            buffer.put(offset + RECORD_HEADER, keyBytes);
+            buffer.put(offset + RECORD_HEADER + keyBytes.length, value);
+            buffer.putInt(offset + 4, checksum(offset, (int) size));
+            index.put(key, offset);
+            writeHeader(head, records);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the offset where a record of the given size has to be written, evicting the records that are there
+     */
+    private int reserve(int size) {
+        if (head + size > capacity) {
+            // The end of the buffer is left unused until the next lap
+            evictRange(head, capacity);
+            if (capacity - head >= Integer.BYTES) {
+                buffer.putInt(head, WRAP);
+            }
+            head = DATA_START;
+        }
+        evictRange(head, head + size);
+        int offset = head;
+        if (records == 0) {
+            tail = offset;
+        }
+        head += size;
+        records++;
+        return offset;
+    }
+
+    private void evictRange(int from, int to) {
+        normalizeTail();
+        while (records > 0 && tail >= from && tail < to) {
+            int length = buffer.getInt(tail);
+            int keyLength = buffer.getShort(tail + 16);
+            byte[] keyBytes = new byte[keyLength];
+            buffer.get(tail + RECORD_HEADER, keyBytes);
+            if (index.remove(new String(keyBytes, StandardCharsets.UTF_8), tail)) {
+                evictions.increment();
+            }
+            tail += length;
+            records--;
+            normalizeTail();
+        }
+    }
+
+    /**
+     * Moves the tail to the start of the buffer if the oldest record is at the start of the next lap
+     */
+    private void normalizeTail() {
+        if (records > 0 && (capacity - tail < RECORD_HEADER || buffer.getInt(tail) == WRAP)) {
+            tail = DATA_START;
+        }
+    }
+
+    /**
+     * Removes the entry of a key. Its record is marked as removed (its checksum is complemented), so it is not
+     * recovered if the store is opened again.
+     */
+    void remove(@NotNull String key) {
+        long stamp = lock.writeLock();
+        try {
+            Integer offset = index.remove(key);
+            if (offset != null) {
+                buffer.putInt(offset + 4, ~buffer.getInt(offset + 4));
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void clear() {
+        long stamp = lock.writeLock();
+        try {
+            reset();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void reset() {
+        index.clear();
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putLong(8, capacity);
+        head = DATA_START;
+        tail = DATA_START;
+        records = 0;
+        writeHeader(head, records);
+    }
+
+    private void writeHeader(int head, int records) {
+        buffer.putLong(HEAD_POSITION, head);
+        buffer.putLong(TAIL_POSITION, tail);
+        buffer.putLong(RECORDS_POSITION, records);
+    }
+
+    /**
+     * Rebuilds the index from the records of the buffer, from the oldest one to the newest one. A removed record
+     * removes the entry of its key, if an older record had added it. It stops at the first record that is not valid.
+     *
+     * @return false if the header is not the header of a store of the same capacity
+     */
+    private boolean recover() {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getLong(8) != capacity) {
+            return false;
+        }
+        long savedHead = buffer.getLong(HEAD_POSITION);
+        long savedTail = buffer.getLong(TAIL_POSITION);
+        long savedRecords = buffer.getLong(RECORDS_POSITION);
+        if (savedHead < DATA_START || savedHead > capacity || savedTail < DATA_START || savedTail > capacity
+                || savedRecords < 0) {
+            return false;
+        }
+        head = (int) savedHead;
+        tail = (int) savedTail;
+        records = 0;
+        int position = tail;
+        for (long i = 0; i < savedRecords; i++) {
+            if (capacity - position < RECORD_HEADER || buffer.getInt(position) == WRAP) {
+                position = DATA_START;
+            }
+            int length = buffer.getInt(position);
+            if (length < RECORD_HEADER || length > capacity - position) {
+                logger.warn("Off-heap store has an invalid record at {}, the next ones are dropped", position);
+                break;
+            }
+            int crc = buffer.getInt(position + 4);
+            int checksum = checksum(position, length);
+            if (crc != checksum && crc != ~checksum) {
+                logger.warn("Off-heap store has an invalid record at {}, the next ones are dropped", position);
+                break;
+            }
+            int keyLength = buffer.getShort(position + 16);
+            if (keyLength < 0 || keyLength > length - RECORD_HEADER) {
+                logger.warn("Off-heap store has an invalid record at {}, the next ones are dropped", position);
+                break;
+            }
+            byte[] keyBytes = new byte[keyLength];
+            buffer.get(position + RECORD_HEADER, keyBytes);
+            String key = new String(keyBytes, StandardCharsets.UTF_8);
+            if (crc == checksum) {
+                index.put(key, position);
+            } else {
+                index.remove(key);
+            }
+            position += length;
+            records++;
+        }
+        head = records == 0 ? DATA_START : position;
+        if (records == 0) {
+            tail = DATA_START;
+        }
+        writeHeader(head, records);
+        return true;
+    }
+
+    /**
+     * Checksum of a record, from the written at field to its end
+     */
+    private int checksum(int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset + 8, length - 8));
+        return (int) crc.getValue();
+    }
+
+    int size() {
+        return index.size();
+    }
+
+    long usedBytes() {
+        long stamp = lock.readLock();
+        try {
+            if (records == 0) {
+                return 0;
+            }
+            return head > tail ? head - tail : (capacity - tail) + (head - DATA_START);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Flushes the memory-mapped file, if any
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        long stamp = lock.writeLock();
+        try {
+            writeHeader(head, records);
+            ((MappedByteBuffer) buffer).force();
+            channel.close();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+}
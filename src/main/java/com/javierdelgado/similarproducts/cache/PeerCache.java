@@ -0,0 +1,169 @@
+package com.javierdelgado.similarproducts.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.constraints.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.function.BiFunction;
+
+/**
+ * Cache shared with the other instances of the service (peers). Every key is owned by one instance, chosen by
+ * consistent hashing. When a value is loaded (get with a value loader, as @Cacheable(sync = true) does) and it is not
+ * in the local cache, it is requested to the local cache of the owner before loading it, so the instances do not
+ * load the same values from products service. Values are only requested to the owner: a peer never loads a value for
+ * another one. The lookups without loader (get) only use the local cache, so they never block on a peer.
+ * <p>
+ * Values are sent between peers serialized by the given functions. Null values (products that can not be found) are
+ * shared too. Failed requests to a peer are counted and the value is loaded as usual.
+ */
+public class PeerCache implements Cache {
+
+    private final Logger logger = LoggerFactory.getLogger(PeerCache.class);
+    private final Cache localCache;
+    private final ConsistentHashRing ring;
+    private final String self;
+    private final PeerCacheClient client;
+    private final BiFunction<String, Object, byte[]> serializer;
+    private final BiFunction<String, byte[], Object> deserializer;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter errors;
+    private final Counter unavailable;
+
+    PeerCache(@NotNull Cache localCache, @NotNull ConsistentHashRing ring, @NotNull String self,
+              @NotNull PeerCacheClient client, @NotNull BiFunction<String, Object, byte[]> serializer,
+              @NotNull BiFunction<String, byte[], Object> deserializer, @NotNull MeterRegistry meterRegistry) {
+        this.localCache = localCache;
+        this.ring = ring;
+        this.self = self;
+        this.client = client;
+        this.serializer = serializer;
+        this.deserializer = deserializer;
+        this.hits = counter(meterRegistry, "hit");
+        this.misses = counter(meterRegistry, "miss");
+        this.errors = counter(meterRegistry, "error");
+        this.unavailable = counter(meterRegistry, "unavailable");
+    }
+
+    private Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("similar.products.peer.cache.gets")
+                .tags("cache", localCache.getName(), "result", result)
+                .description("Lookups of entries in the cache of the owner peer")
+                .register(meterRegistry);
+    }
+
+    public Cache getLocalCache() {
+        return localCache;
+    }
+
+    /**
+     * Returns the serialized value of an entry of the local cache, as it is sent to the peers
+     *
+     * @param key key of the entry
+     * @return the serialized value or null if the entry is not in the local cache
+     */
+    public byte[] getLocalValue(@NotNull String key) {
+        ValueWrapper value = localCache.get(key);
+        return value == null ? null : serializer.apply(key, value.get());
+    }
+
+    /**
+     * Returns whether this instance is the owner of a key
+     */
+    public boolean isOwner(@NotNull String key) {
+        return self.equals(ring.owner(key));
+    }
+
+    @Override
+    public String getName() {
+        return localCache.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return localCache.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        return localCache.get(key);
+    }
+
+    @Override
+    public <T> T get(Object key, Class<T> type) {
+        return localCache.get(key, type);
+    }
+
+    /**
+     * The value is requested to the owner within the load of the local cache, so it is done only once for concurrent
+     * calls with the same key
+     */
+    @Override
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        return localCache.get(key, () -> {
+            ValueWrapper value = getFromOwner(key);
+            if (value != null) {
+                @SuppressWarnings("unchecked")
+                T ownerValue = (T) value.get();
+                return ownerValue;
+            }
+            return valueLoader.call();
+        });
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        localCache.put(key, value);
+    }
+
+    @Override
+    public void evict(Object key) {
+        localCache.evict(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        return localCache.evictIfPresent(key);
+    }
+
+    @Override
+    public void clear() {
+        localCache.clear();
+    }
+
+    @Override
+    public boolean invalidate() {
+        return localCache.invalidate();
+    }
+
+    private ValueWrapper getFromOwner(Object key) {
+        if (!(key instanceof String stringKey) || isOwner(stringKey)) {
+            return null;
+        }
+        String owner = ring.owner(stringKey);
+        if (!client.isAvailable(owner)) {
+            unavailable.increment();
+            return null;
+        }
+        try {
+            byte[] bytes = client.get(owner, getName(), stringKey);
+            if (bytes == null) {
+                misses.increment();
+                return null;
+            }
+            Object value = deserializer.apply(stringKey, bytes);
+            hits.increment();
+            return new SimpleValueWrapper(value);
+        } catch (IOException | RuntimeException e) {
+            errors.increment();
+            logger.debug("Entry with key={} of cache {} could not be fetched from {}", key, getName(), owner, e);
+            return null;
+        }
+    }
+}
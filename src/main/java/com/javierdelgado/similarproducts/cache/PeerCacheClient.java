@@ -0,0 +1,74 @@
+package com.javierdelgado.similarproducts.cache;
+
+import jakarta.validation.constraints.NotNull;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Client of the internal endpoint of the peers that returns the entries of their local caches
+ * (GET {peer}/internal/cache/{cache}/{key}). A peer that fails a request (error, timeout or unexpected status) is not
+ * requested again until retryAfter has passed, so a peer that is down does not add its timeout to every lookup.
+ */
+public class PeerCacheClient {
+
+    public static final String PATH = "/internal/cache/{cache}/{key}";
+
+    private final HttpClient httpClient;
+    private final Duration timeout;
+    private final Duration retryAfter;
+    private final Clock clock;
+    private final Map<String, Long> unavailableUntil = new ConcurrentHashMap<>();
+
+    public PeerCacheClient(@NotNull Duration timeout, @NotNull Duration retryAfter, @NotNull Clock clock) {
+        this.httpClient = HttpClient.newBuilder().connectTimeout(timeout).build();
+        this.timeout = timeout;
+        this.retryAfter = retryAfter;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns whether a peer can be requested: it has not failed a request during the last retryAfter
+     */
+    public boolean isAvailable(@NotNull String peer) {
+        Long until = unavailableUntil.get(peer);
+        return until == null || clock.millis() >= until;
+    }
+
+    /**
+     * Returns the serialized entry of the local cache of a peer
+     *
+     * @param peer  base URL of the peer
+     * @param cache name of the cache
+     * @param key   key of the entry
+     * @return the serialized entry or null if the peer does not have it
+     * @throws IOException if the request fails, times out or the peer answers with an unexpected status
+     */
+    public byte[] get(@NotNull String peer, @NotNull String cache, @NotNull String key) throws IOException {
+        URI uri = UriComponentsBuilder.fromUriString(peer).path(PATH).buildAndExpand(cache, key).encode().toUri();
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(timeout).GET().build();
+        try {
+            HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() != 200 && response.statusCode() != 404) {
+                throw new IOException("Unexpected status " + response.statusCode() + " from " + uri);
+            }
+            unavailableUntil.remove(peer);
+            return response.statusCode() == 404 ? null : response.body();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted request to " + uri);
+        } catch (IOException e) {
+            unavailableUntil.put(peer, clock.millis() + retryAfter.toMillis());
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.javierdelgado.similarproducts.cache;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import com.javierdelgado.similarproducts.services.ProductsService;
+import com.javierdelgado.similarproducts.services.SimilarProductsService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.actuate.metrics.cache.CacheMeterBinderProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+/**
+ * Configuration of the cache tier shared with the other instances of the service. It is only loaded when
+ * similar-products.peer-cache.enabled=true. The CacheManager is decorated by a TieredCacheManager, so the caches in
+ * similar-products.peer-cache.caches are a PeerCache for every user of the CacheManager (@Cacheable included). It is
+ * applied after the off-heap tier, so values are looked up in the heap, then off-heap and then in the owner peer.
+ * <p>
+ * Values are sent between peers as JSON (product details as ProductDetail). Lookups in the owner peer are counted by
+ * similar.products.peer.cache.gets (tagged with cache and result). The local cache keeps its cache metrics.
+ */
+@Configuration
+@ConditionalOnProperty(name = "similar-products.peer-cache.enabled", havingValue = "true")
+public class PeerCacheConfiguration {
+
+    @Bean
+    ConsistentHashRing peerCacheRing(PeerCacheProperties properties) {
+        Set<String> peers = new LinkedHashSet<>();
+        properties.peers().forEach(peer -> peers.add(node(peer)));
+        peers.add(self(properties));
+        return new ConsistentHashRing(peers, properties.virtualNodes());
+    }
+
+    @Bean
+    PeerCacheClient peerCacheClient(PeerCacheProperties properties) {
+        return new PeerCacheClient(properties.timeout(), properties.retryAfter(), Clock.systemUTC());
+    }
+
+    @Bean
+    static BeanPostProcessor peerCacheManagerPostProcessor(ObjectProvider<PeerCacheProperties> properties,
+                                                           ObjectProvider<ConsistentHashRing> ring,
+                                                           ObjectProvider<PeerCacheClient> client,
+                                                           ObjectProvider<ObjectMapper> objectMapper,
+                                                           ObjectProvider<MeterRegistry> meterRegistry) {
+        return new TieredCacheManagerPostProcessor(TieredCacheManagerPostProcessor.PEER_ORDER,
+                cacheManager -> new TieredCacheManager(cacheManager, Set.copyOf(properties.getObject().caches()),
+                        cache -> peerCache(cache, properties.getObject(), ring.getObject(), client.getObject(),
+                                objectMapper.getObject(), meterRegistry.getObject())));
+    }
+
+    /**
+     * Binds the cache metrics of the local cache of a PeerCache (the ones that it would have without peers)
+     */
+    @Bean
+    public CacheMeterBinderProvider<PeerCache> peerCacheMeterBinderProvider() {
+        return (cache, tags) -> {
+            Cache localCache = cache.getLocalCache() instanceof TieredCache tieredCache
+                    ? tieredCache.getFirstTier() : cache.getLocalCache();
+            return localCache instanceof CaffeineCache caffeineCache
+                    ? new CaffeineCacheMetrics<>(caffeineCache.getNativeCache(), cache.getName(), tags) : null;
+        };
+    }
+
+    private static PeerCache peerCache(Cache cache, PeerCacheProperties properties, ConsistentHashRing ring,
+                                       PeerCacheClient client, ObjectMapper objectMapper,
+                                       MeterRegistry meterRegistry) {
+        BiFunction<String, Object, byte[]> serializer;
+        BiFunction<String, byte[], Object> deserializer;
+        if (ProductsService.PRODUCT_DETAIL_CACHE.equals(cache.getName())) {
+            serializer = (key, value) -> write(objectMapper,
+                    value == null ? null : ((CompactProductDetail) value).toProductDetail());
+            deserializer = (key, bytes) -> CompactProductDetail.of(key,
+                    read(objectMapper, bytes, objectMapper.constructType(ProductDetail.class)));
+        } else {
+            JavaType type = switch (cache.getName()) {
+                case ProductsService.SIMILAR_IDS_CACHE ->
+                        objectMapper.getTypeFactory().constructCollectionType(List.class, String.class);
+                case SimilarProductsService.SIMILAR_PRODUCT_DETAIL_CACHE ->
+                        objectMapper.getTypeFactory().constructCollectionType(List.class, ProductDetail.class);
+                default -> throw new IllegalStateException("Cache " + cache.getName() + " can not be shared");
+            };
+            serializer = (key, value) -> write(objectMapper, value);
+            deserializer = (key, bytes) -> read(objectMapper, bytes, type);
+        }
+        return new PeerCache(cache, ring, self(properties), client, serializer, deserializer, meterRegistry);
+    }
+
+    private static String self(PeerCacheProperties properties) {
+        if (properties.self() == null) {
+            throw new IllegalStateException("similar-products.peer-cache.self is required");
+        }
+        return node(properties.self());
+    }
+
+    /**
+     * Returns the name of a peer in the ring: its base URL without trailing slash
+     */
+    private static String node(URI peer) {
+        String node = peer.toString();
+        return node.endsWith("/") ? node.substring(0, node.length() - 1) : node;
+    }
+
+    private static byte[] write(ObjectMapper objectMapper, Object value) {
+        try {
+            return value == null ? "null".getBytes(StandardCharsets.UTF_8) : objectMapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static <T> T read(ObjectMapper objectMapper, byte[] bytes, JavaType type) {
+        try {
+            return objectMapper.readValue(bytes, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
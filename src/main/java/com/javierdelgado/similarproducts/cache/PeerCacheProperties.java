@@ -0,0 +1,30 @@
+package com.javierdelgado.similarproducts.cache;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Configuration of the cache tier shared with the other instances of the service (peers).
+ *
+ * @param enabled      if false, every instance only uses its own caches
+ * @param self         base URL of this instance, as it is listed in peers
+ * @param peers        base URLs of all the instances (this one included). Every instance must have the same list
+ * @param caches       names of the caches shared with the peers (productDetail, similarIds or similarProductDetail)
+ * @param virtualNodes number of points of every instance in the consistent hashing ring
+ * @param timeout      timeout of the requests to a peer
+ * @param retryAfter   time during which a peer is not requested after a failed request
+ */
+@ConfigurationProperties(prefix = "similar-products.peer-cache")
+public record PeerCacheProperties(
+        @DefaultValue("false") boolean enabled,
+        URI self,
+        @DefaultValue List<URI> peers,
+        @DefaultValue({"productDetail", "similarProductDetail"}) List<String> caches,
+        @DefaultValue("128") int virtualNodes,
+        @DefaultValue("100ms") Duration timeout,
+        @DefaultValue("5s") Duration retryAfter) {
+}
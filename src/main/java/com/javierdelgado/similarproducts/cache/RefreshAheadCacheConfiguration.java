@@ -0,0 +1,70 @@
+package com.javierdelgado.similarproducts.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.javierdelgado.similarproducts.services.ProductsService;
+import com.javierdelgado.similarproducts.services.SimilarProductsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.cache.CacheManagerCustomizer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Configuration of the refresh-ahead (stale-while-revalidate) mode of the caches. It is only loaded when
+ * similar-products.cache.mode=refresh-ahead. In that mode, the caches productDetail, similarIds and
+ * similarProductDetail are created with their own soft and hard TTL instead of spring.cache.caffeine.spec.
+ */
+@Configuration
+@ConditionalOnProperty(name = "similar-products.cache.mode", havingValue = "refresh-ahead")
+public class RefreshAheadCacheConfiguration implements DisposableBean {
+
+    private final Logger logger = LoggerFactory.getLogger(RefreshAheadCacheConfiguration.class);
+    private final ThreadPoolExecutor refreshExecutor;
+
+    public RefreshAheadCacheConfiguration(CachingProperties properties) {
+        // Not exposed as a bean, so it is not picked as the default task executor of the application
+        this.refreshExecutor = new ThreadPoolExecutor(properties.refreshPoolSize(), properties.refreshPoolSize(), 0,
+                TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(properties.refreshQueueSize()),
+                new CustomizableThreadFactory("cache-refresh-"), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Bean
+    public CacheManagerCustomizer<CaffeineCacheManager> refreshAheadCacheManagerCustomizer(
+            CachingProperties properties, ObjectProvider<ProductsService> productsService,
+            ObjectProvider<SimilarProductsService> similarProductsService) {
+        Map<String, Function<Object, Object>> loaders = Map.of(
+                ProductsService.PRODUCT_DETAIL_CACHE,
+                key -> CompactProductDetail.of((String) key,
+                        productsService.getObject().loadProductDetail((String) key)),
+                ProductsService.SIMILAR_IDS_CACHE,
+                key -> productsService.getObject().loadSimilarIds((String) key),
+                SimilarProductsService.SIMILAR_PRODUCT_DETAIL_CACHE,
+                key -> similarProductsService.getObject().loadSimilarProducts((String) key));
+        return cacheManager -> loaders.forEach((name, loader) -> {
+            CachingProperties.CacheTtl ttl = properties.cache(name);
+            cacheManager.registerCustomCache(name, Caffeine.newBuilder()
+                    .refreshAfterWrite(ttl.softTtl())
+                    .expireAfterWrite(ttl.hardTtl())
+                    .maximumSize(ttl.maximumSize())
+                    .recordStats()
+                    .build(new RefreshAheadCacheLoader(loader, refreshExecutor)));
+            logger.info("Cache {} configured in refresh-ahead mode with {}", name, ttl);
+        });
+    }
+
+    @Override
+    public void destroy() {
+        refreshExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,65 @@
+package com.javierdelgado.similarproducts.cache;
+
+import com.javierdelgado.similarproducts.limiter.LimitExceededException;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+/**
+ * CacheLoader that is only used to refresh entries in background (stale-while-revalidate). Misses are not loaded by
+ * it (load returns null), they are loaded by the caller as usual (for example by @Cacheable).
+ * <p>
+ * While an entry is refreshed, the stale value keeps being served. If the refresh can not be done (the value can
+ * not be loaded, product-service is saturated or the refresh executor is full), the refresh fails, so the stale value
+ * is kept (its write time included) until it expires or until the next refresh succeeds. Failures are cancellations,
+ * which Caffeine discards without logging them.
+ */
+public class RefreshAheadCacheLoader implements CacheLoader<Object, Object> {
+
+    private final Function<Object, Object> loader;
+    private final Executor refreshExecutor;
+
+    /**
+     * @param loader          function that loads the current value of a key. It returns null if the value can not
+     *                        be loaded
+     * @param refreshExecutor executor where refreshes are run
+     */
+    public RefreshAheadCacheLoader(Function<Object, Object> loader, Executor refreshExecutor) {
+        this.loader = loader;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    @Override
+    public Object load(Object key) {
+        return null;
+    }
+
+    @Override
+    public CompletableFuture<Object> asyncReload(Object key, Object oldValue, Executor executor) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    Object value = loader.apply(key);
+                    // Returning oldValue would be a write, so an entry that is read often would never expire
+                    if (value == null) {
+                        future.completeExceptionally(new CancellationException("Value can not be loaded"));
+                    } else {
+                        future.complete(value);
+                    }
+                } catch (LimitExceededException e) {
+                    future.completeExceptionally(new CancellationException("Product-service is saturated"));
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new CancellationException("Refresh executor is full"));
+        }
+        return future;
+    }
+}
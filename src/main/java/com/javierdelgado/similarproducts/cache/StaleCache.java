@@ -0,0 +1,74 @@
+package com.javierdelgado.similarproducts.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.constraints.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cache of the last valid results of product-service (similar ids and compact product details), kept for much longer
+ * than the regular caches. They are only served as a fallback while the circuit breaker of product-service is open,
+ * so the service keeps answering with stale data instead of nothing.
+ * <p>
+ * It is stored in the staleResults cache of the CacheManager (see StaleCacheConfiguration). Fallbacks are counted in
+ * similar.products.stale.cache.fallbacks, tagged with endpoint and result (hit or miss).
+ */
+@Component
+public class StaleCache {
+
+    public static final String STALE_RESULTS_CACHE = "staleResults";
+
+    private final Logger logger = LoggerFactory.getLogger(StaleCache.class);
+    private final StaleCacheProperties properties;
+    private final Cache cache;
+    private final MeterRegistry meterRegistry;
+
+    public StaleCache(@NotNull StaleCacheProperties properties, @NotNull CacheManager cacheManager,
+                      @NotNull MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.cache = cacheManager.getCache(STALE_RESULTS_CACHE);
+        this.meterRegistry = meterRegistry;
+        logger.info("StaleCache initialized successfully");
+    }
+
+    /**
+     * Returns the last valid result of a request to an endpoint, if it is still kept
+     *
+     * @param endpoint  name of the endpoint
+     * @param productId id of the product
+     * @return the last valid result or null
+     */
+    public Object get(String endpoint, String productId) {
+        if (!properties.enabled()) {
+            return null;
+        }
+        Cache.ValueWrapper value = cache.get(new Key(endpoint, productId));
+        Counter.builder("similar.products.stale.cache.fallbacks")
+                .tag("endpoint", endpoint)
+                .tag("result", value == null ? "miss" : "hit")
+                .description("Stale results looked up while the circuit breaker of product-service is open")
+                .register(meterRegistry)
+                .increment();
+        return value == null ? null : value.get();
+    }
+
+    /**
+     * Keeps the last valid result of a request to an endpoint
+     *
+     * @param endpoint  name of the endpoint
+     * @param productId id of the product
+     * @param value     valid result (null values are not kept)
+     */
+    public void put(String endpoint, String productId, Object value) {
+        if (properties.enabled() && value != null) {
+            cache.put(new Key(endpoint, productId), value);
+        }
+    }
+
+    record Key(String endpoint, String productId) {
+    }
+}
@@ -0,0 +1,25 @@
+package com.javierdelgado.similarproducts.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.boot.autoconfigure.cache.CacheManagerCustomizer;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers the staleResults cache used by StaleCache, with its own size and TTL instead of
+ * spring.cache.caffeine.spec.
+ */
+@Configuration
+public class StaleCacheConfiguration {
+
+    @Bean
+    public CacheManagerCustomizer<CaffeineCacheManager> staleCacheManagerCustomizer(StaleCacheProperties properties) {
+        return cacheManager -> cacheManager.registerCustomCache(StaleCache.STALE_RESULTS_CACHE,
+                Caffeine.newBuilder()
+                        .maximumSize(properties.maximumSize())
+                        .expireAfterWrite(properties.ttl())
+                        .recordStats()
+                        .build());
+    }
+}
@@ -0,0 +1,20 @@
+package com.javierdelgado.similarproducts.cache;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the cache of the last valid results of product-service, served while its circuit breaker is open.
+ *
+ * @param enabled     if false, nothing is served while the circuit breaker is open
+ * @param maximumSize maximum number of entries
+ * @param ttl         time that a result is kept after it is fetched
+ */
+@ConfigurationProperties(prefix = "similar-products.stale-cache")
+public record StaleCacheProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("100000") long maximumSize,
+        @DefaultValue("1h") Duration ttl) {
+}
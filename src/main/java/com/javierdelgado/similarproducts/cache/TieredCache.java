@@ -0,0 +1,147 @@
+package com.javierdelgado.similarproducts.cache;
+
+import jakarta.validation.constraints.NotNull;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.time.Clock;
+import java.util.concurrent.Callable;
+import java.util.function.BiFunction;
+
+/**
+ * Cache with two tiers: a first tier (the cache created by the CacheManager, in the heap) and an OffHeapStore
+ * behind it. Values are looked up in the first tier, then in the off-heap store (and copied to the first tier if
+ * found there), and then loaded. Values stored in the first tier are stored in the off-heap store too, serialized by
+ * the given functions. Null values and values that can not be serialized (serializer returns null) are only kept in
+ * the first tier, and so are entries whose key is not a String.
+ */
+public class TieredCache implements Cache {
+
+    private final Cache firstTier;
+    private final OffHeapStore offHeapStore;
+    private final BiFunction<String, Object, byte[]> serializer;
+    private final BiFunction<String, byte[], Object> deserializer;
+    private final Clock clock;
+
+    TieredCache(@NotNull Cache firstTier, @NotNull OffHeapStore offHeapStore,
+                @NotNull BiFunction<String, Object, byte[]> serializer,
+                @NotNull BiFunction<String, byte[], Object> deserializer, @NotNull Clock clock) {
+        this.firstTier = firstTier;
+        this.offHeapStore = offHeapStore;
+        this.serializer = serializer;
+        this.deserializer = deserializer;
+        this.clock = clock;
+    }
+
+    public Cache getFirstTier() {
+        return firstTier;
+    }
+
+    @Override
+    public String getName() {
+        return firstTier.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return firstTier.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        ValueWrapper value = firstTier.get(key);
+        if (value != null) {
+            return value;
+        }
+        Object offHeapValue = getOffHeap(key);
+        if (offHeapValue == null) {
+            return null;
+        }
+        firstTier.put(key, offHeapValue);
+        return new SimpleValueWrapper(offHeapValue);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper value = get(key);
+        Object result = value == null ? null : value.get();
+        if (result != null && type != null && !type.isInstance(result)) {
+            throw new IllegalStateException(
+                    "Cached value is not of required type [" + type.getName() + "]: " + result);
+        }
+        return (T) result;
+    }
+
+    /**
+     * The value is looked up in the off-heap store and loaded (and stored off-heap) within the load of the first
+     * tier, so it is done only once for concurrent calls with the same key
+     */
+    @Override
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        return firstTier.get(key, () -> {
+            @SuppressWarnings("unchecked")
+            T offHeapValue = (T) getOffHeap(key);
+            if (offHeapValue != null) {
+                return offHeapValue;
+            }
+            T value = valueLoader.call();
+            putOffHeap(key, value);
+            return value;
+        });
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        firstTier.put(key, value);
+        putOffHeap(key, value);
+    }
+
+    @Override
+    public void evict(Object key) {
+        firstTier.evict(key);
+        if (key instanceof String stringKey) {
+            offHeapStore.remove(stringKey);
+        }
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean present = firstTier.evictIfPresent(key);
+        if (key instanceof String stringKey) {
+            offHeapStore.remove(stringKey);
+        }
+        return present;
+    }
+
+    @Override
+    public void clear() {
+        firstTier.clear();
+        offHeapStore.clear();
+    }
+
+    @Override
+    public boolean invalidate() {
+        boolean invalidated = firstTier.invalidate();
+        offHeapStore.clear();
+        return invalidated;
+    }
+
+    private Object getOffHeap(Object key) {
+        if (!(key instanceof String stringKey)) {
+            return null;
+        }
+        byte[] bytes = offHeapStore.get(stringKey, clock.millis());
+        return bytes == null ? null : deserializer.apply(stringKey, bytes);
+    }
+
+    private void putOffHeap(Object key, Object value) {
+        if (!(key instanceof String stringKey) || value == null) {
+            return;
+        }
+        byte[] bytes = serializer.apply(stringKey, value);
+        if (bytes != null) {
+            offHeapStore.put(stringKey, bytes, clock.millis());
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.javierdelgado.similarproducts.cache;
+
+import jakarta.validation.constraints.NotNull;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * CacheManager that decorates another one: the caches that have a second tier are returned as TieredCache (with the
+ * cache of the decorated CacheManager as first tier). Any other cache is returned as is.
+ */
+public class TieredCacheManager implements CacheManager {
+
+    private final CacheManager cacheManager;
+    private final Function<Cache, Cache> tiered;
+    private final Collection<String> tieredCacheNames;
+    private final Map<String, Cache> caches = new ConcurrentHashMap<>();
+
+    /**
+     * @param cacheManager     decorated CacheManager
+     * @param tieredCacheNames names of the caches that have a second tier
+     * @param tiered           function that adds the second tier to one of those caches
+     */
+    public TieredCacheManager(@NotNull CacheManager cacheManager, @NotNull Collection<String> tieredCacheNames,
+                              @NotNull Function<Cache, Cache> tiered) {
+        this.cacheManager = cacheManager;
+        this.tieredCacheNames = tieredCacheNames;
+        this.tiered = tiered;
+    }
+
+    @Override
+    public Cache getCache(@NotNull String name) {
+        if (!tieredCacheNames.contains(name)) {
+            return cacheManager.getCache(name);
+        }
+        Cache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache firstTier = cacheManager.getCache(name);
+        return firstTier == null ? null : caches.computeIfAbsent(name, key -> tiered.apply(firstTier));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return cacheManager.getCacheNames();
+    }
+}
@@ -0,0 +1,36 @@
+package com.javierdelgado.similarproducts.cache;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.cache.CacheManager;
+import org.springframework.core.Ordered;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Decorates every CacheManager bean (for example, with a TieredCacheManager). Decorators with a lower order are
+ * applied first, so they are wrapped by the ones with a higher order: the off-heap tier is applied before the peer
+ * tier, and a value is looked up in the heap, then off-heap and then in the peers.
+ */
+class TieredCacheManagerPostProcessor implements BeanPostProcessor, Ordered {
+
+    static final int OFF_HEAP_ORDER = Ordered.LOWEST_PRECEDENCE - 1;
+    static final int PEER_ORDER = Ordered.LOWEST_PRECEDENCE;
+
+    private final int order;
+    private final UnaryOperator<CacheManager> decorator;
+
+    TieredCacheManagerPostProcessor(int order, UnaryOperator<CacheManager> decorator) {
+        this.order = order;
+        this.decorator = decorator;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        return bean instanceof CacheManager cacheManager ? decorator.apply(cacheManager) : bean;
+    }
+
+    @Override
+    public int getOrder() {
+        return order;
+    }
+}
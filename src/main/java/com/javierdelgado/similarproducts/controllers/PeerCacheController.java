@@ -0,0 +1,44 @@
+package com.javierdelgado.similarproducts.controllers;
+
+import com.javierdelgado.similarproducts.cache.PeerCache;
+import com.javierdelgado.similarproducts.cache.PeerCacheClient;
+import jakarta.validation.constraints.NotNull;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Internal endpoint that returns the entries of the local caches shared with the peers (see PeerCache). It only reads
+ * the local cache: it never loads a value nor requests it to other peers. It is only loaded when
+ * similar-products.peer-cache.enabled=true, and it must not be exposed outside the network of the instances.
+ */
+@RestController
+@ConditionalOnProperty(name = "similar-products.peer-cache.enabled", havingValue = "true")
+public class PeerCacheController {
+
+    private final CacheManager cacheManager;
+
+    public PeerCacheController(@NotNull CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    /**
+     * Returns the serialized value of an entry of a local cache
+     *
+     * @param cacheName name of the cache
+     * @param key       key of the entry
+     * @return 200 response with the value as JSON, or 404 if the cache is not shared or it does not have the entry
+     */
+    @GetMapping(value = PeerCacheClient.PATH, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getLocalValue(@PathVariable("cache") String cacheName,
+                                                @PathVariable("key") String key) {
+        Cache cache = cacheManager.getCache(cacheName);
+        byte[] value = cache instanceof PeerCache peerCache ? peerCache.getLocalValue(key) : null;
+        return value == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(value);
+    }
+}
@@ -0,0 +1,93 @@
+package com.javierdelgado.similarproducts.controllers;
+
+import com.javierdelgado.similarproducts.limiter.ConcurrencyLimited;
+import com.javierdelgado.similarproducts.limiter.LimitExceededException;
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import com.javierdelgado.similarproducts.services.reactive.ReactiveSimilarProductsService;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.constraints.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * WebFlux version of SimilarProductsController. It only exists in a reactive web application (profile reactive), and
+ * then SimilarProductsController does not. It has the same get-product-similar operation, with the same caching
+ * headers and concurrency limit; the deadline header (X-Request-Timeout) and the batch operation are only
+ * available in the servlet application.
+ *
+ * @see
+ * <a href="https://github.com/dalogax/backendDevTest/blob/main/similarProducts.yaml">Yaml with openapi specifications</a>
+ */
+@RestController
+@Validated
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveSimilarProductsController {
+
+    private final Logger logger;
+    private final ReactiveSimilarProductsService similarProductsService;
+    private final ResponseCacheHeaders responseCacheHeaders;
+
+    public ReactiveSimilarProductsController(@NotNull ReactiveSimilarProductsService similarProductsService,
+                                             @NotNull ResponseCacheHeaders responseCacheHeaders) {
+        this.logger = LoggerFactory.getLogger(ReactiveSimilarProductsController.class);
+        this.similarProductsService = similarProductsService;
+        this.responseCacheHeaders = responseCacheHeaders;
+        logger.info("ReactiveSimilarProductsController initialized successfully");
+    }
+
+    /**
+     * Returns the details of the similar products to a given one ordered by similarity. If the product can not be
+     * found, it will return a 404 response.
+     *
+     * @param productId id of the product
+     * @return Mono with the ResponseEntity with status and result
+     * @see 'get-product-similar' operation at
+     * <a href="https://github.com/dalogax/backendDevTest/blob/main/similarProducts.yaml">similar products specification</a>
+     */
+    @GetMapping("/product/{productId}/similar")
+    @ConcurrencyLimited(name = SimilarProductsController.GET_SIMILAR_PRODUCTS_LIMITER)
+    public Mono<ResponseEntity<List<ProductDetail>>> getSimilarProducts(
+            @NotNull @PathVariable("productId") String productId) {
+        logger.debug("Request with id={}", productId);
+        return similarProductsService.getSimilarProducts(productId)
+                .map(similarProductDetails -> responseCacheHeaders.ok(productId, similarProductDetails)
+                        .body(similarProductDetails))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Return a 400 Bad Request response in case of any ConstraintViolationException is thrown
+     *
+     * @param e the exception that has been thrown
+     * @return the message of the exception
+     */
+    @ExceptionHandler(ConstraintViolationException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public String handleConstraintViolationException(ConstraintViolationException e) {
+        logger.debug("Bad request. Reason: {}", e.getMessage());
+        return e.getMessage();
+    }
+
+    /**
+     * Return a 503 Service Unavailable in case of LimitExceededException is thrown (the concurrency limit of this
+     * service has been reached, or the one of the requests to products-service when the similar ids are requested:
+     * details that are rejected are only left out of the response).
+     *
+     * @param e the exception that has been thrown
+     * @return the message of the exception
+     */
+    @ExceptionHandler(LimitExceededException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public String handleLimitExceededException(LimitExceededException e) {
+        logger.debug("Service unavailable. Reason: {}", e.getMessage());
+        return e.getMessage();
+    }
+}
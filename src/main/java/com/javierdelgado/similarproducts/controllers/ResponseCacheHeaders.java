@@ -0,0 +1,160 @@
+package com.javierdelgado.similarproducts.controllers;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import com.javierdelgado.similarproducts.services.SimilarProductsService;
+import jakarta.validation.constraints.NotNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds HTTP caching headers to the responses of similar products. The ETag is a strong validator: a hash (SHA-256,
+ * truncated to 128 bits) of the content of the list. It is computed once per list and kept as long as the list
+ * itself (a weak identity cache), so the lists served from the similarProductDetail cache reuse it. Cache-Control
+ * max-age is the time left until the cached list expires (or is refreshed, in refresh-ahead mode, where
+ * stale-while-revalidate allows serving it until it expires), and Last-Modified is the time it was cached.
+ * <p>
+ * Conditional requests (If-None-Match, If-Modified-Since) are answered with 304 by Spring MVC, which does not write
+ * the body when the response has a matching ETag.
+ */
+@Component
+public class ResponseCacheHeaders {
+
+    private static final int ETAG_BYTES = 16;
+
+    private final CacheManager cacheManager;
+    private final boolean enabled;
+    private final Cache<List<ProductDetail>, String> eTags;
+
+    public ResponseCacheHeaders(@NotNull CacheManager cacheManager,
+                                @Value("${similar-products.http-cache.enabled:true}") boolean enabled) {
+        this.cacheManager = cacheManager;
+        this.enabled = enabled;
+        this.eTags = Caffeine.newBuilder().weakKeys().maximumSize(10_000).build();
+    }
+
+    /**
+     * Returns a 200 response builder with the caching headers of a complete list of similar products of a product
+     */
+    public ResponseEntity.BodyBuilder ok(@NotNull String productId, @NotNull List<ProductDetail> similarProductDetails) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (!enabled) {
+            return response;
+        }
+        response.eTag(eTag(similarProductDetails));
+        Optional<Freshness> freshness = nativeCache().flatMap(cache -> freshness(cache.policy(), productId));
+        if (freshness.isEmpty()) {
+            return response.cacheControl(CacheControl.noCache());
+        }
+        Duration age = freshness.get().age();
+        Duration maxAge = freshness.get().freshFor().minus(age);
+        CacheControl cacheControl = CacheControl.maxAge(Math.max(0, maxAge.toSeconds()), TimeUnit.SECONDS);
+        if (freshness.get().staleFor().isPositive()) {
+            cacheControl = cacheControl.staleWhileRevalidate(freshness.get().staleFor());
+        }
+        return response.cacheControl(cacheControl).lastModified(System.currentTimeMillis() - age.toMillis());
+    }
+
+    /**
+     * Returns a 200 response builder with the caching headers of a window (offset and limit) of the similar products
+     * of a product. Windows are not cached by themselves, so they have an ETag but must always be revalidated.
+     */
+    public ResponseEntity.BodyBuilder window(@NotNull List<ProductDetail> similarProductDetails) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        return enabled ? response.eTag(eTag(similarProductDetails)).cacheControl(CacheControl.noCache()) : response;
+    }
+
+    /**
+     * Returns a 200 response builder for a partial list of similar products, that must not be cached
+     */
+    public ResponseEntity.BodyBuilder partial() {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        return enabled ? response.cacheControl(CacheControl.noStore()) : response;
+    }
+
+    String eTag(List<ProductDetail> similarProductDetails) {
+        return eTags.get(similarProductDetails, ResponseCacheHeaders::computeETag);
+    }
+
+    private static String computeETag(List<ProductDetail> similarProductDetails) {
+        MessageDigest digest = sha256();
+        for (ProductDetail productDetail : similarProductDetails) {
+            if (productDetail == null) {
+                digest.update((byte) 0);
+                continue;
+            }
+            digest.update((byte) 1);
+            update(digest, productDetail.getId());
+            update(digest, productDetail.getName());
+            update(digest, productDetail.getPrice() == null ? null : productDetail.getPrice().toString());
+            update(digest, productDetail.getAvailability() == null ? null
+                    : productDetail.getAvailability().toString());
+        }
+        byte[] hash = Arrays.copyOf(digest.digest(), ETAG_BYTES);
+        return '"' + Base64.getUrlEncoder().withoutPadding().encodeToString(hash) + '"';
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value == null) {
+            digest.update(new byte[]{-1, -1, -1, -1});
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = bytes.length;
+        digest.update(new byte[]{(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8),
+                (byte) length});
+        digest.update(bytes);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Returns how long the cached list of a product has been cached, how long it is fresh (until it is refreshed in
+     * refresh-ahead mode or until it expires otherwise) and how long it can be served stale after that. Reading the
+     * policy does not count as an access to the cache.
+     */
+    private static Optional<Freshness> freshness(Policy<Object, Object> policy, String productId) {
+        Optional<Policy.FixedExpiration<Object, Object>> expireAfterWrite = policy.expireAfterWrite();
+        Optional<Policy.FixedRefresh<Object, Object>> refreshAfterWrite = policy.refreshAfterWrite();
+        if (refreshAfterWrite.isPresent()) {
+            Duration refreshesAfter = refreshAfterWrite.get().getRefreshesAfter();
+            Duration staleFor = expireAfterWrite.map(expire -> expire.getExpiresAfter().minus(refreshesAfter))
+                    .orElse(Duration.ZERO);
+            return refreshAfterWrite.get().ageOf(productId).map(age -> new Freshness(age, refreshesAfter, staleFor));
+        }
+        return expireAfterWrite.flatMap(expire -> expire.ageOf(productId)
+                .map(age -> new Freshness(age, expire.getExpiresAfter(), Duration.ZERO)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Optional<Cache<Object, Object>> nativeCache() {
+        org.springframework.cache.Cache cache = cacheManager.getCache(
+                SimilarProductsService.SIMILAR_PRODUCT_DETAIL_CACHE);
+        return cache != null && cache.getNativeCache() instanceof Cache<?, ?> nativeCache
+                ? Optional.of((Cache<Object, Object>) nativeCache) : Optional.empty();
+    }
+
+    private record Freshness(Duration age, Duration freshFor, Duration staleFor) {
+    }
+}
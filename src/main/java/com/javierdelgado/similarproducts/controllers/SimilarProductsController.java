@@ -1,59 +1,238 @@
 package com.javierdelgado.similarproducts.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.javierdelgado.similarproducts.limiter.ConcurrencyLimited;
+import com.javierdelgado.similarproducts.limiter.LimitExceededException;
 import com.javierdelgado.similarproducts.models.ProductDetail;
+import com.javierdelgado.similarproducts.models.SimilarProducts;
 import com.javierdelgado.similarproducts.services.SimilarProductsService;
-import io.github.resilience4j.bulkhead.BulkheadFullException;
-import io.github.resilience4j.bulkhead.annotation.Bulkhead;
+import com.javierdelgado.similarproducts.services.deadline.Deadline;
+import com.javierdelgado.similarproducts.services.deadline.DeadlineExceededException;
+import com.javierdelgado.similarproducts.services.deadline.DeadlineProperties;
 import jakarta.validation.ConstraintViolationException;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
- * Controller that manages call to similar product service
+ * Controller that manages call to similar product service. It only exists in a servlet web application (the
+ * default); in a reactive one (profile reactive) ReactiveSimilarProductsController is used instead.
  *
  * @see
  * <a href="https://github.com/dalogax/backendDevTest/blob/main/similarProducts.yaml">Yaml with openapi specifications</a>
  */
 @RestController
 @Validated
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class SimilarProductsController {
 
+    public static final String REQUEST_TIMEOUT_HEADER = "X-Request-Timeout";
+    public static final String PARTIAL_RESPONSE_HEADER = "X-Partial-Response";
+    public static final String GET_SIMILAR_PRODUCTS_LIMITER = "get-similar-products";
+    /**
+     * Last line of a NDJSON stream that fails after it has started
+     */
+    public static final String STREAM_ERROR_LINE = "{\"error\":\"stream-failed\"}\n";
+
     private final Logger logger;
     private final SimilarProductsService similarProductsService;
+    private final DeadlineProperties deadlineProperties;
+    private final ResponseCacheHeaders responseCacheHeaders;
+    private final ObjectWriter productDetailWriter;
+    private final int batchMaxSize;
 
-    public SimilarProductsController(@NotNull SimilarProductsService similarProductsService) {
+    public SimilarProductsController(@NotNull SimilarProductsService similarProductsService,
+                                     @NotNull DeadlineProperties deadlineProperties,
+                                     @NotNull ResponseCacheHeaders responseCacheHeaders,
+                                     @NotNull ObjectMapper objectMapper,
+                                     @Value("${similar-products.batch.max-size:100}") int batchMaxSize) {
         this.logger = LoggerFactory.getLogger(SimilarProductsController.class);
         this.similarProductsService = similarProductsService;
+        this.deadlineProperties = deadlineProperties;
+        this.responseCacheHeaders = responseCacheHeaders;
+        this.productDetailWriter = objectMapper.writerFor(ProductDetail.class);
+        this.batchMaxSize = batchMaxSize;
         logger.info("SimilarProductsController initialized successfully");
     }
 
     /**
      * Returns the details of the similar products to a given one ordered by similarity. If the product can not be
-     * found, it will return a 404 response.
+     * found, it will return a 404 response. The response has a strong ETag and Cache-Control max-age with the time
+     * left in the cache (see ResponseCacheHeaders), and a request with a matching If-None-Match gets a 304 response
+     * without body.
+     * <p>
+     * The response is sent before a deadline: the timeout in the X-Request-Timeout header (in milliseconds) or
+     * similar-products.deadline.default-timeout if there is no header. If the deadline expires, the details fetched so
+     * far are returned with the header X-Partial-Response: true.
+     * <p>
+     * With offset or limit, only the details of the window of similar ids from offset (0 is the most similar one) up
+     * to limit ids are fetched. Windows are built from the cached similar ids and details, and they are revalidated
+     * by ETag instead of being cached by clients.
+     * <p>
+     * If SimilarProductsService is async, the response is completed when the details have been fetched, so no request
+     * thread is held meanwhile. Otherwise, the returned future is already completed.
      *
-     * @param productId id of the product
-     * @return ResponseEntity with status and result
+     * @param productId     id of the product
+     * @param timeoutMillis timeout of the request in milliseconds or null
+     * @param offset        number of similar ids that are skipped
+     * @param limit         maximum number of similar ids whose details are fetched or null
+     * @return future with the ResponseEntity with status and result
      * @see 'get-product-similar' operation at
      * <a href="https://github.com/dalogax/backendDevTest/blob/main/similarProducts.yaml">similar products specification</a>
      */
     @GetMapping("/product/{productId}/similar")
-    @Bulkhead(name = "get-similar-products")
-    public ResponseEntity<List<ProductDetail>> getSimilarProducts(@NotNull @PathVariable("productId") String productId) {
+    @ConcurrencyLimited(name = GET_SIMILAR_PRODUCTS_LIMITER)
+    public CompletableFuture<ResponseEntity<List<ProductDetail>>> getSimilarProducts(
+            @NotNull @PathVariable("productId") String productId,
+            @Positive @RequestHeader(value = REQUEST_TIMEOUT_HEADER, required = false) Long timeoutMillis,
+            @PositiveOrZero @RequestParam(value = "offset", defaultValue = "0") int offset,
+            @Positive @RequestParam(value = "limit", required = false) Integer limit) {
         logger.debug("Request with id={}", productId);
-        List<ProductDetail> similarProductDetails = similarProductsService.getSimilarProducts(productId);
+        Deadline deadline = deadlineProperties.deadline(timeoutMillis);
+        boolean window = offset != 0 || limit != null;
+        if (similarProductsService.isAsync()) {
+            return similarProductsService.getSimilarProductsAsync(productId, offset, limit, deadline)
+                    .thenApply(similarProducts -> toResponse(productId, similarProducts, window));
+        }
+        if (window) {
+            return CompletableFuture.completedFuture(toResponse(productId,
+                    similarProductsService.getSimilarProducts(productId, offset, limit, deadline), true));
+        }
+        if (deadline == null) {
+            return CompletableFuture.completedFuture(toResponse(productId,
+                    similarProductsService.getSimilarProducts(productId), false));
+        }
+        return CompletableFuture.completedFuture(toResponse(productId,
+                similarProductsService.getSimilarProducts(productId, deadline), false));
+    }
+
+    private ResponseEntity<List<ProductDetail>> toResponse(String productId, SimilarProducts similarProducts,
+                                                           boolean window) {
+        if (!window || similarProducts.productDetails() == null || similarProducts.partial()) {
+            return toResponse(productId, similarProducts.productDetails(), similarProducts.partial());
+        }
+        return responseCacheHeaders.window(similarProducts.productDetails()).body(similarProducts.productDetails());
+    }
+
+    private ResponseEntity<List<ProductDetail>> toResponse(String productId, List<ProductDetail> similarProductDetails,
+                                                           boolean partial) {
         if (similarProductDetails == null) {
             logger.debug("Product with id={} was not found", productId);
             return ResponseEntity.notFound().build();
         }
-        return ResponseEntity.ok(similarProductDetails);
+        if (partial) {
+            logger.debug("Partial response for id={}", productId);
+            return responseCacheHeaders.partial().header(PARTIAL_RESPONSE_HEADER, "true").body(similarProductDetails);
+        }
+        return responseCacheHeaders.ok(productId, similarProductDetails).body(similarProductDetails);
+    }
+
+    /**
+     * Same as getSimilarProducts, but the details are streamed as NDJSON (one JSON object per line) when the request
+     * accepts application/x-ndjson: every detail is written as soon as it and all the more similar ones have been
+     * fetched, and only a few of them are held in memory. Only the window of similar ids from offset (0 is the most
+     * similar one) up to limit ids is fetched. If the product can not be found, it will return a 404 response before
+     * anything is streamed. The deadline is the same as in getSimilarProducts: if it expires before the similar ids
+     * are fetched, the response is empty with the header X-Partial-Response: true, and if it expires while streaming,
+     * the stream ends with the details written so far. If anything else fails while streaming, the status can not be
+     * changed anymore, so the stream ends with the line STREAM_ERROR_LINE. The concurrency limit applies until the
+     * stream ends.
+     *
+     * @param productId     id of the product
+     * @param timeoutMillis timeout of the request in milliseconds or null
+     * @param offset        number of similar products that are skipped
+     * @param limit         maximum number of similar products or null (all of them)
+     * @return ResponseEntity with status and the body that streams the result
+     */
+    @GetMapping(value = "/product/{productId}/similar", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @ConcurrencyLimited(name = GET_SIMILAR_PRODUCTS_LIMITER)
+    public ResponseEntity<StreamingResponseBody> streamSimilarProducts(
+            @NotNull @PathVariable("productId") String productId,
+            @Positive @RequestHeader(value = REQUEST_TIMEOUT_HEADER, required = false) Long timeoutMillis,
+            @PositiveOrZero @RequestParam(value = "offset", defaultValue = "0") int offset,
+            @Positive @RequestParam(value = "limit", required = false) Integer limit) {
+        logger.debug("Streaming request with id={} offset={} limit={}", productId, offset, limit);
+        Deadline deadline = deadlineProperties.deadline(timeoutMillis);
+        List<String> similarIds;
+        try {
+            similarIds = deadline == null ? similarProductsService.getSimilarIds(productId, offset, limit)
+                    : deadline.run(() -> similarProductsService.getSimilarIds(productId, offset, limit));
+        } catch (DeadlineExceededException e) {
+            logger.debug("Partial response for id={}", productId);
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON)
+                    .header(PARTIAL_RESPONSE_HEADER, "true").body(outputStream -> {
+                    });
+        }
+        if (similarIds == null) {
+            logger.debug("Product with id={} was not found", productId);
+            return ResponseEntity.notFound().build();
+        }
+        StreamingResponseBody body = outputStream -> {
+            Runnable stream = () -> similarProductsService.forEachProductDetail(similarIds, productDetail -> {
+                try {
+                    outputStream.write(productDetailWriter.writeValueAsBytes(productDetail));
+                    outputStream.write('\n');
+                    outputStream.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            try {
+                if (deadline == null) {
+                    stream.run();
+                } else {
+                    deadline.run(stream);
+                }
+            } catch (DeadlineExceededException e) {
+                logger.debug("Deadline expired while streaming similar products of id={}", productId);
+            } catch (UncheckedIOException e) {
+                // The client is gone, so nothing else can be written
+                throw e.getCause();
+            } catch (RuntimeException e) {
+                logger.debug("Streaming similar products of id={} failed", productId, e);
+                outputStream.write(STREAM_ERROR_LINE.getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * Returns the details of the similar products of several products at once, keyed by product id. Products that
+     * can not be found have a null value. The details that are shared by several products are only fetched once. If
+     * there are more ids than similar-products.batch.max-size, it will return a 400 response.
+     *
+     * @param productIds ids of the products
+     * @return ResponseEntity with status and result
+     */
+    @PostMapping("/products/similar")
+    @ConcurrencyLimited(name = GET_SIMILAR_PRODUCTS_LIMITER)
+    public ResponseEntity<Map<String, List<ProductDetail>>> getSimilarProductsBatch(
+            @NotNull @RequestBody List<String> productIds) {
+        logger.debug("Batch request with ids={}", productIds);
+        if (productIds.size() > batchMaxSize) {
+            logger.debug("Bad request. Batch with {} ids (max {})", productIds.size(), batchMaxSize);
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(similarProductsService.getSimilarProductsBatch(productIds));
     }
 
     /**
@@ -71,14 +250,17 @@ public class SimilarProductsController {
     }
 
     /**
-     * Return a 503 Service Unavailable in case of BulkheadFullException is thrown.
+     * Return a 503 Service Unavailable in case of LimitExceededException is thrown (the concurrency limit of this
+     * service has been reached, or the one of the requests to products-service when the similar ids are requested:
+     * details that are rejected are only left out of the response).
      *
      * @param e the exception that has been thrown
      * @return the message of the exception
      */
-    @ExceptionHandler(BulkheadFullException.class)
+    @ExceptionHandler(LimitExceededException.class)
     @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
-    public String handleBulkheadFullExceptions(Exception e) {
+    public String handleLimitExceededException(LimitExceededException e) {
+        logger.debug("Service unavailable. Reason: {}", e.getMessage());
         return e.getMessage();
     }
 
@@ -0,0 +1,22 @@
+package com.javierdelgado.similarproducts.controllers.serialization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers ProductDetailsHttpMessageConverter, so Spring MVC uses it before the Jackson converter to write
+ * List&lt;ProductDetail&gt; responses.
+ */
+@Configuration
+@ConditionalOnProperty(name = "similar-products.fragment-cache.enabled", havingValue = "true", matchIfMissing = true)
+public class FragmentCacheConfiguration {
+
+    @Bean
+    public ProductDetailsHttpMessageConverter productDetailsHttpMessageConverter(
+            ObjectMapper objectMapper, FragmentCacheProperties properties, MeterRegistry meterRegistry) {
+        return new ProductDetailsHttpMessageConverter(objectMapper, properties.maximumSize(), meterRegistry);
+    }
+}
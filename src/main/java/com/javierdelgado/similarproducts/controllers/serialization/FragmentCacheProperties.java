@@ -0,0 +1,16 @@
+package com.javierdelgado.similarproducts.controllers.serialization;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Configuration of the cache of serialized product details used to write the responses.
+ *
+ * @param enabled     if false, responses are serialized by Jackson as any other response
+ * @param maximumSize maximum number of serialized product details kept in the cache
+ */
+@ConfigurationProperties(prefix = "similar-products.fragment-cache")
+public record FragmentCacheProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("10000") long maximumSize) {
+}
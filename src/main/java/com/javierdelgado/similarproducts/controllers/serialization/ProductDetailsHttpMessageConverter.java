@@ -0,0 +1,137 @@
+package com.javierdelgado.similarproducts.controllers.serialization;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.validation.constraints.NotNull;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Write-only converter for List&lt;ProductDetail&gt; responses. Every product detail is serialized once by the
+ * ObjectMapper of Spring MVC and its bytes are kept in a cache, so responses made of cached product details are
+ * written by copying bytes instead of serializing them again. The output is the same as the Jackson converter's.
+ * <p>
+ * The cache is keyed by the values of the product detail (an immutable copy of them), so the bytes are only reused
+ * for an equal product detail: a product that changed is serialized again, and a caller that modifies a product
+ * detail does not change the cache. It registers the cache metrics of Micrometer with cache=productDetailFragments.
+ */
+public class ProductDetailsHttpMessageConverter extends AbstractGenericHttpMessageConverter<List<ProductDetail>> {
+
+    public static final String FRAGMENTS_CACHE = "productDetailFragments";
+
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper objectMapper;
+    private final Cache<FragmentKey, byte[]> fragments;
+
+    public ProductDetailsHttpMessageConverter(@NotNull ObjectMapper objectMapper, long maximumSize,
+                                              @NotNull MeterRegistry meterRegistry) {
+        super(MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+        this.objectMapper = objectMapper;
+        this.fragments = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, fragments, FRAGMENTS_CACHE);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return List.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    /**
+     * Only lists declared as List&lt;ProductDetail&gt; are written, any other type is left to the Jackson converter
+     */
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        if (type == null || !canWrite(mediaType)) {
+            return false;
+        }
+        ResolvableType resolvableType = ResolvableType.forType(type);
+        return List.class.isAssignableFrom(resolvableType.toClass())
+                && resolvableType.getGeneric(0).toClass() == ProductDetail.class;
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected void writeInternal(List<ProductDetail> productDetails, Type type, HttpOutputMessage outputMessage)
+            throws IOException {
+        OutputStream body = outputMessage.getBody();
+        body.write('[');
+        for (int i = 0; i < productDetails.size(); i++) {
+            if (i > 0) {
+                body.write(',');
+            }
+            body.write(serialize(productDetails.get(i)));
+        }
+        body.write(']');
+    }
+
+    /**
+     * Returns the JSON bytes of a product detail, serializing it only if the bytes of an equal product detail are not
+     * cached yet
+     */
+    byte[] serialize(ProductDetail productDetail) {
+        if (productDetail == null) {
+            return NULL;
+        }
+        return fragments.get(new FragmentKey(productDetail.getId(), productDetail.getName(), productDetail.getPrice(),
+                productDetail.getAvailability()), key -> {
+            try {
+                return objectMapper.writeValueAsBytes(productDetail);
+            } catch (JsonProcessingException e) {
+                throw new HttpMessageNotWritableException("Could not write product detail: " + e.getOriginalMessage(),
+                        e);
+            }
+        });
+    }
+
+    @Override
+    protected List<ProductDetail> readInternal(Class<? extends List<ProductDetail>> clazz,
+                                               HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("ProductDetailsHttpMessageConverter can not read", inputMessage);
+    }
+
+    @Override
+    public List<ProductDetail> read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("ProductDetailsHttpMessageConverter can not read", inputMessage);
+    }
+
+    /**
+     * Values of a product detail. BigDecimal is compared with its scale, as it is serialized with it
+     */
+    private record FragmentKey(String id, String name, BigDecimal price, Boolean availability) {
+    }
+}
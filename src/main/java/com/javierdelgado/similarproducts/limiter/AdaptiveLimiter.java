@@ -0,0 +1,123 @@
+package com.javierdelgado.similarproducts.limiter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the number of concurrent calls to a limit that adapts to the observed latency (see GradientLimit). Calls
+ * over the limit are rejected immediately instead of waiting. Every accepted call gets a Permit that must be
+ * released exactly once when the call finishes.
+ * <p>
+ * It registers the gauges similar.products.limiter.limit and similar.products.limiter.in.flight and the counter
+ * similar.products.limiter.rejected, all of them tagged with the name of the limiter.
+ */
+public class AdaptiveLimiter {
+
+    private final String name;
+    private final boolean enabled;
+    private final GradientLimit limit;
+    private final LongSupplier nanoTime;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter rejected;
+
+    public AdaptiveLimiter(String name, LimiterProperties properties, MeterRegistry meterRegistry) {
+        this(name, properties, meterRegistry, System::nanoTime);
+    }
+
+    AdaptiveLimiter(String name, LimiterProperties properties, MeterRegistry meterRegistry, LongSupplier nanoTime) {
+        this.name = name;
+        this.enabled = properties.enabled();
+        this.limit = new GradientLimit(properties.limiter(name), properties);
+        this.nanoTime = nanoTime;
+        this.rejected = Counter.builder("similar.products.limiter.rejected")
+                .tag("name", name)
+                .description("Calls rejected because the concurrency limit was reached")
+                .register(meterRegistry);
+        Gauge.builder("similar.products.limiter.limit", limit, GradientLimit::getLimit)
+                .tag("name", name)
+                .description("Current concurrency limit")
+                .register(meterRegistry);
+        Gauge.builder("similar.products.limiter.in.flight", inFlight, AtomicInteger::get)
+                .tag("name", name)
+                .description("Calls in flight")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Acquires a permit for a call
+     *
+     * @return the permit
+     * @throws LimitExceededException if the concurrency limit has been reached
+     */
+    public Permit acquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (enabled && current >= limit.getLimit()) {
+                rejected.increment();
+                throw new LimitExceededException("Concurrency limit of " + name + " reached");
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return new Permit(nanoTime.getAsLong(), current + 1);
+    }
+
+    public int getLimit() {
+        return limit.getLimit();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Permit of a call. Only the first release has effect.
+     */
+    public final class Permit {
+
+        private final long startNanos;
+        private final int inFlightAtStart;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(long startNanos, int inFlightAtStart) {
+            this.startNanos = startNanos;
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        /**
+         * Releases the permit of a call that answered. Its latency is used to update the limit.
+         */
+        public void onSuccess() {
+            release(false, true);
+        }
+
+        /**
+         * Releases the permit of a call that timed out. The limit is reduced.
+         */
+        public void onDropped() {
+            release(true, true);
+        }
+
+        /**
+         * Releases the permit of a call whose latency is not meaningful (for example, it failed before doing any
+         * work). The limit is not updated.
+         */
+        public void onIgnore() {
+            release(false, false);
+        }
+
+        private void release(boolean dropped, boolean sample) {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            inFlight.decrementAndGet();
+            if (sample) {
+                limit.onSample(nanoTime.getAsLong() - startNanos, inFlightAtStart, dropped);
+            }
+        }
+    }
+}
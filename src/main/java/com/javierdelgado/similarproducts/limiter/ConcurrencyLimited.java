@@ -0,0 +1,22 @@
+package com.javierdelgado.similarproducts.limiter;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Limits the concurrent calls to the annotated method with the AdaptiveLimiter of the given name. Calls over the
+ * limit throw LimitExceededException.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ConcurrencyLimited {
+
+    /**
+     * @return name of the AdaptiveLimiter
+     */
+    String name();
+}
@@ -0,0 +1,117 @@
+package com.javierdelgado.similarproducts.limiter;
+
+import jakarta.validation.constraints.NotNull;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Applies the AdaptiveLimiter to the methods annotated with ConcurrencyLimited. Calls that fail are not latency
+ * samples: in particular, a call that fails because a limiter it depends on rejected it does not shrink this limit,
+ * as only the rejections of this limiter are its own. Methods that return a Mono take the permit when it is
+ * subscribed and release it when it terminates, and methods that return a CompletableFuture keep it until the future
+ * completes. Methods that return a ResponseEntity with a StreamingResponseBody keep the permit until the body has
+ * been written (or until the async request completes, if the body is never written).
+ */
+@Aspect
+@Component
+public class ConcurrencyLimitedAspect {
+
+    private final LimiterRegistry limiterRegistry;
+
+    public ConcurrencyLimitedAspect(@NotNull LimiterRegistry limiterRegistry) {
+        this.limiterRegistry = limiterRegistry;
+    }
+
+    @Around("@annotation(concurrencyLimited)")
+    public Object limit(ProceedingJoinPoint joinPoint, ConcurrencyLimited concurrencyLimited) throws Throwable {
+        AdaptiveLimiter limiter = limiterRegistry.limiter(concurrencyLimited.name());
+        if (joinPoint.getSignature() instanceof MethodSignature signature
+                && Mono.class.isAssignableFrom(signature.getReturnType())) {
+            return limitMono(joinPoint, limiter);
+        }
+        AdaptiveLimiter.Permit permit = limiter.acquire();
+        boolean pending = false;
+        try {
+            Object result = joinPoint.proceed();
+            if (result instanceof ResponseEntity<?> response
+                    && response.getBody() instanceof StreamingResponseBody body) {
+                pending = true;
+                return limitStreaming(response, body, permit);
+            }
+            if (result instanceof CompletableFuture<?> future) {
+                pending = true;
+                return limitFuture(future, permit);
+            }
+            permit.onSuccess();
+            return result;
+        } finally {
+            if (!pending) {
+                permit.onIgnore();
+            }
+        }
+    }
+
+    private static CompletableFuture<?> limitFuture(CompletableFuture<?> future, AdaptiveLimiter.Permit permit) {
+        return future.whenComplete((value, e) -> {
+            if (e == null) {
+                permit.onSuccess();
+            } else {
+                permit.onIgnore();
+            }
+        });
+    }
+
+    private static ResponseEntity<StreamingResponseBody> limitStreaming(ResponseEntity<?> response,
+                                                                        StreamingResponseBody body,
+                                                                        AdaptiveLimiter.Permit permit) {
+        if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes) {
+            // The body is not written if the async request times out before it starts
+            WebAsyncUtils.getAsyncManager(attributes.getRequest()).registerCallableInterceptor(permit,
+                    new CallableProcessingInterceptor() {
+                        @Override
+                        public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+                            permit.onIgnore();
+                        }
+                    });
+        }
+        StreamingResponseBody limited = outputStream -> {
+            try {
+                body.writeTo(outputStream);
+                permit.onSuccess();
+            } finally {
+                permit.onIgnore();
+            }
+        };
+        return new ResponseEntity<>(limited, response.getHeaders(), response.getStatusCode());
+    }
+
+    private static Mono<?> limitMono(ProceedingJoinPoint joinPoint, AdaptiveLimiter limiter) {
+        return Mono.defer(() -> {
+            AdaptiveLimiter.Permit permit = limiter.acquire();
+            Mono<?> result;
+            try {
+                result = (Mono<?>) joinPoint.proceed();
+            } catch (Throwable e) {
+                permit.onIgnore();
+                return Mono.error(e);
+            }
+            return result
+                    .doOnSuccess(value -> permit.onSuccess())
+                    .doFinally(signal -> permit.onIgnore());
+        });
+    }
+}
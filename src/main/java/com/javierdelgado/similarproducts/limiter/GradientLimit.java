@@ -0,0 +1,79 @@
+package com.javierdelgado.similarproducts.limiter;
+
+/**
+ * Estimates a concurrency limit from the observed latencies, in the same way as the Gradient2 algorithm of
+ * Netflix concurrency-limits. The gradient between the long-term latency and the latest one shrinks the limit when
+ * latency grows (requests are queuing somewhere) and a small queue allowance lets it grow while latency is stable.
+ * The limit is not changed while less than half of it is in use, because the latency says nothing about it then.
+ * Dropped requests (timeouts) reduce the limit by 10%.
+ */
+class GradientLimit {
+
+    private static final int WARMUP_SAMPLES = 10;
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double smoothing;
+    private final double tolerance;
+    private final double longRttFactor;
+    private double estimatedLimit;
+    private double longRttNanos;
+    private int samples;
+
+    GradientLimit(LimiterProperties.LimitBounds bounds, LimiterProperties properties) {
+        this.minLimit = bounds.minLimit();
+        this.maxLimit = bounds.maxLimit();
+        this.smoothing = properties.smoothing();
+        this.tolerance = properties.tolerance();
+        this.longRttFactor = 2.0 / (properties.longWindow() + 1);
+        this.estimatedLimit = bounds.initialLimit();
+    }
+
+    /**
+     * Updates the limit with the latency of a finished request
+     *
+     * @param rttNanos latency of the request
+     * @param inFlight number of requests in flight when the request was sent
+     * @param dropped  true if the request timed out
+     * @return the new limit
+     */
+    synchronized int onSample(long rttNanos, int inFlight, boolean dropped) {
+        if (dropped) {
+            estimatedLimit = clamp(estimatedLimit * BACKOFF_RATIO);
+            return getLimit();
+        }
+        double shortRtt = Math.max(1, rttNanos);
+        double longRtt = updateLongRtt(shortRtt);
+        if (longRtt / shortRtt > 2) {
+            // Latency dropped a lot (for example, after a recovery), so the long-term latency converges faster
+            longRttNanos = longRtt * 0.95;
+        }
+        if (inFlight < estimatedLimit / 2) {
+            return getLimit();
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRtt / shortRtt));
+        double queueSize = Math.sqrt(estimatedLimit);
+        double newLimit = estimatedLimit * gradient + queueSize;
+        estimatedLimit = clamp(estimatedLimit * (1 - smoothing) + newLimit * smoothing);
+        return getLimit();
+    }
+
+    synchronized int getLimit() {
+        return (int) estimatedLimit;
+    }
+
+    private double updateLongRtt(double rttNanos) {
+        if (samples < WARMUP_SAMPLES) {
+            samples++;
+            longRttNanos += (rttNanos - longRttNanos) / samples;
+        } else {
+            longRttNanos = longRttNanos * (1 - longRttFactor) + rttNanos * longRttFactor;
+        }
+        return longRttNanos;
+    }
+
+    private double clamp(double limit) {
+        return Math.max(minLimit, Math.min(maxLimit, limit));
+    }
+}
@@ -0,0 +1,11 @@
+package com.javierdelgado.similarproducts.limiter;
+
+/**
+ * Thrown when a call is rejected because the concurrency limit of an AdaptiveLimiter has been reached
+ */
+public class LimitExceededException extends RuntimeException {
+
+    public LimitExceededException(String message) {
+        super(message, null, false, false);
+    }
+}
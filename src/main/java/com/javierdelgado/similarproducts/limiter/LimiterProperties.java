@@ -0,0 +1,52 @@
+package com.javierdelgado.similarproducts.limiter;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.Map;
+
+/**
+ * Configuration of the adaptive concurrency limiters.
+ *
+ * @param enabled    if false, calls are never rejected (the limit is still estimated)
+ * @param smoothing  weight of every new estimation of the limit (between 0 and 1)
+ * @param tolerance  ratio between the current latency and the long-term latency that is tolerated before the limit
+ *                   is reduced
+ * @param longWindow number of samples of the exponential average of the long-term latency
+ * @param limiters   bounds of every limiter by name
+ */
+@ConfigurationProperties(prefix = "similar-products.limiter")
+public record LimiterProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("0.2") double smoothing,
+        @DefaultValue("1.5") double tolerance,
+        @DefaultValue("600") int longWindow,
+        Map<String, LimitBounds> limiters) {
+
+    public LimiterProperties {
+        limiters = limiters == null ? Map.of() : limiters;
+    }
+
+    /**
+     * Returns the bounds of a limiter, or the default ones if it is not configured
+     *
+     * @param name name of the limiter
+     * @return the bounds of the limiter
+     */
+    public LimitBounds limiter(String name) {
+        return limiters.getOrDefault(name, LimitBounds.DEFAULT);
+    }
+
+    /**
+     * @param initialLimit concurrency limit until it is estimated from the observed latencies
+     * @param minLimit     minimum concurrency limit
+     * @param maxLimit     maximum concurrency limit
+     */
+    public record LimitBounds(
+            @DefaultValue("50") int initialLimit,
+            @DefaultValue("4") int minLimit,
+            @DefaultValue("1000") int maxLimit) {
+
+        static final LimitBounds DEFAULT = new LimitBounds(50, 4, 1000);
+    }
+}
@@ -0,0 +1,34 @@
+package com.javierdelgado.similarproducts.limiter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.constraints.NotNull;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates and keeps one AdaptiveLimiter per name, with the bounds configured for that name.
+ */
+@Component
+public class LimiterRegistry {
+
+    private final Map<String, AdaptiveLimiter> limiters = new ConcurrentHashMap<>();
+    private final LimiterProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    public LimiterRegistry(@NotNull LimiterProperties properties, @NotNull MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Returns the AdaptiveLimiter with the given name, creating it if it does not exist
+     *
+     * @param name name of the AdaptiveLimiter
+     * @return the AdaptiveLimiter
+     */
+    public AdaptiveLimiter limiter(String name) {
+        return limiters.computeIfAbsent(name, key -> new AdaptiveLimiter(key, properties, meterRegistry));
+    }
+}
@@ -4,6 +4,7 @@ import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
 
 import java.math.BigDecimal;
+import java.util.Objects;
 
 /**
  * Model for ProductDetail
@@ -67,6 +68,23 @@ public class ProductDetail {
         this.availability = availability;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ProductDetail that)) {
+            return false;
+        }
+        return Objects.equals(id, that.id) && Objects.equals(name, that.name) && Objects.equals(price, that.price)
+                && Objects.equals(availability, that.availability);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, name, price, availability);
+    }
+
     @Override
     public String toString() {
         return "ProductDetail{" +
@@ -0,0 +1,66 @@
+package com.javierdelgado.similarproducts.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Validator of the constraints of ProductDetail (@NotNull and @Size(min = 1)) written by hand, so product details
+ * returned by product-service are validated without reflection nor allocations. It makes the same decisions as Bean
+ * Validation: ids and names must not be null nor empty, and prices and availabilities must not be null. It must be
+ * kept in sync with the annotations of ProductDetail (ProductDetailValidatorTest compares both).
+ */
+public final class ProductDetailValidator {
+
+    static final String NOT_NULL = "must not be null";
+    static final String NOT_EMPTY = "size must be between 1 and " + Integer.MAX_VALUE;
+
+    private ProductDetailValidator() {
+    }
+
+    /**
+     * Returns whether a product detail is valid
+     *
+     * @param productDetail product detail
+     * @return true if it is valid
+     * @throws IllegalArgumentException if the product detail is null, as Bean Validation does
+     */
+    public static boolean isValid(ProductDetail productDetail) {
+        if (productDetail == null) {
+            throw new IllegalArgumentException("The product detail to be validated must not be null");
+        }
+        return isNotEmpty(productDetail.getId()) && isNotEmpty(productDetail.getName())
+                && productDetail.getPrice() != null && productDetail.getAvailability() != null;
+    }
+
+    /**
+     * Returns the constraint violations of a product detail, with the property and the default message of Bean
+     * Validation (for example "id: must not be null"). It is only meant to describe invalid product details.
+     *
+     * @param productDetail product detail
+     * @return the violations (empty if it is valid)
+     */
+    public static List<String> violations(ProductDetail productDetail) {
+        List<String> violations = new ArrayList<>(4);
+        addStringViolation(violations, "id", productDetail.getId());
+        addStringViolation(violations, "name", productDetail.getName());
+        if (productDetail.getPrice() == null) {
+            violations.add("price: " + NOT_NULL);
+        }
+        if (productDetail.getAvailability() == null) {
+            violations.add("availability: " + NOT_NULL);
+        }
+        return violations;
+    }
+
+    private static boolean isNotEmpty(String value) {
+        return value != null && !value.isEmpty();
+    }
+
+    private static void addStringViolation(List<String> violations, String property, String value) {
+        if (value == null) {
+            violations.add(property + ": " + NOT_NULL);
+        } else if (value.isEmpty()) {
+            violations.add(property + ": " + NOT_EMPTY);
+        }
+    }
+}
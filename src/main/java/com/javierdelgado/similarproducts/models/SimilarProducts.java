@@ -0,0 +1,12 @@
+package com.javierdelgado.similarproducts.models;
+
+import java.util.List;
+
+/**
+ * Details of the similar products to a given one answered before a deadline
+ *
+ * @param productDetails details of the similar products ordered by similarity, or null if the product can not be found
+ * @param partial        true if the deadline expired before all the details were fetched
+ */
+public record SimilarProducts(List<ProductDetail> productDetails, boolean partial) {
+}
@@ -0,0 +1,68 @@
+package com.javierdelgado.similarproducts.services;
+
+import com.javierdelgado.similarproducts.services.proxies.ProductsServiceResponseException;
+import feign.FeignException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Reason why a request to product-service did not return a valid result
+ */
+public enum FailureReason {
+    /**
+     * product-service answered 404
+     */
+    NOT_FOUND,
+    /**
+     * product-service did not answer in time
+     */
+    TIMEOUT,
+    /**
+     * product-service answered 5xx or it could not be reached
+     */
+    SERVER_ERROR,
+    /**
+     * product-service answered with data that is not valid
+     */
+    VALIDATION,
+    /**
+     * Any other problem
+     */
+    OTHER;
+
+    /**
+     * Returns the reason of a failed request given the exception thrown by ProductsServiceProxy or
+     * AsyncProductsServiceProxy
+     *
+     * @param e exception thrown by the request
+     * @return the reason of the failure
+     */
+    public static FailureReason of(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        int status = -1;
+        if (cause instanceof FeignException feignException) {
+            status = feignException.status();
+            cause = feignException.getCause() == null ? cause : feignException.getCause();
+        } else if (cause instanceof ProductsServiceResponseException responseException) {
+            status = responseException.getStatus();
+        }
+        if (status == 404) {
+            return NOT_FOUND;
+        }
+        if (status >= 500) {
+            return SERVER_ERROR;
+        }
+        if (cause instanceof InterruptedIOException || cause instanceof HttpTimeoutException
+                || cause instanceof TimeoutException) {
+            return TIMEOUT;
+        }
+        if (cause instanceof IOException) {
+            return SERVER_ERROR;
+        }
+        return OTHER;
+    }
+}
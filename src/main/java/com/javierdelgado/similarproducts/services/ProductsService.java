@@ -1,26 +1,62 @@
 package com.javierdelgado.similarproducts.services;
 
+import com.javierdelgado.similarproducts.cache.CompactProductDetail;
+import com.javierdelgado.similarproducts.cache.NegativeCache;
+import com.javierdelgado.similarproducts.cache.StaleCache;
+import com.javierdelgado.similarproducts.limiter.AdaptiveLimiter;
+import com.javierdelgado.similarproducts.limiter.LimitExceededException;
+import com.javierdelgado.similarproducts.limiter.LimiterRegistry;
 import com.javierdelgado.similarproducts.models.ProductDetail;
+import com.javierdelgado.similarproducts.models.ProductDetailValidator;
+import com.javierdelgado.similarproducts.services.circuitbreaker.UpstreamCircuitBreaker;
+import com.javierdelgado.similarproducts.services.circuitbreaker.UpstreamCircuitBreakerRegistry;
+import com.javierdelgado.similarproducts.services.deadline.Deadline;
+import com.javierdelgado.similarproducts.services.deadline.DeadlineExceededException;
+import com.javierdelgado.similarproducts.services.hedging.Hedger;
+import com.javierdelgado.similarproducts.services.hedging.HedgerRegistry;
+import com.javierdelgado.similarproducts.services.proxies.AsyncProductsServiceProxy;
 import com.javierdelgado.similarproducts.services.proxies.ProductsServiceProxy;
+import com.javierdelgado.similarproducts.services.proxies.ProductsServiceResponseException;
+import com.javierdelgado.similarproducts.services.singleflight.SingleFlight;
 import feign.FeignException;
-import jakarta.validation.ConstraintViolation;
-import jakarta.validation.Validation;
-import jakarta.validation.Validator;
+import feign.Request;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.validation.constraints.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Component;
 import org.springframework.validation.annotation.Validated;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Class that manages requests sent to product-service via ProductServiceProxy.
  * It is a wrapper to ProductServiceProxy. Its ensures that in case of any bad-formed data or any exception is throw
  * (readTimeout, 400, 404, 500 ... responses or any unexpected one) null value is returned instead If that happens,
  * it can be considered as a 404 response (Not Found).
+ * <p>
+ * If an AsyncProductsServiceProxy is available (product-service.client=async or reactive), the async methods can be
+ * used too. They have the same semantics, but return futures instead of blocking the calling thread.
+ * <p>
+ * Concurrent requests for the same product are coalesced, failed requests are kept in NegativeCache and slow requests
+ * are hedged. Requests are limited by the AdaptiveLimiter "product-service" and every endpoint has its own circuit
+ * breaker. Every request is timed by endpoint and outcome (see UpstreamMetrics).
  *
  * @see
  * <a href="https://github.com/dalogax/backendDevTest/blob/main/existingApis.yaml">Yaml with openapi specifications</a>
@@ -29,62 +65,483 @@ import java.util.Set;
 @Validated
 public class ProductsService {
 
+    public static final String PRODUCT_DETAIL_CACHE = "productDetail";
+    public static final String SIMILAR_IDS_CACHE = "similarIds";
+    private static final String SIMILAR_IDS_ENDPOINT = "similarIds";
+    private static final String PRODUCT_DETAIL_ENDPOINT = "productDetail";
+    private static final String PRODUCT_SERVICE_LIMITER = "product-service";
+
     private final Logger logger = LoggerFactory.getLogger(ProductsService.class);
-    private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
     private ProductsServiceProxy productsServiceProxy;
+    private AsyncProductsServiceProxy asyncProductsServiceProxy;
+    private CacheManager cacheManager;
+    private NegativeCache negativeCache;
+    private SingleFlight<String, List<String>> similarIdsSingleFlight;
+    private SingleFlight<String, ProductDetail> productDetailSingleFlight;
+    private Hedger similarIdsHedger;
+    private Hedger productDetailHedger;
+    private AdaptiveLimiter limiter;
+    private UpstreamCircuitBreaker similarIdsCircuitBreaker;
+    private UpstreamCircuitBreaker productDetailCircuitBreaker;
+    private StaleCache staleCache;
+    private UpstreamMetrics similarIdsMetrics;
+    private UpstreamMetrics productDetailMetrics;
+    private Timer validationTimer;
+    private Duration connectTimeout;
+    private Duration readTimeout;
 
-    public ProductsService(@NotNull ProductsServiceProxy productsServiceProxy) {
+    public ProductsService(@NotNull ProductsServiceProxy productsServiceProxy,
+                           @NotNull ObjectProvider<AsyncProductsServiceProxy> asyncProductsServiceProxy,
+                           @NotNull CacheManager cacheManager,
+                           @NotNull NegativeCache negativeCache,
+                           @NotNull HedgerRegistry hedgerRegistry,
+                           @NotNull LimiterRegistry limiterRegistry,
+                           @NotNull UpstreamCircuitBreakerRegistry circuitBreakerRegistry,
+                           @NotNull StaleCache staleCache,
+                           @NotNull MeterRegistry meterRegistry,
+                           @Value("${spring.cloud.openfeign.client.config.default.connectTimeout:10000}")
+                           long connectTimeout,
+                           @Value("${spring.cloud.openfeign.client.config.default.readTimeout:60000}")
+                           long readTimeout) {
         this.productsServiceProxy = productsServiceProxy;
+        this.asyncProductsServiceProxy = asyncProductsServiceProxy.getIfAvailable();
+        this.cacheManager = cacheManager;
+        this.negativeCache = negativeCache;
+        this.similarIdsSingleFlight = new SingleFlight<>(SIMILAR_IDS_ENDPOINT, meterRegistry);
+        this.productDetailSingleFlight = new SingleFlight<>(PRODUCT_DETAIL_ENDPOINT, meterRegistry);
+        this.similarIdsHedger = hedgerRegistry.hedger(SIMILAR_IDS_ENDPOINT);
+        this.productDetailHedger = hedgerRegistry.hedger(PRODUCT_DETAIL_ENDPOINT);
+        this.limiter = limiterRegistry.limiter(PRODUCT_SERVICE_LIMITER);
+        this.similarIdsCircuitBreaker = circuitBreakerRegistry.circuitBreaker(SIMILAR_IDS_ENDPOINT);
+        this.productDetailCircuitBreaker = circuitBreakerRegistry.circuitBreaker(PRODUCT_DETAIL_ENDPOINT);
+        this.staleCache = staleCache;
+        this.similarIdsMetrics = new UpstreamMetrics(SIMILAR_IDS_ENDPOINT, meterRegistry);
+        this.productDetailMetrics = new UpstreamMetrics(PRODUCT_DETAIL_ENDPOINT, meterRegistry);
+        this.validationTimer = Timer.builder("similar.products.validation")
+                .description("Validation of the product details returned by product-service")
+                .register(meterRegistry);
+        this.connectTimeout = Duration.ofMillis(connectTimeout);
+        this.readTimeout = Duration.ofMillis(readTimeout);
         logger.info("ProductsService initialized successfully");
     }
 
     /**
-     * Returns the ids of the similar products to a given one ordered by similarity. If there is any kind of problem
-     * in the request, null is returned instead.
+     * Returns true if the async methods can be used (that is, if an AsyncProductsServiceProxy is available)
+     *
+     * @return true if the async methods can be used
+     */
+    public boolean isAsync() {
+        return asyncProductsServiceProxy != null;
+    }
+
+    /**
+     * Returns the ids of the similar products to a given one ordered by similarity. It uses cache to reduce the
+     * numbers of calls to the products-service. If there is any kind of problem in the request, null is returned
+     * instead.
      *
      * @param productId id of the product
      * @return a list of strings with the ids of the similar products or null
      */
+    @Cacheable(value = SIMILAR_IDS_CACHE, sync = true)
     @SuppressWarnings("java:S1168")
     public List<String> getSimilarIds(@NotNull String productId) {
+        return loadSimilarIds(productId);
+    }
+
+    /**
+     * Same as getSimilarIds, but without cache. It is used to refresh cache entries.
+     *
+     * @param productId id of the product
+     * @return a list of strings with the ids of the similar products or null
+     */
+    @SuppressWarnings("java:S1168")
+    public List<String> loadSimilarIds(@NotNull String productId) {
+        if (isNegativeCached(SIMILAR_IDS_ENDPOINT, productId)) {
+            return null;
+        }
+        return load(similarIdsSingleFlight, productId, this::fetchSimilarIds);
+    }
+
+    @SuppressWarnings("java:S1168")
+    private List<String> fetchSimilarIds(String productId) {
+        long start = System.nanoTime();
+        Duration timeout = deadlineTimeout(Deadline.current());
         try {
             logger.debug("GetSimilarIds request sent with id={}", productId);
-            List<String> similarIds = productsServiceProxy.getSimilarIds(productId);
+            Request.Options options = requestOptions(timeout);
+            List<String> similarIds = similarIdsCircuitBreaker.call(() -> similarIdsHedger.call(() -> limited(
+                    () -> options == null
+                            ? productsServiceProxy.getSimilarIds(productId)
+                            : productsServiceProxy.getSimilarIds(productId, options))));
+            similarIdsMetrics.record(UpstreamMetrics.Outcome.OK, start);
+            staleCache.put(SIMILAR_IDS_ENDPOINT, productId, similarIds);
             logger.debug("GetSimilarIds request with id={} returned {}", productId, similarIds);
             return similarIds;
-        } catch (FeignException e) {
-            logger.debug("Error with id={}. {}.", productId, e.getMessage());
         } catch (Exception e) {
-            logger.error("Unexpected error with id={}.", productId, e);
+            similarIdsMetrics.record(e, start);
+            return handleError(SIMILAR_IDS_ENDPOINT, productId, e, timeout != null);
         }
-        return null;
+    }
+
+    /**
+     * Async version of getSimilarIds. It shares the cache with getSimilarIds. It only completes exceptionally with
+     * LimitExceededException, or with DeadlineExceededException if it is called with a Deadline that expires before
+     * the answer: if there is any other kind of problem in the request, the future is completed with null.
+     *
+     * @param productId id of the product
+     * @return a future with a list of strings with the ids of the similar products or null
+     */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<List<String>> getSimilarIdsAsync(@NotNull String productId) {
+        return getCachedAsync(SIMILAR_IDS_CACHE, SIMILAR_IDS_ENDPOINT, productId, similarIdsSingleFlight,
+                this::fetchSimilarIdsAsync, similarIds -> similarIds, cached -> (List<String>) cached);
+    }
+
+    private CompletableFuture<List<String>> fetchSimilarIdsAsync(String productId, Deadline deadline) {
+        logger.debug("GetSimilarIds async request sent with id={}", productId);
+        long start = System.nanoTime();
+        boolean deadlineBound = deadlineTimeout(deadline) != null;
+        return similarIdsCircuitBreaker.callAsync(() -> similarIdsHedger.callAsync(() -> limitedAsync(
+                        () -> deadlineBound
+                                ? asyncProductsServiceProxy.getSimilarIds(productId, deadlineTimeout(deadline))
+                                : asyncProductsServiceProxy.getSimilarIds(productId))))
+                .handle((similarIds, e) -> {
+                    if (e != null) {
+                        similarIdsMetrics.record(e, start);
+                        return handleError(SIMILAR_IDS_ENDPOINT, productId, e, deadlineBound);
+                    }
+                    similarIdsMetrics.record(UpstreamMetrics.Outcome.OK, start);
+                    staleCache.put(SIMILAR_IDS_ENDPOINT, productId, similarIds);
+                    logger.debug("GetSimilarIds async request with id={} returned {}", productId, similarIds);
+                    return similarIds;
+                });
     }
 
     /**
      * Returns the product detail for a given productId. It uses cache to ensure that only 1 call to the service is
      * done if many products have another as similar product (instead of calling getProductDetail one time per
      * another one that has it as similar). If there is any kind of problem in the request, null is returned instead.
+     * Product details are stored in the cache as CompactProductDetail.
      *
      * @param productId id of the product
      * @return product detail of the product or null
      */
-    @Cacheable(value = "productDetail", sync = true)
     public ProductDetail getProductDetail(@NotNull String productId) {
+        Cache cache = cacheManager.getCache(PRODUCT_DETAIL_CACHE);
+        if (cache == null) {
+            return loadProductDetail(productId);
+        }
+        CompactProductDetail cached;
+        try {
+            // Same as @Cacheable(sync = true), but the cached value is the compact representation
+            cached = cache.get(productId, () -> CompactProductDetail.of(productId, loadProductDetail(productId)));
+        } catch (Cache.ValueRetrievalException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return cached == null ? null : cached.toProductDetail();
+    }
+
+    /**
+     * Same as getProductDetail, but without cache. It is used to refresh cache entries.
+     *
+     * @param productId id of the product
+     * @return product detail of the product or null
+     */
+    public ProductDetail loadProductDetail(@NotNull String productId) {
+        if (isNegativeCached(PRODUCT_DETAIL_ENDPOINT, productId)) {
+            return null;
+        }
+        return load(productDetailSingleFlight, productId, this::fetchProductDetail);
+    }
+
+    /**
+     * Fetches the value coalesced with other in-flight calls, so only one request for the same product is sent to
+     * product-service and the others share its result. If the deadline of the call that was in flight expired,
+     * it is fetched again, unless the deadline of the current thread has expired too.
+     */
+    private <T> T load(SingleFlight<String, T> singleFlight, String productId, Function<String, T> fetch) {
+        Deadline deadline = Deadline.current();
+        while (true) {
+            if (deadline != null && deadline.isExpired()) {
+                throw new DeadlineExceededException("Deadline exceeded before requesting id=" + productId);
+            }
+            try {
+                return singleFlight.execute(productId, () -> fetch.apply(productId));
+            } catch (DeadlineExceededException e) {
+                if (deadline != null) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private ProductDetail fetchProductDetail(String productId) {
+        long start = System.nanoTime();
+        Duration timeout = deadlineTimeout(Deadline.current());
         try {
             logger.debug("GetProductDetail request sent with id={}", productId);
-            ProductDetail productDetail = productsServiceProxy.getProductDetail(productId);
+            Request.Options options = requestOptions(timeout);
+            ProductDetail productDetail = productDetailCircuitBreaker.call(() -> productDetailHedger.call(() -> limited(
+                    () -> options == null
+                            ? productsServiceProxy.getProductDetail(productId)
+                            : productsServiceProxy.getProductDetail(productId, options))));
             logger.debug("GetProductDetail request sent with id={} returned {}", productId, productDetail);
-            Set<ConstraintViolation<ProductDetail>> validationErrors = validator.validate(productDetail);
-            if (!validationErrors.isEmpty()) {
-                logger.warn("Error with id={}. Incorrect data in response. Data: {}. Error: {}", productId,
-                        productDetail, validationErrors);
-                return null;
-            }
-            return productDetail;
-        } catch (FeignException e) {
-            logger.debug("Error with id={}. {}.", productId, e.getMessage());
+            return recordValidated(productId, productDetail, start);
         } catch (Exception e) {
-            logger.error("Unexpected error with id={}.", productId, e);
+            productDetailMetrics.record(e, start);
+            return handleError(PRODUCT_DETAIL_ENDPOINT, productId, e, timeout != null);
+        }
+    }
+
+    /**
+     * Async version of getProductDetail. It shares the cache with getProductDetail. It only completes
+     * exceptionally with LimitExceededException, or with DeadlineExceededException if it is called with a Deadline
+     * that expires before the answer: if there is any other kind of problem in the request, the future is completed
+     * with null.
+     *
+     * @param productId id of the product
+     * @return a future with the product detail of the product or null
+     */
+    public CompletableFuture<ProductDetail> getProductDetailAsync(@NotNull String productId) {
+        return getCachedAsync(PRODUCT_DETAIL_CACHE, PRODUCT_DETAIL_ENDPOINT, productId, productDetailSingleFlight,
+                this::fetchProductDetailAsync, productDetail -> CompactProductDetail.of(productId, productDetail),
+                cached -> ((CompactProductDetail) cached).toProductDetail());
+    }
+
+    private CompletableFuture<ProductDetail> fetchProductDetailAsync(String productId, Deadline deadline) {
+        logger.debug("GetProductDetail async request sent with id={}", productId);
+        long start = System.nanoTime();
+        boolean deadlineBound = deadlineTimeout(deadline) != null;
+        return productDetailCircuitBreaker.callAsync(() -> productDetailHedger.callAsync(() -> limitedAsync(
+                        () -> deadlineBound
+                                ? asyncProductsServiceProxy.getProductDetail(productId, deadlineTimeout(deadline))
+                                : asyncProductsServiceProxy.getProductDetail(productId))))
+                .thenApply(productDetail -> {
+                    logger.debug("GetProductDetail async request sent with id={} returned {}", productId,
+                            productDetail);
+                    return recordValidated(productId, productDetail, start);
+                })
+                .exceptionally(e -> {
+                    productDetailMetrics.record(e, start);
+                    return handleError(PRODUCT_DETAIL_ENDPOINT, productId, e, deadlineBound);
+                });
+    }
+
+    /**
+     * Returns the cached value if present. Otherwise, the value is fetched (coalesced with other in-flight calls)
+     * with the Deadline of the current thread and stored in the cache, unless the last request failed and it is still
+     * in NegativeCache. @Cacheable can not be used because it does not support futures. Non-null values are
+     * converted with toCached before storing them and with fromCached after reading them.
+     */
+    private <T> CompletableFuture<T> getCachedAsync(String cacheName, String endpoint, String productId,
+                                                    SingleFlight<String, T> singleFlight,
+                                                    BiFunction<String, Deadline, CompletableFuture<T>> fetch,
+                                                    Function<T, Object> toCached, Function<Object, T> fromCached) {
+        Cache cache = cacheManager.getCache(cacheName);
+        Cache.ValueWrapper cached = cache == null ? null : cache.get(productId);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached.get() == null ? null : fromCached.apply(cached.get()));
+        }
+        if (isNegativeCached(endpoint, productId)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Deadline deadline = Deadline.current();
+        return loadAsync(singleFlight, productId, deadline, () -> fetch.apply(productId, deadline).thenApply(value -> {
+            if (cache != null) {
+                cache.put(productId, value == null ? null : toCached.apply(value));
+            }
+            return value;
+        }));
+    }
+
+    /**
+     * Async version of load
+     */
+    private <T> CompletableFuture<T> loadAsync(SingleFlight<String, T> singleFlight, String productId,
+                                               Deadline deadline, Supplier<CompletableFuture<T>> fetch) {
+        if (deadline != null && deadline.isExpired()) {
+            return CompletableFuture.failedFuture(
+                    new DeadlineExceededException("Deadline exceeded before requesting id=" + productId));
+        }
+        return singleFlight.executeAsync(productId, fetch).exceptionallyCompose(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            return cause instanceof DeadlineExceededException && deadline == null
+                    ? loadAsync(singleFlight, productId, null, fetch)
+                    : CompletableFuture.failedFuture(cause);
+        });
+    }
+
+    /**
+     * Runs a call to product-service with a permit of the limiter. Timeouts shrink the limit; any other answer (even
+     * an error) is a latency sample. It is called once per request, so a hedged request takes its own permit, and
+     * requests interrupted or cancelled because they lost against their hedge are ignored. When the limit is reached,
+     * it throws LimitExceededException, which handleError rethrows, so public methods throw it (async methods complete
+     * exceptionally with it) instead of returning null. The circuit breaker of each endpoint wraps it.
+     */
+    private <T> T limited(Supplier<T> call) {
+        AdaptiveLimiter.Permit permit = limiter.acquire();
+        try {
+            T result = call.get();
+            permit.onSuccess();
+            return result;
+        } catch (RuntimeException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                permit.onIgnore();
+            } else {
+                release(permit, e);
+            }
+            throw e;
+        }
+    }
+
+    private <T> CompletableFuture<T> limitedAsync(Supplier<CompletableFuture<T>> call) {
+        AdaptiveLimiter.Permit permit;
+        try {
+            permit = limiter.acquire();
+        } catch (LimitExceededException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        try {
+            CompletableFuture<T> request = call.get();
+            CompletableFuture<T> limited = request.whenComplete((value, e) -> {
+                if (e == null) {
+                    permit.onSuccess();
+                } else if (e instanceof CancellationException) {
+                    permit.onIgnore();
+                } else {
+                    release(permit, e);
+                }
+            });
+            limited.whenComplete((value, e) -> {
+                if (limited.isCancelled()) {
+                    request.cancel(true);
+                }
+            });
+            return limited;
+        } catch (RuntimeException e) {
+            permit.onIgnore();
+            throw e;
+        }
+    }
+
+    private static void release(AdaptiveLimiter.Permit permit, Throwable e) {
+        if (FailureReason.of(e) == FailureReason.TIMEOUT) {
+            permit.onDropped();
+        } else {
+            permit.onSuccess();
+        }
+    }
+
+    /**
+     * Validates the product detail returned by a request that started at the given time, records the request and
+     * keeps the product detail in StaleCache if it is valid
+     */
+    private ProductDetail recordValidated(String productId, ProductDetail productDetail, long startNanos) {
+        ProductDetail validated = validate(productId, productDetail);
+        productDetailMetrics.record(validated == null ? UpstreamMetrics.Outcome.VALIDATION_FAILED
+                : UpstreamMetrics.Outcome.OK, startNanos);
+        if (validated != null) {
+            staleCache.put(PRODUCT_DETAIL_ENDPOINT, productId, CompactProductDetail.of(productId, validated));
+        }
+        return validated;
+    }
+
+    /**
+     * Validates a product detail with ProductDetailValidator (without reflection) and times the validation. Invalid
+     * product details are kept in NegativeCache.
+     */
+    private ProductDetail validate(String productId, ProductDetail productDetail) {
+        long start = System.nanoTime();
+        boolean valid = ProductDetailValidator.isValid(productDetail);
+        validationTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (!valid) {
+            logger.warn("Error with id={}. Incorrect data in response. Data: {}. Error: {}", productId,
+                    productDetail, ProductDetailValidator.violations(productDetail));
+            negativeCache.put(PRODUCT_DETAIL_ENDPOINT, productId, FailureReason.VALIDATION);
+            return null;
+        }
+        return productDetail;
+    }
+
+    /**
+     * Returns the timeout of a request to product-service sent now with the given deadline: the time until the
+     * deadline (rounded up to milliseconds, so it does not expire before it), or null if there is no deadline or the
+     * configured read timeout is shorter (so the configured timeouts are used). Only timeouts of requests with a
+     * timeout derived from the deadline are caused by it. In async mode too, requests are aborted by the HTTP client
+     * when the deadline expires.
+     */
+    private Duration deadlineTimeout(Deadline deadline) {
+        if (deadline == null) {
+            return null;
+        }
+        Duration remaining = deadline.remaining();
+        if (remaining.compareTo(readTimeout) >= 0) {
+            return null;
+        }
+        return Duration.ofMillis(Math.max(1, (remaining.toNanos() + 999_999) / 1_000_000));
+    }
+
+    /**
+     * Returns the timeouts of a request to product-service with the given deadline timeout, or null if it is null (so
+     * the configured timeouts are used). The connect timeout is never longer than the configured one.
+     */
+    private Request.Options requestOptions(Duration timeout) {
+        if (timeout == null) {
+            return null;
+        }
+        return new Request.Options(Math.min(timeout.toMillis(), connectTimeout.toMillis()), TimeUnit.MILLISECONDS,
+                timeout.toMillis(), TimeUnit.MILLISECONDS, true);
+    }
+
+    private boolean isNegativeCached(String endpoint, String productId) {
+        FailureReason reason = negativeCache.get(endpoint, productId);
+        if (reason != null) {
+            logger.debug("Error with id={} is cached. Reason: {}.", productId, reason);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the last valid result of an endpoint kept by StaleCache, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T staleValue(String endpoint, String productId) {
+        Object value = staleCache.get(endpoint, productId);
+        return (T) (value instanceof CompactProductDetail compact ? compact.toProductDetail() : value);
+    }
+
+    /**
+     * Handles a failed request. Timeouts of requests with a timeout derived from the deadline (deadlineBound) throw
+     * DeadlineExceededException instead of being cached as failed requests. Failed requests are kept in NegativeCache,
+     * so they are not sent again until the TTL for the reason of the failure expires. Requests not sent because the
+     * circuit breaker is open return the last valid result kept by StaleCache (or null), and nothing is stored in
+     * NegativeCache.
+     */
+    private <T> T handleError(String endpoint, String productId, Throwable e, boolean deadlineBound) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof LimitExceededException limitExceededException) {
+            logger.debug("Request with id={} rejected. {}.", productId, cause.getMessage());
+            throw limitExceededException;
+        }
+        if (cause instanceof CallNotPermittedException) {
+            logger.debug("Request with id={} not sent. {}.", productId, cause.getMessage());
+            return staleValue(endpoint, productId);
+        }
+        FailureReason reason = FailureReason.of(e);
+        if (reason == FailureReason.TIMEOUT && deadlineBound) {
+            logger.debug("Deadline exceeded with id={}.", productId);
+            throw new DeadlineExceededException("Deadline exceeded with id=" + productId);
+        }
+        negativeCache.put(endpoint, productId, reason);
+        if (cause instanceof FeignException || cause instanceof ProductsServiceResponseException
+                || cause instanceof IOException) {
+            logger.debug("Error with id={}. {}.", productId, cause.getMessage());
+        } else {
+            logger.error("Unexpected error with id={}.", productId, cause);
         }
         return null;
     }
@@ -1,18 +1,45 @@
 package com.javierdelgado.similarproducts.services;
 
+import com.javierdelgado.similarproducts.limiter.LimitExceededException;
 import com.javierdelgado.similarproducts.models.ProductDetail;
+import com.javierdelgado.similarproducts.models.SimilarProducts;
+import com.javierdelgado.similarproducts.services.deadline.Deadline;
+import com.javierdelgado.similarproducts.services.deadline.DeadlineExceededException;
+import com.javierdelgado.similarproducts.services.fanout.FanOutExecutor;
+import com.javierdelgado.similarproducts.services.fanout.FanOutMetrics;
+import com.javierdelgado.similarproducts.services.fanout.FanOutProperties;
+import com.javierdelgado.similarproducts.services.prefetch.Prefetcher;
+import com.javierdelgado.similarproducts.services.singleflight.SingleFlight;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.validation.constraints.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Component;
 import org.springframework.validation.annotation.Validated;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
- * Class that manages business logic related to similar products service.
+ * Class that manages business logic related to similar products service. Whenever a list of similar products is
+ * fetched (not when it is served from the similarProductDetail cache), the similar products of the most similar ones
+ * are prefetched if prefetch is enabled (see Prefetcher).
  *
  * @see
  * <a href="https://github.com/dalogax/backendDevTest/blob/main/similarProducts.yaml">Yaml with openapi specifications</a>
@@ -21,12 +48,30 @@ import java.util.List;
 @Validated
 public class SimilarProductsService {
 
+    public static final String SIMILAR_PRODUCT_DETAIL_CACHE = "similarProductDetail";
+
     private final Logger logger;
     private final ProductsService productsService;
+    private final FanOutExecutor fanOutExecutor;
+    private final CacheManager cacheManager;
+    private final FanOutProperties fanOutProperties;
+    private final FanOutMetrics fanOutMetrics;
+    private final SingleFlight<String, List<ProductDetail>> singleFlight;
+    private final ObjectProvider<Prefetcher> prefetcher;
 
-    public SimilarProductsService(@NotNull ProductsService productsService) {
+    public SimilarProductsService(@NotNull ProductsService productsService, @NotNull FanOutExecutor fanOutExecutor,
+                                  @NotNull CacheManager cacheManager, @NotNull FanOutProperties fanOutProperties,
+                                  @NotNull MeterRegistry meterRegistry,
+                                  @NotNull ObjectProvider<Prefetcher> prefetcher) {
         this.logger = LoggerFactory.getLogger(SimilarProductsService.class);
         this.productsService = productsService;
+        this.fanOutExecutor = fanOutExecutor;
+        this.cacheManager = cacheManager;
+        this.fanOutProperties = fanOutProperties;
+        this.fanOutMetrics = new FanOutMetrics(meterRegistry);
+        this.singleFlight = new SingleFlight<>(SIMILAR_PRODUCT_DETAIL_CACHE, meterRegistry);
+        // Prefetcher loads similar products with this service, so it is looked up when it is used
+        this.prefetcher = prefetcher;
         logger.info("SimilarProductsService initialized successfully");
     }
 
@@ -34,30 +79,436 @@ public class SimilarProductsService {
      * Returns the details of the similar products to a given one ordered by similarity. If the product can not be
      * found or there is any problem with the products-service, it will return null. If any of the similar products
      * can not be found, or it has similar data, it will not be included in the response. It uses cache to reduce the
-     * numbers of calls to the products-service.
+     * numbers of calls to the products-service. The details are fetched concurrently by the FanOutExecutor (see
+     * getSimilarProductsAsync for the non-blocking version).
      *
      * @param productId id of the product
      * @return list of detail of the similar products or null
      */
-    @Cacheable(value = "similarProductDetail", sync = true)
+    @Cacheable(value = SIMILAR_PRODUCT_DETAIL_CACHE, sync = true)
     @SuppressWarnings("java:S1168")
     public List<ProductDetail> getSimilarProducts(@NotNull String productId) {
-        List<String> similarProductIds = productsService.getSimilarIds(productId);
+        return loadSimilarProducts(productId);
+    }
+
+    /**
+     * Same as getSimilarProducts, but without the similarProductDetail cache. It is used to refresh cache entries.
+     *
+     * @param productId id of the product
+     * @return list of detail of the similar products or null
+     */
+    @SuppressWarnings("java:S1168")
+    public List<ProductDetail> loadSimilarProducts(@NotNull String productId) {
+        List<String> similarProductIds = window(productsService.getSimilarIds(productId), 0, null);
         if (similarProductIds == null) {
             logger.debug("Product with id={} can not be found", productId);
             return null;
         }
-        return similarProductIds.parallelStream().collect(ArrayList::new, this::addProductDetail, ArrayList::addAll);
+        long start = System.nanoTime();
+        List<List<ProductDetail>> productDetails = fanOutExecutor.map(similarProductIds, this::getProductDetailAsList);
+        recordFanOut(similarProductIds.size(), start);
+        List<ProductDetail> list = productDetails.stream()
+                .flatMap(Collection::stream)
+                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        prefetch(list);
+        return list;
+    }
+
+    /**
+     * Same as getSimilarProducts, but it answers before the deadline. If the deadline expires, the details fetched so
+     * far are returned (in the same order) and the result is marked as partial. The timeouts of the requests are
+     * derived from the deadline, so outstanding requests are aborted when it expires. Partial results are not cached.
+     *
+     * @param productId id of the product
+     * @param deadline  deadline of the request. If it is null, it is the same as getSimilarProducts
+     * @return details of the similar products (null if the product can not be found) and whether they are partial
+     */
+    public SimilarProducts getSimilarProducts(@NotNull String productId, Deadline deadline) {
+        Cache cache = cacheManager.getCache(SIMILAR_PRODUCT_DETAIL_CACHE);
+        Cache.ValueWrapper cached = cache == null ? null : cache.get(productId);
+        if (cached != null) {
+            return new SimilarProducts(castList(cached.get()), false);
+        }
+        if (deadline == null) {
+            return new SimilarProducts(getSimilarProducts(productId), false);
+        }
+        SimilarProducts similarProducts = getSimilarProductsSync(productId, 0, null, deadline);
+        if (!similarProducts.partial() && cache != null) {
+            cache.put(productId, similarProducts.productDetails());
+        }
+        return similarProducts;
+    }
+
+    /**
+     * Same as getSimilarProducts, but only the details of a window of the similar ids are fetched: the ones from
+     * offset (0 is the most similar one) up to limit ids. Windows are not cached by themselves: they are built from
+     * the similarIds and productDetail caches of ProductsService, so every window of a product shares the same
+     * cached entries. The whole list (offset 0 and no limit) uses the similarProductDetail cache as usual.
+     *
+     * @param productId id of the product
+     * @param offset    number of similar ids that are skipped
+     * @param limit     maximum number of similar ids whose details are fetched. If it is null, there is no limit
+     * @param deadline  deadline of the request or null
+     * @return details of the similar products (null if the product can not be found) and whether they are partial
+     */
+    public SimilarProducts getSimilarProducts(@NotNull String productId, int offset, Integer limit,
+                                              Deadline deadline) {
+        if (offset == 0 && limit == null) {
+            return getSimilarProducts(productId, deadline);
+        }
+        return getSimilarProductsSync(productId, offset, limit, deadline);
+    }
+
+    /**
+     * Returns true if the async methods can be used (that is, if ProductsService is async)
+     *
+     * @return true if the async methods can be used
+     */
+    public boolean isAsync() {
+        return productsService.isAsync();
+    }
+
+    /**
+     * Async version of getSimilarProducts with a window and a deadline. No thread is held while the similar ids and
+     * the details are fetched, or while it waits for the deadline. It can only be used if ProductsService is async.
+     * The future only completes exceptionally with LimitExceededException, when the similar ids are rejected by the
+     * limit of concurrent requests to products-service.
+     *
+     * @param productId id of the product
+     * @param offset    number of similar ids that are skipped
+     * @param limit     maximum number of similar ids whose details are fetched. If it is null, there is no limit
+     * @param deadline  deadline of the request or null
+     * @return a future with the details of the similar products (null if the product can not be found) and whether
+     * they are partial
+     */
+    public CompletableFuture<SimilarProducts> getSimilarProductsAsync(@NotNull String productId, int offset,
+                                                                      Integer limit, Deadline deadline) {
+        if (offset != 0 || limit != null) {
+            return fetchSimilarProductsAsync(productId, offset, limit, deadline);
+        }
+        Cache cache = cacheManager.getCache(SIMILAR_PRODUCT_DETAIL_CACHE);
+        Cache.ValueWrapper cached = cache == null ? null : cache.get(productId);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(new SimilarProducts(castList(cached.get()), false));
+        }
+        if (deadline == null) {
+            return getSimilarProductsAsync(productId).thenApply(list -> new SimilarProducts(list, false));
+        }
+        return fetchSimilarProductsAsync(productId, 0, null, deadline).thenApply(similarProducts -> {
+            if (!similarProducts.partial() && cache != null) {
+                cache.put(productId, similarProducts.productDetails());
+            }
+            return similarProducts;
+        });
+    }
+
+    private SimilarProducts getSimilarProductsSync(String productId, int offset, Integer limit, Deadline deadline) {
+        List<String> similarProductIds;
+        try {
+            similarProductIds = deadline == null
+                    ? window(productsService.getSimilarIds(productId), offset, limit)
+                    : deadline.run(() -> window(productsService.getSimilarIds(productId), offset, limit));
+        } catch (DeadlineExceededException e) {
+            logger.debug("Similar ids of product with id={} were not fetched before the deadline", productId);
+            return new SimilarProducts(new ArrayList<>(), true);
+        }
+        if (similarProductIds == null) {
+            logger.debug("Product with id={} can not be found", productId);
+            return new SimilarProducts(null, false);
+        }
+        long start = System.nanoTime();
+        FanOutExecutor.Result<List<ProductDetail>> result = fanOutExecutor.map(similarProductIds,
+                this::getProductDetailAsList, deadline);
+        recordFanOut(similarProductIds.size(), start);
+        List<ProductDetail> list = result.results().stream()
+                .filter(Objects::nonNull)
+                .flatMap(Collection::stream)
+                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        if (result.complete()) {
+            prefetch(list);
+        }
+        return new SimilarProducts(list, !result.complete());
+    }
+
+    private CompletableFuture<SimilarProducts> fetchSimilarProductsAsync(String productId, int offset, Integer limit,
+                                                                         Deadline deadline) {
+        CompletableFuture<List<String>> similarIdsFuture = withDeadline(deadline,
+                () -> productsService.getSimilarIdsAsync(productId));
+        return within(similarIdsFuture, deadline).handle((similarIds, e) -> {
+            if (e != null) {
+                Throwable cause = unwrap(e);
+                if (cause instanceof DeadlineExceededException || cause instanceof TimeoutException) {
+                    logger.debug("Similar ids of product with id={} were not fetched before the deadline", productId);
+                    return CompletableFuture.completedFuture(new SimilarProducts(new ArrayList<>(), true));
+                }
+                return CompletableFuture.<SimilarProducts>failedFuture(cause);
+            }
+            List<String> similarProductIds = window(similarIds, offset, limit);
+            if (similarProductIds == null) {
+                logger.debug("Product with id={} can not be found", productId);
+                return CompletableFuture.completedFuture(new SimilarProducts(null, false));
+            }
+            return fetchProductDetailsAsync(similarProductIds, deadline);
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Fetches the details of the given similar ids. When the deadline expires (or the requests are aborted by it),
+     * the details fetched so far are returned (in the same order) and the result is marked as partial.
+     */
+    private CompletableFuture<SimilarProducts> fetchProductDetailsAsync(List<String> similarProductIds,
+                                                                        Deadline deadline) {
+        long start = System.nanoTime();
+        List<CompletableFuture<ProductDetail>> productDetails = withDeadline(deadline, () -> similarProductIds.stream()
+                .map(this::getProductDetailAsync)
+                .toList());
+        CompletableFuture<Void> all = CompletableFuture.allOf(productDetails.toArray(CompletableFuture[]::new));
+        return within(all, deadline).handle((ignored, e) -> {
+            recordFanOut(similarProductIds.size(), start);
+            List<ProductDetail> list = new ArrayList<>(similarProductIds.size());
+            for (int i = 0; i < similarProductIds.size(); i++) {
+                CompletableFuture<ProductDetail> productDetail = productDetails.get(i);
+                if (productDetail.isDone() && !productDetail.isCompletedExceptionally()) {
+                    addProductDetail(list, similarProductIds.get(i), productDetail.join());
+                }
+            }
+            if (e == null) {
+                prefetch(list);
+            }
+            return new SimilarProducts(list, e != null);
+        });
+    }
+
+    /**
+     * Runs the supplier with the deadline as the deadline of the current thread (or without deadline if it is null),
+     * so the requests sent by the async methods of ProductsService derive their timeouts from it
+     */
+    private static <T> T withDeadline(Deadline deadline, Supplier<T> supplier) {
+        return deadline == null ? supplier.get() : deadline.run(supplier);
+    }
+
+    /**
+     * Returns a future that completes like the given one, or with TimeoutException when the deadline expires (it
+     * is the same future if there is no deadline). The given future is not completed by the timeout, as it can be
+     * shared with other requests. Futures of ProductsService only complete exceptionally when the deadline expires
+     * or when the limit of concurrent requests to products-service rejects them.
+     */
+    private static <T> CompletableFuture<T> within(CompletableFuture<T> future, Deadline deadline) {
+        return deadline == null ? future
+                : future.copy().orTimeout(deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<ProductDetail> castList(Object value) {
+        return (List<ProductDetail>) value;
+    }
+
+    /**
+     * Async version of getSimilarProducts. It shares the similarProductDetail cache with getSimilarProducts, and
+     * concurrent calls for the same product are coalesced. All the requests to products-service are non-blocking, so
+     * no thread is held while they are in flight. It can only be used if ProductsService is async.
+     *
+     * @param productId id of the product
+     * @return a future with the list of detail of the similar products or null
+     */
+    public CompletableFuture<List<ProductDetail>> getSimilarProductsAsync(@NotNull String productId) {
+        Cache cache = cacheManager.getCache(SIMILAR_PRODUCT_DETAIL_CACHE);
+        Cache.ValueWrapper cached = cache == null ? null : cache.get(productId);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(castList(cached.get()));
+        }
+        return singleFlight.executeAsync(productId, () -> loadSimilarProductsAsync(productId).thenApply(list -> {
+            // Products that can not be found are cached too (as null), like @Cacheable does
+            if (cache != null) {
+                cache.put(productId, list);
+            }
+            return list;
+        }));
+    }
+
+    private CompletableFuture<List<ProductDetail>> loadSimilarProductsAsync(String productId) {
+        return productsService.getSimilarIdsAsync(productId).thenCompose(ids -> {
+            List<String> similarProductIds = window(ids, 0, null);
+            if (similarProductIds == null) {
+                logger.debug("Product with id={} can not be found", productId);
+                return CompletableFuture.completedFuture(null);
+            }
+            long start = System.nanoTime();
+            List<CompletableFuture<ProductDetail>> productDetails = similarProductIds.stream()
+                    .map(this::getProductDetailAsync)
+                    .toList();
+            return CompletableFuture.allOf(productDetails.toArray(CompletableFuture[]::new)).thenApply(ignored -> {
+                recordFanOut(similarProductIds.size(), start);
+                List<ProductDetail> list = new ArrayList<>(similarProductIds.size());
+                for (int i = 0; i < similarProductIds.size(); i++) {
+                    addProductDetail(list, similarProductIds.get(i), productDetails.get(i).join());
+                }
+                prefetch(list);
+                return list;
+            });
+        });
+    }
+
+    /**
+     * Returns a window of the ids of the similar products to a given one ordered by similarity: the ones from offset
+     * (0 is the most similar one) up to limit ids, and never beyond similar-products.fan-out.max-width. It uses the
+     * similarIds cache of ProductsService.
+     *
+     * @param productId id of the product
+     * @param offset    number of similar ids that are skipped
+     * @param limit     maximum number of similar ids returned. If it is null, all the ids from offset are returned
+     * @return the window of the ids of the similar products or null if the product can not be found
+     */
+    @SuppressWarnings("java:S1168")
+    public List<String> getSimilarIds(@NotNull String productId, int offset, Integer limit) {
+        List<String> similarIds = productsService.getSimilarIds(productId);
+        if (similarIds == null) {
+            logger.debug("Product with id={} can not be found", productId);
+            return null;
+        }
+        return fanOutProperties.window(similarIds, offset, limit).stream().filter(Objects::nonNull).toList();
+    }
+
+    /**
+     * Fetches the details of the given similar ids concurrently (by the FanOutExecutor) and passes them to the action
+     * in the same order as the ids, every one as soon as it and all the earlier ones are available. Details that can
+     * not be found (or are rejected by the limit of concurrent requests to products-service) are skipped. Only a few
+     * details are held at the same time, whatever the number of ids. The first details are prefetched as they are
+     * passed to the action, like the first ones of a list.
+     *
+     * @param similarIds ids of the similar products ordered by similarity
+     * @param action     action applied to every detail
+     */
+    public void forEachProductDetail(@NotNull List<String> similarIds, @NotNull Consumer<ProductDetail> action) {
+        long start = System.nanoTime();
+        int[] position = {0};
+        fanOutExecutor.forEachOrdered(similarIds, this::getProductDetail, productDetail -> {
+            if (productDetail != null) {
+                action.accept(productDetail);
+                prefetcher.ifAvailable(p -> p.prefetch(productDetail, position[0]++));
+            }
+        });
+        recordFanOut(similarIds.size(), start);
+    }
+
+    /**
+     * Returns the details of the similar products of several products at once, keyed by product id in the same
+     * order as the given ids. Every product has the same result as getSimilarProducts (null if it can not be found).
+     * The details of the products that are similar to more than one of the given ones are only fetched once. Similar
+     * ids and details are fetched concurrently by the FanOutExecutor.
+     *
+     * @param productIds ids of the products
+     * @return map with the list of detail of the similar products (or null) of every product
+     */
+    public Map<String, List<ProductDetail>> getSimilarProductsBatch(@NotNull Collection<String> productIds) {
+        List<String> distinctProductIds = productIds.stream().filter(Objects::nonNull).distinct().toList();
+        List<List<String>> similarProductIds = fanOutExecutor.map(distinctProductIds,
+                productId -> window(productsService.getSimilarIds(productId), 0, null));
+
+        List<String> distinctSimilarProductIds = similarProductIds.stream()
+                .filter(Objects::nonNull)
+                .flatMap(Collection::stream)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+        long start = System.nanoTime();
+        List<ProductDetail> productDetails = fanOutExecutor.map(distinctSimilarProductIds, this::getProductDetail);
+        recordFanOut(distinctSimilarProductIds.size(), start);
+        Map<String, ProductDetail> productDetailsById = new HashMap<>();
+        for (int i = 0; i < distinctSimilarProductIds.size(); i++) {
+            productDetailsById.put(distinctSimilarProductIds.get(i), productDetails.get(i));
+        }
+
+        Map<String, List<ProductDetail>> response = new LinkedHashMap<>();
+        for (int i = 0; i < distinctProductIds.size(); i++) {
+            List<String> ids = similarProductIds.get(i);
+            if (ids == null) {
+                logger.debug("Product with id={} can not be found", distinctProductIds.get(i));
+                response.put(distinctProductIds.get(i), null);
+                continue;
+            }
+            List<ProductDetail> list = new ArrayList<>(ids.size());
+            ids.forEach(id -> addProductDetail(list, id, productDetailsById.get(id)));
+            prefetch(list);
+            response.put(distinctProductIds.get(i), list);
+        }
+        return response;
+    }
+
+    /**
+     * Returns the similar ids whose details are fetched for a product: at most similar-products.fan-out.max-width
+     */
+    private List<String> window(List<String> similarProductIds, int offset, Integer limit) {
+        return similarProductIds == null ? null : fanOutProperties.window(similarProductIds, offset, limit);
+    }
+
+    /**
+     * Prefetches the similar products of the most similar ones of a list that has been fetched
+     */
+    private void prefetch(List<ProductDetail> similarProductDetails) {
+        prefetcher.ifAvailable(p -> p.prefetch(similarProductDetails));
+    }
+
+    /**
+     * Records the number of details fetched for a request and the time it took (from startNanos, System.nanoTime)
+     */
+    private void recordFanOut(int width, long startNanos) {
+        fanOutMetrics.record(width, startNanos);
+    }
+
+    private List<ProductDetail> getProductDetailAsList(String productId) {
+        List<ProductDetail> list = new ArrayList<>(1);
+        addProductDetail(list, productId);
+        return list;
     }
 
 
     /* Internal use only */
     public void addProductDetail(List<ProductDetail> list, String productId) {
+        addProductDetail(list, productId, productId == null ? null : getProductDetail(productId));
+    }
+
+    /**
+     * Returns the detail of a similar product, or null if it can not be found or the limit of concurrent requests to
+     * products-service rejects it: a single detail that is rejected is left out of the response, like any other
+     * failed detail, instead of failing the whole response
+     */
+    private ProductDetail getProductDetail(String productId) {
+        try {
+            return productsService.getProductDetail(productId);
+        } catch (LimitExceededException e) {
+            logger.debug("Product with id={} will not be included in the response. {}.", productId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Async version of getProductDetail
+     */
+    private CompletableFuture<ProductDetail> getProductDetailAsync(String productId) {
+        if (productId == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return productsService.getProductDetailAsync(productId).exceptionallyCompose(e -> {
+            Throwable cause = unwrap(e);
+            if (cause instanceof LimitExceededException) {
+                logger.debug("Product with id={} will not be included in the response. {}.", productId,
+                        cause.getMessage());
+                return CompletableFuture.completedFuture(null);
+            }
+            return CompletableFuture.failedFuture(cause);
+        });
+    }
+
+    private void addProductDetail(List<ProductDetail> list, String productId, ProductDetail productDetail) {
         if (productId == null) {
             logger.debug("Can not add a product with id=null");
             return;
         }
-        ProductDetail productDetail = productsService.getProductDetail(productId);
         if (productDetail == null) {
             logger.debug("Product with id={} will not be included in the response due it was not found.", productId);
             return;
@@ -0,0 +1,84 @@
+package com.javierdelgado.similarproducts.services;
+
+import com.javierdelgado.similarproducts.limiter.LimitExceededException;
+import com.javierdelgado.similarproducts.services.deadline.DeadlineExceededException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers of the requests to an endpoint of product-service, one per outcome. They are registered up front, so
+ * recording a request does not look up meters. It registers the timer similar.products.upstream.requests tagged with
+ * endpoint and outcome, with a percentile histogram.
+ */
+class UpstreamMetrics {
+
+    private final Map<Outcome, Timer> timers = new EnumMap<>(Outcome.class);
+
+    UpstreamMetrics(String endpoint, MeterRegistry meterRegistry) {
+        for (Outcome outcome : Outcome.values()) {
+            timers.put(outcome, Timer.builder("similar.products.upstream.requests")
+                    .tag("endpoint", endpoint)
+                    .tag("outcome", outcome.tag)
+                    .description("Requests to product-service")
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Records a request that started at the given time (System.nanoTime)
+     */
+    void record(Outcome outcome, long startNanos) {
+        timers.get(outcome).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records a request that started at the given time (System.nanoTime) and failed with the given exception
+     */
+    void record(Throwable e, long startNanos) {
+        record(Outcome.of(e), startNanos);
+    }
+
+    enum Outcome {
+        OK("ok"),
+        NOT_FOUND("not-found"),
+        TIMEOUT("timeout"),
+        SERVER_ERROR("server-error"),
+        VALIDATION_FAILED("validation-failed"),
+        REJECTED("rejected"),
+        CIRCUIT_OPEN("circuit-open"),
+        OTHER("other");
+
+        private final String tag;
+
+        Outcome(String tag) {
+            this.tag = tag;
+        }
+
+        static Outcome of(Throwable e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof LimitExceededException) {
+                return REJECTED;
+            }
+            if (cause instanceof CallNotPermittedException) {
+                return CIRCUIT_OPEN;
+            }
+            if (cause instanceof DeadlineExceededException) {
+                return TIMEOUT;
+            }
+            return switch (FailureReason.of(cause)) {
+                case NOT_FOUND -> NOT_FOUND;
+                case TIMEOUT -> TIMEOUT;
+                case SERVER_ERROR -> SERVER_ERROR;
+                case VALIDATION -> VALIDATION_FAILED;
+                case OTHER -> OTHER;
+            };
+        }
+    }
+}
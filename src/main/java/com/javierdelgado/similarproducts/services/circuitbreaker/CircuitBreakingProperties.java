@@ -0,0 +1,15 @@
+package com.javierdelgado.similarproducts.services.circuitbreaker;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Configuration of the circuit breakers of the endpoints of product-service. Their thresholds are the ones of
+ * resilience4j (resilience4j.circuitbreaker.instances.&lt;endpoint&gt;.*).
+ *
+ * @param enabled if false, the circuit breakers are disabled (calls are always permitted and not recorded)
+ */
+@ConfigurationProperties(prefix = "similar-products.circuit-breaker")
+public record CircuitBreakingProperties(
+        @DefaultValue("true") boolean enabled) {
+}
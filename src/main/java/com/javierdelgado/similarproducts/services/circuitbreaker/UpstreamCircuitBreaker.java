@@ -0,0 +1,128 @@
+package com.javierdelgado.similarproducts.services.circuitbreaker;
+
+import com.javierdelgado.similarproducts.limiter.LimitExceededException;
+import com.javierdelgado.similarproducts.services.FailureReason;
+import com.javierdelgado.similarproducts.services.deadline.Deadline;
+import com.javierdelgado.similarproducts.services.deadline.DeadlineExceededException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker of an endpoint of product-service, on top of a resilience4j CircuitBreaker. While it is open, calls
+ * are rejected immediately with CallNotPermittedException, without waiting for product-service.
+ * <p>
+ * Only the failures of product-service are recorded as errors: timeouts and server errors (5xx or unreachable). Other
+ * answers (404, invalid data...) are successes, and slow ones are recorded as slow calls by resilience4j. Calls
+ * rejected by the limiter are not recorded at all. Timeouts of calls with a Deadline (including
+ * DeadlineExceededException) are recorded as errors too, unless the time left by the deadline when the call started
+ * was shorter than the slow call duration threshold: then the timeout says nothing about product-service.
+ */
+public class UpstreamCircuitBreaker {
+
+    private final CircuitBreaker circuitBreaker;
+
+    public UpstreamCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * Runs a call if the circuit breaker permits it, and records its outcome
+     *
+     * @param call call to product-service
+     * @return the result of the call
+     * @throws CallNotPermittedException if the circuit breaker is open
+     */
+    public <T> T call(Supplier<T> call) {
+        acquirePermission();
+        Duration budget = budget();
+        long start = circuitBreaker.getCurrentTimestamp();
+        try {
+            T result = call.get();
+            onSuccess(start);
+            return result;
+        } catch (RuntimeException e) {
+            onError(start, e, budget);
+            throw e;
+        }
+    }
+
+    /**
+     * Async version of call. The returned future completes exceptionally with CallNotPermittedException if the
+     * circuit breaker is open.
+     *
+     * @param call call to product-service
+     * @return the future returned by the call
+     */
+    public <T> CompletableFuture<T> callAsync(Supplier<CompletableFuture<T>> call) {
+        try {
+            acquirePermission();
+        } catch (CallNotPermittedException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        Duration budget = budget();
+        long start = circuitBreaker.getCurrentTimestamp();
+        try {
+            return call.get().whenComplete((value, e) -> {
+                if (e == null) {
+                    onSuccess(start);
+                } else {
+                    onError(start, e, budget);
+                }
+            });
+        } catch (RuntimeException e) {
+            circuitBreaker.releasePermission();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the current state of the circuit breaker
+     *
+     * @return the state
+     */
+    public CircuitBreaker.State getState() {
+        return circuitBreaker.getState();
+    }
+
+    private void acquirePermission() {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            throw CallNotPermittedException.createCallNotPermittedException(circuitBreaker);
+        }
+    }
+
+    private void onSuccess(long start) {
+        circuitBreaker.onSuccess(circuitBreaker.getCurrentTimestamp() - start, circuitBreaker.getTimestampUnit());
+    }
+
+    /**
+     * Returns the time left by the Deadline of the current thread, or null if there is no deadline
+     */
+    private static Duration budget() {
+        Deadline deadline = Deadline.current();
+        return deadline == null ? null : deadline.remaining();
+    }
+
+    private void onError(long start, Throwable e, Duration budget) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof LimitExceededException) {
+            circuitBreaker.releasePermission();
+            return;
+        }
+        FailureReason reason = cause instanceof DeadlineExceededException ? FailureReason.TIMEOUT
+                : FailureReason.of(cause);
+        if (reason == FailureReason.TIMEOUT && budget != null
+                && budget.compareTo(circuitBreaker.getCircuitBreakerConfig().getSlowCallDurationThreshold()) < 0) {
+            circuitBreaker.releasePermission();
+        } else if (reason == FailureReason.TIMEOUT || reason == FailureReason.SERVER_ERROR) {
+            circuitBreaker.onError(circuitBreaker.getCurrentTimestamp() - start, circuitBreaker.getTimestampUnit(),
+                    cause);
+        } else {
+            onSuccess(start);
+        }
+    }
+}
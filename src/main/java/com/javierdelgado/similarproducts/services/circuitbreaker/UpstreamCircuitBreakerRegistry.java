@@ -0,0 +1,67 @@
+package com.javierdelgado.similarproducts.services.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.constraints.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates and keeps one UpstreamCircuitBreaker per endpoint of product-service, on top of the resilience4j
+ * CircuitBreaker with the same name (configured by resilience4j.circuitbreaker.instances.&lt;endpoint&gt;.*, which
+ * also registers its health indicator and its resilience4j.circuitbreaker.* metrics). Every state transition is
+ * logged and counted in similar.products.circuit.breaker.transitions, tagged with name, from and to.
+ */
+@Component
+public class UpstreamCircuitBreakerRegistry {
+
+    private final Logger logger = LoggerFactory.getLogger(UpstreamCircuitBreakerRegistry.class);
+    private final Map<String, UpstreamCircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final CircuitBreakingProperties properties;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final MeterRegistry meterRegistry;
+
+    public UpstreamCircuitBreakerRegistry(@NotNull CircuitBreakingProperties properties,
+                                          @NotNull CircuitBreakerRegistry circuitBreakerRegistry,
+                                          @NotNull MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Returns the UpstreamCircuitBreaker with the given name, creating it if it does not exist
+     *
+     * @param name name of the endpoint
+     * @return the UpstreamCircuitBreaker
+     */
+    public UpstreamCircuitBreaker circuitBreaker(String name) {
+        return circuitBreakers.computeIfAbsent(name, this::create);
+    }
+
+    private UpstreamCircuitBreaker create(String name) {
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(name);
+        circuitBreaker.getEventPublisher().onStateTransition(event -> {
+            CircuitBreaker.StateTransition transition = event.getStateTransition();
+            logger.info("Circuit breaker {} changed from {} to {}", name, transition.getFromState(),
+                    transition.getToState());
+            Counter.builder("similar.products.circuit.breaker.transitions")
+                    .tag("name", name)
+                    .tag("from", transition.getFromState().name())
+                    .tag("to", transition.getToState().name())
+                    .description("State transitions of the circuit breakers of product-service")
+                    .register(meterRegistry)
+                    .increment();
+        });
+        if (!properties.enabled()) {
+            circuitBreaker.transitionToDisabledState();
+        }
+        return new UpstreamCircuitBreaker(circuitBreaker);
+    }
+}
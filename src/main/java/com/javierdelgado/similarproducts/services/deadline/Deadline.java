@@ -0,0 +1,84 @@
+package com.javierdelgado.similarproducts.services.deadline;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Point in time when a request must be answered. The deadline of the request being processed by a thread is
+ * available with Deadline.current() while it runs inside Deadline.run, so the timeouts of the requests to
+ * product-service can be derived from it. FanOutExecutor propagates it to the threads that it uses.
+ */
+public final class Deadline {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Returns a deadline that expires after the given timeout from now
+     *
+     * @param timeout time until the deadline
+     * @return the deadline
+     */
+    public static Deadline after(Duration timeout) {
+        return new Deadline(System.nanoTime() + timeout.toNanos());
+    }
+
+    /**
+     * Returns the deadline of the current thread
+     *
+     * @return the deadline of the current thread, or null if there is no deadline
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Returns the time until the deadline (zero if it has already expired)
+     *
+     * @return the time until the deadline
+     */
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Runs the supplier with this deadline as the deadline of the current thread
+     *
+     * @param supplier code to run
+     * @return the result of the supplier
+     */
+    public <T> T run(Supplier<T> supplier) {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return supplier.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Runs the runnable with this deadline as the deadline of the current thread
+     *
+     * @param runnable code to run
+     */
+    public void run(Runnable runnable) {
+        run(() -> {
+            runnable.run();
+            return null;
+        });
+    }
+}
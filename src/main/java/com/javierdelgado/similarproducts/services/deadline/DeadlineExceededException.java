@@ -0,0 +1,13 @@
+package com.javierdelgado.similarproducts.services.deadline;
+
+/**
+ * Thrown when a request to product-service can not be answered before the Deadline of the current thread. Unlike
+ * other failures, it is not converted to null, so the result is neither cached nor shared with callers that do not
+ * have the same deadline.
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    public DeadlineExceededException(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,28 @@
+package com.javierdelgado.similarproducts.services.deadline;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the deadline of the requests to this service.
+ *
+ * @param defaultTimeout time that a request can take when it does not have the X-Request-Timeout header. If it is not
+ *                       set, those requests have no deadline
+ */
+@ConfigurationProperties(prefix = "similar-products.deadline")
+public record DeadlineProperties(Duration defaultTimeout) {
+
+    /**
+     * Returns the deadline of a request that starts now
+     *
+     * @param timeoutMillis timeout requested by the client in milliseconds, or null to use the default one
+     * @return the deadline of the request, or null if it has no deadline
+     */
+    public Deadline deadline(Long timeoutMillis) {
+        if (timeoutMillis != null) {
+            return Deadline.after(Duration.ofMillis(timeoutMillis));
+        }
+        return defaultTimeout == null ? null : Deadline.after(defaultTimeout);
+    }
+}
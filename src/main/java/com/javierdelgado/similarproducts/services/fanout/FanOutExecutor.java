@@ -0,0 +1,240 @@
+package com.javierdelgado.similarproducts.services.fanout;
+
+import com.javierdelgado.similarproducts.services.deadline.Deadline;
+import com.javierdelgado.similarproducts.services.deadline.DeadlineExceededException;
+import jakarta.validation.constraints.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Executor that runs blocking lookups (usually calls to product-service) concurrently. It uses its own threads instead
+ * of the ForkJoin common pool, so it does not compete with other users of that pool. Depending on the configuration
+ * it runs every lookup in a virtual thread or in a bounded pool of platform threads. The number of lookups that a
+ * single call can run at the same time is limited by configuration. It can also be used as a plain Executor for
+ * single blocking tasks (without limit).
+ * <p>
+ * The Deadline of the calling thread is propagated to the lookups.
+ */
+@Component
+public class FanOutExecutor implements Executor, DisposableBean {
+
+    private final Logger logger = LoggerFactory.getLogger(FanOutExecutor.class);
+    private final ExecutorService executorService;
+    private final int maxConcurrencyPerRequest;
+
+    public FanOutExecutor(@NotNull FanOutProperties properties) {
+        this.executorService = createExecutorService(properties);
+        this.maxConcurrencyPerRequest = Math.max(1, properties.maxConcurrencyPerRequest());
+        logger.info("FanOutExecutor initialized successfully");
+    }
+
+    /**
+     * Applies the function to every item concurrently and returns the results in the same order as the items. The
+     * calling thread also runs lookups, so a call never uses more than maxConcurrencyPerRequest threads (including
+     * the calling one).
+     *
+     * @param items    items to be mapped
+     * @param function function applied to every item. Its result can be null
+     * @return list with the result of applying the function to every item, in the same order as the items
+     */
+    public <T, R> List<R> map(List<T> items, Function<T, R> function) {
+        int size = items.size();
+        AtomicReferenceArray<R> results = new AtomicReferenceArray<>(size);
+        Runnable worker = worker(items, function, results, new AtomicInteger(), new AtomicIntegerArray(size),
+                Deadline.current());
+
+        int workers = Math.min(size, maxConcurrencyPerRequest);
+        List<Future<?>> futures = new ArrayList<>(workers);
+        for (int i = 1; i < workers; i++) {
+            futures.add(executorService.submit(worker));
+        }
+        worker.run();
+        futures.forEach(FanOutExecutor::await);
+
+        List<R> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(results.get(i));
+        }
+        return list;
+    }
+
+    /**
+     * Same as map, but it does not wait beyond the deadline. If the deadline expires before every item has been
+     * mapped, the lookups that are still running are cancelled and the result has null in their positions and it is
+     * marked as not complete. A lookup that throws DeadlineExceededException is left unmapped too. The calling thread
+     * only waits, so lookups can be abandoned when the deadline expires.
+     *
+     * @param items    items to be mapped
+     * @param function function applied to every item. Its result can be null
+     * @param deadline deadline of the call. If it is null, it is the same as map
+     * @return the results in the same order as the items and whether all of them were mapped before the deadline
+     */
+    public <T, R> Result<R> map(List<T> items, Function<T, R> function, Deadline deadline) {
+        if (deadline == null) {
+            return new Result<>(map(items, function), true);
+        }
+        int size = items.size();
+        AtomicReferenceArray<R> results = new AtomicReferenceArray<>(size);
+        AtomicIntegerArray mapped = new AtomicIntegerArray(size);
+        Runnable worker = worker(items, function, results, new AtomicInteger(), mapped, deadline);
+        Runnable guardedWorker = () -> {
+            try {
+                worker.run();
+            } catch (DeadlineExceededException e) {
+                logger.debug("Lookup abandoned. {}", e.getMessage());
+            }
+        };
+
+        int workers = Math.min(size, maxConcurrencyPerRequest);
+        List<Future<?>> futures = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            futures.add(executorService.submit(guardedWorker));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get(deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
+            }
+        } catch (TimeoutException e) {
+            logger.debug("Deadline expired before all the {} items were mapped", size);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            rethrow(e);
+        }
+
+        // Results are taken before cancelling, so lookups that finish later are not included
+        List<R> list = new ArrayList<>(size);
+        boolean complete = true;
+        for (int i = 0; i < size; i++) {
+            boolean itemMapped = mapped.get(i) == 1;
+            list.add(itemMapped ? results.get(i) : null);
+            complete &= itemMapped;
+        }
+        futures.forEach(future -> future.cancel(true));
+        return new Result<>(list, complete);
+    }
+
+    /**
+     * Applies the function to every item concurrently and passes the results to the action in the same order as the
+     * items, as soon as every earlier one has been passed. At most maxConcurrencyPerRequest lookups run ahead of the
+     * action, so memory is bounded whatever the number of items. The action runs in the calling thread. If the
+     * action or a lookup throws, the outstanding lookups are cancelled and the exception is rethrown.
+     *
+     * @param items    items to be mapped
+     * @param function function applied to every item. Its result can be null
+     * @param action   action applied to every result, in the same order as the items
+     */
+    public <T, R> void forEachOrdered(List<T> items, Function<T, R> function, Consumer<R> action) {
+        Deadline deadline = Deadline.current();
+        Deque<Future<R>> window = new ArrayDeque<>(maxConcurrencyPerRequest);
+        int next = 0;
+        try {
+            while (next < items.size() || !window.isEmpty()) {
+                while (next < items.size() && window.size() < maxConcurrencyPerRequest) {
+                    T item = items.get(next++);
+                    window.add(executorService.submit(() -> deadline == null ? function.apply(item)
+                            : deadline.run(() -> function.apply(item))));
+                }
+                action.accept(get(window.poll()));
+            }
+        } finally {
+            window.forEach(future -> future.cancel(true));
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        executorService.execute(command);
+    }
+
+    @Override
+    public void destroy() {
+        executorService.shutdownNow();
+    }
+
+    private static <T, R> Runnable worker(List<T> items, Function<T, R> function, AtomicReferenceArray<R> results,
+                                          AtomicInteger next, AtomicIntegerArray mapped, Deadline deadline) {
+        int size = items.size();
+        Runnable worker = () -> {
+            int index;
+            while ((index = next.getAndIncrement()) < size && !Thread.currentThread().isInterrupted()) {
+                results.set(index, function.apply(items.get(index)));
+                mapped.set(index, 1);
+            }
+        };
+        return deadline == null ? worker : () -> deadline.run(worker);
+    }
+
+    private static <R> R get(Future<R> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a lookup", e);
+        } catch (ExecutionException e) {
+            rethrow(e);
+            return null;
+        }
+    }
+
+    private static void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a lookup", e);
+        } catch (ExecutionException e) {
+            rethrow(e);
+        }
+    }
+
+    private static void rethrow(ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+        throw new IllegalStateException("Lookup failed", e.getCause());
+    }
+
+    private ExecutorService createExecutorService(FanOutProperties properties) {
+        if (properties.mode() == FanOutProperties.Mode.VIRTUAL) {
+            try {
+                // Looked up by reflection because virtual threads are a preview feature in the target release
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+                logger.warn("Virtual threads are not available. A pool of {} platform threads will be used instead.",
+                        properties.platformPoolSize());
+            }
+        }
+        return Executors.newFixedThreadPool(properties.platformPoolSize(), new CustomizableThreadFactory("fan-out-"));
+    }
+
+    /**
+     * Result of a map call with deadline
+     *
+     * @param results  results in the same order as the items (null for the items that were not mapped in time)
+     * @param complete true if all the items were mapped before the deadline
+     */
+    public record Result<R>(List<R> results, boolean complete) {
+    }
+}
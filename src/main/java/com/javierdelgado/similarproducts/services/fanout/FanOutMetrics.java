@@ -0,0 +1,38 @@
+package com.javierdelgado.similarproducts.services.fanout;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of the lookup of the product details of a request, shared by SimilarProductsService and
+ * ReactiveSimilarProductsService so both register them the same way. It registers the distribution summary
+ * similar.products.fan.out.width (number of product details fetched) and the timer similar.products.fan.out, both
+ * with a percentile histogram.
+ */
+public class FanOutMetrics {
+
+    private final DistributionSummary width;
+    private final Timer timer;
+
+    public FanOutMetrics(MeterRegistry meterRegistry) {
+        this.width = DistributionSummary.builder("similar.products.fan.out.width")
+                .description("Number of product details fetched for a request")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.timer = Timer.builder("similar.products.fan.out")
+                .description("Time spent fetching the product details of a request")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Records a lookup of the given number of product details that started at the given time (System.nanoTime)
+     */
+    public void record(int width, long startNanos) {
+        this.width.record(width);
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,50 @@
+package com.javierdelgado.similarproducts.services.fanout;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.List;
+
+/**
+ * Configuration of the executor used to fetch the details of the similar products concurrently.
+ *
+ * @param mode                     kind of threads used to run the lookups
+ * @param platformPoolSize         number of threads of the pool when platform threads are used (or when virtual
+ *                                 threads are not available in the running JVM)
+ * @param maxConcurrencyPerRequest maximum number of lookups that a single call can run at the same time
+ * @param maxWidth                 maximum number of details fetched for a product: similar ids beyond it (the less
+ *                                 similar ones) are ignored. If it is 0, there is no maximum
+ */
+@ConfigurationProperties(prefix = "similar-products.fan-out")
+public record FanOutProperties(
+        @DefaultValue("virtual") Mode mode,
+        @DefaultValue("64") int platformPoolSize,
+        @DefaultValue("16") int maxConcurrencyPerRequest,
+        @DefaultValue("100") int maxWidth) {
+
+    /**
+     * Returns the window of the items from offset up to limit items, and never beyond maxWidth
+     *
+     * @param items  items ordered by similarity
+     * @param offset number of items that are skipped
+     * @param limit  maximum number of items returned or null (no limit other than maxWidth)
+     * @return the window of the items
+     */
+    public <T> List<T> window(List<T> items, int offset, Integer limit) {
+        int end = maxWidth > 0 ? Math.min(items.size(), maxWidth) : items.size();
+        int from = Math.min(offset, end);
+        int to = limit == null ? end : (int) Math.min(end, (long) from + limit);
+        return from == 0 && to == items.size() ? items : items.subList(from, to);
+    }
+
+    public enum Mode {
+        /**
+         * One virtual thread per lookup
+         */
+        VIRTUAL,
+        /**
+         * Bounded pool of platform threads
+         */
+        PLATFORM
+    }
+}
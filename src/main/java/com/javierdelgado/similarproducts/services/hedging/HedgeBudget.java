@@ -0,0 +1,36 @@
+package com.javierdelgado.similarproducts.services.hedging;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket that limits the extra load caused by hedged requests. Every request deposits budgetRatio tokens and
+ * every hedged request takes one token, so there are at most budgetRatio hedged requests per request (plus a small
+ * burst of MAX_TOKENS).
+ */
+class HedgeBudget {
+
+    private static final long UNIT = 1000;
+    private static final long MAX_TOKENS = 10 * UNIT;
+
+    private final AtomicLong tokens = new AtomicLong();
+    private final long deposit;
+
+    HedgeBudget(double budgetRatio) {
+        this.deposit = Math.round(budgetRatio * UNIT);
+    }
+
+    void onRequest() {
+        tokens.accumulateAndGet(deposit, (current, added) -> Math.min(MAX_TOKENS, current + added));
+    }
+
+    boolean tryAcquire() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < UNIT) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - UNIT));
+        return true;
+    }
+}
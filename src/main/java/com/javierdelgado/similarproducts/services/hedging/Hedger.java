@@ -0,0 +1,188 @@
+package com.javierdelgado.similarproducts.services.hedging;
+
+import com.javierdelgado.similarproducts.limiter.LimitExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Sends a duplicate (hedged) request if the original one has not answered after a delay, and returns the answer of
+ * whichever answers first. The delay is fixed or a percentile of the latencies observed recently, and the number of
+ * hedged requests is limited by a budget. Calls are only hedged if hedging is enabled.
+ * <p>
+ * The hedged request only wins if it succeeds before the original one answers: if it fails, the answer of the
+ * original one is returned. The request that loses is cancelled. A hedged request rejected with
+ * LimitExceededException is not counted as sent.
+ * <p>
+ * It registers the counters similar.products.hedging.sent and similar.products.hedging.won and the gauge
+ * similar.products.hedging.delay, all of them tagged with the name of the Hedger.
+ */
+public class Hedger {
+
+    private final HedgingProperties properties;
+    private final Executor executor;
+    private final LatencyTracker latencyTracker;
+    private final HedgeBudget budget;
+    private final Counter hedgesSent;
+    private final Counter hedgesWon;
+
+    public Hedger(String name, HedgingProperties properties, Executor executor, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.executor = executor;
+        this.latencyTracker = new LatencyTracker(properties.window(), properties.percentile());
+        this.budget = new HedgeBudget(properties.budgetRatio());
+        this.hedgesSent = Counter.builder("similar.products.hedging.sent")
+                .tag("name", name)
+                .description("Hedged requests sent")
+                .register(meterRegistry);
+        this.hedgesWon = Counter.builder("similar.products.hedging.won")
+                .tag("name", name)
+                .description("Hedged requests that answered before the original one")
+                .register(meterRegistry);
+        Gauge.builder("similar.products.hedging.delay", this, hedger -> hedger.delayNanos() / 1e9)
+                .tag("name", name)
+                .description("Current delay before sending a hedged request")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs a blocking call, hedging it if it is slow. Calls run in the executor while the calling thread waits.
+     *
+     * @param call the call
+     * @return the result of the call that answered first
+     */
+    public <T> T call(Supplier<T> call) {
+        if (!properties.enabled()) {
+            return call.get();
+        }
+        try {
+            return callAsync(() -> submit(call)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Runs a non-blocking call, hedging it if it is slow.
+     *
+     * @param call the call
+     * @return a future with the result of the call that answered first
+     */
+    public <T> CompletableFuture<T> callAsync(Supplier<CompletableFuture<T>> call) {
+        if (!properties.enabled()) {
+            return call.get();
+        }
+        budget.onRequest();
+        long start = System.nanoTime();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        // The winner is decided before completing the result, so metrics are updated when the caller gets it
+        AtomicBoolean decided = new AtomicBoolean();
+        AtomicReference<CompletableFuture<T>> hedge = new AtomicReference<>();
+        CompletableFuture<T> primary = call.get();
+        primary.whenComplete((value, e) -> {
+            latencyTracker.record(System.nanoTime() - start);
+            if (decided.compareAndSet(false, true)) {
+                cancel(hedge.get());
+                complete(result, value, e);
+            }
+        });
+        if (!decided.get()) {
+            CompletableFuture.delayedExecutor(delayNanos(), TimeUnit.NANOSECONDS, executor).execute(() -> {
+                if (decided.get() || !budget.tryAcquire()) {
+                    return;
+                }
+                CompletableFuture<T> attempt = call.get();
+                hedge.set(attempt);
+                if (decided.get()) {
+                    // The original request answered while this one was being sent
+                    cancel(attempt);
+                }
+                attempt.whenComplete((value, e) -> {
+                    if (e != null && unwrap(e) instanceof LimitExceededException) {
+                        return;
+                    }
+                    hedgesSent.increment();
+                    if (e == null && decided.compareAndSet(false, true)) {
+                        hedgesWon.increment();
+                        cancel(primary);
+                        result.complete(value);
+                    }
+                });
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Runs a blocking call in the executor. Cancelling the returned future interrupts the thread of the call, so a
+     * request that loses is aborted instead of holding a connection until it answers.
+     */
+    private <T> CompletableFuture<T> submit(Supplier<T> call) {
+        FutureTask<T> task = new FutureTask<>(call::get);
+        CompletableFuture<T> future = new CompletableFuture<>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                task.cancel(mayInterruptIfRunning);
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        executor.execute(() -> {
+            task.run();
+            try {
+                future.complete(task.get());
+            } catch (ExecutionException e) {
+                future.completeExceptionally(e.getCause());
+            } catch (CancellationException e) {
+                // The thread may still be interrupted by the cancellation
+                Thread.interrupted();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        return future;
+    }
+
+    long delayNanos() {
+        if (properties.delay() != null) {
+            return properties.delay().toNanos();
+        }
+        long percentileNanos = latencyTracker.percentileNanos();
+        if (percentileNanos < 0) {
+            return properties.maxDelay().toNanos();
+        }
+        return Math.max(properties.minDelay().toNanos(), Math.min(properties.maxDelay().toNanos(), percentileNanos));
+    }
+
+    private static void cancel(CompletableFuture<?> future) {
+        if (future != null) {
+            future.cancel(true);
+        }
+    }
+
+    private static <T> void complete(CompletableFuture<T> result, T value, Throwable e) {
+        if (e == null) {
+            result.complete(value);
+        } else {
+            result.completeExceptionally(unwrap(e));
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+}
@@ -0,0 +1,39 @@
+package com.javierdelgado.similarproducts.services.hedging;
+
+import com.javierdelgado.similarproducts.services.fanout.FanOutExecutor;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.constraints.NotNull;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates and keeps one Hedger per name, all of them with the same configuration. Blocking calls are run in the
+ * FanOutExecutor.
+ */
+@Component
+public class HedgerRegistry {
+
+    private final Map<String, Hedger> hedgers = new ConcurrentHashMap<>();
+    private final HedgingProperties properties;
+    private final FanOutExecutor fanOutExecutor;
+    private final MeterRegistry meterRegistry;
+
+    public HedgerRegistry(@NotNull HedgingProperties properties, @NotNull FanOutExecutor fanOutExecutor,
+                          @NotNull MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.fanOutExecutor = fanOutExecutor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Returns the Hedger with the given name, creating it if it does not exist
+     *
+     * @param name name of the Hedger
+     * @return the Hedger
+     */
+    public Hedger hedger(String name) {
+        return hedgers.computeIfAbsent(name, key -> new Hedger(key, properties, fanOutExecutor, meterRegistry));
+    }
+}
@@ -0,0 +1,29 @@
+package com.javierdelgado.similarproducts.services.hedging;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Configuration of hedged requests to product-service.
+ *
+ * @param enabled     if false, requests are never hedged
+ * @param delay       fixed time to wait before sending a hedged request. If it is not set, the delay is the configured
+ *                    percentile of the latencies observed recently
+ * @param percentile  percentile of the recent latencies used as delay when it is not fixed (between 0 and 1)
+ * @param minDelay    minimum delay when it is not fixed
+ * @param maxDelay    maximum delay when it is not fixed. It is also used until there are enough latencies observed
+ * @param budgetRatio maximum ratio of hedged requests to requests (for example, 0.1 means at most 10% extra load)
+ * @param window      number of recent latencies used to compute the percentile
+ */
+@ConfigurationProperties(prefix = "similar-products.hedging")
+public record HedgingProperties(
+        @DefaultValue("false") boolean enabled,
+        Duration delay,
+        @DefaultValue("0.95") double percentile,
+        @DefaultValue("5ms") Duration minDelay,
+        @DefaultValue("1s") Duration maxDelay,
+        @DefaultValue("0.1") double budgetRatio,
+        @DefaultValue("1000") int window) {
+}
@@ -0,0 +1,48 @@
+package com.javierdelgado.similarproducts.services.hedging;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the latest latencies observed and a percentile of them. The percentile is recomputed every
+ * RECOMPUTE_INTERVAL samples instead of on every read, so reading it is cheap.
+ */
+class LatencyTracker {
+
+    static final int RECOMPUTE_INTERVAL = 64;
+
+    private final AtomicLongArray samples;
+    private final AtomicLong count = new AtomicLong();
+    private final double percentile;
+    private volatile long percentileNanos = -1;
+
+    LatencyTracker(int window, double percentile) {
+        this.samples = new AtomicLongArray(Math.max(RECOMPUTE_INTERVAL, window));
+        this.percentile = percentile;
+    }
+
+    void record(long nanos) {
+        long index = count.getAndIncrement();
+        samples.set((int) (index % samples.length()), nanos);
+        if ((index + 1) % RECOMPUTE_INTERVAL == 0) {
+            recompute(Math.min(index + 1, samples.length()));
+        }
+    }
+
+    /**
+     * Returns the percentile of the latest latencies, or -1 if there are not enough samples yet
+     */
+    long percentileNanos() {
+        return percentileNanos;
+    }
+
+    private void recompute(long size) {
+        long[] sorted = new long[(int) size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = samples.get(i);
+        }
+        Arrays.sort(sorted);
+        percentileNanos = sorted[(int) Math.min(size - 1, Math.ceil(percentile * size) - 1)];
+    }
+}
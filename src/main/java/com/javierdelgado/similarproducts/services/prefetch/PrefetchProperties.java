@@ -0,0 +1,22 @@
+package com.javierdelgado.similarproducts.services.prefetch;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Configuration of the prefetch of the similar products of the similar products that are served.
+ *
+ * @param enabled   if false, nothing is prefetched
+ * @param topN      number of similar products (the most similar ones) whose similar products are prefetched
+ * @param rate      maximum number of prefetches per second (a burst of one second is allowed)
+ * @param poolSize  number of threads that run the prefetches
+ * @param queueSize number of prefetches that can be waiting for a thread. If the queue is full, they are skipped
+ */
+@ConfigurationProperties(prefix = "similar-products.prefetch")
+public record PrefetchProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("3") int topN,
+        @DefaultValue("20") double rate,
+        @DefaultValue("2") int poolSize,
+        @DefaultValue("100") int queueSize) {
+}
@@ -0,0 +1,156 @@
+package com.javierdelgado.similarproducts.services.prefetch;
+
+import com.javierdelgado.similarproducts.limiter.LimitExceededException;
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import com.javierdelgado.similarproducts.services.SimilarProductsService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.constraints.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Prefetches the similar products of the similar products that are served, as users tend to visit them next. When
+ * a list of similar products is fetched by SimilarProductsService (whatever the operation that serves it, including
+ * prefetches themselves), the similar products (similar ids and details) of the first topN of them are loaded in
+ * background by SimilarProductsService, so they are cached when they are requested. Products that are
+ * already cached or being prefetched are skipped. Prefetches are limited to a rate and run by a small pool of
+ * threads with a bounded queue, so they are skipped instead of piling up when the budget is exhausted.
+ * <p>
+ * The counter similar.products.prefetch (tagged with result: submitted, cached, in-flight, budget, queue-full,
+ * rejected or failed) shows what happens with every candidate.
+ */
+@Component
+public class Prefetcher implements DisposableBean {
+
+    private final Logger logger = LoggerFactory.getLogger(Prefetcher.class);
+    private final PrefetchProperties properties;
+    private final SimilarProductsService similarProductsService;
+    private final CacheManager cacheManager;
+    private final RateBudget budget;
+    private final ThreadPoolExecutor executor;
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final Map<String, Counter> counters;
+
+    public Prefetcher(@NotNull PrefetchProperties properties,
+                      @NotNull SimilarProductsService similarProductsService,
+                      @NotNull CacheManager cacheManager, @NotNull MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.similarProductsService = similarProductsService;
+        this.cacheManager = cacheManager;
+        this.budget = new RateBudget(properties.rate());
+        // Not exposed as a bean, so it is not picked as the default task executor of the application
+        this.executor = new ThreadPoolExecutor(properties.poolSize(), properties.poolSize(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, properties.queueSize())),
+                new CustomizableThreadFactory("prefetch-"), new ThreadPoolExecutor.AbortPolicy());
+        this.counters = Stream.of("submitted", "cached", "in-flight", "budget", "queue-full", "rejected", "failed")
+                .collect(Collectors.toMap(Function.identity(), result -> Counter.builder("similar.products.prefetch")
+                        .tag("result", result)
+                        .description("Candidates to be prefetched by result")
+                        .register(meterRegistry)));
+        logger.info("Prefetcher initialized successfully");
+    }
+
+    /**
+     * Prefetches (in background) the similar products of the first topN products of a fetched list of similar
+     * products. It does nothing if prefetch is disabled.
+     *
+     * @param similarProductDetails fetched list of similar products
+     */
+    public void prefetch(List<ProductDetail> similarProductDetails) {
+        if (!properties.enabled() || similarProductDetails == null) {
+            return;
+        }
+        similarProductDetails.stream()
+                .filter(Objects::nonNull)
+                .map(ProductDetail::getId)
+                .limit(properties.topN())
+                .forEach(this::prefetch);
+    }
+
+    /**
+     * Same as prefetch with a list, for a product at the given position of a list of similar products (0 is the most
+     * similar one), so lists that are streamed do not have to be held.
+     *
+     * @param productDetail product of a fetched list of similar products
+     * @param position      position of the product in the list
+     */
+    public void prefetch(ProductDetail productDetail, int position) {
+        if (properties.enabled() && productDetail != null && position < properties.topN()) {
+            prefetch(productDetail.getId());
+        }
+    }
+
+    private void prefetch(String productId) {
+        if (isCached(productId)) {
+            count("cached");
+            return;
+        }
+        if (!inFlight.add(productId)) {
+            count("in-flight");
+            return;
+        }
+        if (!budget.tryAcquire()) {
+            inFlight.remove(productId);
+            count("budget");
+            return;
+        }
+        try {
+            executor.execute(() -> load(productId));
+            count("submitted");
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(productId);
+            count("queue-full");
+        }
+    }
+
+    private void load(String productId) {
+        try {
+            logger.debug("Prefetching similar products of id={}", productId);
+            similarProductsService.getSimilarProducts(productId);
+        } catch (LimitExceededException e) {
+            count("rejected");
+        } catch (RuntimeException e) {
+            logger.debug("Prefetch of id={} failed", productId, e);
+            count("failed");
+        } finally {
+            inFlight.remove(productId);
+        }
+    }
+
+    /**
+     * Looks the product up in the native Caffeine cache, so the lookup does not count as a hit or a miss
+     */
+    private boolean isCached(String productId) {
+        Cache cache = cacheManager.getCache(SimilarProductsService.SIMILAR_PRODUCT_DETAIL_CACHE);
+        return cache != null && cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> caffeineCache
+                && caffeineCache.asMap().containsKey(productId);
+    }
+
+    private void count(String result) {
+        counters.get(result).increment();
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,42 @@
+package com.javierdelgado.similarproducts.services.prefetch;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the rate of an optional activity to a number of permits per second, allowing a burst of one second. It is
+ * a token bucket implemented as a virtual scheduling (GCRA): it keeps the time at which the next permit would be due
+ * if permits were taken evenly, and a permit is granted if that time is not more than the burst ahead of now.
+ */
+class RateBudget {
+
+    private final AtomicLong due;
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final LongSupplier nanoTime;
+
+    RateBudget(double permitsPerSecond) {
+        this(permitsPerSecond, System::nanoTime);
+    }
+
+    RateBudget(double permitsPerSecond, LongSupplier nanoTime) {
+        this.intervalNanos = Math.max(1, Math.round(1_000_000_000 / permitsPerSecond));
+        this.burstNanos = 1_000_000_000 - intervalNanos;
+        this.nanoTime = nanoTime;
+        this.due = new AtomicLong(nanoTime.getAsLong());
+    }
+
+    boolean tryAcquire() {
+        long now = nanoTime.getAsLong();
+        long current;
+        long next;
+        do {
+            current = due.get();
+            if (current - now > burstNanos) {
+                return false;
+            }
+            next = Math.max(current, now) + intervalNanos;
+        } while (!due.compareAndSet(current, next));
+        return true;
+    }
+}
@@ -0,0 +1,26 @@
+package com.javierdelgado.similarproducts.services.prefetch;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Configuration of the warm-up of the caches on startup.
+ *
+ * @param productIds ids of the products whose similar products are loaded on startup
+ * @param file       file with more ids (one per line), if any
+ * @param timeout    maximum time spent on the warm-up. After it, the application is ready anyway
+ */
+@ConfigurationProperties(prefix = "similar-products.warm-up")
+public record WarmUpProperties(
+        List<String> productIds,
+        Path file,
+        @DefaultValue("30s") Duration timeout) {
+
+    public WarmUpProperties {
+        productIds = productIds == null ? List.of() : productIds;
+    }
+}
@@ -0,0 +1,76 @@
+package com.javierdelgado.similarproducts.services.prefetch;
+
+import com.javierdelgado.similarproducts.services.SimilarProductsService;
+import com.javierdelgado.similarproducts.services.deadline.Deadline;
+import com.javierdelgado.similarproducts.services.fanout.FanOutExecutor;
+import jakarta.validation.constraints.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Warms up the caches on startup: the similar products of the configured hot products are loaded before the
+ * application reports that it is ready (readiness state ACCEPTING_TRAFFIC is only published after the runners),
+ * so the first requests after a deploy are not all cache misses. It does not take longer than the configured
+ * timeout, and products that fail to load are just skipped.
+ */
+@Component
+public class WarmUpRunner implements ApplicationRunner {
+
+    private final Logger logger = LoggerFactory.getLogger(WarmUpRunner.class);
+    private final WarmUpProperties properties;
+    private final SimilarProductsService similarProductsService;
+    private final FanOutExecutor fanOutExecutor;
+
+    public WarmUpRunner(@NotNull WarmUpProperties properties, @NotNull SimilarProductsService similarProductsService,
+                        @NotNull FanOutExecutor fanOutExecutor) {
+        this.properties = properties;
+        this.similarProductsService = similarProductsService;
+        this.fanOutExecutor = fanOutExecutor;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        List<String> productIds = productIds();
+        if (productIds.isEmpty()) {
+            return;
+        }
+        logger.info("Warming up the caches with {} products", productIds.size());
+        long start = System.nanoTime();
+        FanOutExecutor.Result<Boolean> result = fanOutExecutor.map(productIds, this::load,
+                Deadline.after(properties.timeout()));
+        long loaded = result.results().stream().filter(Boolean.TRUE::equals).count();
+        logger.info("Caches warmed up with {} of {} products in {} ms{}", loaded, productIds.size(),
+                (System.nanoTime() - start) / 1_000_000, result.complete() ? "" : " (timeout)");
+    }
+
+    private Boolean load(String productId) {
+        try {
+            return similarProductsService.getSimilarProducts(productId) != null;
+        } catch (RuntimeException e) {
+            logger.debug("Warm-up of id={} failed", productId, e);
+            return false;
+        }
+    }
+
+    private List<String> productIds() {
+        Set<String> productIds = new LinkedHashSet<>(properties.productIds());
+        if (properties.file() != null) {
+            try (Stream<String> lines = Files.lines(properties.file())) {
+                lines.map(String::trim).filter(line -> !line.isEmpty()).forEach(productIds::add);
+            } catch (IOException e) {
+                logger.warn("Warm-up file {} can not be read", properties.file(), e);
+            }
+        }
+        return List.copyOf(productIds);
+    }
+}
@@ -0,0 +1,53 @@
+package com.javierdelgado.similarproducts.services.proxies;
+
+import com.javierdelgado.similarproducts.models.ProductDetail;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking proxy that manages requests sent to product-service (existingApis). Unlike ProductsServiceProxy, no
+ * thread is held while a request is in flight. The returned futures complete exceptionally if the request fails.
+ *
+ * @see
+ * <a href="https://github.com/dalogax/backendDevTest/blob/main/existingApis.yaml">Yaml with openapi specifications</a>
+ */
+public interface AsyncProductsServiceProxy {
+
+    /**
+     * Returns the ids of the similar products to a given one ordered by similarity
+     *
+     * @param productId id of the product
+     * @return a future with a list of strings with the ids of the similar products
+     */
+    CompletableFuture<List<String>> getSimilarIds(String productId);
+
+    /**
+     * Same as getSimilarIds, but with the given timeout instead of the configured one. The request is aborted when
+     * it expires.
+     *
+     * @param productId id of the product
+     * @param timeout   time to wait for the answer
+     * @return a future with a list of strings with the ids of the similar products
+     */
+    CompletableFuture<List<String>> getSimilarIds(String productId, Duration timeout);
+
+    /**
+     * Returns the product detail for a given productId
+     *
+     * @param productId id of the product
+     * @return a future with the product detail of the product
+     */
+    CompletableFuture<ProductDetail> getProductDetail(String productId);
+
+    /**
+     * Same as getProductDetail, but with the given timeout instead of the configured one. The request is aborted when
+     * it expires.
+     *
+     * @param productId id of the product
+     * @param timeout   time to wait for the answer
+     * @return a future with the product detail of the product
+     */
+    CompletableFuture<ProductDetail> getProductDetail(String productId, Duration timeout);
+}
@@ -0,0 +1,18 @@
+package com.javierdelgado.similarproducts.services.proxies;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Configuration of the decoding of the responses of product-service in ProductsServiceProxy.
+ *
+ * @param streaming   if true, similar ids and product details are parsed straight from the body by
+ *                    ProductsServiceDecoder. If false, they are decoded by the default decoder of Spring Cloud
+ *                    OpenFeign (data binding with the message converters)
+ * @param maxListSize (streaming) maximum number of similar ids that are read from a response
+ */
+@ConfigurationProperties(prefix = "product-service.decoder")
+public record DecoderProperties(
+        @DefaultValue("true") boolean streaming,
+        @DefaultValue("1000") int maxListSize) {
+}
@@ -0,0 +1,80 @@
+package com.javierdelgado.similarproducts.services.proxies;
+
+import feign.Client;
+import feign.Request;
+import feign.Response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * feign.Client built on java.net.http.HttpClient. If the client prefers HTTP/2, requests are multiplexed in a single
+ * connection when the server supports it (ALPN with https, upgrade with http) and sent with HTTP/1.1 otherwise. The
+ * read timeout of the options is the timeout of every request; the connect timeout is the one of the client.
+ */
+public class Http2Client implements Client {
+
+    // Headers that java.net.http.HttpClient sets itself and does not allow to be set
+    private static final Set<String> RESTRICTED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        RESTRICTED_HEADERS.addAll(Set.of("Connection", "Content-Length", "Expect", "Host", "Upgrade"));
+    }
+
+    private final HttpClient httpClient;
+    private final Consumer<HttpClient.Version> onResponse;
+
+    /**
+     * @param httpClient client that sends the requests
+     * @param onResponse called with the protocol version of every response
+     */
+    public Http2Client(HttpClient httpClient, Consumer<HttpClient.Version> onResponse) {
+        this.httpClient = httpClient;
+        this.onResponse = onResponse;
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(request.url()))
+                .timeout(Duration.of(options.readTimeout(), options.readTimeoutUnit().toChronoUnit()))
+                .method(request.httpMethod().name(), request.body() == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofByteArray(request.body()));
+        request.headers().forEach((name, values) -> {
+            if (!RESTRICTED_HEADERS.contains(name)) {
+                values.forEach(value -> builder.header(name, value));
+            }
+        });
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+        onResponse.accept(response.version());
+        Map<String, Collection<String>> headers = new LinkedHashMap<>(response.headers().map());
+        OptionalLong contentLength = response.headers().firstValueAsLong("Content-Length");
+        return Response.builder()
+                .status(response.statusCode())
+                .request(request)
+                .protocolVersion(response.version() == HttpClient.Version.HTTP_2 ? Request.ProtocolVersion.HTTP_2
+                        : Request.ProtocolVersion.HTTP_1_1)
+                .headers(headers)
+                .body(response.body(), contentLength.isPresent() && contentLength.getAsLong() <= Integer.MAX_VALUE
+                        ? (int) contentLength.getAsLong() : null)
+                .build();
+    }
+}
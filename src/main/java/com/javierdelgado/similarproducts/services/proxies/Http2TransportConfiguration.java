@@ -0,0 +1,81 @@
+package com.javierdelgado.similarproducts.services.proxies;
+
+import feign.Client;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Configuration of the HTTP/2 transport of ProductsServiceProxy (java.net.http.HttpClient). It is only loaded when
+ * product-service.transport.type=http2. If product-service supports HTTP/2, all the requests are multiplexed in a
+ * single connection; otherwise the client keeps a pool of HTTP/1.1 connections (its size and idle timeout are set
+ * with the system properties jdk.httpclient.connectionPoolSize and jdk.httpclient.keepalive.timeout).
+ * <p>
+ * Metric: similar.products.upstream.transport.requests (tagged with the protocol of the responses).
+ */
+@Configuration
+@ConditionalOnProperty(name = "product-service.transport.type", havingValue = "http2")
+public class Http2TransportConfiguration {
+
+    private static final Logger logger = LoggerFactory.getLogger(Http2TransportConfiguration.class);
+
+    @Bean
+    HttpClient productsServiceHttpClient(
+            @Value("${spring.cloud.openfeign.client.config.default.connectTimeout:10000}") long connectTimeout) {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofMillis(connectTimeout))
+                .build();
+    }
+
+    @Bean
+    Client productsServiceClient(HttpClient productsServiceHttpClient, MeterRegistry meterRegistry) {
+        Map<HttpClient.Version, Counter> requests = new EnumMap<>(HttpClient.Version.class);
+        for (HttpClient.Version version : HttpClient.Version.values()) {
+            requests.put(version, Counter.builder("similar.products.upstream.transport.requests")
+                    .tag("protocol", version.name())
+                    .description("Requests to product-service by protocol of the response")
+                    .register(meterRegistry));
+        }
+        logger.info("Requests to product-service are sent with HTTP/2 when it is supported");
+        return new Http2Client(productsServiceHttpClient, version -> requests.get(version).increment());
+    }
+
+    /**
+     * Opens the connection on startup (and upgrades it to HTTP/2 if product-service supports it) with a HEAD request
+     * to the url of product-service. Its status is ignored.
+     */
+    @Bean
+    ApplicationRunner productsServiceConnectionsPrewarmer(HttpClient productsServiceHttpClient,
+                                                          TransportProperties properties,
+                                                          @Value("${product-service.url}") String url) {
+        return args -> {
+            if (properties.prewarmConnections() <= 0) {
+                return;
+            }
+            try {
+                HttpResponse<Void> response = productsServiceHttpClient.send(HttpRequest.newBuilder(URI.create(url))
+                        .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                        .build(), HttpResponse.BodyHandlers.discarding());
+                logger.info("Connection to product-service prewarmed ({})", response.version());
+            } catch (Exception e) {
+                logger.warn("Connection to product-service could not be prewarmed: {}", e.toString());
+            }
+        };
+    }
+}
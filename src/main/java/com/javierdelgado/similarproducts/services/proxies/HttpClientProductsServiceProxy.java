@@ -0,0 +1,137 @@
+package com.javierdelgado.similarproducts.services.proxies;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import jakarta.validation.constraints.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * AsyncProductsServiceProxy built on the non-blocking java.net.http.HttpClient. It is only created when
+ * product-service.client=async. It uses the same url and the same default timeouts configured for Feign.
+ *
+ * @see
+ * <a href="https://github.com/dalogax/backendDevTest/blob/main/existingApis.yaml">Yaml with openapi specifications</a>
+ */
+@Component
+@ConditionalOnProperty(name = "product-service.client", havingValue = "async")
+public class HttpClientProductsServiceProxy implements AsyncProductsServiceProxy, DisposableBean {
+
+    private static final TypeReference<List<String>> SIMILAR_IDS_TYPE = new TypeReference<>() {
+    };
+
+    private final Logger logger = LoggerFactory.getLogger(HttpClientProductsServiceProxy.class);
+    private final String url;
+    private final Duration readTimeout;
+    private final ObjectReader similarIdsReader;
+    private final ObjectReader productDetailReader;
+    private final ExecutorService executorService;
+    private final HttpClient httpClient;
+
+    public HttpClientProductsServiceProxy(
+            @NotNull @Value("${product-service.url}") String url,
+            @Value("${spring.cloud.openfeign.client.config.default.connectTimeout:10000}") long connectTimeout,
+            @Value("${spring.cloud.openfeign.client.config.default.readTimeout:60000}") long readTimeout,
+            @NotNull ObjectMapper objectMapper) {
+        this.url = url;
+        this.readTimeout = Duration.ofMillis(readTimeout);
+        this.similarIdsReader = objectMapper.readerFor(SIMILAR_IDS_TYPE);
+        this.productDetailReader = objectMapper.readerFor(ProductDetail.class);
+        // Only used to complete the futures, connections are handled by the selector thread of the client
+        this.executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                new CustomizableThreadFactory("products-service-client-"));
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeout))
+                .executor(executorService)
+                .build();
+        logger.info("HttpClientProductsServiceProxy initialized successfully");
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getSimilarIds(String productId) {
+        return getSimilarIds(productId, readTimeout);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getSimilarIds(String productId, Duration timeout) {
+        return send("/product/" + encode(productId) + "/similarids", timeout, similarIdsReader);
+    }
+
+    @Override
+    public CompletableFuture<ProductDetail> getProductDetail(String productId) {
+        return getProductDetail(productId, readTimeout);
+    }
+
+    @Override
+    public CompletableFuture<ProductDetail> getProductDetail(String productId, Duration timeout) {
+        return send("/product/" + encode(productId), timeout, productDetailReader);
+    }
+
+    @Override
+    public void destroy() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Cancelling the returned future (e.g. when the request loses against its hedge) cancels the exchange, so the
+     * request is aborted
+     */
+    private <T> CompletableFuture<T> send(String path, Duration timeout, ObjectReader reader) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url + path))
+                .timeout(timeout)
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+        CompletableFuture<HttpResponse<byte[]>> exchange = httpClient.sendAsync(request,
+                HttpResponse.BodyHandlers.ofByteArray());
+        CompletableFuture<T> result = exchange.thenApply(response -> {
+            if (response.statusCode() / 100 != 2) {
+                throw new ProductsServiceResponseException(response.statusCode(),
+                        "during [GET] to [" + request.uri() + "]");
+            }
+            return read(response.body(), reader);
+        });
+        result.whenComplete((value, e) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private static <T> T read(byte[] body, ObjectReader reader) {
+        if (body.length == 0) {
+            return null;
+        }
+        try {
+            return reader.readValue(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String encode(String productId) {
+        return URLEncoder.encode(productId, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+}
@@ -0,0 +1,165 @@
+package com.javierdelgado.similarproducts.services.proxies;
+
+import feign.Client;
+import feign.hc5.ApacheHttp5Client;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.ManagedHttpClientConnectionFactory;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.io.ConnectionEndpoint;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.http.protocol.BasicHttpContext;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Configuration of the pooled transport of ProductsServiceProxy (Apache HttpClient 5). It is only loaded when
+ * product-service.transport.type=pooled. Connections are kept alive in a pool of
+ * product-service.transport.max-connections (product-service is a single host, so it is also the limit per host),
+ * connections idle for longer than validate-after-inactivity are validated before they are reused, and a background
+ * thread closes the ones that are idle for longer than idle-timeout. Timeouts are still the ones configured for Feign.
+ * <p>
+ * Metrics: similar.products.upstream.pool.connections (leased and available), .pending (requests waiting for a
+ * connection, the pool is saturated when it is not 0), .max, .opened (connections opened) and .requests (requests
+ * sent). The ratio of connection reuse is 1 - opened / requests.
+ */
+@Configuration
+@ConditionalOnProperty(name = "product-service.transport.type", havingValue = "pooled")
+public class PooledTransportConfiguration {
+
+    private static final Logger logger = LoggerFactory.getLogger(PooledTransportConfiguration.class);
+
+    @Bean(destroyMethod = "close")
+    PoolingHttpClientConnectionManager productsServiceConnectionManager(TransportProperties properties,
+                                                                         MeterRegistry meterRegistry) {
+        Counter opened = Counter.builder("similar.products.upstream.pool.opened")
+                .description("Connections to product-service opened by the pool")
+                .register(meterRegistry);
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setConnectionFactory(socket -> {
+                    opened.increment();
+                    return ManagedHttpClientConnectionFactory.INSTANCE.createConnection(socket);
+                })
+                .setMaxConnTotal(properties.maxConnections())
+                .setMaxConnPerRoute(properties.maxConnections())
+                .setValidateAfterInactivity(TimeValue.ofMilliseconds(properties.validateAfterInactivity().toMillis()))
+                .build();
+        gauge(meterRegistry, "similar.products.upstream.pool.connections", connectionManager, PoolStats::getLeased,
+                "state", "leased");
+        gauge(meterRegistry, "similar.products.upstream.pool.connections", connectionManager,
+                PoolStats::getAvailable, "state", "available");
+        gauge(meterRegistry, "similar.products.upstream.pool.pending", connectionManager, PoolStats::getPending);
+        gauge(meterRegistry, "similar.products.upstream.pool.max", connectionManager, PoolStats::getMax);
+        return connectionManager;
+    }
+
+    @Bean(destroyMethod = "close")
+    CloseableHttpClient productsServiceHttpClient(PoolingHttpClientConnectionManager productsServiceConnectionManager,
+                                                  TransportProperties properties, MeterRegistry meterRegistry) {
+        Counter requests = Counter.builder("similar.products.upstream.pool.requests")
+                .description("Requests to product-service sent through the pool")
+                .register(meterRegistry);
+        return HttpClients.custom()
+                .setConnectionManager(productsServiceConnectionManager)
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofMilliseconds(properties.idleTimeout().toMillis()))
+                .addRequestInterceptorFirst((request, entity, context) -> requests.increment())
+                .build();
+    }
+
+    @Bean
+    Client productsServiceClient(CloseableHttpClient productsServiceHttpClient) {
+        logger.info("Requests to product-service are sent through a connection pool");
+        return new ApacheHttp5Client(productsServiceHttpClient);
+    }
+
+    @Bean
+    ApplicationRunner productsServiceConnectionsPrewarmer(
+            PoolingHttpClientConnectionManager productsServiceConnectionManager, TransportProperties properties,
+            @Value("${product-service.url}") String url,
+            @Value("${spring.cloud.openfeign.client.config.default.connectTimeout:10000}") long connectTimeout) {
+        return args -> prewarm(productsServiceConnectionManager, URI.create(url), properties.prewarmConnections(),
+                Timeout.ofMilliseconds(connectTimeout), TimeValue.ofMilliseconds(properties.idleTimeout().toMillis()));
+    }
+
+    /**
+     * Opens up to the given number of connections to the host of the url and leaves them in the pool. Connections
+     * that can not be opened are skipped.
+     *
+     * @return number of connections that have been opened
+     */
+    static int prewarm(PoolingHttpClientConnectionManager connectionManager, URI url, int connections,
+                       Timeout connectTimeout, TimeValue keepAlive) {
+        if (connections <= 0) {
+            return 0;
+        }
+        HttpRoute route = route(url);
+        List<ConnectionEndpoint> endpoints = new ArrayList<>(connections);
+        Set<ConnectionEndpoint> ready = new HashSet<>();
+        int connected = 0;
+        try {
+            // All of them are leased before connecting, so they are different connections
+            for (int i = 0; i < connections; i++) {
+                endpoints.add(connectionManager.lease("prewarm-" + i, route, connectTimeout, null)
+                        .get(connectTimeout));
+            }
+            for (ConnectionEndpoint endpoint : endpoints) {
+                if (!endpoint.isConnected()) {
+                    connectionManager.connect(endpoint, connectTimeout, new BasicHttpContext());
+                    connected++;
+                }
+                ready.add(endpoint);
+            }
+        } catch (Exception e) {
+            logger.warn("Connections to product-service could not be prewarmed: {}", e.toString());
+        } finally {
+            for (ConnectionEndpoint endpoint : endpoints) {
+                if (!ready.contains(endpoint)) {
+                    // Not connected (a failed connection may still have its socket), so it is not kept in the pool
+                    endpoint.close(CloseMode.IMMEDIATE);
+                }
+                connectionManager.release(endpoint, null, keepAlive);
+            }
+        }
+        logger.info("{} connections to product-service prewarmed", connected);
+        return connected;
+    }
+
+    /**
+     * Same route that the client plans for the requests to the url, so the prewarmed connections are used by them
+     */
+    private static HttpRoute route(URI url) {
+        boolean secure = "https".equalsIgnoreCase(url.getScheme());
+        int port = url.getPort() != -1 ? url.getPort() : secure ? 443 : 80;
+        return new HttpRoute(new HttpHost(url.getScheme(), url.getHost(), port), null, secure);
+    }
+
+    private static void gauge(MeterRegistry meterRegistry, String name,
+                              PoolingHttpClientConnectionManager connectionManager,
+                              ToDoubleFunction<PoolStats> stat, String... tags) {
+        Gauge.builder(name, connectionManager, manager -> stat.applyAsDouble(manager.getTotalStats()))
+                .tags(tags)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,153 @@
+package com.javierdelgado.similarproducts.services.proxies;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import feign.Response;
+import feign.codec.DecodeException;
+import feign.codec.Decoder;
+import jakarta.validation.constraints.NotNull;
+
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Feign decoder of the responses of product-service that parses them straight from the body with a streaming
+ * JsonParser, without data binding: similar ids (List&lt;String&gt;) and product details (ProductDetail). Any other
+ * type is decoded by the given decoder. Values are coerced as Jackson does when it binds them: scalars are read as
+ * the text of ids and names, prices can be numbers or strings, availabilities can be booleans, strings or integers,
+ * empty strings are null prices and availabilities, and unknown properties are skipped.
+ * <p>
+ * Only the first maxListSize similar ids are read: the rest of the body is not parsed (and the connection is closed
+ * instead of being reused, if it was pooled).
+ */
+public class ProductsServiceDecoder implements Decoder {
+
+    private final JsonFactory jsonFactory;
+    private final int maxListSize;
+    private final Decoder delegate;
+
+    /**
+     * @param jsonFactory factory of the parsers (the one of the ObjectMapper, so it has the same features)
+     * @param maxListSize maximum number of similar ids that are read
+     * @param delegate    decoder of the types that are not read by this decoder
+     */
+    public ProductsServiceDecoder(@NotNull JsonFactory jsonFactory, int maxListSize, @NotNull Decoder delegate) {
+        this.jsonFactory = jsonFactory;
+        this.maxListSize = maxListSize;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Object decode(Response response, Type type) throws IOException {
+        boolean productDetail = type == ProductDetail.class;
+        if (!productDetail && !isListOfStrings(type)) {
+            return delegate.decode(response, type);
+        }
+        if (response.body() == null) {
+            return null;
+        }
+        try (JsonParser parser = jsonFactory.createParser(response.body().asInputStream())) {
+            JsonToken token = parser.nextToken();
+            if (token == null || token == JsonToken.VALUE_NULL) {
+                return null;
+            }
+            return productDetail ? readProductDetail(parser, response) : readSimilarIds(parser, response);
+        }
+    }
+
+    private List<String> readSimilarIds(JsonParser parser, Response response) throws IOException {
+        expect(parser, JsonToken.START_ARRAY, response);
+        List<String> similarIds = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && similarIds.size() < maxListSize) {
+            similarIds.add(readText(parser, token, response));
+        }
+        return similarIds;
+    }
+
+    private ProductDetail readProductDetail(JsonParser parser, Response response) throws IOException {
+        expect(parser, JsonToken.START_OBJECT, response);
+        ProductDetail productDetail = new ProductDetail(null, null, null, null);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "id" -> productDetail.setId(readText(parser, token, response));
+                case "name" -> productDetail.setName(readText(parser, token, response));
+                case "price" -> productDetail.setPrice(readDecimal(parser, token, response));
+                case "availability" -> productDetail.setAvailability(readBoolean(parser, token, response));
+                default -> parser.skipChildren();
+            }
+        }
+        return productDetail;
+    }
+
+    private static String readText(JsonParser parser, JsonToken token, Response response) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!token.isScalarValue()) {
+            throw error(response, "Unexpected " + token + " instead of a string");
+        }
+        return parser.getText();
+    }
+
+    private static BigDecimal readDecimal(JsonParser parser, JsonToken token, Response response)
+            throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token.isNumeric()) {
+            return parser.getDecimalValue();
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            String text = parser.getText().trim();
+            if (text.isEmpty()) {
+                return null;
+            }
+            try {
+                return new BigDecimal(text);
+            } catch (NumberFormatException e) {
+                throw error(response, "Price is not a number: " + parser.getText());
+            }
+        }
+        throw error(response, "Unexpected " + token + " instead of a price");
+    }
+
+    private static Boolean readBoolean(JsonParser parser, JsonToken token, Response response) throws IOException {
+        return switch (token) {
+            case VALUE_NULL -> null;
+            case VALUE_TRUE -> Boolean.TRUE;
+            case VALUE_FALSE -> Boolean.FALSE;
+            case VALUE_NUMBER_INT -> parser.getLongValue() != 0;
+            case VALUE_STRING -> switch (parser.getText().trim()) {
+                case "" -> null;
+                case "true", "True", "TRUE" -> Boolean.TRUE;
+                case "false", "False", "FALSE" -> Boolean.FALSE;
+                default -> throw error(response, "Availability is not a boolean: " + parser.getText());
+            };
+            default -> throw error(response, "Unexpected " + token + " instead of an availability");
+        };
+    }
+
+    private static void expect(JsonParser parser, JsonToken expected, Response response) {
+        if (parser.currentToken() != expected) {
+            throw error(response, "Unexpected " + parser.currentToken() + " instead of " + expected);
+        }
+    }
+
+    private static DecodeException error(Response response, String message) {
+        return new DecodeException(response.status(), message, response.request());
+    }
+
+    private static boolean isListOfStrings(Type type) {
+        return type instanceof ParameterizedType parameterizedType && parameterizedType.getRawType() == List.class
+                && parameterizedType.getActualTypeArguments()[0] == String.class;
+    }
+}
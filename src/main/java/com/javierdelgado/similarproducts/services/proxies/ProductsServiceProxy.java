@@ -1,6 +1,7 @@
 package com.javierdelgado.similarproducts.services.proxies;
 
 import com.javierdelgado.similarproducts.models.ProductDetail;
+import feign.Request;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -9,12 +10,14 @@ import java.util.List;
 
 /**
  * Proxy that manages requests sent to product-service (existingApis).
- * The url is configurable via application.properties.
+ * The url is configurable via application.properties. Responses are decoded by ProductsServiceDecoder (see
+ * ProductsServiceProxyConfiguration).
  *
  * @see
  * <a href="https://github.com/dalogax/backendDevTest/blob/main/existingApis.yaml">Yaml with openapi specifications</a>
  */
-@FeignClient(name = "product-service", url = "${product-service.url}")
+@FeignClient(name = "product-service", url = "${product-service.url}",
+        configuration = ProductsServiceProxyConfiguration.class)
 public interface ProductsServiceProxy {
 
     /**
@@ -26,6 +29,16 @@ public interface ProductsServiceProxy {
     @GetMapping("/product/{productId}/similarids")
     List<String> getSimilarIds(@PathVariable("productId") String productId);
 
+    /**
+     * Same as getSimilarIds, but with the given connect and read timeouts instead of the configured ones
+     *
+     * @param productId id of the product
+     * @param options   timeouts of the request
+     * @return a list of strings with the ids of the similar products
+     */
+    @GetMapping("/product/{productId}/similarids")
+    List<String> getSimilarIds(@PathVariable("productId") String productId, Request.Options options);
+
     /**
      * Returns the product detail for a given productId
      *
@@ -34,4 +47,14 @@ public interface ProductsServiceProxy {
      */
     @GetMapping("/product/{productId}")
     ProductDetail getProductDetail(@PathVariable("productId") String productId);
+
+    /**
+     * Same as getProductDetail, but with the given connect and read timeouts instead of the configured ones
+     *
+     * @param productId id of the product
+     * @param options   timeouts of the request
+     * @return product detail of the product
+     */
+    @GetMapping("/product/{productId}")
+    ProductDetail getProductDetail(@PathVariable("productId") String productId, Request.Options options);
 }
@@ -0,0 +1,31 @@
+package com.javierdelgado.similarproducts.services.proxies;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import feign.codec.Decoder;
+import feign.optionals.OptionalDecoder;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.cloud.openfeign.support.HttpMessageConverterCustomizer;
+import org.springframework.cloud.openfeign.support.ResponseEntityDecoder;
+import org.springframework.cloud.openfeign.support.SpringDecoder;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * Configuration of the Feign client of ProductsServiceProxy (it is not a @Configuration, so it only applies to that
+ * client). With product-service.decoder.streaming=true (default), its decoder is ProductsServiceDecoder, built on the
+ * JsonFactory of the ObjectMapper, and any other type is decoded by the default decoder of Spring Cloud OpenFeign.
+ */
+public class ProductsServiceProxyConfiguration {
+
+    @Bean
+    @ConditionalOnProperty(name = "product-service.decoder.streaming", havingValue = "true", matchIfMissing = true)
+    Decoder productsServiceDecoder(ObjectMapper objectMapper, DecoderProperties properties,
+                                   ObjectFactory<HttpMessageConverters> messageConverters,
+                                   ObjectProvider<HttpMessageConverterCustomizer> customizers) {
+        Decoder defaultDecoder = new OptionalDecoder(new ResponseEntityDecoder(
+                new SpringDecoder(messageConverters, customizers)));
+        return new ProductsServiceDecoder(objectMapper.getFactory(), properties.maxListSize(), defaultDecoder);
+    }
+}
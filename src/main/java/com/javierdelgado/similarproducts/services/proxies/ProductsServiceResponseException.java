@@ -0,0 +1,18 @@
+package com.javierdelgado.similarproducts.services.proxies;
+
+/**
+ * Thrown by AsyncProductsServiceProxy when product-service answers with a non-successful status
+ */
+public class ProductsServiceResponseException extends RuntimeException {
+
+    private final int status;
+
+    public ProductsServiceResponseException(int status, String message) {
+        super("[" + status + "] " + message);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,31 @@
+package com.javierdelgado.similarproducts.services.proxies;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the transport (the feign.Client) used by ProductsServiceProxy.
+ *
+ * @param type                    default (HttpURLConnection), pooled (Apache HttpClient 5 with a connection pool) or
+ *                                http2 (java.net.http.HttpClient, HTTP/2 multiplexing when product-service supports
+ *                                it and HTTP/1.1 otherwise)
+ * @param maxConnections          (pooled) maximum number of connections to product-service
+ * @param validateAfterInactivity (pooled) connections idle for longer than this are validated before they are reused
+ * @param idleTimeout             (pooled) connections idle for longer than this are closed in background
+ * @param prewarmConnections      number of connections opened on startup (with http2, any value greater than 0
+ *                                opens the single multiplexed connection)
+ */
+@ConfigurationProperties(prefix = "product-service.transport")
+public record TransportProperties(
+        @DefaultValue("default") Type type,
+        @DefaultValue("200") int maxConnections,
+        @DefaultValue("2s") Duration validateAfterInactivity,
+        @DefaultValue("30s") Duration idleTimeout,
+        @DefaultValue("0") int prewarmConnections) {
+
+    public enum Type {
+        DEFAULT, POOLED, HTTP2
+    }
+}
@@ -0,0 +1,103 @@
+package com.javierdelgado.similarproducts.services.proxies;
+
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import io.netty.channel.ChannelOption;
+import jakarta.validation.constraints.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * AsyncProductsServiceProxy built on the reactive WebClient (Reactor Netty). It is only created when
+ * product-service.client=reactive. It uses the same url and the same default timeouts configured for Feign, and the
+ * same errors as HttpClientProductsServiceProxy: ProductsServiceResponseException for non-successful statuses,
+ * TimeoutException for the read timeout and the IOException of the connection otherwise.
+ *
+ * @see
+ * <a href="https://github.com/dalogax/backendDevTest/blob/main/existingApis.yaml">Yaml with openapi specifications</a>
+ */
+@Component
+@ConditionalOnProperty(name = "product-service.client", havingValue = "reactive")
+public class WebClientProductsServiceProxy implements AsyncProductsServiceProxy {
+
+    private static final ParameterizedTypeReference<List<String>> SIMILAR_IDS_TYPE = new ParameterizedTypeReference<>() {
+    };
+
+    private final Logger logger = LoggerFactory.getLogger(WebClientProductsServiceProxy.class);
+    private final Duration readTimeout;
+    private final WebClient webClient;
+
+    public WebClientProductsServiceProxy(
+            @NotNull @Value("${product-service.url}") String url,
+            @Value("${spring.cloud.openfeign.client.config.default.connectTimeout:10000}") int connectTimeout,
+            @Value("${spring.cloud.openfeign.client.config.default.readTimeout:60000}") long readTimeout,
+            @NotNull WebClient.Builder webClientBuilder) {
+        this.readTimeout = Duration.ofMillis(readTimeout);
+        this.webClient = webClientBuilder
+                .baseUrl(url)
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create()
+                        .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout)))
+                .build();
+        logger.info("WebClientProductsServiceProxy initialized successfully");
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getSimilarIds(String productId) {
+        return getSimilarIds(productId, readTimeout);
+    }
+
+    /**
+     * The timeout cancels the subscription, so the connection of the request is closed when it expires
+     */
+    @Override
+    public CompletableFuture<List<String>> getSimilarIds(String productId, Duration timeout) {
+        return send("/product/{productId}/similarids", productId).bodyToMono(SIMILAR_IDS_TYPE)
+                .timeout(timeout)
+                .onErrorMap(WebClientRequestException.class, WebClientProductsServiceProxy::connectionError)
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<ProductDetail> getProductDetail(String productId) {
+        return getProductDetail(productId, readTimeout);
+    }
+
+    /**
+     * The timeout cancels the subscription, so the connection of the request is closed when it expires
+     */
+    @Override
+    public CompletableFuture<ProductDetail> getProductDetail(String productId, Duration timeout) {
+        return send("/product/{productId}", productId).bodyToMono(ProductDetail.class)
+                .timeout(timeout)
+                .onErrorMap(WebClientRequestException.class, WebClientProductsServiceProxy::connectionError)
+                .toFuture();
+    }
+
+    private WebClient.ResponseSpec send(String path, String productId) {
+        return webClient.get()
+                .uri(path, productId)
+                .accept(MediaType.APPLICATION_JSON)
+                .retrieve()
+                .onStatus(status -> !status.is2xxSuccessful(), response -> Mono.error(
+                        new ProductsServiceResponseException(response.statusCode().value(),
+                                "during [GET] to [" + path.replace("{productId}", productId) + "]")));
+    }
+
+    private static Throwable connectionError(WebClientRequestException e) {
+        return e.getCause() instanceof IOException ioException ? ioException : e;
+    }
+}
@@ -0,0 +1,131 @@
+package com.javierdelgado.similarproducts.services.reactive;
+
+import com.javierdelgado.similarproducts.limiter.LimitExceededException;
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import com.javierdelgado.similarproducts.services.ProductsService;
+import com.javierdelgado.similarproducts.services.SimilarProductsService;
+import com.javierdelgado.similarproducts.services.fanout.FanOutMetrics;
+import com.javierdelgado.similarproducts.services.fanout.FanOutProperties;
+import com.javierdelgado.similarproducts.services.prefetch.Prefetcher;
+import com.javierdelgado.similarproducts.services.singleflight.SingleFlight;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.constraints.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Reactive version of SimilarProductsService, used by the WebFlux controller. It only exists in a reactive web
+ * application (profile reactive).
+ * <p>
+ * It has the same semantics as SimilarProductsService.getSimilarProducts: results are cached in the
+ * similarProductDetail cache (and concurrent misses of the same product are coalesced, like @Cacheable(sync=true)
+ * does), and similar ids and product details are fetched by the async methods of ProductsService, so they share its
+ * caches, validation, negative cache, single-flight, hedging and limiter. The details are requested concurrently (at
+ * most similar-products.fan-out.max-concurrency-per-request at the same time) and merged in the order of the similar
+ * ids. If ProductsService is not async (product-service.client=feign), the blocking SimilarProductsService is called on
+ * the bounded elastic scheduler instead. Fetched lists are prefetched like in SimilarProductsService.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveSimilarProductsService {
+
+    private final Logger logger = LoggerFactory.getLogger(ReactiveSimilarProductsService.class);
+    private final ProductsService productsService;
+    private final SimilarProductsService similarProductsService;
+    private final CacheManager cacheManager;
+    private final FanOutProperties fanOutProperties;
+    private final int maxConcurrency;
+    private final SingleFlight<String, List<ProductDetail>> singleFlight;
+    private final FanOutMetrics fanOutMetrics;
+    private final Prefetcher prefetcher;
+
+    public ReactiveSimilarProductsService(@NotNull ProductsService productsService,
+                                          @NotNull SimilarProductsService similarProductsService,
+                                          @NotNull CacheManager cacheManager,
+                                          @NotNull FanOutProperties fanOutProperties,
+                                          @NotNull MeterRegistry meterRegistry,
+                                          @NotNull Prefetcher prefetcher) {
+        this.productsService = productsService;
+        this.similarProductsService = similarProductsService;
+        this.cacheManager = cacheManager;
+        this.fanOutProperties = fanOutProperties;
+        this.maxConcurrency = fanOutProperties.maxConcurrencyPerRequest();
+        this.singleFlight = new SingleFlight<>(SimilarProductsService.SIMILAR_PRODUCT_DETAIL_CACHE, meterRegistry);
+        this.fanOutMetrics = new FanOutMetrics(meterRegistry);
+        this.prefetcher = prefetcher;
+        logger.info("ReactiveSimilarProductsService initialized successfully");
+    }
+
+    /**
+     * Returns the details of the similar products to a given one ordered by similarity. If the product can not be
+     * found or there is any problem with the products-service, the Mono is empty. If any of the similar products can
+     * not be found, it will not be included in the response.
+     *
+     * @param productId id of the product
+     * @return Mono with the list of detail of the similar products
+     */
+    public Mono<List<ProductDetail>> getSimilarProducts(@NotNull String productId) {
+        if (!productsService.isAsync()) {
+            return Mono.fromCallable(() -> similarProductsService.getSimilarProducts(productId))
+                    .subscribeOn(Schedulers.boundedElastic());
+        }
+        return Mono.defer(() -> {
+            Cache cache = cacheManager.getCache(SimilarProductsService.SIMILAR_PRODUCT_DETAIL_CACHE);
+            Cache.ValueWrapper cached = cache == null ? null : cache.get(productId);
+            if (cached != null) {
+                return Mono.justOrEmpty(castList(cached.get()));
+            }
+            return Mono.fromFuture(() -> singleFlight.executeAsync(productId, () -> load(productId)
+                    .doOnSuccess(similarProducts -> {
+                        // Products that can not be found are cached too (as null), like @Cacheable does
+                        if (cache != null) {
+                            cache.put(productId, similarProducts);
+                        }
+                    })
+                    .toFuture()));
+        });
+    }
+
+    private Mono<List<ProductDetail>> load(String productId) {
+        return Mono.fromFuture(() -> productsService.getSimilarIdsAsync(productId))
+                .doOnSuccess(similarIds -> {
+                    if (similarIds == null) {
+                        logger.debug("Product with id={} can not be found", productId);
+                    }
+                })
+                .map(similarIds -> fanOutProperties.window(similarIds, 0, null))
+                .flatMap(similarIds -> {
+                    long start = System.nanoTime();
+                    return Flux.fromIterable(similarIds)
+                            .filter(Objects::nonNull)
+                            // A detail that is not found (or rejected by the limiter) completes empty, so it is not
+                            // included
+                            .flatMapSequential(id -> Mono.fromFuture(() -> productsService.getProductDetailAsync(id))
+                                    .onErrorResume(LimitExceededException.class, e -> {
+                                        logger.debug("Product with id={} will not be included in the response. {}.",
+                                                id, e.getMessage());
+                                        return Mono.empty();
+                                    }), maxConcurrency)
+                            .collectList()
+                            .doOnSuccess(list -> {
+                                fanOutMetrics.record(similarIds.size(), start);
+                                prefetcher.prefetch(list);
+                            });
+                });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<ProductDetail> castList(Object value) {
+        return (List<ProductDetail>) value;
+    }
+}
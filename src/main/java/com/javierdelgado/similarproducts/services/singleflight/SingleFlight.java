@@ -0,0 +1,116 @@
+package com.javierdelgado.similarproducts.services.singleflight;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls with the same key, so only the first one (the leader) runs the call and the others
+ * share its result. Once the call finishes, the next call with the same key runs it again (results are not cached).
+ * Sync and async calls share the in-flight calls, so a sync call can be coalesced with an async one and vice versa.
+ * <p>
+ * It registers the counter similar.products.single.flight.calls (tagged with the name and result=leader|coalesced),
+ * so the coalescing ratio is coalesced / (leader + coalesced), and the gauge similar.products.single.flight.in.flight.
+ *
+ * @param <K> type of the key
+ * @param <V> type of the result
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter leaderCalls;
+    private final Counter coalescedCalls;
+
+    public SingleFlight(String name, MeterRegistry meterRegistry) {
+        this.leaderCalls = Counter.builder("similar.products.single.flight.calls")
+                .tag("name", name)
+                .tag("result", "leader")
+                .description("Calls that were sent upstream")
+                .register(meterRegistry);
+        this.coalescedCalls = Counter.builder("similar.products.single.flight.calls")
+                .tag("name", name)
+                .tag("result", "coalesced")
+                .description("Calls that shared the result of an in-flight call")
+                .register(meterRegistry);
+        Gauge.builder("similar.products.single.flight.in.flight", inFlight, Map::size)
+                .tag("name", name)
+                .description("Calls currently in flight")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the supplier, unless there is already a call in flight for the key. In that case, it waits for that
+     * call and returns its result (or throws its exception).
+     *
+     * @param key      key of the call
+     * @param supplier the call
+     * @return the result of the call
+     */
+    public V execute(K key, Supplier<V> supplier) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalescedCalls.increment();
+            return join(existing);
+        }
+        leaderCalls.increment();
+        try {
+            V value = supplier.get();
+            inFlight.remove(key, future);
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Async version of execute. The supplier is only called if there is not a call in flight for the key.
+     *
+     * @param key      key of the call
+     * @param supplier the call
+     * @return a future with the result of the call
+     */
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> supplier) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalescedCalls.increment();
+            return existing.copy();
+        }
+        leaderCalls.increment();
+        try {
+            supplier.get().whenComplete((value, e) -> {
+                inFlight.remove(key, future);
+                if (e != null) {
+                    future.completeExceptionally(e);
+                } else {
+                    future.complete(value);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+        }
+        return future.copy();
+    }
+
+    private static <V> V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+}
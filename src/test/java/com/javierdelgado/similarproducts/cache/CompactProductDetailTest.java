@@ -0,0 +1,50 @@
+package com.javierdelgado.similarproducts.cache;
+
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+class CompactProductDetailTest {
+
+    @Test
+    void whenProductDetailIsCompacted_thenItIsConvertedBackToAnEqualProductDetail() {
+        Stream.of("0", "19.99", "12.500", "-3.25", "1E+3", "0.000001", "9223372036854775807",
+                        "92233720368547758070", "-123456789012345678901234567890.123")
+                .map(BigDecimal::new)
+                .forEach(price -> {
+                    ProductDetail productDetail = new ProductDetail("1", "name", price, Boolean.FALSE);
+                    ProductDetail converted = CompactProductDetail.of("1", productDetail).toProductDetail();
+                    assertThat(converted, is(productDetail));
+                    assertThat(converted.getPrice().scale(), is(price.scale()));
+                });
+    }
+
+    @Test
+    void whenIdIsEqualToTheKey_thenTheKeyIsUsedAsId() {
+        String key = new String("1");
+        ProductDetail productDetail = new ProductDetail(new String("1"), "name", BigDecimal.ONE, Boolean.TRUE);
+        assertThat(CompactProductDetail.of(key, productDetail).toProductDetail().getId(), sameInstance(key));
+    }
+
+    @Test
+    void whenIdIsNotEqualToTheKey_thenIdIsKept() {
+        ProductDetail productDetail = new ProductDetail("2", "name", BigDecimal.ONE, Boolean.TRUE);
+        ProductDetail converted = CompactProductDetail.of("1", productDetail).toProductDetail();
+        assertThat(converted.getId(), is("2"));
+        assertThat(converted, is(productDetail));
+        assertThat(converted, not(sameInstance(productDetail)));
+    }
+
+    @Test
+    void whenProductDetailIsNull_thenCompactIsNull() {
+        assertThat(CompactProductDetail.of("1", null), is(nullValue()));
+    }
+}
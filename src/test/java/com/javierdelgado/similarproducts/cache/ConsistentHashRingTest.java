@@ -0,0 +1,48 @@
+package com.javierdelgado.similarproducts.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConsistentHashRingTest {
+
+    static final List<String> NODES = List.of("http://a:5000", "http://b:5000", "http://c:5000");
+    static final List<String> KEYS = IntStream.range(0, 10_000).mapToObj(String::valueOf).toList();
+
+    @Test
+    void whenRingsHaveTheSameNodes_thenKeysHaveTheSameOwner() {
+        ConsistentHashRing ring = new ConsistentHashRing(NODES, 128);
+        ConsistentHashRing otherRing = new ConsistentHashRing(List.of(NODES.get(2), NODES.get(0), NODES.get(1)), 128);
+        KEYS.forEach(key -> assertThat(otherRing.owner(key), is(ring.owner(key))));
+    }
+
+    @Test
+    void whenThereAreManyKeys_thenTheyAreSpreadAcrossAllTheNodes() {
+        ConsistentHashRing ring = new ConsistentHashRing(NODES, 128);
+        Map<String, Integer> keysByNode = new HashMap<>();
+        KEYS.forEach(key -> keysByNode.merge(ring.owner(key), 1, Integer::sum));
+        assertThat(keysByNode.keySet(), containsInAnyOrder(NODES.toArray()));
+        keysByNode.values().forEach(keys -> assertThat(keys, is(both(greaterThan(2500)).and(lessThan(4200)))));
+    }
+
+    @Test
+    void whenNodeIsRemoved_thenOnlyItsKeysMove() {
+        ConsistentHashRing ring = new ConsistentHashRing(NODES, 128);
+        ConsistentHashRing smallerRing = new ConsistentHashRing(NODES.subList(0, 2), 128);
+        KEYS.stream()
+                .filter(key -> !ring.owner(key).equals(NODES.get(2)))
+                .forEach(key -> assertThat(smallerRing.owner(key), is(ring.owner(key))));
+    }
+
+    @Test
+    void whenRingHasNoNodes_thenThrowIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing(List.of(), 128));
+    }
+}
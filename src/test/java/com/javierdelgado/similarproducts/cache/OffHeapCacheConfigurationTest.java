@@ -0,0 +1,72 @@
+package com.javierdelgado.similarproducts.cache;
+
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import com.javierdelgado.similarproducts.services.ProductsService;
+import com.javierdelgado.similarproducts.services.proxies.ProductsServiceProxy;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+
+import java.math.BigDecimal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = {
+        "similar-products.off-heap-cache.enabled=true",
+        "similar-products.off-heap-cache.capacity=1MB"})
+class OffHeapCacheConfigurationTest {
+
+    static final String MOCK_ID = "mockId";
+
+    @Autowired
+    CacheManager cacheManager;
+    @Autowired
+    ProductsService productsService;
+    @Autowired
+    MeterRegistry meterRegistry;
+    @MockBean
+    ProductsServiceProxy productsServiceProxy;
+
+    @BeforeEach
+    void beforeEach() {
+        cacheManager.getCacheNames().stream().map(cacheManager::getCache).forEach(Cache::clear);
+    }
+
+    @Test
+    void whenOffHeapCacheIsEnabled_thenProductDetailCacheHasTwoTiers() {
+        assertThat(cacheManager.getCache(ProductsService.PRODUCT_DETAIL_CACHE), is(instanceOf(TieredCache.class)));
+        assertThat(cacheManager.getCache(ProductsService.SIMILAR_IDS_CACHE), is(instanceOf(CaffeineCache.class)));
+    }
+
+    @Test
+    void whenFirstTierLosesTheEntry_thenItIsTakenFromTheOffHeapStore() {
+        ProductDetail productDetail = new ProductDetail(MOCK_ID, "name", new BigDecimal("10.50"), Boolean.TRUE);
+        when(productsServiceProxy.getProductDetail(MOCK_ID)).thenReturn(productDetail);
+        assertThat(productsService.getProductDetail(MOCK_ID), is(productDetail));
+
+        TieredCache cache = (TieredCache) cacheManager.getCache(ProductsService.PRODUCT_DETAIL_CACHE);
+        cache.getFirstTier().clear();
+        assertThat(productsService.getProductDetail(MOCK_ID), is(productDetail));
+        assertThat(cache.getFirstTier().get(MOCK_ID).get(), is(instanceOf(CompactProductDetail.class)));
+        verify(productsServiceProxy, times(1)).getProductDetail(MOCK_ID);
+        assertThat(meterRegistry.get("similar.products.off.heap.cache.gets").tag("result", "hit").functionCounter()
+                .count(), is(1.0));
+    }
+
+    @Test
+    void whenOffHeapCacheIsEnabled_thenFirstTierKeepsItsCacheMetrics() {
+        assertThat(meterRegistry.find("cache.gets").tag("cache", ProductsService.PRODUCT_DETAIL_CACHE)
+                .functionCounters().isEmpty(), is(false));
+    }
+}
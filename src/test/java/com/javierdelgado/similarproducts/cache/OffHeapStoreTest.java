@@ -0,0 +1,150 @@
+package com.javierdelgado.similarproducts.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+
+class OffHeapStoreTest {
+
+    static final long TTL = 60_000;
+    static final long NOW = 1_000_000;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void whenValueIsPut_thenItIsReturnedUntilItExpires() {
+        OffHeapStore store = new OffHeapStore(4096, TTL);
+        store.put("key", bytes("value"), NOW);
+        assertThat(string(store.get("key", NOW)), is("value"));
+        assertThat(string(store.get("key", NOW + TTL)), is("value"));
+        assertThat(store.get("key", NOW + TTL + 1), is(nullValue()));
+        assertThat(store.get("other", NOW), is(nullValue()));
+    }
+
+    @Test
+    void whenValueIsPutAgain_thenLastValueIsReturned() {
+        OffHeapStore store = new OffHeapStore(4096, TTL);
+        store.put("key", bytes("value1"), NOW);
+        store.put("key", bytes("value2"), NOW);
+        assertThat(string(store.get("key", NOW)), is("value2"));
+        store.remove("key");
+        assertThat(store.get("key", NOW), is(nullValue()));
+    }
+
+    @Test
+    void whenStoreIsFull_thenOldestEntriesAreEvictedAndTheOthersAreIntact() {
+        OffHeapStore store = new OffHeapStore(4096, TTL);
+        Random random = new Random(42);
+        Map<String, String> latest = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            String key = Integer.toString(random.nextInt(300));
+            String value = key + "-" + "x".repeat(random.nextInt(100)) + "-" + i;
+            store.put(key, bytes(value), NOW);
+            latest.put(key, value);
+            assertThat(string(store.get(key, NOW)), is(value));
+        }
+        for (Map.Entry<String, String> entry : latest.entrySet()) {
+            byte[] value = store.get(entry.getKey(), NOW);
+            if (value != null) {
+                assertThat(string(value), is(entry.getValue()));
+            }
+        }
+        assertThat(store.evictions(), is(greaterThan(0L)));
+        assertThat(store.usedBytes(), is(lessThanOrEqualTo(4096L - OffHeapStore.DATA_START)));
+    }
+
+    @Test
+    void whenStoreIsOpenedAgain_thenItHasTheEntriesThatWereThere() throws IOException {
+        Path file = tempDir.resolve("store");
+        try (OffHeapStore store = OffHeapStore.open(file, 4096, TTL)) {
+            for (int i = 0; i < 200; i++) {
+                store.put(Integer.toString(i % 50), bytes("value" + i), NOW);
+            }
+        }
+        try (OffHeapStore store = OffHeapStore.open(file, 4096, TTL)) {
+            assertThat(string(store.get("49", NOW)), is("value199"));
+            store.put("new", bytes("new"), NOW);
+            assertThat(string(store.get("new", NOW)), is("new"));
+            assertThat(string(store.get("49", NOW)), is("value199"));
+        }
+    }
+
+    @Test
+    void whenEntriesAreRemovedAndStoreIsOpenedAgain_thenTheyAreNotRecovered() throws IOException {
+        Path file = tempDir.resolve("store");
+        try (OffHeapStore store = OffHeapStore.open(file, 4096, TTL)) {
+            store.put("a", bytes("value-a1"), NOW);
+            store.put("b", bytes("value-b"), NOW);
+            store.put("a", bytes("value-a2"), NOW);
+            store.put("c", bytes("value-c"), NOW);
+            store.remove("a");
+            store.remove("b");
+            store.remove("missing");
+        }
+        try (OffHeapStore store = OffHeapStore.open(file, 4096, TTL)) {
+            assertThat(store.get("a", NOW), is(nullValue()));
+            assertThat(store.get("b", NOW), is(nullValue()));
+            assertThat(string(store.get("c", NOW)), is("value-c"));
+            assertThat(store.size(), is(1));
+            store.put("a", bytes("value-a3"), NOW);
+        }
+        try (OffHeapStore store = OffHeapStore.open(file, 4096, TTL)) {
+            assertThat(string(store.get("a", NOW)), is("value-a3"));
+            assertThat(string(store.get("c", NOW)), is("value-c"));
+        }
+    }
+
+    @Test
+    void whenStoreFileHasAnInvalidRecord_thenItIsOpenedWithTheRecordsBeforeIt() throws IOException {
+        Path file = tempDir.resolve("store");
+        try (OffHeapStore store = OffHeapStore.open(file, 4096, TTL)) {
+            store.put("a", bytes("value-a"), NOW);
+            store.put("b", bytes("value-b"), NOW);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            // Corrupts the last byte of the value of b
+            int recordOfB = OffHeapStore.DATA_START + 18 + 1 + "value-a".length();
+            channel.write(ByteBuffer.wrap(new byte[]{'X'}), recordOfB + 18 + 1 + "value-b".length() - 1);
+        }
+        try (OffHeapStore store = OffHeapStore.open(file, 4096, TTL)) {
+            assertThat(string(store.get("a", NOW)), is("value-a"));
+            assertThat(store.get("b", NOW), is(nullValue()));
+        }
+    }
+
+    @Test
+    void whenStoreFileHasAnotherCapacity_thenItIsOpenedEmpty() throws IOException {
+        Path file = tempDir.resolve("store");
+        try (OffHeapStore store = OffHeapStore.open(file, 4096, TTL)) {
+            store.put("a", bytes("value-a"), NOW);
+        }
+        try (OffHeapStore store = OffHeapStore.open(file, 8192, TTL)) {
+            assertThat(store.get("a", NOW), is(nullValue()));
+            assertThat(store.size(), is(0));
+        }
+    }
+
+    static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String string(byte[] value) {
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,143 @@
+package com.javierdelgado.similarproducts.cache;
+
+import com.javierdelgado.similarproducts.SimilarProductsApplication;
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import com.javierdelgado.similarproducts.services.SimilarProductsService;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Runs several instances of the service on localhost that share their caches
+ */
+class PeerCacheConfigurationTest {
+
+    static final int INSTANCES = 3;
+
+    static HttpServer server;
+    static Map<String, AtomicInteger> upstreamRequests = new ConcurrentHashMap<>();
+    static Map<String, ConfigurableApplicationContext> instances = new LinkedHashMap<>();
+    static HttpClient httpClient = HttpClient.newHttpClient();
+
+    @BeforeAll
+    static void beforeAll() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/product", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            upstreamRequests.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+            String id = path.split("/")[2];
+            byte[] bytes = (path.endsWith("/similarids") ? "[\"2\",\"3\"]"
+                    : "{\"id\":\"" + id + "\",\"name\":\"Name " + id + "\",\"price\":9.99,\"availability\":true}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(bytes);
+            }
+        });
+        server.start();
+
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < INSTANCES; i++) {
+            try (ServerSocket serverSocket = new ServerSocket(0)) {
+                urls.add("http://localhost:" + serverSocket.getLocalPort());
+            }
+        }
+        for (String url : urls) {
+            // Arguments, because properties of the builder do not override application.properties
+            instances.put(url, new SpringApplicationBuilder(SimilarProductsApplication.class).run(
+                    "--server.port=" + URI.create(url).getPort(),
+                    "--product-service.url=http://localhost:" + server.getAddress().getPort(),
+                    "--spring.cache.caffeine.spec=expireAfterWrite=60s,recordStats",
+                    "--similar-products.peer-cache.enabled=true",
+                    "--similar-products.peer-cache.self=" + url,
+                    "--similar-products.peer-cache.peers=" + String.join(",", urls),
+                    "--similar-products.peer-cache.timeout=1s"));
+        }
+    }
+
+    @AfterAll
+    static void afterAll() {
+        instances.values().forEach(ConfigurableApplicationContext::close);
+        server.stop(0);
+    }
+
+    @Test
+    void whenOwnerHasTheSimilarProducts_thenOtherInstancesDoNotRequestThemToProductsService() throws Exception {
+        String owner = owner(SimilarProductsService.SIMILAR_PRODUCT_DETAIL_CACHE, "1");
+        HttpResponse<String> ownerResponse = get(owner + "/product/1/similar");
+        assertThat(ownerResponse.statusCode(), is(200));
+        assertThat(upstreamRequests.get("/product/1/similarids").get(), is(1));
+        assertThat(upstreamRequests.get("/product/2").get(), is(1));
+
+        for (String instance : instances.keySet()) {
+            HttpResponse<String> response = get(instance + "/product/1/similar");
+            assertThat(response.statusCode(), is(200));
+            assertThat(response.body(), is(ownerResponse.body()));
+        }
+        assertThat(upstreamRequests.get("/product/1/similarids").get(), is(1));
+        assertThat(upstreamRequests.get("/product/2").get(), is(1));
+        assertThat(upstreamRequests.get("/product/3").get(), is(1));
+        for (String instance : instances.keySet()) {
+            double hits = instances.get(instance).getBean(MeterRegistry.class)
+                    .get("similar.products.peer.cache.gets")
+                    .tags("cache", SimilarProductsService.SIMILAR_PRODUCT_DETAIL_CACHE, "result", "hit")
+                    .counter().count();
+            assertThat(hits, is(instance.equals(owner) ? 0.0 : 1.0));
+        }
+    }
+
+    @Test
+    void whenPeerEndpointIsRequested_thenOnlyTheLocalCacheIsUsed() throws Exception {
+        String instance = instances.keySet().iterator().next();
+        HttpResponse<String> response = get(instance + "/internal/cache/productDetail/unknown");
+        assertThat(response.statusCode(), is(404));
+        assertThat(upstreamRequests.containsKey("/product/unknown"), is(false));
+
+        instances.get(instance).getBean(CacheManager.class).getCache("productDetail")
+                .put("cached", CompactProductDetail.of("cached",
+                        new ProductDetail("cached", "Name", BigDecimal.ONE, true)));
+        response = get(instance + "/internal/cache/productDetail/cached");
+        assertThat(response.statusCode(), is(200));
+        assertThat(response.body(), containsString("\"id\":\"cached\""));
+        assertThat(get(instance + "/internal/cache/negativeResults/cached").statusCode(), is(404));
+    }
+
+    static String owner(String cacheName, String key) {
+        return instances.keySet().stream()
+                .filter(instance -> ((PeerCache) instances.get(instance).getBean(CacheManager.class)
+                        .getCache(cacheName)).isOwner(key))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    static HttpResponse<String> get(String url) throws IOException, InterruptedException {
+        return httpClient.send(HttpRequest.newBuilder(URI.create(url)).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+}
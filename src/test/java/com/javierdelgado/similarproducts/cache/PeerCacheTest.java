@@ -0,0 +1,121 @@
+package com.javierdelgado.similarproducts.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class PeerCacheTest {
+
+    static final String SELF = "http://a:5000";
+    static final String PEER = "http://b:5000";
+
+    ConsistentHashRing ring = new ConsistentHashRing(List.of(SELF, PEER), 128);
+    PeerCacheClient client;
+    MeterRegistry meterRegistry;
+    PeerCache cache;
+
+    @BeforeEach
+    void beforeEach() {
+        client = mock(PeerCacheClient.class);
+        when(client.isAvailable(any())).thenReturn(true);
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new PeerCache(new ConcurrentMapCache("test"), ring, SELF, client,
+                (key, value) -> value == null ? "null".getBytes(StandardCharsets.UTF_8)
+                        : value.toString().getBytes(StandardCharsets.UTF_8),
+                (key, bytes) -> "null".equals(new String(bytes, StandardCharsets.UTF_8)) ? null
+                        : new String(bytes, StandardCharsets.UTF_8),
+                meterRegistry);
+    }
+
+    @Test
+    void whenOwnerHasTheValue_thenItIsNotLoadedAndItIsKeptLocally() throws IOException {
+        String key = key(PEER);
+        when(client.get(PEER, "test", key)).thenReturn("value".getBytes(StandardCharsets.UTF_8));
+        assertThat(cache.get(key, () -> "loaded"), is("value"));
+        assertThat(cache.get(key, () -> "loaded"), is("value"));
+        verify(client, times(1)).get(PEER, "test", key);
+        assertThat(cache.getLocalCache().get(key).get(), is("value"));
+        assertThat(count("hit"), is(1.0));
+    }
+
+    @Test
+    void whenOwnerHasANullValue_thenNullIsCached() throws IOException {
+        String key = key(PEER);
+        when(client.get(PEER, "test", key)).thenReturn("null".getBytes(StandardCharsets.UTF_8));
+        assertThat(cache.get(key, () -> "loaded"), is(nullValue()));
+        assertThat(cache.get(key), is(notNullValue()));
+        assertThat(cache.get(key).get(), is(nullValue()));
+    }
+
+    @Test
+    void whenOwnerDoesNotHaveTheValue_thenItIsLoaded() throws IOException {
+        String key = key(PEER);
+        when(client.get(PEER, "test", key)).thenReturn(null);
+        assertThat(cache.get(key, () -> "loaded"), is("loaded"));
+        assertThat(count("miss"), is(1.0));
+    }
+
+    @Test
+    void whenOwnerFails_thenValueIsLoaded() throws IOException {
+        String key = key(PEER);
+        when(client.get(PEER, "test", key)).thenThrow(new IOException("Connection refused"));
+        assertThat(cache.get(key, () -> "loaded"), is("loaded"));
+        assertThat(count("error"), is(1.0));
+    }
+
+    @Test
+    void whenOwnerIsUnavailable_thenItIsNotRequested() throws IOException {
+        String key = key(PEER);
+        when(client.isAvailable(PEER)).thenReturn(false);
+        assertThat(cache.get(key, () -> "loaded"), is("loaded"));
+        verify(client, never()).get(any(), any(), any());
+        assertThat(count("unavailable"), is(1.0));
+    }
+
+    @Test
+    void whenThisInstanceIsTheOwner_thenPeersAreNotRequested() throws IOException {
+        String key = key(SELF);
+        assertThat(cache.isOwner(key), is(true));
+        assertThat(cache.get(key, () -> "loaded"), is("loaded"));
+        verify(client, never()).get(any(), any(), any());
+    }
+
+    @Test
+    void whenGetWithoutLoader_thenOnlyTheLocalCacheIsUsed() throws IOException {
+        String key = key(PEER);
+        assertThat(cache.get(key), is(nullValue()));
+        verify(client, never()).get(any(), any(), any());
+    }
+
+    @Test
+    void whenGetLocalValue_thenReturnTheSerializedLocalEntry() {
+        cache.put("1", "value");
+        cache.put("2", null);
+        assertThat(new String(cache.getLocalValue("1"), StandardCharsets.UTF_8), is("value"));
+        assertThat(new String(cache.getLocalValue("2"), StandardCharsets.UTF_8), is("null"));
+        assertThat(cache.getLocalValue("3"), is(nullValue()));
+    }
+
+    String key(String owner) {
+        return IntStream.range(0, 1000).mapToObj(String::valueOf)
+                .filter(key -> ring.owner(key).equals(owner))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    double count(String result) {
+        return meterRegistry.get("similar.products.peer.cache.gets").tag("result", result).counter().count();
+    }
+}
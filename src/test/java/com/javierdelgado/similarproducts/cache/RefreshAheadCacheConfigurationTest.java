@@ -0,0 +1,41 @@
+package com.javierdelgado.similarproducts.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+
+import java.time.Duration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+
+@SpringBootTest(properties = {
+        "similar-products.cache.mode=refresh-ahead",
+        "similar-products.cache.caches.productDetail.soft-ttl=2s",
+        "similar-products.cache.caches.productDetail.hard-ttl=30s"})
+class RefreshAheadCacheConfigurationTest {
+
+    @Autowired
+    CacheManager cacheManager;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void whenModeIsRefreshAhead_thenCachesAreCreatedWithTheirOwnTtl() {
+        Cache<Object, Object> productDetail = (Cache<Object, Object>) cacheManager.getCache("productDetail")
+                .getNativeCache();
+        assertThat(productDetail, is(instanceOf(LoadingCache.class)));
+        assertThat(productDetail.policy().refreshAfterWrite().orElseThrow().getRefreshesAfter(),
+                is(Duration.ofSeconds(2)));
+        assertThat(productDetail.policy().expireAfterWrite().orElseThrow().getExpiresAfter(),
+                is(Duration.ofSeconds(30)));
+
+        Cache<Object, Object> similarIds = (Cache<Object, Object>) cacheManager.getCache("similarIds")
+                .getNativeCache();
+        assertThat(similarIds.policy().refreshAfterWrite().orElseThrow().getRefreshesAfter(),
+                is(Duration.ofSeconds(5)));
+    }
+}
@@ -0,0 +1,107 @@
+package com.javierdelgado.similarproducts.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.javierdelgado.similarproducts.limiter.LimitExceededException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+class RefreshAheadCacheLoaderTest {
+
+    static final String KEY = "key";
+
+    AtomicLong nanos = new AtomicLong();
+
+    @Test
+    void whenEntryIsNotPresent_thenItIsNotLoadedByTheCache() {
+        LoadingCache<Object, Object> cache = cache(key -> "value", Runnable::run);
+        assertThat(cache.get(KEY), is(nullValue()));
+    }
+
+    @Test
+    void whenEntryIsOlderThanSoftTtl_thenStaleValueIsServedAndEntryIsRefreshed() {
+        AtomicInteger loads = new AtomicInteger();
+        Queue<Runnable> refreshes = new ArrayDeque<>();
+        LoadingCache<Object, Object> cache = cache(key -> "value" + loads.incrementAndGet(), refreshes::add);
+        cache.put(KEY, "value0");
+        advance(Duration.ofSeconds(6));
+        assertThat(cache.get(KEY), is("value0"));
+        assertThat(cache.get(KEY), is("value0"));
+        refreshes.forEach(Runnable::run);
+        assertThat(cache.get(KEY), is("value1"));
+        assertThat(loads.get(), is(1));
+    }
+
+    @Test
+    void whenRefreshCanNotLoadTheValue_thenStaleValueIsKeptUntilHardTtl() {
+        LoadingCache<Object, Object> cache = cache(key -> null, Runnable::run);
+        cache.put(KEY, "value0");
+        advance(Duration.ofSeconds(6));
+        assertThat(cache.get(KEY), is("value0"));
+        assertThat(cache.get(KEY), is("value0"));
+        advance(Duration.ofSeconds(60));
+        assertThat(cache.getIfPresent(KEY), is(nullValue()));
+    }
+
+    @Test
+    void whenRefreshesKeepFailingWhileEntryIsRead_thenItExpiresAtHardTtl() {
+        AtomicInteger loads = new AtomicInteger();
+        LoadingCache<Object, Object> cache = cache(key -> {
+            if (loads.incrementAndGet() % 2 == 0) {
+                throw new LimitExceededException("Limit exceeded");
+            }
+            return null;
+        }, Runnable::run);
+        cache.put(KEY, "value0");
+        for (int i = 0; i < 11; i++) {
+            advance(Duration.ofSeconds(5));
+            assertThat(cache.get(KEY), is("value0"));
+        }
+        assertThat(loads.get(), is(greaterThanOrEqualTo(2)));
+        advance(Duration.ofSeconds(5));
+        assertThat(cache.getIfPresent(KEY), is(nullValue()));
+    }
+
+    @Test
+    void whenRefreshExecutorIsFull_thenStaleValueIsServedAndRefreshIsRetriedLater() {
+        AtomicInteger rejections = new AtomicInteger();
+        Executor fullExecutor = command -> {
+            if (rejections.getAndIncrement() == 0) {
+                throw new RejectedExecutionException();
+            }
+            command.run();
+        };
+        LoadingCache<Object, Object> cache = cache(key -> "value1", fullExecutor);
+        cache.put(KEY, "value0");
+        advance(Duration.ofSeconds(6));
+        assertThat(cache.get(KEY), is("value0"));
+        assertThat(cache.get(KEY), is("value1"));
+        assertThat(rejections.get(), is(2));
+    }
+
+    private LoadingCache<Object, Object> cache(Function<Object, Object> loader, Executor refreshExecutor) {
+        return Caffeine.newBuilder()
+                .ticker(nanos::get)
+                .executor(Runnable::run)
+                .refreshAfterWrite(Duration.ofSeconds(5))
+                .expireAfterWrite(Duration.ofSeconds(60))
+                .build(new RefreshAheadCacheLoader(loader, refreshExecutor));
+    }
+
+    private void advance(Duration duration) {
+        nanos.addAndGet(duration.toNanos());
+    }
+}
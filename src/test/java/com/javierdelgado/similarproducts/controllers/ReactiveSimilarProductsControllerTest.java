@@ -0,0 +1,117 @@
+package com.javierdelgado.similarproducts.controllers;
+
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("reactive")
+class ReactiveSimilarProductsControllerTest {
+
+    static HttpServer server;
+
+    @Autowired
+    WebTestClient webTestClient;
+    @Autowired
+    ApplicationContext applicationContext;
+
+    @DynamicPropertySource
+    static void productServiceUrl(DynamicPropertyRegistry registry) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/product/1/similarids", exchange -> respond(exchange, 200, "[\"3\",\"2\",\"404\"]"));
+        server.createContext("/product/2", exchange -> respond(exchange, 200,
+                "{\"id\":\"2\",\"name\":\"Dress\",\"price\":19.99,\"availability\":true}"));
+        server.createContext("/product/3", exchange -> {
+            // The last one to answer, but the first one in the response
+            sleep();
+            respond(exchange, 200, "{\"id\":\"3\",\"name\":\"Blazer\",\"price\":29.99,\"availability\":false}");
+        });
+        server.createContext("/product/404", exchange -> respond(exchange, 404, "{\"message\":\"Not found\"}"));
+        server.start();
+        registry.add("product-service.url", () -> "http://localhost:" + server.getAddress().getPort());
+    }
+
+    @AfterAll
+    static void afterAll() {
+        server.stop(0);
+    }
+
+    @Test
+    void whenProfileIsReactive_thenOnlyTheReactiveControllerExists() {
+        assertThat(applicationContext.getBeanNamesForType(ReactiveSimilarProductsController.class).length, is(1));
+        assertThat(applicationContext.getBeanNamesForType(SimilarProductsController.class).length, is(0));
+    }
+
+    @Test
+    void whenProductHasSimilarProducts_thenReturn200ResponseWithTheDetailsInOrder() {
+        List<ProductDetail> body = webTestClient.get().uri("/product/{productId}/similar", "1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().exists(HttpHeaders.ETAG)
+                .expectBodyList(ProductDetail.class)
+                .returnResult().getResponseBody();
+        assertThat(body, contains(
+                new ProductDetail("3", "Blazer", new BigDecimal("29.99"), false),
+                new ProductDetail("2", "Dress", new BigDecimal("19.99"), true)));
+    }
+
+    @Test
+    void whenIfNoneMatchIsTheETag_thenReturn304Response() {
+        String eTag = webTestClient.get().uri("/product/{productId}/similar", "1")
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class).getResponseHeaders().getETag();
+        webTestClient.get().uri("/product/{productId}/similar", "1")
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.NOT_MODIFIED)
+                .expectBody().isEmpty();
+    }
+
+    @Test
+    void whenProductCanNotBeFound_thenReturn404Response() {
+        webTestClient.get().uri("/product/{productId}/similar", "unknown")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(200);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+}
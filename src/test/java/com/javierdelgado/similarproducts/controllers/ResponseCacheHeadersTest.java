@@ -0,0 +1,87 @@
+package com.javierdelgado.similarproducts.controllers;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import com.javierdelgado.similarproducts.services.SimilarProductsService;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class ResponseCacheHeadersTest {
+
+    static final String PRODUCT_ID = "1";
+    static final List<ProductDetail> DETAILS = List.of(
+            new ProductDetail("2", "Dress", new BigDecimal("19.99"), true),
+            new ProductDetail("3", "Blazer", new BigDecimal("29.99"), false));
+
+    @Test
+    void whenListsHaveTheSameContent_thenTheyHaveTheSameETag() {
+        ResponseCacheHeaders headers = new ResponseCacheHeaders(new CaffeineCacheManager(), true);
+        String eTag = headers.eTag(DETAILS);
+        assertThat(eTag, matchesPattern("\"[A-Za-z0-9_-]{22}\""));
+        assertThat(headers.eTag(new ArrayList<>(DETAILS)), is(eTag));
+    }
+
+    @Test
+    void whenListsHaveDifferentContent_thenTheyHaveDifferentETags() {
+        ResponseCacheHeaders headers = new ResponseCacheHeaders(new CaffeineCacheManager(), true);
+        String eTag = headers.eTag(DETAILS);
+        assertThat(headers.eTag(List.of(DETAILS.get(0))), not(eTag));
+        assertThat(headers.eTag(List.of(DETAILS.get(1), DETAILS.get(0))), not(eTag));
+        // Same price, different scale: serialized differently
+        assertThat(headers.eTag(List.of(new ProductDetail("2", "Dress", new BigDecimal("19.990"), true),
+                DETAILS.get(1))), not(eTag));
+        // Fields are delimited: moving characters from one field to the next changes the ETag
+        assertThat(headers.eTag(List.of(new ProductDetail("2D", "ress", new BigDecimal("19.99"), true),
+                DETAILS.get(1))), not(eTag));
+    }
+
+    @Test
+    void whenListIsCached_thenMaxAgeIsTheTimeLeftInTheCache() {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.registerCustomCache(SimilarProductsService.SIMILAR_PRODUCT_DETAIL_CACHE,
+                Caffeine.newBuilder().expireAfterWrite(Duration.ofMinutes(1)).build());
+        cacheManager.getCache(SimilarProductsService.SIMILAR_PRODUCT_DETAIL_CACHE).put(PRODUCT_ID, DETAILS);
+        HttpHeaders headers = new ResponseCacheHeaders(cacheManager, true).ok(PRODUCT_ID, DETAILS).build()
+                .getHeaders();
+        assertThat(headers.getCacheControl(), anyOf(is("max-age=60"), is("max-age=59")));
+        assertThat(headers.getLastModified(), is(greaterThan(System.currentTimeMillis() - 2000)));
+    }
+
+    @Test
+    void whenListIsCachedInRefreshAheadMode_thenItCanBeServedStaleUntilItExpires() {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.registerCustomCache(SimilarProductsService.SIMILAR_PRODUCT_DETAIL_CACHE,
+                Caffeine.newBuilder().refreshAfterWrite(Duration.ofSeconds(30)).expireAfterWrite(Duration.ofMinutes(1))
+                        .build(key -> DETAILS));
+        cacheManager.getCache(SimilarProductsService.SIMILAR_PRODUCT_DETAIL_CACHE).put(PRODUCT_ID, DETAILS);
+        String cacheControl = new ResponseCacheHeaders(cacheManager, true).ok(PRODUCT_ID, DETAILS).build()
+                .getHeaders().getCacheControl();
+        assertThat(cacheControl, anyOf(is("max-age=30, stale-while-revalidate=30"),
+                is("max-age=29, stale-while-revalidate=30")));
+    }
+
+    @Test
+    void whenListIsNotCached_thenResponseMustBeRevalidated() {
+        ResponseEntity<Void> response = new ResponseCacheHeaders(new CaffeineCacheManager(), true)
+                .ok(PRODUCT_ID, DETAILS).build();
+        assertThat(response.getHeaders().getCacheControl(), is("no-cache"));
+        assertThat(response.getHeaders().getETag(), is(notNullValue()));
+    }
+
+    @Test
+    void whenDisabled_thenThereAreNoCachingHeaders() {
+        ResponseCacheHeaders headers = new ResponseCacheHeaders(new CaffeineCacheManager(), false);
+        assertThat(headers.ok(PRODUCT_ID, DETAILS).build().getHeaders().isEmpty(), is(true));
+        assertThat(headers.partial().build().getHeaders().isEmpty(), is(true));
+    }
+}
@@ -1,43 +1,86 @@
 package com.javierdelgado.similarproducts.controllers;
 
+import com.javierdelgado.similarproducts.controllers.serialization.ProductDetailsHttpMessageConverter;
+import com.javierdelgado.similarproducts.limiter.AdaptiveLimiter;
+import com.javierdelgado.similarproducts.limiter.LimitExceededException;
+import com.javierdelgado.similarproducts.limiter.LimiterRegistry;
 import com.javierdelgado.similarproducts.models.ProductDetail;
+import com.javierdelgado.similarproducts.models.SimilarProducts;
 import com.javierdelgado.similarproducts.services.SimilarProductsService;
+import com.javierdelgado.similarproducts.services.deadline.Deadline;
+import com.javierdelgado.similarproducts.services.deadline.DeadlineExceededException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.validation.ConstraintViolationException;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import static org.hamcrest.MatcherAssert.assertThat;
-import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.*;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 
 @SpringBootTest
+@AutoConfigureMockMvc
 public class SimilarProductsControllerTest {
 
     public static final String MOCK_ID = "mockId";
 
     @Autowired
     SimilarProductsController similarProductsController;
+    @Autowired
+    LimiterRegistry limiterRegistry;
+    @Autowired
+    MockMvc mockMvc;
+    @Autowired
+    ObjectMapper objectMapper;
+    @Autowired
+    MeterRegistry meterRegistry;
+    @Autowired
+    CacheManager cacheManager;
     @MockBean
     SimilarProductsService similarProductsService;
 
     @Test
     void whenGetSimilarProductsGetNullProductId_thenThrowConstraintViolationException() {
-        assertThrows(ConstraintViolationException.class, () -> similarProductsController.getSimilarProducts(null));
+        assertThrows(ConstraintViolationException.class,
+                () -> similarProductsController.getSimilarProducts(null, null, 0, null));
     }
 
     @Test
     void whenSimilarProductServiceReturnNull_thenReturn404Response() {
         when(similarProductsService.getSimilarProducts(MOCK_ID)).thenReturn(null);
-        ResponseEntity<List<ProductDetail>> response = similarProductsController.getSimilarProducts(MOCK_ID);
+        ResponseEntity<List<ProductDetail>> response = similarProductsController.getSimilarProducts(MOCK_ID, null, 0,
+                null).join();
         assertThat(response.getStatusCode(), is(HttpStatus.NOT_FOUND));
     }
 
@@ -46,9 +89,299 @@ public class SimilarProductsControllerTest {
         List<ProductDetail> mockResponse = Collections.singletonList(new ProductDetail(MOCK_ID, "name",
                 BigDecimal.ZERO, Boolean.TRUE));
         when(similarProductsService.getSimilarProducts(MOCK_ID)).thenReturn(mockResponse);
-        ResponseEntity<List<ProductDetail>> response = similarProductsController.getSimilarProducts(MOCK_ID);
+        ResponseEntity<List<ProductDetail>> response = similarProductsController.getSimilarProducts(MOCK_ID, null, 0,
+                null).join();
+        assertThat(response.getStatusCode(), is(HttpStatus.OK));
+        assertThat(response.getBody(), is(mockResponse));
+    }
+
+    @Test
+    void whenSimilarProductServiceReturnPartialResult_thenReturn200ResponseWithPartialHeader() {
+        List<ProductDetail> mockResponse = Collections.singletonList(new ProductDetail(MOCK_ID, "name",
+                BigDecimal.ZERO, Boolean.TRUE));
+        when(similarProductsService.getSimilarProducts(eq(MOCK_ID), any(Deadline.class)))
+                .thenReturn(new SimilarProducts(mockResponse, true));
+        ResponseEntity<List<ProductDetail>> response = similarProductsController.getSimilarProducts(MOCK_ID, 100L, 0,
+                null).join();
+        assertThat(response.getStatusCode(), is(HttpStatus.OK));
+        assertThat(response.getBody(), is(mockResponse));
+        assertThat(response.getHeaders().getFirst(SimilarProductsController.PARTIAL_RESPONSE_HEADER), is("true"));
+        assertThat(response.getHeaders().getCacheControl(), is("no-store"));
+        assertThat(response.getHeaders().getETag(), is(nullValue()));
+    }
+
+    @Test
+    void whenSimilarProductServiceReturnCompleteResultBeforeDeadline_thenReturn200ResponseWithoutPartialHeader() {
+        List<ProductDetail> mockResponse = Collections.emptyList();
+        when(similarProductsService.getSimilarProducts(eq(MOCK_ID), any(Deadline.class)))
+                .thenReturn(new SimilarProducts(mockResponse, false));
+        ResponseEntity<List<ProductDetail>> response = similarProductsController.getSimilarProducts(MOCK_ID, 100L, 0,
+                null).join();
+        assertThat(response.getStatusCode(), is(HttpStatus.OK));
+        assertThat(response.getHeaders().containsKey(SimilarProductsController.PARTIAL_RESPONSE_HEADER), is(false));
+    }
+
+    @Test
+    void whenRequestTimeoutIsNotPositive_thenThrowConstraintViolationException() {
+        assertThrows(ConstraintViolationException.class,
+                () -> similarProductsController.getSimilarProducts(MOCK_ID, 0L, 0, null));
+    }
+
+    @Test
+    void whenConcurrencyLimitIsReached_thenThrowLimitExceededException() {
+        AdaptiveLimiter limiter = limiterRegistry.limiter(SimilarProductsController.GET_SIMILAR_PRODUCTS_LIMITER);
+        List<AdaptiveLimiter.Permit> permits = new ArrayList<>();
+        try {
+            while (limiter.getInFlight() < limiter.getLimit()) {
+                permits.add(limiter.acquire());
+            }
+            assertThrows(LimitExceededException.class,
+                    () -> similarProductsController.getSimilarProducts(MOCK_ID, null, 0, null));
+            assertThrows(LimitExceededException.class,
+                    () -> similarProductsController.getSimilarProductsBatch(List.of(MOCK_ID)));
+        } finally {
+            permits.forEach(AdaptiveLimiter.Permit::onIgnore);
+        }
+    }
+
+    @Test
+    void whenServiceIsAsync_thenResponseCompletesWhenTheDetailsAreFetchedAndLimitIsHeldUntilThen() {
+        AdaptiveLimiter limiter = limiterRegistry.limiter(SimilarProductsController.GET_SIMILAR_PRODUCTS_LIMITER);
+        int inFlight = limiter.getInFlight();
+        List<ProductDetail> mockResponse = List.of(new ProductDetail(MOCK_ID, "name", BigDecimal.ONE, Boolean.TRUE));
+        CompletableFuture<SimilarProducts> similarProducts = new CompletableFuture<>();
+        when(similarProductsService.isAsync()).thenReturn(true);
+        when(similarProductsService.getSimilarProductsAsync(eq(MOCK_ID), eq(0), isNull(), any()))
+                .thenReturn(similarProducts);
+
+        CompletableFuture<ResponseEntity<List<ProductDetail>>> response =
+                similarProductsController.getSimilarProducts(MOCK_ID, null, 0, null);
+        assertThat(response.isDone(), is(false));
+        assertThat(limiter.getInFlight(), is(inFlight + 1));
+        similarProducts.complete(new SimilarProducts(mockResponse, false));
+        assertThat(response.join().getStatusCode(), is(HttpStatus.OK));
+        assertThat(response.join().getBody(), is(mockResponse));
+        assertThat(limiter.getInFlight(), is(inFlight));
+    }
+
+    @Test
+    void whenSimilarIdsAreRejectedInAsyncMode_thenReturn503Response() throws Exception {
+        when(similarProductsService.isAsync()).thenReturn(true);
+        when(similarProductsService.getSimilarProductsAsync(eq(MOCK_ID), eq(0), isNull(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new LimitExceededException("Limit exceeded")));
+        MockHttpServletResponse response = perform(get("/product/{productId}/similar", MOCK_ID));
+        assertThat(response.getStatus(), is(HttpStatus.SERVICE_UNAVAILABLE.value()));
+    }
+
+    @Test
+    void whenBatchIsTooLarge_thenReturn400Response() {
+        List<String> productIds = Collections.nCopies(101, MOCK_ID);
+        ResponseEntity<Map<String, List<ProductDetail>>> response =
+                similarProductsController.getSimilarProductsBatch(productIds);
+        assertThat(response.getStatusCode(), is(HttpStatus.BAD_REQUEST));
+    }
+
+    @Test
+    void whenSimilarProductServiceReturnBatch_thenReturn200ResponseWithTheMap() {
+        Map<String, List<ProductDetail>> mockResponse = Collections.singletonMap(MOCK_ID,
+                Collections.singletonList(new ProductDetail("mockId2", "name", BigDecimal.ZERO, Boolean.TRUE)));
+        when(similarProductsService.getSimilarProductsBatch(List.of(MOCK_ID))).thenReturn(mockResponse);
+        ResponseEntity<Map<String, List<ProductDetail>>> response =
+                similarProductsController.getSimilarProductsBatch(List.of(MOCK_ID));
         assertThat(response.getStatusCode(), is(HttpStatus.OK));
         assertThat(response.getBody(), is(mockResponse));
     }
 
+    @Test
+    void whenSimilarProductsAreReturned_thenBodyIsTheSameAsSerializedByJackson() throws Exception {
+        List<ProductDetail> mockResponse = List.of(
+                new ProductDetail(MOCK_ID, "name \"quoted\" ✓", new BigDecimal("10.50"), Boolean.TRUE),
+                new ProductDetail("mockId2", "name2", new BigDecimal("1E+2"), Boolean.FALSE));
+        when(similarProductsService.getSimilarProducts(MOCK_ID)).thenReturn(mockResponse);
+        double fragmentHits = fragmentCacheHits();
+        for (int i = 0; i < 2; i++) {
+            MockHttpServletResponse response = perform(get("/product/{productId}/similar", MOCK_ID));
+            assertThat(response.getStatus(), is(HttpStatus.OK.value()));
+            assertThat(response.getContentType(), is(MediaType.APPLICATION_JSON_VALUE));
+            assertThat(response.getContentAsByteArray(), is(objectMapper.writeValueAsBytes(mockResponse)));
+        }
+        // The second response is written from the cached fragments
+        assertThat(fragmentCacheHits(), is(fragmentHits + 2));
+    }
+
+    @Test
+    void whenSimilarProductsAreCached_thenResponseHasETagAndMaxAgeOfTheTimeLeftInTheCache() throws Exception {
+        List<ProductDetail> mockResponse = List.of(new ProductDetail(MOCK_ID, "name", BigDecimal.ONE, Boolean.TRUE));
+        when(similarProductsService.getSimilarProducts(MOCK_ID)).thenReturn(mockResponse);
+        Cache cache = cacheManager.getCache(SimilarProductsService.SIMILAR_PRODUCT_DETAIL_CACHE);
+        cache.put(MOCK_ID, mockResponse);
+        try {
+            MockHttpServletResponse response = perform(get("/product/{productId}/similar", MOCK_ID));
+            assertThat(response.getStatus(), is(HttpStatus.OK.value()));
+            assertThat(response.getHeader(HttpHeaders.ETAG), startsWith("\""));
+            // spring.cache.caffeine.spec=expireAfterWrite=5s
+            assertThat(response.getHeader(HttpHeaders.CACHE_CONTROL), anyOf(is("max-age=5"), is("max-age=4")));
+            assertThat(response.getHeader(HttpHeaders.LAST_MODIFIED), is(notNullValue()));
+        } finally {
+            cache.evict(MOCK_ID);
+        }
+    }
+
+    @Test
+    void whenIfNoneMatchIsTheETag_thenReturn304ResponseWithoutBody() throws Exception {
+        List<ProductDetail> mockResponse = List.of(new ProductDetail(MOCK_ID, "name", BigDecimal.TEN, Boolean.TRUE));
+        when(similarProductsService.getSimilarProducts(MOCK_ID)).thenReturn(mockResponse);
+        String eTag = perform(get("/product/{productId}/similar", MOCK_ID))
+                .getHeader(HttpHeaders.ETAG);
+        double fragmentHits = fragmentCacheHits();
+        double fragmentMisses = fragmentCacheMisses();
+        MockHttpServletResponse response = perform(get("/product/{productId}/similar", MOCK_ID)
+                .header(HttpHeaders.IF_NONE_MATCH, eTag));
+        assertThat(response.getStatus(), is(HttpStatus.NOT_MODIFIED.value()));
+        assertThat(response.getHeader(HttpHeaders.ETAG), is(eTag));
+        assertThat(response.getContentLength(), is(0));
+        // The body is not serialized
+        assertThat(fragmentCacheHits(), is(fragmentHits));
+        assertThat(fragmentCacheMisses(), is(fragmentMisses));
+
+        response = perform(get("/product/{productId}/similar", MOCK_ID)
+                .header(HttpHeaders.IF_NONE_MATCH, "\"other\""));
+        assertThat(response.getStatus(), is(HttpStatus.OK.value()));
+    }
+
+    @Test
+    void whenRequestHasOffsetAndLimit_thenReturnTheWindowWithETagAndNoCache() throws Exception {
+        List<ProductDetail> mockResponse = List.of(new ProductDetail("mockId3", "name3", BigDecimal.ONE, Boolean.TRUE));
+        when(similarProductsService.getSimilarProducts(MOCK_ID, 2, 1, null))
+                .thenReturn(new SimilarProducts(mockResponse, false));
+        MockHttpServletResponse response = perform(get("/product/{productId}/similar", MOCK_ID)
+                .param("offset", "2").param("limit", "1"));
+        assertThat(response.getStatus(), is(HttpStatus.OK.value()));
+        assertThat(response.getContentAsByteArray(), is(objectMapper.writeValueAsBytes(mockResponse)));
+        assertThat(response.getHeader(HttpHeaders.ETAG), startsWith("\""));
+        assertThat(response.getHeader(HttpHeaders.CACHE_CONTROL), is("no-cache"));
+    }
+
+    @Test
+    void whenLimitIsNotPositive_thenReturn400Response() throws Exception {
+        MockHttpServletResponse response = perform(get("/product/{productId}/similar", MOCK_ID)
+                .param("limit", "0"));
+        assertThat(response.getStatus(), is(HttpStatus.BAD_REQUEST.value()));
+    }
+
+    @Test
+    void whenRequestAcceptsNdjson_thenDetailsAreStreamedOnePerLine() throws Exception {
+        List<ProductDetail> details = List.of(
+                new ProductDetail("mockId2", "name2", BigDecimal.ONE, Boolean.TRUE),
+                new ProductDetail("mockId3", "name3", BigDecimal.TEN, Boolean.FALSE));
+        when(similarProductsService.getSimilarIds(MOCK_ID, 1, 2)).thenReturn(List.of("mockId2", "mockId3"));
+        doAnswer(invocation -> {
+            Consumer<ProductDetail> action = invocation.getArgument(1);
+            details.forEach(action);
+            return null;
+        }).when(similarProductsService).forEachProductDetail(eq(List.of("mockId2", "mockId3")), any());
+
+        MvcResult result = mockMvc.perform(get("/product/{productId}/similar", MOCK_ID)
+                        .param("offset", "1").param("limit", "2")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andReturn();
+        MockHttpServletResponse response = mockMvc.perform(asyncDispatch(result)).andReturn().getResponse();
+        assertThat(response.getStatus(), is(HttpStatus.OK.value()));
+        assertThat(response.getContentType(), is(MediaType.APPLICATION_NDJSON_VALUE));
+        assertThat(response.getContentAsString(), is(objectMapper.writeValueAsString(details.get(0)) + "\n"
+                + objectMapper.writeValueAsString(details.get(1)) + "\n"));
+    }
+
+    @Test
+    void whenRequestAcceptsNdjson_thenConcurrencyLimitIsHeldUntilTheStreamEnds() throws Exception {
+        AdaptiveLimiter limiter = limiterRegistry.limiter(SimilarProductsController.GET_SIMILAR_PRODUCTS_LIMITER);
+        int inFlight = limiter.getInFlight();
+        AtomicInteger inFlightWhileStreaming = new AtomicInteger();
+        when(similarProductsService.getSimilarIds(MOCK_ID, 0, null)).thenReturn(List.of("mockId2"));
+        doAnswer(invocation -> {
+            inFlightWhileStreaming.set(limiter.getInFlight());
+            return null;
+        }).when(similarProductsService).forEachProductDetail(eq(List.of("mockId2")), any());
+
+        MvcResult result = mockMvc.perform(get("/product/{productId}/similar", MOCK_ID)
+                .accept(MediaType.APPLICATION_NDJSON)).andReturn();
+        mockMvc.perform(asyncDispatch(result)).andReturn();
+        assertThat(inFlightWhileStreaming.get(), is(inFlight + 1));
+        assertThat(limiter.getInFlight(), is(inFlight));
+    }
+
+    @Test
+    void whenDeadlineExpiresWhileStreaming_thenStreamEndsWithTheDetailsWrittenSoFar() throws Exception {
+        ProductDetail detail = new ProductDetail("mockId2", "name2", BigDecimal.ONE, Boolean.TRUE);
+        AtomicReference<Deadline> deadline = new AtomicReference<>();
+        when(similarProductsService.getSimilarIds(MOCK_ID, 0, null)).thenReturn(List.of("mockId2", "mockId3"));
+        doAnswer(invocation -> {
+            deadline.set(Deadline.current());
+            Consumer<ProductDetail> action = invocation.getArgument(1);
+            action.accept(detail);
+            throw new DeadlineExceededException("Deadline exceeded with id=mockId3");
+        }).when(similarProductsService).forEachProductDetail(eq(List.of("mockId2", "mockId3")), any());
+
+        MvcResult result = mockMvc.perform(get("/product/{productId}/similar", MOCK_ID)
+                .header(SimilarProductsController.REQUEST_TIMEOUT_HEADER, "1000")
+                .accept(MediaType.APPLICATION_NDJSON)).andReturn();
+        MockHttpServletResponse response = mockMvc.perform(asyncDispatch(result)).andReturn().getResponse();
+        assertThat(deadline.get(), is(notNullValue()));
+        assertThat(response.getStatus(), is(HttpStatus.OK.value()));
+        assertThat(response.getContentAsString(), is(objectMapper.writeValueAsString(detail) + "\n"));
+    }
+
+    @Test
+    void whenStreamFailsAfterSomeDetailsWereWritten_thenItEndsWithTheErrorLine() throws Exception {
+        ProductDetail detail = new ProductDetail("mockId2", "name2", BigDecimal.ONE, Boolean.TRUE);
+        when(similarProductsService.getSimilarIds(MOCK_ID, 0, null)).thenReturn(List.of("mockId2", "mockId3"));
+        doAnswer(invocation -> {
+            Consumer<ProductDetail> action = invocation.getArgument(1);
+            action.accept(detail);
+            throw new IllegalStateException("Upstream failure with id=mockId3");
+        }).when(similarProductsService).forEachProductDetail(eq(List.of("mockId2", "mockId3")), any());
+
+        MvcResult result = mockMvc.perform(get("/product/{productId}/similar", MOCK_ID)
+                .accept(MediaType.APPLICATION_NDJSON)).andReturn();
+        MockHttpServletResponse response = mockMvc.perform(asyncDispatch(result)).andReturn().getResponse();
+        assertThat(response.getStatus(), is(HttpStatus.OK.value()));
+        assertThat(response.getContentAsString(), is(objectMapper.writeValueAsString(detail) + "\n"
+                + SimilarProductsController.STREAM_ERROR_LINE));
+    }
+
+    @Test
+    void whenRequestAcceptsAnything_thenResponseIsJson() throws Exception {
+        List<ProductDetail> mockResponse = List.of(new ProductDetail(MOCK_ID, "name", BigDecimal.ONE, Boolean.TRUE));
+        when(similarProductsService.getSimilarProducts(MOCK_ID)).thenReturn(mockResponse);
+        MockHttpServletResponse response = perform(get("/product/{productId}/similar", MOCK_ID)
+                .accept(MediaType.ALL));
+        assertThat(response.getStatus(), is(HttpStatus.OK.value()));
+        assertThat(response.getContentType(), is(MediaType.APPLICATION_JSON_VALUE));
+    }
+
+    @Test
+    void whenRequestAcceptsNdjsonAndProductIsNotFound_thenReturn404Response() throws Exception {
+        when(similarProductsService.getSimilarIds(MOCK_ID, 0, null)).thenReturn(null);
+        MockHttpServletResponse response = perform(get("/product/{productId}/similar", MOCK_ID)
+                .accept(MediaType.APPLICATION_NDJSON));
+        assertThat(response.getStatus(), is(HttpStatus.NOT_FOUND.value()));
+    }
+
+    MockHttpServletResponse perform(MockHttpServletRequestBuilder request) throws Exception {
+        MvcResult result = mockMvc.perform(request).andReturn();
+        if (result.getRequest().isAsyncStarted()) {
+            result = mockMvc.perform(asyncDispatch(result)).andReturn();
+        }
+        return result.getResponse();
+    }
+
+    double fragmentCacheMisses() {
+        return meterRegistry.get("cache.gets").tag("cache", ProductDetailsHttpMessageConverter.FRAGMENTS_CACHE)
+                .tag("result", "miss").functionCounter().count();
+    }
+
+    double fragmentCacheHits() {
+        return meterRegistry.get("cache.gets").tag("cache", ProductDetailsHttpMessageConverter.FRAGMENTS_CACHE)
+                .tag("result", "hit").functionCounter().count();
+    }
 }
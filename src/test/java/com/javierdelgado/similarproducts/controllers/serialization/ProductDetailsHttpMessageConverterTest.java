@@ -0,0 +1,91 @@
+package com.javierdelgado.similarproducts.controllers.serialization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+class ProductDetailsHttpMessageConverterTest {
+
+    static final Type PRODUCT_DETAILS = new ParameterizedTypeReference<List<ProductDetail>>() {
+    }.getType();
+
+    final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    final ProductDetailsHttpMessageConverter converter = new ProductDetailsHttpMessageConverter(objectMapper, 100,
+            new SimpleMeterRegistry());
+
+    @Test
+    void whenProductDetailsAreWritten_thenOutputIsTheSameAsJacksonConverter() throws IOException {
+        List<ProductDetail> productDetails = Arrays.asList(
+                new ProductDetail("1", "Shirt", new BigDecimal("9.99"), true),
+                new ProductDetail("2", "\"Quoted\" \\ name\n with ünicode ✓", new BigDecimal("1E+3"), false),
+                new ProductDetail("3", "Trailing zeros", new BigDecimal("12.500"), true),
+                null);
+
+        assertThat(write(productDetails), is(writeWithJackson(productDetails)));
+        // A second time the fragments come from the cache
+        assertThat(write(productDetails), is(writeWithJackson(productDetails)));
+        assertThat(write(Collections.emptyList()), is(writeWithJackson(Collections.emptyList())));
+    }
+
+    @Test
+    void whenEqualProductDetailsAreSerialized_thenCachedBytesAreReused() {
+        byte[] bytes = converter.serialize(new ProductDetail("1", "Shirt", BigDecimal.TEN, true));
+        assertThat(converter.serialize(new ProductDetail("1", "Shirt", BigDecimal.TEN, true)), sameInstance(bytes));
+    }
+
+    @Test
+    void whenProductDetailChanges_thenItIsSerializedAgain() throws IOException {
+        ProductDetail productDetail = new ProductDetail("1", "Shirt", BigDecimal.TEN, true);
+        byte[] bytes = converter.serialize(productDetail);
+        productDetail.setPrice(BigDecimal.ONE);
+        assertThat(converter.serialize(productDetail), is(not(bytes)));
+        assertThat(write(List.of(productDetail)), is(writeWithJackson(List.of(productDetail))));
+        assertThat(converter.serialize(new ProductDetail("1", "Shirt", BigDecimal.TEN, true)), is(bytes));
+    }
+
+    @Test
+    void whenTypeIsNotListOfProductDetails_thenConverterDoesNotWriteIt() {
+        Type strings = new ParameterizedTypeReference<List<String>>() {
+        }.getType();
+        Type map = new ParameterizedTypeReference<Map<String, List<ProductDetail>>>() {
+        }.getType();
+        assertThat(converter.canWrite(PRODUCT_DETAILS, ArrayList.class, MediaType.APPLICATION_JSON), is(true));
+        assertThat(converter.canWrite(PRODUCT_DETAILS, ArrayList.class, MediaType.APPLICATION_XML), is(false));
+        assertThat(converter.canWrite(strings, ArrayList.class, MediaType.APPLICATION_JSON), is(false));
+        assertThat(converter.canWrite(map, Map.class, MediaType.APPLICATION_JSON), is(false));
+        assertThat(converter.canRead(PRODUCT_DETAILS, null, MediaType.APPLICATION_JSON), is(false));
+    }
+
+    byte[] write(List<ProductDetail> productDetails) throws IOException {
+        MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+        converter.write(productDetails, PRODUCT_DETAILS, MediaType.APPLICATION_JSON, outputMessage);
+        return outputMessage.getBodyAsBytes();
+    }
+
+    byte[] writeWithJackson(List<ProductDetail> productDetails) throws IOException {
+        MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+        new MappingJackson2HttpMessageConverter(objectMapper)
+                .write(productDetails, PRODUCT_DETAILS, MediaType.APPLICATION_JSON, outputMessage);
+        return outputMessage.getBodyAsBytes();
+    }
+}
@@ -0,0 +1,117 @@
+package com.javierdelgado.similarproducts.limiter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AdaptiveLimiterTest {
+
+    static final String NAME = "test";
+
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    AtomicLong nanoTime = new AtomicLong();
+
+    @Test
+    void whenLimitIsReached_thenCallsAreRejected() {
+        AdaptiveLimiter limiter = limiter(true, 4);
+        List<AdaptiveLimiter.Permit> permits = acquire(limiter, 4);
+        assertThrows(LimitExceededException.class, limiter::acquire);
+        permits.get(0).onIgnore();
+        limiter.acquire();
+        assertThat(meterRegistry.get("similar.products.limiter.rejected").tag("name", NAME).counter().count(),
+                is(1.0));
+    }
+
+    @Test
+    void whenLimiterIsDisabled_thenCallsAreNeverRejected() {
+        AdaptiveLimiter limiter = limiter(false, 4);
+        acquire(limiter, 10);
+        assertThat(limiter.getInFlight(), is(10));
+    }
+
+    @Test
+    void whenPermitIsReleasedTwice_thenOnlyTheFirstReleaseHasEffect() {
+        AdaptiveLimiter limiter = limiter(true, 4);
+        acquire(limiter, 2);
+        AdaptiveLimiter.Permit permit = limiter.acquire();
+        permit.onSuccess();
+        permit.onIgnore();
+        assertThat(limiter.getInFlight(), is(2));
+    }
+
+    @Test
+    void whenLatencyIsStableAndLimitIsInUse_thenLimitGrows() {
+        AdaptiveLimiter limiter = limiter(true, 20);
+        for (int i = 0; i < 50; i++) {
+            runBatch(limiter, limiter.getLimit(), 10);
+        }
+        assertThat(limiter.getLimit(), is(greaterThan(20)));
+        assertThat(meterRegistry.get("similar.products.limiter.limit").tag("name", NAME).gauge().value(),
+                is((double) limiter.getLimit()));
+    }
+
+    @Test
+    void whenLatencyGrows_thenLimitShrinks() {
+        GradientLimit limit = new GradientLimit(new LimiterProperties.LimitBounds(100, 4, 1000),
+                new LimiterProperties(true, 0.2, 1.5, 600, null));
+        for (int i = 0; i < 100; i++) {
+            limit.onSample(10_000_000, 100, false);
+        }
+        int limitBefore = limit.getLimit();
+        for (int i = 0; i < 20; i++) {
+            limit.onSample(100_000_000, limitBefore, false);
+        }
+        assertThat(limitBefore, is(greaterThan(100)));
+        assertThat(limit.getLimit(), is(lessThan(limitBefore / 2)));
+    }
+
+    @Test
+    void whenLimitIsNotInUse_thenLimitDoesNotChange() {
+        AdaptiveLimiter limiter = limiter(true, 100);
+        for (int i = 0; i < 20; i++) {
+            runBatch(limiter, 10, i % 2 == 0 ? 10 : 1000);
+        }
+        assertThat(limiter.getLimit(), is(100));
+    }
+
+    @Test
+    void whenCallsAreDropped_thenLimitShrinksToTheMinimum() {
+        AdaptiveLimiter limiter = limiter(true, 100);
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire().onDropped();
+        }
+        assertThat(limiter.getLimit(), is(4));
+    }
+
+    private AdaptiveLimiter limiter(boolean enabled, int initialLimit) {
+        LimiterProperties properties = new LimiterProperties(enabled, 0.2, 1.5, 600,
+                Map.of(NAME, new LimiterProperties.LimitBounds(initialLimit, 4, 1000)));
+        return new AdaptiveLimiter(NAME, properties, meterRegistry, nanoTime::get);
+    }
+
+    /**
+     * Acquires the given number of permits and releases all of them after the given latency
+     */
+    private void runBatch(AdaptiveLimiter limiter, int calls, long latencyMillis) {
+        List<AdaptiveLimiter.Permit> permits = acquire(limiter, calls);
+        nanoTime.addAndGet(latencyMillis * 1_000_000);
+        permits.forEach(AdaptiveLimiter.Permit::onSuccess);
+    }
+
+    private static List<AdaptiveLimiter.Permit> acquire(AdaptiveLimiter limiter, int calls) {
+        List<AdaptiveLimiter.Permit> permits = new ArrayList<>(calls);
+        for (int i = 0; i < calls; i++) {
+            permits.add(limiter.acquire());
+        }
+        return permits;
+    }
+}
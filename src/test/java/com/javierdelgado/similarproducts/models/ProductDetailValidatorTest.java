@@ -0,0 +1,54 @@
+package com.javierdelgado.similarproducts.models;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ProductDetailValidatorTest {
+
+    private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    @Test
+    void whenProductDetailHasAnyCombinationOfValues_thenDecisionIsTheSameAsBeanValidation() {
+        for (String id : Arrays.asList(null, "", "1")) {
+            for (String name : Arrays.asList(null, "", "name")) {
+                for (BigDecimal price : Arrays.asList(null, BigDecimal.ZERO)) {
+                    for (Boolean availability : Arrays.asList(null, Boolean.FALSE)) {
+                        ProductDetail productDetail = new ProductDetail(id, name, price, availability);
+                        List<String> expected = new ArrayList<>();
+                        for (ConstraintViolation<ProductDetail> violation : validator.validate(productDetail)) {
+                            expected.add(violation.getPropertyPath() + ": " + violation.getMessage());
+                        }
+                        assertThat(productDetail.toString(), ProductDetailValidator.isValid(productDetail),
+                                is(expected.isEmpty()));
+                        assertThat(productDetail.toString(), ProductDetailValidator.violations(productDetail),
+                                containsInAnyOrder(expected.toArray()));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void whenProductDetailIsValid_thenThereAreNoViolations() {
+        ProductDetail productDetail = new ProductDetail("1", "name", BigDecimal.ONE, Boolean.TRUE);
+        assertThat(ProductDetailValidator.isValid(productDetail), is(true));
+        assertThat(ProductDetailValidator.violations(productDetail), is(empty()));
+    }
+
+    @Test
+    void whenProductDetailIsNull_thenThrowIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> ProductDetailValidator.isValid(null));
+        assertThrows(IllegalArgumentException.class, () -> validator.validate(null));
+    }
+}
@@ -0,0 +1,63 @@
+package com.javierdelgado.similarproducts.services;
+
+import com.javierdelgado.similarproducts.services.proxies.ProductsServiceResponseException;
+import feign.FeignException;
+import feign.Request;
+import feign.RetryableException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.Collections;
+import java.util.concurrent.CompletionException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class FailureReasonTest {
+
+    static final Request REQUEST = Request.create(Request.HttpMethod.GET, "FailureReasonTestUrl",
+            Collections.emptyMap(), Request.Body.empty(), null);
+
+    @Test
+    void whenFeignExceptionIsNotFound_thenReasonIsNotFound() {
+        assertThat(FailureReason.of(new FeignException.NotFound("NotFound", REQUEST, null, null)),
+                is(FailureReason.NOT_FOUND));
+    }
+
+    @Test
+    void whenFeignExceptionIsInternalServerError_thenReasonIsServerError() {
+        assertThat(FailureReason.of(new FeignException.InternalServerError("Error", REQUEST, null, null)),
+                is(FailureReason.SERVER_ERROR));
+    }
+
+    @Test
+    void whenFeignExceptionIsCausedBySocketTimeout_thenReasonIsTimeout() {
+        RetryableException e = new RetryableException(-1, "Read timed out", Request.HttpMethod.GET,
+                new SocketTimeoutException("Read timed out"), null, REQUEST);
+        assertThat(FailureReason.of(e), is(FailureReason.TIMEOUT));
+    }
+
+    @Test
+    void whenFeignExceptionIsCausedByConnectionError_thenReasonIsServerError() {
+        RetryableException e = new RetryableException(-1, "Connection refused", Request.HttpMethod.GET,
+                new ConnectException("Connection refused"), null, REQUEST);
+        assertThat(FailureReason.of(e), is(FailureReason.SERVER_ERROR));
+    }
+
+    @Test
+    void whenAsyncExceptionIsWrapped_thenReasonIsTakenFromItsCause() {
+        assertThat(FailureReason.of(new CompletionException(new ProductsServiceResponseException(404, "NotFound"))),
+                is(FailureReason.NOT_FOUND));
+        assertThat(FailureReason.of(new CompletionException(new HttpTimeoutException("timed out"))),
+                is(FailureReason.TIMEOUT));
+        assertThat(FailureReason.of(new CompletionException(new IOException())), is(FailureReason.SERVER_ERROR));
+    }
+
+    @Test
+    void whenExceptionIsUnexpected_thenReasonIsOther() {
+        assertThat(FailureReason.of(new RuntimeException()), is(FailureReason.OTHER));
+    }
+}
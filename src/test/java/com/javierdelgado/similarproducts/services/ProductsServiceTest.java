@@ -1,25 +1,48 @@
 package com.javierdelgado.similarproducts.services;
 
+import com.javierdelgado.similarproducts.cache.CompactProductDetail;
 import com.javierdelgado.similarproducts.models.ProductDetail;
+import com.javierdelgado.similarproducts.services.deadline.Deadline;
+import com.javierdelgado.similarproducts.services.deadline.DeadlineExceededException;
+import com.javierdelgado.similarproducts.services.proxies.AsyncProductsServiceProxy;
 import com.javierdelgado.similarproducts.services.proxies.ProductsServiceProxy;
+import com.javierdelgado.similarproducts.services.proxies.ProductsServiceResponseException;
 import feign.FeignException;
 import feign.Request;
+import feign.RetryableException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthEndpoint;
+import org.springframework.boot.actuate.health.Status;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 
 import java.math.BigDecimal;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Stream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @SpringBootTest
@@ -31,12 +54,21 @@ class ProductsServiceTest {
     CacheManager cacheManager;
     @Autowired
     ProductsService productsService;
+    @Autowired
+    MeterRegistry meterRegistry;
+    @Autowired
+    CircuitBreakerRegistry circuitBreakerRegistry;
+    @Autowired
+    HealthEndpoint healthEndpoint;
     @MockBean
     ProductsServiceProxy productsServiceProxy;
+    @MockBean
+    AsyncProductsServiceProxy asyncProductsServiceProxy;
 
     @BeforeEach
     void beforeEach() {
         cacheManager.getCacheNames().stream().map(cacheManager::getCache).forEach(Cache::clear);
+        circuitBreakerRegistry.getAllCircuitBreakers().forEach(CircuitBreaker::reset);
     }
 
     @Test
@@ -164,4 +196,208 @@ class ProductsServiceTest {
         assertThat(response2, is(mockResponse2));
     }
 
-}
\ No newline at end of file
+    @Test
+    void whenAsyncProxyGetSimilarIdsFails_thenFutureCompletesWithNull() {
+        when(asyncProductsServiceProxy.getSimilarIds(MOCK_ID))
+                .thenReturn(CompletableFuture.failedFuture(new ProductsServiceResponseException(404, "NotFound")));
+        assertThat(productsService.getSimilarIdsAsync(MOCK_ID).join(), is(nullValue()));
+    }
+
+    @Test
+    void whenAsyncProxyGetSimilarIdsReturnsCorrectResponse_thenFutureCompletesWithListOfSimilarIds() {
+        when(asyncProductsServiceProxy.getSimilarIds(MOCK_ID)).thenReturn(CompletableFuture.completedFuture(
+                List.of(MOCK_ID)));
+        assertThat(productsService.getSimilarIdsAsync(MOCK_ID).join(), contains(MOCK_ID));
+    }
+
+    @Test
+    void whenAsyncProxyGetProductDetailReturnsMalformedProductDetail_thenFutureCompletesWithNull() {
+        when(asyncProductsServiceProxy.getProductDetail(MOCK_ID)).thenReturn(CompletableFuture.completedFuture(
+                new ProductDetail(null, null, null, null)));
+        assertThat(productsService.getProductDetailAsync(MOCK_ID).join(), is(nullValue()));
+    }
+
+    @Test
+    void whenGetProductDetailAsyncIsCalledSeveralTimeWithSameIds_thenSharesTheCacheWithGetProductDetail() {
+        ProductDetail mockResponse = new ProductDetail(MOCK_ID, "name", BigDecimal.ZERO, Boolean.TRUE);
+        when(asyncProductsServiceProxy.getProductDetail(MOCK_ID))
+                .thenReturn(CompletableFuture.completedFuture(mockResponse));
+        assertThat(productsService.getProductDetailAsync(MOCK_ID).join(), is(mockResponse));
+        assertThat(productsService.getProductDetailAsync(MOCK_ID).join(), is(mockResponse));
+        assertThat(productsService.getProductDetail(MOCK_ID), is(mockResponse));
+        verify(asyncProductsServiceProxy, times(1)).getProductDetail(MOCK_ID);
+    }
+
+    @Test
+    void whenProxyGetSimilarIdsThrowsFeignNotFoundException_thenNextCallsAreNotSentToProductsService() {
+        Request request = Request.create(Request.HttpMethod.GET, "ProductsServiceTestUrl", Collections.emptyMap(),
+                Request.Body.empty(), null);
+        when(productsServiceProxy.getSimilarIds(MOCK_ID))
+                .thenThrow(new FeignException.NotFound("ProductNotFound", request, null, null));
+        assertThat(productsService.loadSimilarIds(MOCK_ID), is(nullValue()));
+        assertThat(productsService.loadSimilarIds(MOCK_ID), is(nullValue()));
+        verify(productsServiceProxy, times(1)).getSimilarIds(MOCK_ID);
+    }
+
+    @Test
+    void whenProxyGetProductDetailReturnsMalformedProductDetail_thenNextCallsAreNotSentToProductsService() {
+        when(productsServiceProxy.getProductDetail(MOCK_ID)).thenReturn(new ProductDetail(MOCK_ID, "", null, null));
+        assertThat(productsService.loadProductDetail(MOCK_ID), is(nullValue()));
+        assertThat(productsService.getProductDetailAsync(MOCK_ID).join(), is(nullValue()));
+        verify(productsServiceProxy, times(1)).getProductDetail(MOCK_ID);
+        verify(asyncProductsServiceProxy, times(0)).getProductDetail(MOCK_ID);
+    }
+
+    @Test
+    void whenThereIsDeadline_thenRequestTimeoutsAreDerivedFromIt() {
+        ProductDetail mockResponse = new ProductDetail(MOCK_ID, "name", BigDecimal.ZERO, Boolean.TRUE);
+        ArgumentCaptor<Request.Options> options = ArgumentCaptor.forClass(Request.Options.class);
+        when(productsServiceProxy.getProductDetail(eq(MOCK_ID), options.capture())).thenReturn(mockResponse);
+
+        Deadline deadline = Deadline.after(Duration.ofSeconds(2));
+        ProductDetail response = deadline.run(() -> productsService.getProductDetail(MOCK_ID));
+
+        assertThat(response, is(mockResponse));
+        assertThat(options.getValue().readTimeoutMillis(), is(both(greaterThan(0)).and(lessThanOrEqualTo(2000))));
+        verify(productsServiceProxy, times(0)).getProductDetail(MOCK_ID);
+    }
+
+    @Test
+    void whenDeadlineIsLongerThanTheConfiguredTimeouts_thenConfiguredTimeoutsAreUsed() {
+        ProductDetail mockResponse = new ProductDetail(MOCK_ID, "name", BigDecimal.ZERO, Boolean.TRUE);
+        when(productsServiceProxy.getProductDetail(MOCK_ID)).thenReturn(mockResponse);
+
+        Deadline deadline = Deadline.after(Duration.ofMinutes(5));
+        assertThat(deadline.run(() -> productsService.getProductDetail(MOCK_ID)), is(mockResponse));
+        verify(productsServiceProxy, times(0)).getProductDetail(eq(MOCK_ID), any(Request.Options.class));
+    }
+
+    @Test
+    void whenThereIsDeadlineInAsyncMode_thenRequestTimeoutIsDerivedFromItAndItsTimeoutIsNotCached() {
+        ProductDetail mockResponse = new ProductDetail(MOCK_ID, "name", BigDecimal.ZERO, Boolean.TRUE);
+        ArgumentCaptor<Duration> timeout = ArgumentCaptor.forClass(Duration.class);
+        when(asyncProductsServiceProxy.getProductDetail(eq(MOCK_ID), timeout.capture()))
+                .thenReturn(CompletableFuture.failedFuture(new HttpTimeoutException("request timed out")));
+        when(asyncProductsServiceProxy.getProductDetail(MOCK_ID))
+                .thenReturn(CompletableFuture.completedFuture(mockResponse));
+
+        Deadline deadline = Deadline.after(Duration.ofSeconds(2));
+        CompletableFuture<ProductDetail> future = deadline.run(() -> productsService.getProductDetailAsync(MOCK_ID));
+        CompletionException e = assertThrows(CompletionException.class, future::join);
+        assertThat(e.getCause(), is(instanceOf(DeadlineExceededException.class)));
+        assertThat(timeout.getValue(),
+                is(both(greaterThan(Duration.ZERO)).and(lessThanOrEqualTo(Duration.ofSeconds(2)))));
+        assertThat(productsService.getProductDetailAsync(MOCK_ID).join(), is(mockResponse));
+    }
+
+    @Test
+    void whenRequestTimesOutBeforeDeadline_thenThrowDeadlineExceededExceptionAndDoNotCacheTheResult() {
+        Request request = Request.create(Request.HttpMethod.GET, "ProductsServiceTestUrl", Collections.emptyMap(),
+                Request.Body.empty(), null);
+        ProductDetail mockResponse = new ProductDetail(MOCK_ID, "name", BigDecimal.ZERO, Boolean.TRUE);
+        when(productsServiceProxy.getProductDetail(eq(MOCK_ID), any(Request.Options.class)))
+                .thenThrow(new RetryableException(-1, "Read timed out", Request.HttpMethod.GET,
+                        new SocketTimeoutException("Read timed out"), null, request));
+        when(productsServiceProxy.getProductDetail(MOCK_ID)).thenReturn(mockResponse);
+
+        Deadline deadline = Deadline.after(Duration.ofSeconds(2));
+        assertThrows(DeadlineExceededException.class,
+                () -> deadline.run(() -> productsService.getProductDetail(MOCK_ID)));
+        assertThat(productsService.getProductDetail(MOCK_ID), is(mockResponse));
+    }
+
+    @Test
+    void whenDeadlineHasExpired_thenRequestIsNotSent() {
+        Deadline deadline = Deadline.after(Duration.ofMillis(-1));
+        assertThrows(DeadlineExceededException.class,
+                () -> deadline.run(() -> productsService.getSimilarIds(MOCK_ID)));
+        verify(productsServiceProxy, times(0)).getSimilarIds(eq(MOCK_ID), any(Request.Options.class));
+    }
+
+
+    @Test
+    void whenProductDetailIsRequested_thenRequestIsTimedByOutcome() {
+        when(productsServiceProxy.getProductDetail(MOCK_ID))
+                .thenReturn(new ProductDetail(MOCK_ID, "name", BigDecimal.ZERO, Boolean.TRUE));
+        when(productsServiceProxy.getProductDetail("malformedId")).thenReturn(new ProductDetail(null, null, null, null));
+        long ok = upstreamRequests("ok");
+        long validationFailed = upstreamRequests("validation-failed");
+        productsService.getProductDetail(MOCK_ID);
+        productsService.getProductDetail("malformedId");
+        assertThat(upstreamRequests("ok"), is(ok + 1));
+        assertThat(upstreamRequests("validation-failed"), is(validationFailed + 1));
+    }
+
+    long upstreamRequests(String outcome) {
+        return meterRegistry.get("similar.products.upstream.requests").tag("endpoint", "productDetail")
+                .tag("outcome", outcome).timer().count();
+    }
+
+    @Test
+    void whenProductDetailIsCached_thenItIsStoredInCompactForm() {
+        ProductDetail mockResponse = new ProductDetail(MOCK_ID, "name", new BigDecimal("10.50"), Boolean.TRUE);
+        when(productsServiceProxy.getProductDetail(MOCK_ID)).thenReturn(mockResponse);
+        assertThat(productsService.getProductDetail(MOCK_ID), is(mockResponse));
+        Cache.ValueWrapper cached = cacheManager.getCache(ProductsService.PRODUCT_DETAIL_CACHE).get(MOCK_ID);
+        assertThat(cached.get(), is(instanceOf(CompactProductDetail.class)));
+        assertThat(productsService.getProductDetail(MOCK_ID), is(mockResponse));
+        assertThat(productsService.getProductDetailAsync(MOCK_ID).join(), is(mockResponse));
+        verify(productsServiceProxy, times(1)).getProductDetail(MOCK_ID);
+    }
+
+    @Test
+    void whenProductDetailReturnedByACacheHitIsModified_thenCacheIsNotModified() {
+        when(productsServiceProxy.getProductDetail(MOCK_ID))
+                .thenReturn(new ProductDetail(MOCK_ID, "name", new BigDecimal("10.50"), Boolean.TRUE));
+        productsService.getProductDetail(MOCK_ID).setName("modified");
+        productsService.getProductDetailAsync(MOCK_ID).join().setPrice(BigDecimal.ONE);
+        assertThat(productsService.getProductDetail(MOCK_ID),
+                is(new ProductDetail(MOCK_ID, "name", new BigDecimal("10.50"), Boolean.TRUE)));
+        verify(productsServiceProxy, times(1)).getProductDetail(MOCK_ID);
+    }
+
+    @Test
+    void whenCircuitBreakerIsOpen_thenRequestIsNotSentAndStaleResultIsReturned() {
+        ProductDetail mockResponse = new ProductDetail(MOCK_ID, "name", BigDecimal.TEN, Boolean.TRUE);
+        when(productsServiceProxy.getProductDetail(MOCK_ID)).thenReturn(mockResponse);
+        assertThat(productsService.getProductDetail(MOCK_ID), is(mockResponse));
+        cacheManager.getCache(ProductsService.PRODUCT_DETAIL_CACHE).clear();
+        circuitBreakerRegistry.circuitBreaker("productDetail").transitionToOpenState();
+        long circuitOpen = upstreamRequests("circuit-open");
+        assertThat(productsService.getProductDetail(MOCK_ID), is(mockResponse));
+        assertThat(productsService.getProductDetailAsync("otherId").join(), is(nullValue()));
+        assertThat(upstreamRequests("circuit-open"), is(circuitOpen + 2));
+        verify(productsServiceProxy, times(1)).getProductDetail(anyString());
+        verify(asyncProductsServiceProxy, times(0)).getProductDetail(anyString());
+    }
+
+    @Test
+    void whenCircuitBreakerIsOpen_thenResultIsNotNegativeCached() {
+        circuitBreakerRegistry.circuitBreaker("similarIds").transitionToOpenState();
+        assertThat(productsService.loadSimilarIds(MOCK_ID), is(nullValue()));
+        circuitBreakerRegistry.circuitBreaker("similarIds").reset();
+        when(productsServiceProxy.getSimilarIds(MOCK_ID)).thenReturn(List.of("1"));
+        assertThat(productsService.loadSimilarIds(MOCK_ID), contains("1"));
+    }
+
+    @Test
+    void whenProductsServiceFails_thenCircuitBreakerOpensAndItIsReportedInHealth() {
+        Request request = Request.create(Request.HttpMethod.GET, "ProductsServiceTestUrl", Collections.emptyMap(),
+                Request.Body.empty(), null);
+        when(productsServiceProxy.getSimilarIds(anyString()))
+                .thenThrow(new FeignException.InternalServerError("InternalServerError", request, null, null));
+        for (int i = 0; i < 20; i++) {
+            productsService.loadSimilarIds("failing" + i);
+        }
+        assertThat(circuitBreakerRegistry.circuitBreaker("similarIds").getState(), is(CircuitBreaker.State.OPEN));
+        assertThat(meterRegistry.get("similar.products.circuit.breaker.transitions").tag("name", "similarIds")
+                .tag("from", "CLOSED").tag("to", "OPEN").counter().count(), is(greaterThanOrEqualTo(1.0)));
+        assertThat(meterRegistry.get("resilience4j.circuitbreaker.state").tag("name", "similarIds")
+                .tag("state", "open").gauge().value(), is(1.0));
+        Health health = (Health) healthEndpoint.healthForPath("circuitBreakers");
+        assertThat(((Health) health.getDetails().get("similarIds")).getStatus(), is(new Status("CIRCUIT_OPEN")));
+        assertThat(healthEndpoint.health().getStatus(), is(Status.UP));
+        productsService.loadSimilarIds("notSent");
+        verify(productsServiceProxy, times(20)).getSimilarIds(anyString());
+    }
+}
@@ -1,6 +1,13 @@
 package com.javierdelgado.similarproducts.services;
 
+import com.javierdelgado.similarproducts.limiter.LimitExceededException;
 import com.javierdelgado.similarproducts.models.ProductDetail;
+import com.javierdelgado.similarproducts.models.SimilarProducts;
+import com.javierdelgado.similarproducts.services.deadline.Deadline;
+import com.javierdelgado.similarproducts.services.deadline.DeadlineExceededException;
+import com.javierdelgado.similarproducts.services.prefetch.Prefetcher;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,15 +16,22 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Stream;
 
 import static java.lang.Boolean.TRUE;
 import static java.math.BigDecimal.ZERO;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @SpringBootTest
@@ -35,8 +49,12 @@ class SimilarProductsServiceTest {
     CacheManager cacheManager;
     @Autowired
     SimilarProductsService similarProductsService;
+    @Autowired
+    MeterRegistry meterRegistry;
     @MockBean
     ProductsService productsService;
+    @MockBean
+    Prefetcher prefetcher;
 
     @BeforeEach
     void beforeEach() {
@@ -110,6 +128,154 @@ class SimilarProductsServiceTest {
         assertThat(response2, is(mockResponse2));
     }
 
+    @Test
+    void whenGetSimilarIdsAsyncReturnList_thenReturnProductDetailListInTheSameOrder() {
+        CompletableFuture<ProductDetail> slowProductDetail = new CompletableFuture<>();
+        when(productsService.getSimilarIdsAsync(MOCK_ID)).thenReturn(CompletableFuture.completedFuture(
+                List.of(MOCK_ID_2, MOCK_ID_3, MOCK_ID_4)));
+        when(productsService.getProductDetailAsync(MOCK_ID_2)).thenReturn(slowProductDetail);
+        when(productsService.getProductDetailAsync(MOCK_ID_3)).thenReturn(CompletableFuture.completedFuture(null));
+        when(productsService.getProductDetailAsync(MOCK_ID_4)).thenReturn(CompletableFuture.completedFuture(
+                MOCK_PRODUCT_DETAIL_4));
+
+        CompletableFuture<List<ProductDetail>> response = similarProductsService.getSimilarProductsAsync(MOCK_ID);
+        assertThat(response.isDone(), is(false));
+        slowProductDetail.complete(MOCK_PRODUCT_DETAIL_2);
+        assertThat(response.join(), is(List.of(MOCK_PRODUCT_DETAIL_2, MOCK_PRODUCT_DETAIL_4)));
+    }
+
+    @Test
+    void whenGetSimilarProductsAsyncIsCalledTwice_thenSimilarProductsAreCachedAndFetchedOnce() {
+        when(productsService.getSimilarIdsAsync(MOCK_ID)).thenReturn(CompletableFuture.completedFuture(
+                List.of(MOCK_ID_2)));
+        when(productsService.getProductDetailAsync(MOCK_ID_2)).thenReturn(CompletableFuture.completedFuture(
+                MOCK_PRODUCT_DETAIL_2));
+
+        assertThat(similarProductsService.getSimilarProductsAsync(MOCK_ID).join(), is(List.of(MOCK_PRODUCT_DETAIL_2)));
+        assertThat(similarProductsService.getSimilarProductsAsync(MOCK_ID, 0, null, null).join().productDetails(),
+                is(List.of(MOCK_PRODUCT_DETAIL_2)));
+        assertThat(similarProductsService.getSimilarProducts(MOCK_ID), is(List.of(MOCK_PRODUCT_DETAIL_2)));
+        verify(productsService, times(1)).getSimilarIdsAsync(MOCK_ID);
+    }
+
+    @Test
+    void whenSimilarIdsAreRejectedInAsyncMode_thenFutureCompletesWithLimitExceededException() {
+        when(productsService.getSimilarIdsAsync(MOCK_ID)).thenReturn(CompletableFuture.failedFuture(
+                new LimitExceededException("Limit exceeded")));
+        CompletableFuture<SimilarProducts> response = similarProductsService.getSimilarProductsAsync(MOCK_ID, 0, null,
+                Deadline.after(Duration.ofSeconds(5)));
+        CompletionException e = assertThrows(CompletionException.class, response::join);
+        assertThat(e.getCause(), is(instanceOf(LimitExceededException.class)));
+    }
+
+    @Test
+    void whenGetSimilarIdsAsyncReturnNull_thenFutureCompletesWithNull() {
+        when(productsService.getSimilarIdsAsync(MOCK_ID)).thenReturn(CompletableFuture.completedFuture(null));
+        assertThat(similarProductsService.getSimilarProductsAsync(MOCK_ID).join(), is(nullValue()));
+    }
+
+    @Test
+    void whenDeadlineExpires_thenReturnPartialProductDetailListInTheSameOrderAndDoNotCacheIt() {
+        when(productsService.getSimilarIds(MOCK_ID)).thenReturn(List.of(MOCK_ID_2, MOCK_ID_3, MOCK_ID_4));
+        when(productsService.getProductDetail(MOCK_ID_2)).thenReturn(MOCK_PRODUCT_DETAIL_2);
+        when(productsService.getProductDetail(MOCK_ID_3)).thenAnswer(invocation -> {
+            Thread.sleep(5000);
+            return MOCK_PRODUCT_DETAIL_3;
+        });
+        when(productsService.getProductDetail(MOCK_ID_4)).thenReturn(MOCK_PRODUCT_DETAIL_4);
+
+        SimilarProducts response = similarProductsService.getSimilarProducts(MOCK_ID,
+                Deadline.after(Duration.ofMillis(300)));
+
+        assertThat(response.partial(), is(true));
+        assertThat(response.productDetails(), is(List.of(MOCK_PRODUCT_DETAIL_2, MOCK_PRODUCT_DETAIL_4)));
+        assertThat(cacheManager.getCache(SimilarProductsService.SIMILAR_PRODUCT_DETAIL_CACHE).get(MOCK_ID),
+                is(nullValue()));
+    }
+
+    @Test
+    void whenDeadlineDoesNotExpire_thenReturnCompleteProductDetailListAndCacheIt() {
+        when(productsService.getSimilarIds(MOCK_ID)).thenReturn(List.of(MOCK_ID_2, MOCK_ID_3));
+        when(productsService.getProductDetail(MOCK_ID_2)).thenReturn(MOCK_PRODUCT_DETAIL_2);
+        when(productsService.getProductDetail(MOCK_ID_3)).thenReturn(MOCK_PRODUCT_DETAIL_3);
+
+        SimilarProducts response = similarProductsService.getSimilarProducts(MOCK_ID,
+                Deadline.after(Duration.ofSeconds(5)));
+
+        assertThat(response.partial(), is(false));
+        assertThat(response.productDetails(), is(List.of(MOCK_PRODUCT_DETAIL_2, MOCK_PRODUCT_DETAIL_3)));
+        assertThat(similarProductsService.getSimilarProducts(MOCK_ID), is(response.productDetails()));
+        verify(productsService, times(1)).getSimilarIds(MOCK_ID);
+    }
+
+    @Test
+    void whenGetSimilarIdsExceedsTheDeadline_thenReturnEmptyPartialList() {
+        when(productsService.getSimilarIds(MOCK_ID)).thenThrow(new DeadlineExceededException("Deadline exceeded"));
+
+        SimilarProducts response = similarProductsService.getSimilarProducts(MOCK_ID,
+                Deadline.after(Duration.ofSeconds(5)));
+
+        assertThat(response.partial(), is(true));
+        assertThat(response.productDetails(), is(empty()));
+    }
+
+    @Test
+    void whenDeadlineExpiresInAsyncMode_thenReturnPartialProductDetailListInTheSameOrder() {
+        when(productsService.getSimilarIdsAsync(MOCK_ID)).thenReturn(CompletableFuture.completedFuture(
+                List.of(MOCK_ID_2, MOCK_ID_3, MOCK_ID_4)));
+        when(productsService.getProductDetailAsync(MOCK_ID_2)).thenReturn(new CompletableFuture<>());
+        when(productsService.getProductDetailAsync(MOCK_ID_3)).thenReturn(CompletableFuture.completedFuture(
+                MOCK_PRODUCT_DETAIL_3));
+        when(productsService.getProductDetailAsync(MOCK_ID_4)).thenReturn(CompletableFuture.completedFuture(
+                MOCK_PRODUCT_DETAIL_4));
+
+        CompletableFuture<SimilarProducts> future = similarProductsService.getSimilarProductsAsync(MOCK_ID, 0, null,
+                Deadline.after(Duration.ofMillis(100)));
+        assertThat(future.isDone(), is(false));
+        SimilarProducts response = future.join();
+
+        assertThat(response.partial(), is(true));
+        assertThat(response.productDetails(), is(List.of(MOCK_PRODUCT_DETAIL_3, MOCK_PRODUCT_DETAIL_4)));
+        assertThat(cacheManager.getCache(SimilarProductsService.SIMILAR_PRODUCT_DETAIL_CACHE).get(MOCK_ID),
+                is(nullValue()));
+    }
+
+    @Test
+    void whenRequestsAreAbortedByTheDeadlineInAsyncMode_thenReturnPartialProductDetailList() {
+        when(productsService.getSimilarIdsAsync(MOCK_ID)).thenReturn(CompletableFuture.completedFuture(
+                List.of(MOCK_ID_2, MOCK_ID_3)));
+        when(productsService.getProductDetailAsync(MOCK_ID_2)).thenReturn(CompletableFuture.failedFuture(
+                new DeadlineExceededException("Deadline exceeded with id=" + MOCK_ID_2)));
+        when(productsService.getProductDetailAsync(MOCK_ID_3)).thenReturn(CompletableFuture.completedFuture(
+                MOCK_PRODUCT_DETAIL_3));
+
+        SimilarProducts response = similarProductsService.getSimilarProductsAsync(MOCK_ID, 0, null,
+                Deadline.after(Duration.ofSeconds(5))).join();
+
+        assertThat(response.partial(), is(true));
+        assertThat(response.productDetails(), is(List.of(MOCK_PRODUCT_DETAIL_3)));
+    }
+
+    @Test
+    void whenGetSimilarProductsBatchGetsOverlappingProducts_thenSharedDetailsAreFetchedOnlyOnce() {
+        when(productsService.getSimilarIds(MOCK_ID)).thenReturn(List.of(MOCK_ID_2, MOCK_ID_3));
+        when(productsService.getSimilarIds(MOCK_ID_2)).thenReturn(List.of(MOCK_ID_3, MOCK_ID_4));
+        when(productsService.getSimilarIds(MOCK_ID_3)).thenReturn(null);
+        when(productsService.getProductDetail(MOCK_ID_2)).thenReturn(MOCK_PRODUCT_DETAIL_2);
+        when(productsService.getProductDetail(MOCK_ID_3)).thenReturn(MOCK_PRODUCT_DETAIL_3);
+        when(productsService.getProductDetail(MOCK_ID_4)).thenReturn(null);
+
+        Map<String, List<ProductDetail>> response = similarProductsService.getSimilarProductsBatch(
+                List.of(MOCK_ID, MOCK_ID_2, MOCK_ID_3, MOCK_ID));
+
+        assertThat(response.keySet(), contains(MOCK_ID, MOCK_ID_2, MOCK_ID_3));
+        assertThat(response.get(MOCK_ID), is(List.of(MOCK_PRODUCT_DETAIL_2, MOCK_PRODUCT_DETAIL_3)));
+        assertThat(response.get(MOCK_ID_2), is(List.of(MOCK_PRODUCT_DETAIL_3)));
+        assertThat(response.get(MOCK_ID_3), is(nullValue()));
+        verify(productsService, times(1)).getSimilarIds(MOCK_ID);
+        verify(productsService, times(1)).getProductDetail(MOCK_ID_3);
+    }
+
     @Test
     void whenAddProductDetailGetNullProductId_thenItIsNotAddedToTheResponseList() {
         List<ProductDetail> list = new ArrayList<>();
@@ -135,4 +301,128 @@ class SimilarProductsServiceTest {
         assertThat(list.get(0), is(mockResponse));
     }
 
+
+    @Test
+    void whenSimilarProductsAreLoaded_thenFanOutIsMeasured() {
+        when(productsService.getSimilarIds(MOCK_ID)).thenReturn(List.of(MOCK_ID_2, MOCK_ID_3, MOCK_ID_4));
+        when(productsService.getProductDetail(MOCK_ID_2)).thenReturn(MOCK_PRODUCT_DETAIL_2);
+        when(productsService.getProductDetail(MOCK_ID_3)).thenReturn(MOCK_PRODUCT_DETAIL_3);
+        when(productsService.getProductDetail(MOCK_ID_4)).thenReturn(MOCK_PRODUCT_DETAIL_4);
+        DistributionSummary width = meterRegistry.get("similar.products.fan.out.width").summary();
+        long count = width.count();
+        double total = width.totalAmount();
+
+        similarProductsService.getSimilarProducts(MOCK_ID);
+        assertThat(width.count(), is(count + 1));
+        assertThat(width.totalAmount(), is(total + 3));
+        assertThat(meterRegistry.get("similar.products.fan.out").timer().count(), is(greaterThanOrEqualTo(1L)));
+    }
+
+    @Test
+    void whenSimilarProductsAreFetched_thenTheyArePrefetchedWhateverTheOperation() {
+        when(productsService.getSimilarIds(MOCK_ID)).thenReturn(List.of(MOCK_ID_2, MOCK_ID_3));
+        when(productsService.getProductDetail(MOCK_ID_2)).thenReturn(MOCK_PRODUCT_DETAIL_2);
+        when(productsService.getProductDetail(MOCK_ID_3)).thenReturn(MOCK_PRODUCT_DETAIL_3);
+        List<ProductDetail> expected = List.of(MOCK_PRODUCT_DETAIL_2, MOCK_PRODUCT_DETAIL_3);
+
+        similarProductsService.getSimilarProducts(MOCK_ID);
+        similarProductsService.getSimilarProducts(MOCK_ID);
+        verify(prefetcher, times(1)).prefetch(expected);
+        similarProductsService.getSimilarProductsBatch(List.of(MOCK_ID));
+        verify(prefetcher, times(2)).prefetch(expected);
+        similarProductsService.forEachProductDetail(List.of(MOCK_ID_2, MOCK_ID_3), productDetail -> {
+        });
+        verify(prefetcher).prefetch(MOCK_PRODUCT_DETAIL_2, 0);
+        verify(prefetcher).prefetch(MOCK_PRODUCT_DETAIL_3, 1);
+    }
+
+    @Test
+    void whenGetSimilarIdsWithOffsetAndLimit_thenReturnOnlyThatWindow() {
+        when(productsService.getSimilarIds(MOCK_ID)).thenReturn(List.of(MOCK_ID_2, MOCK_ID_3, MOCK_ID_4));
+        assertThat(similarProductsService.getSimilarIds(MOCK_ID, 1, 1), contains(MOCK_ID_3));
+        assertThat(similarProductsService.getSimilarIds(MOCK_ID, 1, null), contains(MOCK_ID_3, MOCK_ID_4));
+        assertThat(similarProductsService.getSimilarIds(MOCK_ID, 0, 10), contains(MOCK_ID_2, MOCK_ID_3, MOCK_ID_4));
+        assertThat(similarProductsService.getSimilarIds(MOCK_ID, 5, 1), is(empty()));
+        when(productsService.getSimilarIds(MOCK_ID_2)).thenReturn(null);
+        assertThat(similarProductsService.getSimilarIds(MOCK_ID_2, 0, null), is(nullValue()));
+    }
+
+    @Test
+    void whenGetSimilarProductsWithOffsetAndLimit_thenOnlyTheWindowIsFetchedAndItIsNotCached() {
+        when(productsService.getSimilarIds(MOCK_ID)).thenReturn(List.of(MOCK_ID_2, MOCK_ID_3, MOCK_ID_4));
+        when(productsService.getProductDetail(MOCK_ID_3)).thenReturn(MOCK_PRODUCT_DETAIL_3);
+
+        SimilarProducts response = similarProductsService.getSimilarProducts(MOCK_ID, 1, 1, null);
+        assertThat(response.productDetails(), contains(MOCK_PRODUCT_DETAIL_3));
+        assertThat(response.partial(), is(false));
+        verify(productsService, times(0)).getProductDetail(MOCK_ID_2);
+        verify(productsService, times(0)).getProductDetail(MOCK_ID_4);
+        assertThat(cacheManager.getCache(SimilarProductsService.SIMILAR_PRODUCT_DETAIL_CACHE).get(MOCK_ID),
+                is(nullValue()));
+    }
+
+    @Test
+    void whenGetSimilarProductsWithOffsetAndLimitInAsyncMode_thenOnlyTheWindowIsFetched() {
+        when(productsService.getSimilarIdsAsync(MOCK_ID)).thenReturn(CompletableFuture.completedFuture(
+                List.of(MOCK_ID_2, MOCK_ID_3, MOCK_ID_4)));
+        when(productsService.getProductDetailAsync(MOCK_ID_4))
+                .thenReturn(CompletableFuture.completedFuture(MOCK_PRODUCT_DETAIL_4));
+
+        SimilarProducts response = similarProductsService.getSimilarProductsAsync(MOCK_ID, 2, 5,
+                Deadline.after(Duration.ofSeconds(5))).join();
+        assertThat(response.productDetails(), contains(MOCK_PRODUCT_DETAIL_4));
+        verify(productsService, times(0)).getProductDetailAsync(MOCK_ID_2);
+        verify(productsService, times(0)).getProductDetailAsync(MOCK_ID_3);
+    }
+
+    @Test
+    void whenLimiterRejectsADetail_thenItIsNotIncludedInTheResponse() {
+        when(productsService.getSimilarIds(MOCK_ID)).thenReturn(List.of(MOCK_ID_2, MOCK_ID_3, MOCK_ID_4));
+        when(productsService.getProductDetail(MOCK_ID_2)).thenReturn(MOCK_PRODUCT_DETAIL_2);
+        when(productsService.getProductDetail(MOCK_ID_3)).thenThrow(new LimitExceededException("Limit exceeded"));
+        when(productsService.getProductDetail(MOCK_ID_4)).thenReturn(MOCK_PRODUCT_DETAIL_4);
+
+        assertThat(similarProductsService.getSimilarProducts(MOCK_ID),
+                is(List.of(MOCK_PRODUCT_DETAIL_2, MOCK_PRODUCT_DETAIL_4)));
+        List<ProductDetail> streamed = new ArrayList<>();
+        similarProductsService.forEachProductDetail(List.of(MOCK_ID_2, MOCK_ID_3, MOCK_ID_4), streamed::add);
+        assertThat(streamed, is(List.of(MOCK_PRODUCT_DETAIL_2, MOCK_PRODUCT_DETAIL_4)));
+        assertThat(similarProductsService.getSimilarProductsBatch(List.of(MOCK_ID)).get(MOCK_ID),
+                is(List.of(MOCK_PRODUCT_DETAIL_2, MOCK_PRODUCT_DETAIL_4)));
+    }
+
+    @Test
+    void whenLimiterRejectsADetailInAsyncMode_thenItIsNotIncludedInTheResponse() {
+        when(productsService.getSimilarIdsAsync(MOCK_ID)).thenReturn(CompletableFuture.completedFuture(
+                List.of(MOCK_ID_2, MOCK_ID_3, MOCK_ID_4)));
+        when(productsService.getProductDetailAsync(MOCK_ID_2))
+                .thenReturn(CompletableFuture.completedFuture(MOCK_PRODUCT_DETAIL_2));
+        when(productsService.getProductDetailAsync(MOCK_ID_3))
+                .thenReturn(CompletableFuture.failedFuture(new LimitExceededException("Limit exceeded")));
+        when(productsService.getProductDetailAsync(MOCK_ID_4))
+                .thenReturn(CompletableFuture.completedFuture(MOCK_PRODUCT_DETAIL_4));
+
+        assertThat(similarProductsService.getSimilarProductsAsync(MOCK_ID).join(),
+                is(List.of(MOCK_PRODUCT_DETAIL_2, MOCK_PRODUCT_DETAIL_4)));
+        SimilarProducts response = similarProductsService.getSimilarProductsAsync(MOCK_ID, 0, 3,
+                Deadline.after(Duration.ofSeconds(5))).join();
+        assertThat(response.productDetails(), is(List.of(MOCK_PRODUCT_DETAIL_2, MOCK_PRODUCT_DETAIL_4)));
+        assertThat(response.partial(), is(false));
+    }
+
+    @Test
+    void whenGetSimilarProductsWithOffsetAndLimitOfUnknownProduct_thenReturnNull() {
+        when(productsService.getSimilarIds(MOCK_ID)).thenReturn(null);
+        assertThat(similarProductsService.getSimilarProducts(MOCK_ID, 1, 1, null).productDetails(), is(nullValue()));
+    }
+
+    @Test
+    void whenForEachProductDetail_thenActionGetsTheFoundDetailsInOrder() {
+        when(productsService.getProductDetail(MOCK_ID_2)).thenReturn(MOCK_PRODUCT_DETAIL_2);
+        when(productsService.getProductDetail(MOCK_ID_3)).thenReturn(null);
+        when(productsService.getProductDetail(MOCK_ID_4)).thenReturn(MOCK_PRODUCT_DETAIL_4);
+        List<ProductDetail> productDetails = new ArrayList<>();
+        similarProductsService.forEachProductDetail(List.of(MOCK_ID_4, MOCK_ID_3, MOCK_ID_2), productDetails::add);
+        assertThat(productDetails, contains(MOCK_PRODUCT_DETAIL_4, MOCK_PRODUCT_DETAIL_2));
+    }
 }
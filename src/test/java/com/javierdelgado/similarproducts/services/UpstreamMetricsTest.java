@@ -0,0 +1,50 @@
+package com.javierdelgado.similarproducts.services;
+
+import com.javierdelgado.similarproducts.limiter.LimitExceededException;
+import com.javierdelgado.similarproducts.services.deadline.DeadlineExceededException;
+import com.javierdelgado.similarproducts.services.proxies.ProductsServiceResponseException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletionException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class UpstreamMetricsTest {
+
+    @Test
+    void whenRequestIsRejectedOrExceedsTheDeadline_thenOutcomeIsRejectedOrTimeout() {
+        assertThat(UpstreamMetrics.Outcome.of(new LimitExceededException("limit")),
+                is(UpstreamMetrics.Outcome.REJECTED));
+        assertThat(UpstreamMetrics.Outcome.of(new CompletionException(new LimitExceededException("limit"))),
+                is(UpstreamMetrics.Outcome.REJECTED));
+        assertThat(UpstreamMetrics.Outcome.of(new DeadlineExceededException("deadline")),
+                is(UpstreamMetrics.Outcome.TIMEOUT));
+    }
+
+    @Test
+    void whenRequestFails_thenOutcomeIsTakenFromFailureReason() {
+        assertThat(UpstreamMetrics.Outcome.of(new ProductsServiceResponseException(404, "NotFound")),
+                is(UpstreamMetrics.Outcome.NOT_FOUND));
+        assertThat(UpstreamMetrics.Outcome.of(new ProductsServiceResponseException(500, "Error")),
+                is(UpstreamMetrics.Outcome.SERVER_ERROR));
+        assertThat(UpstreamMetrics.Outcome.of(new RuntimeException()), is(UpstreamMetrics.Outcome.OTHER));
+    }
+
+    @Test
+    void whenRequestIsRecorded_thenOnlyTheTimerOfItsOutcomeCountsIt() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        UpstreamMetrics metrics = new UpstreamMetrics("test", meterRegistry);
+        metrics.record(UpstreamMetrics.Outcome.OK, System.nanoTime());
+        metrics.record(new LimitExceededException("limit"), System.nanoTime());
+        metrics.record(UpstreamMetrics.Outcome.OK, System.nanoTime());
+        assertThat(meterRegistry.get("similar.products.upstream.requests").tag("endpoint", "test")
+                .tag("outcome", "ok").timer().count(), is(2L));
+        assertThat(meterRegistry.get("similar.products.upstream.requests").tag("endpoint", "test")
+                .tag("outcome", "rejected").timer().count(), is(1L));
+        assertThat(meterRegistry.get("similar.products.upstream.requests").tag("endpoint", "test")
+                .tag("outcome", "timeout").timer().count(), is(0L));
+    }
+}
@@ -0,0 +1,130 @@
+package com.javierdelgado.similarproducts.services.circuitbreaker;
+
+import com.javierdelgado.similarproducts.limiter.LimitExceededException;
+import com.javierdelgado.similarproducts.services.deadline.Deadline;
+import com.javierdelgado.similarproducts.services.deadline.DeadlineExceededException;
+import com.javierdelgado.similarproducts.services.proxies.ProductsServiceResponseException;
+import feign.Request;
+import feign.RetryableException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import org.junit.jupiter.api.Test;
+
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UpstreamCircuitBreakerTest {
+
+    private static final Request REQUEST = Request.create(Request.HttpMethod.GET, "http://localhost/product/1",
+            Collections.emptyMap(), null, StandardCharsets.UTF_8, null);
+
+    private final UpstreamCircuitBreaker circuitBreaker = new UpstreamCircuitBreaker(CircuitBreaker.of("test",
+            CircuitBreakerConfig.custom()
+                    .slidingWindowSize(4)
+                    .minimumNumberOfCalls(4)
+                    .failureRateThreshold(50)
+                    .slowCallDurationThreshold(Duration.ofMillis(20))
+                    .slowCallRateThreshold(50)
+                    .waitDurationInOpenState(Duration.ofMinutes(1))
+                    .build()));
+
+    @Test
+    void whenServerErrorsReachTheThreshold_thenCircuitOpensAndCallsAreNotRun() {
+        for (int i = 0; i < 4; i++) {
+            assertThrows(ProductsServiceResponseException.class, () -> circuitBreaker.call(failing(500)));
+        }
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+        AtomicInteger calls = new AtomicInteger();
+        assertThrows(CallNotPermittedException.class, () -> circuitBreaker.call(calls::incrementAndGet));
+        assertThat(calls.get(), is(0));
+    }
+
+    @Test
+    void whenProductsServiceAnswersNotFoundOrCallsAreRejectedByTheLimiter_thenCircuitStaysClosed() {
+        for (int i = 0; i < 4; i++) {
+            assertThrows(ProductsServiceResponseException.class, () -> circuitBreaker.call(failing(404)));
+            assertThrows(LimitExceededException.class, () -> circuitBreaker.call(() -> {
+                throw new LimitExceededException("Limit exceeded");
+            }));
+        }
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    void whenTimeoutsAreCausedByAShortDeadlineOfTheCaller_thenTheyAreNotRecorded() {
+        Supplier<Object> timingOut = () -> {
+            throw new RetryableException(-1, "Read timed out", Request.HttpMethod.GET,
+                    new SocketTimeoutException("Read timed out"), null, REQUEST);
+        };
+        Deadline deadline = Deadline.after(Duration.ofMillis(10));
+        for (int i = 0; i < 4; i++) {
+            assertThrows(RetryableException.class, () -> deadline.run(() -> circuitBreaker.call(timingOut)));
+            assertThrows(DeadlineExceededException.class, () -> deadline.run(() -> circuitBreaker.call(() -> {
+                throw new DeadlineExceededException("Deadline exceeded");
+            })));
+        }
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+        for (int i = 0; i < 4; i++) {
+            assertThrows(RetryableException.class, () -> circuitBreaker.call(timingOut));
+        }
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    void whenTimeoutsHappenWithADeadlineLongerThanASlowCall_thenCircuitOpens() {
+        Deadline deadline = Deadline.after(Duration.ofSeconds(10));
+        for (int i = 0; i < 4; i++) {
+            assertThrows(DeadlineExceededException.class, () -> deadline.run(() -> circuitBreaker.call(() -> {
+                throw new DeadlineExceededException("Deadline exceeded");
+            })));
+        }
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    void whenCallsAreSlow_thenCircuitOpens() {
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.call(() -> {
+                try {
+                    Thread.sleep(30);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "slow";
+            });
+        }
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    void whenAsyncCallsFail_thenCircuitOpensAndFuturesCompleteExceptionally() {
+        for (int i = 0; i < 4; i++) {
+            CompletableFuture<Object> future = circuitBreaker.callAsync(() -> CompletableFuture.failedFuture(
+                    new ProductsServiceResponseException(503, "Service unavailable")));
+            assertThrows(CompletionException.class, future::join);
+        }
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<Integer> future = circuitBreaker.callAsync(
+                () -> CompletableFuture.completedFuture(calls.incrementAndGet()));
+        CompletionException e = assertThrows(CompletionException.class, future::join);
+        assertThat(e.getCause(), is(instanceOf(CallNotPermittedException.class)));
+        assertThat(calls.get(), is(0));
+    }
+
+    private static Supplier<Object> failing(int status) {
+        return () -> {
+            throw new ProductsServiceResponseException(status, "Status " + status);
+        };
+    }
+}
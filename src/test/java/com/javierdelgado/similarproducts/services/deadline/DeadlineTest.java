@@ -0,0 +1,42 @@
+package com.javierdelgado.similarproducts.services.deadline;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class DeadlineTest {
+
+    @Test
+    void whenThereIsNoDeadline_thenCurrentIsNull() {
+        assertThat(Deadline.current(), is(nullValue()));
+    }
+
+    @Test
+    void whenRunIsCalled_thenDeadlineIsCurrentOnlyWhileItRuns() {
+        Deadline outer = Deadline.after(Duration.ofSeconds(10));
+        Deadline inner = Deadline.after(Duration.ofSeconds(1));
+        Deadline current = outer.run(() -> {
+            assertThat(inner.run(Deadline::current), is(sameInstance(inner)));
+            return Deadline.current();
+        });
+        assertThat(current, is(sameInstance(outer)));
+        assertThat(Deadline.current(), is(nullValue()));
+    }
+
+    @Test
+    void whenDeadlineHasPassed_thenItIsExpiredAndRemainingIsZero() {
+        Deadline deadline = Deadline.after(Duration.ofMillis(-1));
+        assertThat(deadline.isExpired(), is(true));
+        assertThat(deadline.remaining(), is(Duration.ZERO));
+    }
+
+    @Test
+    void whenDeadlineHasNotPassed_thenItIsNotExpired() {
+        Deadline deadline = Deadline.after(Duration.ofSeconds(10));
+        assertThat(deadline.isExpired(), is(false));
+        assertThat(deadline.remaining(), is(lessThanOrEqualTo(Duration.ofSeconds(10))));
+    }
+}
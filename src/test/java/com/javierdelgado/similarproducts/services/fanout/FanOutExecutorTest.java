@@ -0,0 +1,170 @@
+package com.javierdelgado.similarproducts.services.fanout;
+
+import com.javierdelgado.similarproducts.services.deadline.Deadline;
+import com.javierdelgado.similarproducts.services.deadline.DeadlineExceededException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FanOutExecutorTest {
+
+    FanOutExecutor fanOutExecutor;
+
+    @AfterEach
+    void afterEach() {
+        fanOutExecutor.destroy();
+    }
+
+    @Test
+    void whenMapGetsEmptyList_thenReturnEmptyList() {
+        fanOutExecutor = new FanOutExecutor(new FanOutProperties(FanOutProperties.Mode.VIRTUAL, 4, 4, 0));
+        assertThat(fanOutExecutor.map(Collections.<String>emptyList(), String::length), is(empty()));
+    }
+
+    @Test
+    void whenMapGetsSlowItems_thenResultsKeepTheOrderOfTheItems() {
+        fanOutExecutor = new FanOutExecutor(new FanOutProperties(FanOutProperties.Mode.PLATFORM, 4, 4, 0));
+        List<Integer> items = IntStream.range(0, 20).boxed().toList();
+        List<Integer> response = fanOutExecutor.map(items, item -> {
+            sleep(20 - item);
+            return item * 2;
+        });
+        assertThat(response, is(items.stream().map(item -> item * 2).toList()));
+    }
+
+    @Test
+    void whenFunctionReturnsNull_thenNullIsKeptInItsPosition() {
+        fanOutExecutor = new FanOutExecutor(new FanOutProperties(FanOutProperties.Mode.VIRTUAL, 4, 4, 0));
+        List<String> response = fanOutExecutor.map(List.of("a", "b", "c"), item -> "b".equals(item) ? null : item);
+        assertThat(response, contains("a", null, "c"));
+    }
+
+    @Test
+    void whenMapGetsManyItems_thenConcurrencyDoesNotExceedTheConfiguredLimit() {
+        fanOutExecutor = new FanOutExecutor(new FanOutProperties(FanOutProperties.Mode.PLATFORM, 16, 3, 0));
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        fanOutExecutor.map(IntStream.range(0, 30).boxed().toList(), item -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            sleep(5);
+            running.decrementAndGet();
+            return item;
+        });
+        assertThat(maxRunning.get(), is(lessThanOrEqualTo(3)));
+    }
+
+    @Test
+    void whenFunctionThrowsException_thenMapThrowsIt() {
+        fanOutExecutor = new FanOutExecutor(new FanOutProperties(FanOutProperties.Mode.PLATFORM, 4, 4, 0));
+        List<Integer> items = List.of(1, 2, 3, 4);
+        assertThrows(IllegalArgumentException.class, () -> fanOutExecutor.map(items, item -> {
+            throw new IllegalArgumentException();
+        }));
+    }
+
+    @Test
+    void whenDeadlineExpires_thenReturnItemsMappedInTimeInOrder() {
+        fanOutExecutor = new FanOutExecutor(new FanOutProperties(FanOutProperties.Mode.PLATFORM, 4, 4, 0));
+        List<Integer> items = List.of(1, 2, 3, 4);
+        FanOutExecutor.Result<Integer> result = fanOutExecutor.map(items, item -> {
+            sleep(item % 2 == 0 ? 5000 : 0);
+            return item;
+        }, Deadline.after(Duration.ofMillis(200)));
+        assertThat(result.complete(), is(false));
+        assertThat(result.results(), is(Arrays.asList(1, null, 3, null)));
+    }
+
+    @Test
+    void whenDeadlineDoesNotExpire_thenReturnCompleteResult() {
+        fanOutExecutor = new FanOutExecutor(new FanOutProperties(FanOutProperties.Mode.VIRTUAL, 4, 4, 0));
+        FanOutExecutor.Result<String> result = fanOutExecutor.map(List.of("a", "b"), String::toUpperCase,
+                Deadline.after(Duration.ofSeconds(5)));
+        assertThat(result.complete(), is(true));
+        assertThat(result.results(), is(List.of("A", "B")));
+    }
+
+    @Test
+    void whenMapGetsDeadline_thenLookupsRunWithIt() {
+        fanOutExecutor = new FanOutExecutor(new FanOutProperties(FanOutProperties.Mode.VIRTUAL, 4, 4, 0));
+        Deadline deadline = Deadline.after(Duration.ofSeconds(5));
+        FanOutExecutor.Result<Deadline> result = fanOutExecutor.map(List.of("a", "b"), item -> Deadline.current(),
+                deadline);
+        assertThat(result.results(), everyItem(sameInstance(deadline)));
+    }
+
+    @Test
+    void whenFunctionThrowsDeadlineExceededException_thenItemIsNotMapped() {
+        fanOutExecutor = new FanOutExecutor(new FanOutProperties(FanOutProperties.Mode.PLATFORM, 4, 1, 0));
+        FanOutExecutor.Result<String> result = fanOutExecutor.map(List.of("a", "b"), item -> {
+            if ("b".equals(item)) {
+                throw new DeadlineExceededException("Deadline exceeded");
+            }
+            return item;
+        }, Deadline.after(Duration.ofSeconds(5)));
+        assertThat(result.complete(), is(false));
+        assertThat(result.results(), is(Arrays.asList("a", null)));
+    }
+
+    @Test
+    void whenForEachOrderedGetsSlowItems_thenActionGetsResultsInTheOrderOfTheItems() {
+        fanOutExecutor = new FanOutExecutor(new FanOutProperties(FanOutProperties.Mode.PLATFORM, 4, 4, 0));
+        List<Integer> items = IntStream.range(0, 20).boxed().toList();
+        List<Integer> results = new ArrayList<>();
+        fanOutExecutor.forEachOrdered(items, item -> {
+            sleep(20 - item);
+            return item * 2;
+        }, results::add);
+        assertThat(results, is(items.stream().map(item -> item * 2).toList()));
+    }
+
+    @Test
+    void whenForEachOrderedGetsManyItems_thenLookupsDoNotRunAheadOfTheActionBeyondTheLimit() {
+        fanOutExecutor = new FanOutExecutor(new FanOutProperties(FanOutProperties.Mode.PLATFORM, 16, 3, 0));
+        AtomicInteger started = new AtomicInteger();
+        AtomicInteger maxAhead = new AtomicInteger();
+        List<Integer> results = new ArrayList<>();
+        fanOutExecutor.forEachOrdered(IntStream.range(0, 30).boxed().toList(), item -> {
+            started.incrementAndGet();
+            return item;
+        }, result -> {
+            sleep(2);
+            maxAhead.accumulateAndGet(started.get() - results.size(), Math::max);
+            results.add(result);
+        });
+        assertThat(results.size(), is(30));
+        assertThat(maxAhead.get(), is(lessThanOrEqualTo(3)));
+    }
+
+    @Test
+    void whenForEachOrderedActionThrowsException_thenItIsRethrownAndLookupsStop() {
+        fanOutExecutor = new FanOutExecutor(new FanOutProperties(FanOutProperties.Mode.PLATFORM, 4, 2, 0));
+        AtomicInteger started = new AtomicInteger();
+        List<Integer> items = IntStream.range(0, 30).boxed().toList();
+        assertThrows(IllegalStateException.class, () -> fanOutExecutor.forEachOrdered(items, item -> {
+            started.incrementAndGet();
+            return item;
+        }, result -> {
+            throw new IllegalStateException("Client disconnected");
+        }));
+        assertThat(started.get(), is(lessThanOrEqualTo(2)));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.javierdelgado.similarproducts.services.fanout;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class FanOutPropertiesTest {
+
+    static final List<String> ITEMS = List.of("a", "b", "c", "d", "e");
+
+    @Test
+    void whenWindowHasNoOffsetNorLimit_thenReturnTheSameList() {
+        FanOutProperties properties = new FanOutProperties(FanOutProperties.Mode.VIRTUAL, 4, 4, 0);
+        assertThat(properties.window(ITEMS, 0, null), is(sameInstance(ITEMS)));
+    }
+
+    @Test
+    void whenWindowHasOffsetAndLimit_thenReturnOnlyTheseItems() {
+        FanOutProperties properties = new FanOutProperties(FanOutProperties.Mode.VIRTUAL, 4, 4, 0);
+        assertThat(properties.window(ITEMS, 1, 2), contains("b", "c"));
+        assertThat(properties.window(ITEMS, 3, null), contains("d", "e"));
+        assertThat(properties.window(ITEMS, 4, 10), contains("e"));
+        assertThat(properties.window(ITEMS, 10, 1), is(empty()));
+        assertThat(properties.window(ITEMS, 0, Integer.MAX_VALUE), contains("a", "b", "c", "d", "e"));
+    }
+
+    @Test
+    void whenListIsWiderThanMaxWidth_thenItemsBeyondItAreIgnored() {
+        FanOutProperties properties = new FanOutProperties(FanOutProperties.Mode.VIRTUAL, 4, 4, 3);
+        assertThat(properties.window(ITEMS, 0, null), contains("a", "b", "c"));
+        assertThat(properties.window(ITEMS, 2, 10), contains("c"));
+        assertThat(properties.window(ITEMS, 3, 10), is(empty()));
+    }
+}
@@ -0,0 +1,211 @@
+package com.javierdelgado.similarproducts.services.hedging;
+
+import com.javierdelgado.similarproducts.limiter.LimitExceededException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HedgerTest {
+
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    ExecutorService executorService = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void afterEach() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void whenHedgingIsDisabled_thenCallIsNotHedged() {
+        Hedger hedger = hedger(new HedgingProperties(false, Duration.ofMillis(1), 0.95, Duration.ZERO,
+                Duration.ofSeconds(1), 1, 100));
+        AtomicInteger calls = new AtomicInteger();
+        assertThat(hedger.call(() -> {
+            sleep(50);
+            return calls.incrementAndGet();
+        }), is(1));
+        assertThat(calls.get(), is(1));
+    }
+
+    @Test
+    void whenCallIsSlowerThanDelay_thenHedgedCallIsSentAndFirstAnswerIsReturned() {
+        Hedger hedger = hedger(properties(Duration.ofMillis(20), 1));
+        AtomicInteger calls = new AtomicInteger();
+        String response = hedger.call(() -> {
+            if (calls.incrementAndGet() == 1) {
+                sleep(1000);
+                return "slow";
+            }
+            return "fast";
+        });
+        assertThat(response, is("fast"));
+        assertThat(counter("similar.products.hedging.sent"), is(1.0));
+        assertThat(counter("similar.products.hedging.won"), is(1.0));
+    }
+
+    @Test
+    void whenHedgedCallWins_thenOriginalCallIsInterrupted() throws InterruptedException {
+        Hedger hedger = hedger(properties(Duration.ofMillis(20), 1));
+        AtomicInteger calls = new AtomicInteger();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        CountDownLatch finished = new CountDownLatch(1);
+        String response = hedger.call(() -> {
+            if (calls.incrementAndGet() == 1) {
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                } finally {
+                    finished.countDown();
+                }
+                return "slow";
+            }
+            return "fast";
+        });
+        assertThat(response, is("fast"));
+        assertThat(finished.await(1, TimeUnit.SECONDS), is(true));
+        assertThat(interrupted.get(), is(true));
+    }
+
+    @Test
+    void whenHedgedCallWins_thenOriginalFutureIsCancelled() {
+        Hedger hedger = hedger(properties(Duration.ofMillis(20), 1));
+        CompletableFuture<String> original = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> response = hedger.callAsync(() -> calls.incrementAndGet() == 1
+                ? original
+                : CompletableFuture.completedFuture("fast"));
+        assertThat(response.join(), is("fast"));
+        assertThat(original.isCancelled(), is(true));
+    }
+
+    @Test
+    void whenOriginalCallAnswersFirst_thenHedgedFutureIsCancelled() {
+        Hedger hedger = hedger(properties(Duration.ofMillis(20), 1));
+        CompletableFuture<String> original = new CompletableFuture<>();
+        CompletableFuture<String> hedged = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> response = hedger.callAsync(() -> calls.incrementAndGet() == 1 ? original : hedged);
+        sleep(100);
+        original.complete("value");
+        assertThat(response.join(), is("value"));
+        assertThat(hedged.isCancelled(), is(true));
+        assertThat(counter("similar.products.hedging.won"), is(0.0));
+    }
+
+    @Test
+    void whenHedgedCallFails_thenAnswerOfOriginalCallIsReturnedAndHedgeDoesNotWin() {
+        Hedger hedger = hedger(properties(Duration.ofMillis(20), 1));
+        CompletableFuture<String> original = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> response = hedger.callAsync(() -> calls.incrementAndGet() == 1
+                ? original
+                : CompletableFuture.failedFuture(new IllegalStateException()));
+        sleep(100);
+        original.complete("value");
+        assertThat(response.join(), is("value"));
+        assertThat(counter("similar.products.hedging.sent"), is(1.0));
+        assertThat(counter("similar.products.hedging.won"), is(0.0));
+    }
+
+    @Test
+    void whenOriginalCallFailsFirst_thenHedgeDoesNotWin() {
+        Hedger hedger = hedger(properties(Duration.ofMillis(20), 1));
+        CompletableFuture<String> original = new CompletableFuture<>();
+        CompletableFuture<String> hedged = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> response = hedger.callAsync(() -> calls.incrementAndGet() == 1 ? original : hedged);
+        sleep(100);
+        original.completeExceptionally(new IllegalStateException());
+        hedged.complete("value");
+        assertThrows(CompletionException.class, response::join);
+        assertThat(counter("similar.products.hedging.won"), is(0.0));
+    }
+
+    @Test
+    void whenHedgedCallIsRejectedByTheLimiter_thenItIsNotCountedAsSent() {
+        Hedger hedger = hedger(properties(Duration.ofMillis(20), 1));
+        CompletableFuture<String> original = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> response = hedger.callAsync(() -> calls.incrementAndGet() == 1
+                ? original
+                : CompletableFuture.failedFuture(new LimitExceededException("Limit exceeded")));
+        sleep(100);
+        original.complete("value");
+        assertThat(response.join(), is("value"));
+        assertThat(calls.get(), is(2));
+        assertThat(counter("similar.products.hedging.sent"), is(0.0));
+    }
+
+    @Test
+    void whenCallIsFasterThanDelay_thenNoHedgedCallIsSent() {
+        Hedger hedger = hedger(properties(Duration.ofMillis(500), 1));
+        assertThat(hedger.call(() -> "fast"), is("fast"));
+        assertThat(counter("similar.products.hedging.sent"), is(0.0));
+    }
+
+    @Test
+    void whenBudgetIsExhausted_thenNoHedgedCallIsSent() {
+        Hedger hedger = hedger(properties(Duration.ofMillis(1), 0));
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        CompletableFuture<String> response = hedger.callAsync(() -> upstream);
+        sleep(50);
+        upstream.complete("value");
+        assertThat(response.join(), is("value"));
+        assertThat(counter("similar.products.hedging.sent"), is(0.0));
+    }
+
+    @Test
+    void whenCallThrowsException_thenExceptionIsThrownUnwrapped() {
+        Hedger hedger = hedger(properties(Duration.ofMillis(500), 1));
+        assertThrows(IllegalStateException.class, () -> hedger.call(() -> {
+            throw new IllegalStateException();
+        }));
+    }
+
+    @Test
+    void whenDelayIsNotFixed_thenItIsThePercentileOfObservedLatenciesWithinLimits() {
+        Hedger hedger = hedger(new HedgingProperties(true, null, 0.5, Duration.ofMillis(1), Duration.ofSeconds(1),
+                0, 100));
+        assertThat(hedger.delayNanos(), is(Duration.ofSeconds(1).toNanos()));
+        for (int i = 0; i < LatencyTracker.RECOMPUTE_INTERVAL; i++) {
+            hedger.callAsync(() -> CompletableFuture.completedFuture("value"));
+        }
+        assertThat(hedger.delayNanos(), is(Duration.ofMillis(1).toNanos()));
+    }
+
+    private HedgingProperties properties(Duration delay, double budgetRatio) {
+        return new HedgingProperties(true, delay, 0.95, Duration.ZERO, Duration.ofSeconds(1), budgetRatio, 100);
+    }
+
+    private Hedger hedger(HedgingProperties properties) {
+        return new Hedger("test", properties, executorService, meterRegistry);
+    }
+
+    private double counter(String name) {
+        return meterRegistry.get(name).counter().count();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
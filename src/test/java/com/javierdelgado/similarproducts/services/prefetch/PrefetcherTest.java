@@ -0,0 +1,79 @@
+package com.javierdelgado.similarproducts.services.prefetch;
+
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import com.javierdelgado.similarproducts.services.SimilarProductsService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest(properties = {
+        "similar-products.prefetch.enabled=true",
+        "similar-products.prefetch.top-n=2",
+        "similar-products.prefetch.rate=4"})
+class PrefetcherTest {
+
+    @Autowired
+    Prefetcher prefetcher;
+    @Autowired
+    CacheManager cacheManager;
+    @Autowired
+    MeterRegistry meterRegistry;
+    @MockBean
+    SimilarProductsService similarProductsService;
+
+    @BeforeEach
+    void beforeEach() throws InterruptedException {
+        cacheManager.getCacheNames().stream().map(cacheManager::getCache).forEach(Cache::clear);
+        clearInvocations(similarProductsService);
+        // Lets the budget fill up again
+        Thread.sleep(1000);
+    }
+
+    @Test
+    void whenSimilarProductsAreServed_thenSimilarProductsOfTheFirstOnesArePrefetched() {
+        prefetcher.prefetch(productDetails("1", "2", "3"));
+        verify(similarProductsService, timeout(1000)).getSimilarProducts("1");
+        verify(similarProductsService, timeout(1000)).getSimilarProducts("2");
+        verify(similarProductsService, after(200).never()).getSimilarProducts("3");
+    }
+
+    @Test
+    void whenSimilarProductsAreCached_thenTheyAreNotPrefetched() {
+        cacheManager.getCache(SimilarProductsService.SIMILAR_PRODUCT_DETAIL_CACHE).put("1", List.of());
+        prefetcher.prefetch(productDetails("1", "2"));
+        verify(similarProductsService, timeout(1000)).getSimilarProducts("2");
+        verify(similarProductsService, never()).getSimilarProducts("1");
+    }
+
+    @Test
+    void whenBudgetIsExhausted_thenPrefetchesAreSkipped() {
+        double skipped = meterRegistry.get("similar.products.prefetch").tag("result", "budget").counter().count();
+        IntStream.range(0, 5).forEach(i -> prefetcher.prefetch(productDetails("a" + i, "b" + i)));
+        assertThat(meterRegistry.get("similar.products.prefetch").tag("result", "budget").counter().count(),
+                is(skipped + 6));
+    }
+
+    static List<ProductDetail> productDetails(String... ids) {
+        return Arrays.stream(ids)
+                .map(id -> new ProductDetail(id, "name", BigDecimal.ONE, Boolean.TRUE))
+                .toList();
+    }
+}
@@ -0,0 +1,32 @@
+package com.javierdelgado.similarproducts.services.prefetch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class RateBudgetTest {
+
+    @Test
+    void whenBurstIsExhausted_thenPermitsAreGrantedAtTheRate() {
+        AtomicLong now = new AtomicLong();
+        RateBudget budget = new RateBudget(10, now::get);
+        for (int i = 0; i < 10; i++) {
+            assertThat(budget.tryAcquire(), is(true));
+        }
+        assertThat(budget.tryAcquire(), is(false));
+
+        now.addAndGet(100_000_000);
+        assertThat(budget.tryAcquire(), is(true));
+        assertThat(budget.tryAcquire(), is(false));
+
+        now.addAndGet(10_000_000_000L);
+        int granted = 0;
+        while (budget.tryAcquire()) {
+            granted++;
+        }
+        assertThat(granted, is(10));
+    }
+}
@@ -0,0 +1,30 @@
+package com.javierdelgado.similarproducts.services.prefetch;
+
+import com.javierdelgado.similarproducts.services.SimilarProductsService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest(properties = "similar-products.warm-up.product-ids=1,2,3")
+class WarmUpRunnerTest {
+
+    @Autowired
+    ApplicationAvailability applicationAvailability;
+    @MockBean
+    SimilarProductsService similarProductsService;
+
+    @Test
+    void whenApplicationStarts_thenHotProductsAreLoaded() {
+        verify(similarProductsService).getSimilarProducts("1");
+        verify(similarProductsService).getSimilarProducts("2");
+        verify(similarProductsService).getSimilarProducts("3");
+        assertThat(applicationAvailability.getReadinessState(), is(ReadinessState.ACCEPTING_TRAFFIC));
+    }
+}
@@ -0,0 +1,89 @@
+package com.javierdelgado.similarproducts.services.proxies;
+
+import com.sun.net.httpserver.HttpServer;
+import feign.Request;
+import feign.Response;
+import feign.Util;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class Http2ClientTest {
+
+    static final Request.Options OPTIONS = new Request.Options(1, TimeUnit.SECONDS, 1, TimeUnit.SECONDS,
+            true);
+
+    HttpServer server;
+    List<HttpClient.Version> versions;
+    Http2Client client;
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/product/2", exchange -> {
+            byte[] bytes = "{\"id\":\"2\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(exchange.getRequestHeaders().containsKey("Accept") ? 200 : 400,
+                    bytes.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(bytes);
+            }
+        });
+        server.createContext("/product/slow", exchange -> {
+            try {
+                Thread.sleep(3000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        versions = new ArrayList<>();
+        client = new Http2Client(HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build(), versions::add);
+    }
+
+    @AfterEach
+    void afterEach() {
+        server.stop(0);
+    }
+
+    @Test
+    void whenServerDoesNotSupportHttp2_thenResponseIsReceivedWithHttp11() throws IOException {
+        Response response = client.execute(request("/product/2",
+                Map.of("Accept", List.of("application/json"), "Content-Length", List.of("0"))), OPTIONS);
+        assertThat(response.status(), is(200));
+        assertThat(response.headers().get("content-type"), contains("application/json"));
+        assertThat(response.body().length(), is(10));
+        assertThat(Util.toString(response.body().asReader(StandardCharsets.UTF_8)), is("{\"id\":\"2\"}"));
+        assertThat(response.protocolVersion(), is(Request.ProtocolVersion.HTTP_1_1));
+        assertThat(versions, contains(HttpClient.Version.HTTP_1_1));
+    }
+
+    @Test
+    void whenServerTakesLongerThanReadTimeout_thenThrowHttpTimeoutException() {
+        assertThrows(HttpTimeoutException.class, () -> client.execute(request("/product/slow", Map.of()), OPTIONS));
+    }
+
+    private Request request(String path, Map<String, Collection<String>> headers) {
+        return Request.create(Request.HttpMethod.GET, "http://localhost:" + server.getAddress().getPort() + path,
+                headers, null, StandardCharsets.UTF_8, null);
+    }
+}
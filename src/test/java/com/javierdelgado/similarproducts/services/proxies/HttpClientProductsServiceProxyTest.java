@@ -0,0 +1,92 @@
+package com.javierdelgado.similarproducts.services.proxies;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HttpClientProductsServiceProxyTest {
+
+    HttpServer server;
+    HttpClientProductsServiceProxy proxy;
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/product/1/similarids", exchange -> respond(exchange, 200, "[\"2\",\"3\"]"));
+        server.createContext("/product/2", exchange -> respond(exchange, 200,
+                "{\"id\":\"2\",\"name\":\"Dress\",\"price\":19.99,\"availability\":true}"));
+        server.createContext("/product/404", exchange -> respond(exchange, 404, "{\"message\":\"Not found\"}"));
+        server.createContext("/product/slow", exchange -> {
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 200, "{\"id\":\"slow\",\"name\":\"Slow\",\"price\":1,\"availability\":true}");
+        });
+        server.start();
+        proxy = new HttpClientProductsServiceProxy("http://localhost:" + server.getAddress().getPort(), 1000, 1000,
+                new ObjectMapper().registerModule(new ParameterNamesModule()));
+    }
+
+    @AfterEach
+    void afterEach() {
+        proxy.destroy();
+        server.stop(0);
+    }
+
+    @Test
+    void whenGetSimilarIdsReturnsCorrectResponse_thenFutureCompletesWithTheIds() {
+        assertThat(proxy.getSimilarIds("1").join(), contains("2", "3"));
+    }
+
+    @Test
+    void whenGetProductDetailReturnsCorrectResponse_thenFutureCompletesWithTheProductDetail() {
+        ProductDetail productDetail = proxy.getProductDetail("2").join();
+        assertThat(productDetail.getId(), is("2"));
+        assertThat(productDetail.getName(), is("Dress"));
+        assertThat(productDetail.getPrice(), is(new BigDecimal("19.99")));
+        assertThat(productDetail.getAvailability(), is(true));
+    }
+
+    @Test
+    void whenGetProductDetailReturns404_thenFutureCompletesExceptionally() {
+        CompletionException e = assertThrows(CompletionException.class, () -> proxy.getProductDetail("404").join());
+        assertThat(e.getCause(), is(instanceOf(ProductsServiceResponseException.class)));
+        assertThat(((ProductsServiceResponseException) e.getCause()).getStatus(), is(404));
+    }
+
+    @Test
+    void whenTimeoutExpiresBeforeTheAnswer_thenFutureCompletesExceptionallyWithHttpTimeoutException() {
+        CompletionException e = assertThrows(CompletionException.class,
+                () -> proxy.getProductDetail("slow", Duration.ofMillis(50)).join());
+        assertThat(e.getCause(), is(instanceOf(HttpTimeoutException.class)));
+    }
+
+    private static void respond(com.sun.net.httpserver.HttpExchange exchange, int status, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.javierdelgado.similarproducts.services.proxies;
+
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import com.sun.net.httpserver.HttpServer;
+import feign.Client;
+import feign.hc5.ApacheHttp5Client;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+
+@SpringBootTest(properties = {
+        "product-service.transport.type=pooled",
+        "product-service.transport.prewarm-connections=2"})
+class PooledTransportConfigurationTest {
+
+    static HttpServer server;
+
+    @Autowired
+    Client client;
+    @Autowired
+    ProductsServiceProxy productsServiceProxy;
+    @Autowired
+    PoolingHttpClientConnectionManager connectionManager;
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @DynamicPropertySource
+    static void productServiceUrl(DynamicPropertyRegistry registry) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/product/2", exchange -> {
+            byte[] bytes = "{\"id\":\"2\",\"name\":\"Dress\",\"price\":19.99,\"availability\":true}"
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(bytes);
+            }
+        });
+        server.start();
+        registry.add("product-service.url", () -> "http://localhost:" + server.getAddress().getPort());
+    }
+
+    @AfterAll
+    static void afterAll() {
+        server.stop(0);
+    }
+
+    @Test
+    void whenTransportIsPooled_thenRequestsReuseThePrewarmedConnections() {
+        assertThat(client, is(instanceOf(ApacheHttp5Client.class)));
+        // Opened on startup
+        assertThat(meterRegistry.get("similar.products.upstream.pool.opened").counter().count(), is(2.0));
+        assertThat(connectionManager.getTotalStats().getAvailable(), is(2));
+
+        double requests = meterRegistry.get("similar.products.upstream.pool.requests").counter().count();
+        for (int i = 0; i < 3; i++) {
+            ProductDetail productDetail = productsServiceProxy.getProductDetail("2");
+            assertThat(productDetail.getName(), is("Dress"));
+        }
+        assertThat(meterRegistry.get("similar.products.upstream.pool.requests").counter().count(), is(requests + 3));
+        assertThat(meterRegistry.get("similar.products.upstream.pool.opened").counter().count(), is(2.0));
+        assertThat(meterRegistry.get("similar.products.upstream.pool.connections").tag("state", "leased")
+                .gauge().value(), is(0.0));
+        assertThat(meterRegistry.get("similar.products.upstream.pool.max").gauge().value(), is(200.0));
+    }
+
+    @Test
+    void whenProductServiceIsDown_thenNoConnectionIsPrewarmed() throws IOException {
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        try (PoolingHttpClientConnectionManager manager = PoolingHttpClientConnectionManagerBuilder.create().build()) {
+            int connected = PooledTransportConfiguration.prewarm(manager, URI.create("http://localhost:" + port), 2,
+                    Timeout.ofSeconds(1), TimeValue.ofSeconds(30));
+            assertThat(connected, is(0));
+            assertThat(manager.getTotalStats().getAvailable(), is(0));
+            assertThat(manager.getTotalStats().getLeased(), is(0));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.javierdelgado.similarproducts.services.proxies;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import feign.Request;
+import feign.Response;
+import feign.codec.DecodeException;
+import feign.codec.Decoder;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ProductsServiceDecoderTest {
+
+    private static final Type SIMILAR_IDS = new ParameterizedTypeReference<List<String>>() {
+    }.getType();
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+            .modules(new ParameterNamesModule()).build();
+    private final Decoder delegate = (response, type) -> "delegated";
+    private final ProductsServiceDecoder decoder = new ProductsServiceDecoder(objectMapper.getFactory(), 3, delegate);
+
+    @Test
+    void whenSimilarIdsAreDecoded_thenTheyAreReadAsText() throws IOException {
+        assertThat(decoder.decode(response("[\"2\",3,\"4\"]"), SIMILAR_IDS), is(List.of("2", "3", "4")));
+    }
+
+    @Test
+    void whenThereAreMoreSimilarIdsThanMaxListSize_thenOnlyTheFirstOnesAreRead() throws IOException {
+        assertThat(decoder.decode(response("[\"1\",\"2\",\"3\",\"4\",{\"not\":\"parsed\"}]"), SIMILAR_IDS),
+                is(List.of("1", "2", "3")));
+    }
+
+    @Test
+    void whenProductDetailIsDecoded_thenItIsTheSameAsWithObjectMapper() throws IOException {
+        String[] bodies = {
+                "{\"id\":\"1\",\"name\":\"Shirt\",\"price\":9.99,\"availability\":true}",
+                "{\"availability\":false,\"price\":\"19.90\",\"name\":\"Dress\",\"id\":2}",
+                "{\"id\":\"3\",\"name\":null,\"price\":\"\",\"availability\":\"\"}",
+                "{\"id\":\"4\",\"extra\":{\"nested\":[1,2]},\"tags\":[\"a\"],\"price\":10,\"availability\":1}",
+                "{}"
+        };
+        for (String body : bodies) {
+            ProductDetail expected = objectMapper.readValue(body, ProductDetail.class);
+            ProductDetail productDetail = (ProductDetail) decoder.decode(response(body), ProductDetail.class);
+            assertThat(body, productDetail, is(expected));
+        }
+    }
+
+    @Test
+    void whenProductDetailHasCoercibleValues_thenTheyAreCoerced() throws IOException {
+        ProductDetail productDetail = (ProductDetail) decoder.decode(
+                response("{\"id\":5,\"name\":\"Coat\",\"price\":\"39.5\",\"availability\":\"TRUE\"}"),
+                ProductDetail.class);
+        assertThat(productDetail, is(new ProductDetail("5", "Coat", new BigDecimal("39.5"), true)));
+    }
+
+    @Test
+    void whenBodyIsEmptyOrNull_thenDecodeToNull() throws IOException {
+        assertThat(decoder.decode(response(""), ProductDetail.class), is(nullValue()));
+        assertThat(decoder.decode(response("null"), SIMILAR_IDS), is(nullValue()));
+        assertThat(decoder.decode(response(null), SIMILAR_IDS), is(nullValue()));
+    }
+
+    @Test
+    void whenBodyHasUnexpectedStructure_thenThrowDecodeException() {
+        assertThrows(DecodeException.class, () -> decoder.decode(response("{\"id\":\"1\"}"), SIMILAR_IDS));
+        assertThrows(DecodeException.class, () -> decoder.decode(response("[\"1\"]"), ProductDetail.class));
+        assertThrows(DecodeException.class, () -> decoder.decode(response("[[\"1\"]]"), SIMILAR_IDS));
+        assertThrows(DecodeException.class, () -> decoder.decode(response("{\"price\":\"free\"}"),
+                ProductDetail.class));
+    }
+
+    @Test
+    void whenTypeIsNotReadByTheDecoder_thenDelegate() throws IOException {
+        assertThat(decoder.decode(response("\"1\""), String.class), is("delegated"));
+        assertThat(decoder.decode(response("[1]"), new ParameterizedTypeReference<List<Integer>>() {
+        }.getType()), is("delegated"));
+    }
+
+    private static Response response(String body) {
+        Request request = Request.create(Request.HttpMethod.GET, "http://localhost/product/1",
+                Collections.emptyMap(), null, StandardCharsets.UTF_8, null);
+        Response.Builder builder = Response.builder().status(200).request(request).headers(Collections.emptyMap());
+        if (body != null) {
+            builder.body(body, StandardCharsets.UTF_8);
+        }
+        return builder.build();
+    }
+}
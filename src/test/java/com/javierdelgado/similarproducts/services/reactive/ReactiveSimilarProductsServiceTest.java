@@ -0,0 +1,136 @@
+package com.javierdelgado.similarproducts.services.reactive;
+
+import com.javierdelgado.similarproducts.limiter.LimitExceededException;
+import com.javierdelgado.similarproducts.models.ProductDetail;
+import com.javierdelgado.similarproducts.services.ProductsService;
+import com.javierdelgado.similarproducts.services.SimilarProductsService;
+import com.javierdelgado.similarproducts.services.fanout.FanOutProperties;
+import com.javierdelgado.similarproducts.services.prefetch.Prefetcher;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
+
+class ReactiveSimilarProductsServiceTest {
+
+    ProductsService productsService;
+    ConcurrentMapCacheManager cacheManager;
+    ReactiveSimilarProductsService service;
+    Map<String, CompletableFuture<ProductDetail>> details;
+
+    @BeforeEach
+    void beforeEach() {
+        productsService = mock(ProductsService.class);
+        when(productsService.isAsync()).thenReturn(true);
+        details = new ConcurrentHashMap<>();
+        when(productsService.getProductDetailAsync(anyString())).thenAnswer(invocation ->
+                details.computeIfAbsent(invocation.getArgument(0), id -> new CompletableFuture<>()));
+        cacheManager = new ConcurrentMapCacheManager(SimilarProductsService.SIMILAR_PRODUCT_DETAIL_CACHE);
+        service = new ReactiveSimilarProductsService(productsService, mock(SimilarProductsService.class),
+                cacheManager, new FanOutProperties(FanOutProperties.Mode.VIRTUAL, 1, 2, 0), new SimpleMeterRegistry(),
+                mock(Prefetcher.class));
+    }
+
+    @Test
+    void whenDetailsCompleteOutOfOrder_thenListKeepsTheOrderOfTheSimilarIds() {
+        when(productsService.getSimilarIdsAsync("1"))
+                .thenReturn(CompletableFuture.completedFuture(List.of("2", "3", "4")));
+        CompletableFuture<List<ProductDetail>> result = service.getSimilarProducts("1").toFuture();
+
+        details.get("3").complete(productDetail("3"));
+        details.get("2").complete(null);
+        assertThat(result.isDone(), is(false));
+        details.get("4").complete(productDetail("4"));
+
+        assertThat(result.join(), contains(productDetail("3"), productDetail("4")));
+        assertThat(cacheManager.getCache(SimilarProductsService.SIMILAR_PRODUCT_DETAIL_CACHE).get("1").get(),
+                is(result.join()));
+    }
+
+    @Test
+    void whenLimiterRejectsADetail_thenItIsNotIncluded() {
+        when(productsService.getSimilarIdsAsync("1"))
+                .thenReturn(CompletableFuture.completedFuture(List.of("2", "3")));
+        CompletableFuture<List<ProductDetail>> result = service.getSimilarProducts("1").toFuture();
+
+        details.get("2").completeExceptionally(new LimitExceededException("Limit exceeded"));
+        details.get("3").complete(productDetail("3"));
+
+        assertThat(result.join(), contains(productDetail("3")));
+    }
+
+    @Test
+    void whenThereAreMoreSimilarIdsThanMaxConcurrency_thenTheRestWaitForAFreeSlot() {
+        when(productsService.getSimilarIdsAsync("1"))
+                .thenReturn(CompletableFuture.completedFuture(List.of("2", "3", "4", "5")));
+        CompletableFuture<List<ProductDetail>> result = service.getSimilarProducts("1").toFuture();
+        assertThat(details.keySet(), containsInAnyOrder("2", "3"));
+
+        details.get("3").complete(productDetail("3"));
+        details.get("2").complete(productDetail("2"));
+        assertThat(details.keySet(), containsInAnyOrder("2", "3", "4", "5"));
+        details.get("4").complete(productDetail("4"));
+        details.get("5").complete(productDetail("5"));
+
+        assertThat(result.join(), contains(productDetail("2"), productDetail("3"), productDetail("4"),
+                productDetail("5")));
+    }
+
+    @Test
+    void whenSimilarProductsAreLoaded_thenFanOutIsMeasuredWithPercentileHistograms() {
+        PrometheusMeterRegistry meterRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        service = new ReactiveSimilarProductsService(productsService, mock(SimilarProductsService.class),
+                cacheManager, new FanOutProperties(FanOutProperties.Mode.VIRTUAL, 1, 2, 0), meterRegistry,
+                mock(Prefetcher.class));
+        when(productsService.getSimilarIdsAsync("1"))
+                .thenReturn(CompletableFuture.completedFuture(List.of("2", "3", "4")));
+        CompletableFuture<List<ProductDetail>> result = service.getSimilarProducts("1").toFuture();
+        details.values().forEach(detail -> detail.complete(null));
+        details.get("4").complete(productDetail("4"));
+        result.join();
+
+        DistributionSummary width = meterRegistry.get("similar.products.fan.out.width").summary();
+        assertThat(width.count(), is(1L));
+        assertThat(width.totalAmount(), is(3.0));
+        assertThat(meterRegistry.get("similar.products.fan.out").timer().count(), is(1L));
+        String scrape = meterRegistry.scrape();
+        assertThat(scrape, containsString("similar_products_fan_out_width_bucket"));
+        assertThat(scrape, containsString("similar_products_fan_out_seconds_bucket"));
+    }
+
+    @Test
+    void whenProductCanNotBeFound_thenMonoIsEmptyAndItIsCached() {
+        when(productsService.getSimilarIdsAsync("1")).thenReturn(CompletableFuture.completedFuture(null));
+        assertThat(service.getSimilarProducts("1").blockOptional().isPresent(), is(false));
+        assertThat(service.getSimilarProducts("1").blockOptional().isPresent(), is(false));
+        verify(productsService, times(1)).getSimilarIdsAsync("1");
+    }
+
+    @Test
+    void whenProductsServiceIsNotAsync_thenSimilarProductsServiceIsUsed() {
+        SimilarProductsService similarProductsService = mock(SimilarProductsService.class);
+        when(productsService.isAsync()).thenReturn(false);
+        when(similarProductsService.getSimilarProducts("1")).thenReturn(List.of(productDetail("2")));
+        service = new ReactiveSimilarProductsService(productsService, similarProductsService, cacheManager,
+                new FanOutProperties(FanOutProperties.Mode.VIRTUAL, 1, 2, 0), new SimpleMeterRegistry(),
+                mock(Prefetcher.class));
+        assertThat(service.getSimilarProducts("1").block(), contains(productDetail("2")));
+    }
+
+    static ProductDetail productDetail(String id) {
+        return new ProductDetail(id, "name" + id, BigDecimal.ONE, Boolean.TRUE);
+    }
+}
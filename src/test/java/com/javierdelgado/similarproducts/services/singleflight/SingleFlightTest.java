@@ -0,0 +1,105 @@
+package com.javierdelgado.similarproducts.services.singleflight;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SingleFlightTest {
+
+    static final String KEY = "key";
+
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    SingleFlight<String, String> singleFlight = new SingleFlight<>("test", meterRegistry);
+
+    @Test
+    void whenSeveralCallsWithSameKeyAreInFlight_thenSupplierIsOnlyCalledOnce() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executorService.submit(() -> singleFlight.execute(KEY, () -> {
+                    calls.incrementAndGet();
+                    await(release);
+                    return "value";
+                })));
+            }
+            while (leaderCalls() + coalescedCalls() < 8) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+            for (Future<String> future : futures) {
+                assertThat(future.get(1, TimeUnit.SECONDS), is("value"));
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertThat(calls.get(), is(1));
+        assertThat(leaderCalls(), is(1.0));
+        assertThat(coalescedCalls(), is(7.0));
+    }
+
+    @Test
+    void whenCallHasFinished_thenNextCallRunsTheSupplierAgain() {
+        AtomicInteger calls = new AtomicInteger();
+        singleFlight.execute(KEY, () -> "value" + calls.incrementAndGet());
+        assertThat(singleFlight.execute(KEY, () -> "value" + calls.incrementAndGet()), is("value2"));
+        assertThat(coalescedCalls(), is(0.0));
+    }
+
+    @Test
+    void whenSupplierThrowsException_thenExceptionIsThrownAndKeyIsReleased() {
+        assertThrows(IllegalStateException.class, () -> singleFlight.execute(KEY, () -> {
+            throw new IllegalStateException();
+        }));
+        assertThat(singleFlight.execute(KEY, () -> "value"), is("value"));
+    }
+
+    @Test
+    void whenAsyncCallIsInFlight_thenSyncAndAsyncCallsWithSameKeyShareIt() throws Exception {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        CompletableFuture<String> leader = singleFlight.executeAsync(KEY, () -> upstream);
+        CompletableFuture<String> coalesced = singleFlight.executeAsync(KEY, () -> CompletableFuture.completedFuture(
+                "other"));
+        CompletableFuture<String> sync = CompletableFuture.supplyAsync(() -> singleFlight.execute(KEY, () -> "other"));
+        while (coalescedCalls() < 2) {
+            Thread.onSpinWait();
+        }
+        upstream.complete("value");
+        assertThat(leader.join(), is("value"));
+        assertThat(coalesced.join(), is("value"));
+        assertThat(sync.get(1, TimeUnit.SECONDS), is("value"));
+        assertThat(leaderCalls(), is(1.0));
+    }
+
+    private double leaderCalls() {
+        return meterRegistry.get("similar.products.single.flight.calls").tag("result", "leader").counter().count();
+    }
+
+    private double coalescedCalls() {
+        return meterRegistry.get("similar.products.single.flight.calls").tag("result", "coalesced").counter().count();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}